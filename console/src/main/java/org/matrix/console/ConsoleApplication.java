@@ -92,6 +92,14 @@ public class ConsoleApplication extends Application {
         ContactsManager.refreshLocalContactsSnapshot(this);
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        // release the cold rooms messages
+        Matrix.getInstance(this).onTrimMemory(level);
+    }
+
     public static ConsoleApplication getInstance() {
         return instance;
     }
@@ -109,6 +117,9 @@ public class ConsoleApplication extends Application {
         // suspend the events thread if the client uses GCM
         if (Matrix.getInstance(ConsoleApplication.this).getSharedGcmRegistrationManager().useGCM()) {
             CommonActivityUtils.pauseEventStream(ConsoleApplication.this);
+        } else {
+            // sync the accounts together
+            CommonActivityUtils.scheduleEventStream(ConsoleApplication.this);
         }
         PIDsRetriever.getIntance().onAppBackgrounded();
 
@@ -190,6 +201,9 @@ public class ConsoleApplication extends Application {
                         gcmRegistrationManager.checkPusherRegistration(this);
                     }
                 }
+            } else if (null != EventStreamService.getInstance()) {
+                // stop syncing the accounts together
+                CommonActivityUtils.resumeEventStream(ConsoleApplication.this);
             }
 
             // get the contact update at application launch
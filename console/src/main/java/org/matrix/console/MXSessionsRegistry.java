@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console;
+
+import org.matrix.androidsdk.MXSession;
+import org.matrix.androidsdk.rest.model.login.Credentials;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Copy-on-write registry of the MXSessions, indexed by matrix user id.
+ * The readers never lock : they get an immutable snapshot.
+ * The writers are serialized and publish a new snapshot.
+ */
+public class MXSessionsRegistry {
+
+    /**
+     * Immutable registry content.
+     */
+    private static class Snapshot {
+        final List<MXSession> mSessions;
+        final HashMap<String, MXSession> mSessionsByUserId;
+
+        Snapshot(List<MXSession> sessions) {
+            mSessions = Collections.unmodifiableList(sessions);
+            mSessionsByUserId = new HashMap<String, MXSession>(sessions.size() * 2);
+
+            for (MXSession session : sessions) {
+                String userId = getUserId(session);
+
+                // keep the first registered session when there are duplicated user ids
+                if ((null != userId) && !mSessionsByUserId.containsKey(userId)) {
+                    mSessionsByUserId.put(userId, session);
+                }
+            }
+        }
+    }
+
+    private static final Snapshot EMPTY_SNAPSHOT = new Snapshot(new ArrayList<MXSession>());
+
+    private volatile Snapshot mSnapshot = EMPTY_SNAPSHOT;
+
+    // serialize the updates
+    private final Object mWriteLock = new Object();
+
+    /**
+     * @param session the session
+     * @return the session user id, null if it is not defined.
+     */
+    private static String getUserId(MXSession session) {
+        Credentials credentials = (null != session) ? session.getCredentials() : null;
+        return (null != credentials) ? credentials.userId : null;
+    }
+
+    /**
+     * @return an immutable snapshot of the registered sessions.
+     */
+    public List<MXSession> getSessions() {
+        return mSnapshot.mSessions;
+    }
+
+    /**
+     * @return the number of registered sessions
+     */
+    public int size() {
+        return mSnapshot.mSessions.size();
+    }
+
+    /**
+     * @return true if there is no registered session.
+     */
+    public boolean isEmpty() {
+        return mSnapshot.mSessions.isEmpty();
+    }
+
+    /**
+     * @return the first registered session, null if there is none.
+     */
+    public MXSession getFirst() {
+        List<MXSession> sessions = mSnapshot.mSessions;
+        return sessions.isEmpty() ? null : sessions.get(0);
+    }
+
+    /**
+     * Retrieve a session from its user id.
+     * @param userId the user id
+     * @return the session, null if it is not registered.
+     */
+    public MXSession get(String userId) {
+        if (null == userId) {
+            return null;
+        }
+
+        return mSnapshot.mSessionsByUserId.get(userId);
+    }
+
+    /**
+     * Register a session.
+     * @param session the session to add.
+     */
+    public void add(MXSession session) {
+        if (null == session) {
+            return;
+        }
+
+        synchronized (mWriteLock) {
+            ArrayList<MXSession> sessions = new ArrayList<MXSession>(mSnapshot.mSessions);
+            sessions.add(session);
+            mSnapshot = new Snapshot(sessions);
+        }
+    }
+
+    /**
+     * Unregister a session.
+     * @param session the session to remove.
+     * @return true if the session was registered.
+     */
+    public boolean remove(MXSession session) {
+        synchronized (mWriteLock) {
+            ArrayList<MXSession> sessions = new ArrayList<MXSession>(mSnapshot.mSessions);
+            boolean res = sessions.remove(session);
+
+            if (res) {
+                mSnapshot = new Snapshot(sessions);
+            }
+
+            return res;
+        }
+    }
+
+    /**
+     * Replace the registered sessions.
+     * @param sessions the new sessions list.
+     */
+    public void set(Collection<MXSession> sessions) {
+        synchronized (mWriteLock) {
+            mSnapshot = (null == sessions) ? EMPTY_SNAPSHOT : new Snapshot(new ArrayList<MXSession>(sessions));
+        }
+    }
+
+    /**
+     * Unregister all the sessions.
+     * @return the sessions which were registered.
+     */
+    public List<MXSession> clear() {
+        synchronized (mWriteLock) {
+            List<MXSession> sessions = mSnapshot.mSessions;
+            mSnapshot = EMPTY_SNAPSHOT;
+            return sessions;
+        }
+    }
+}
@@ -1,29 +1,41 @@
 package org.matrix.console;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
 import org.matrix.androidsdk.HomeserverConnectionConfig;
 import org.matrix.androidsdk.MXDataHandler;
 import org.matrix.androidsdk.MXSession;
 import org.matrix.androidsdk.data.IMXStore;
-import org.matrix.androidsdk.data.MXFileStore;
 import org.matrix.androidsdk.data.MXMemoryStore;
 import org.matrix.androidsdk.db.MXLatestChatMessageCache;
 import org.matrix.androidsdk.db.MXMediasCache;
 import org.matrix.androidsdk.rest.model.login.Credentials;
 import org.matrix.console.activity.CommonActivityUtils;
 import org.matrix.console.activity.SplashActivity;
+import org.matrix.console.db.SharedMediasCache;
 import org.matrix.console.gcm.GcmRegistrationManager;
+import org.matrix.console.metrics.MetricsRegistry;
+import org.matrix.console.services.EventStreamService;
+import org.matrix.console.store.ConsoleFileStore;
+import org.matrix.console.store.HybridFileStore;
 import org.matrix.console.store.LoginStorage;
+import org.matrix.console.store.SessionSnapshot;
 import org.matrix.console.util.RageShake;
 
-import java.io.Console;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Singleton to control access to the Matrix SDK and providing point of control for MXSessions.
@@ -32,20 +44,40 @@ public class Matrix {
 
     private static final String LOG_TAG = "Matrix";
 
+    // an account which has not been used for this delay is not loaded at application launch
+    private static final long DORMANT_SESSION_DELAY_MS = 14L * 24L * 60L * 60L * 1000L;
+
+    // the account last use timestamp is only saved with this granularity
+    private static final long SESSION_LAST_USE_GRANULARITY_MS = 60L * 60L * 1000L;
+
+    // the rooms messages of an account use at most this part of the heap when no budget is selected
+    private static final long ROOMS_MEMORY_BUDGET_HEAP_RATIO = 8;
+
+    // the selectable rooms messages budgets (in MB), in the R.array.settings_rooms_memory_budgets order
+    // 0 means that the budget is computed from the heap size.
+    public static final int[] ROOMS_MEMORY_BUDGETS_MB = {0, 4, 8, 16, 32};
+
+    private static final String PREFS_SESSIONS_LAST_USE = "org.matrix.console.Matrix.PREFS_SESSIONS_LAST_USE";
+
     private static Matrix instance = null;
 
     private LoginStorage mLoginStorage;
-    private ArrayList<MXSession> mMXSessions;
+    private final MXSessionsRegistry mMXSessions = new MXSessionsRegistry();
     private GcmRegistrationManager mGcmRegistrationManager;
+    private SharedMediasCache mSharedMediasCache;
+    private final MetricsRegistry mMetricsRegistry = new MetricsRegistry();
     private Context mAppContext;
 
+    // the accounts which are not loaded until they are used
+    private final Set<String> mDormantMatrixIds = Collections.synchronizedSet(new HashSet<String>());
+
     public boolean mHasBeenDisconnected = false;
 
     protected Matrix(Context appContext) {
         mAppContext = appContext.getApplicationContext();
         mLoginStorage = new LoginStorage(mAppContext);
-        mMXSessions = new ArrayList<MXSession>();
         mGcmRegistrationManager = new GcmRegistrationManager(mAppContext);
+        mSharedMediasCache = new SharedMediasCache(mAppContext);
         RageShake.getInstance().start(mAppContext);
     }
 
@@ -87,7 +119,7 @@ public class Matrix {
      * @param context the application content
      * @return the sessions list
      */
-    public static ArrayList<MXSession> getMXSessions(Context context) {
+    public static List<MXSession> getMXSessions(Context context) {
         if ((null != context) && (null != instance)) {
             return instance.getSessions();
         } else {
@@ -96,18 +128,10 @@ public class Matrix {
     }
 
     /**
-     * @return The list of sessions
+     * @return an immutable snapshot of the sessions list
      */
-    public ArrayList<MXSession> getSessions() {
-        ArrayList<MXSession> sessions = new ArrayList<MXSession>();
-
-        synchronized (instance) {
-            if (null != mMXSessions) {
-                sessions = new ArrayList<MXSession>(mMXSessions);
-            }
-        }
-
-        return sessions;
+    public List<MXSession> getSessions() {
+        return mMXSessions.getSessions();
     }
 
     /**
@@ -116,11 +140,24 @@ public class Matrix {
      * The default session may be user-configured, or it may be the last session the user was using.
      * @return The default session or null.
      */
-    public synchronized MXSession getDefaultSession() {
-        ArrayList<MXSession> sessions = getSessions();
+    public MXSession getDefaultSession() {
+        MXSession defaultSession = mMXSessions.getFirst();
+
+        if (null != defaultSession) {
+            return defaultSession;
+        }
 
-        if (sessions.size() > 0) {
-            return sessions.get(0);
+        return loadSessions();
+    }
+
+    /**
+     * Build the sessions from the stored credentials.
+     * @return the default session or null.
+     */
+    private synchronized MXSession loadSessions() {
+        // another thread could have loaded them
+        if (!mMXSessions.isEmpty()) {
+            return mMXSessions.getFirst();
         }
 
         ArrayList<HomeserverConnectionConfig> hsConfigList = mLoginStorage.getCredentialsList();
@@ -131,22 +168,179 @@ public class Matrix {
         }
 
         ArrayList<String> matrixIds = new ArrayList<String>();
-        sessions = new ArrayList<MXSession>();
+        ArrayList<HomeserverConnectionConfig> configs = new ArrayList<HomeserverConnectionConfig>();
 
         for(HomeserverConnectionConfig config: hsConfigList) {
             // avoid duplicated accounts.
             if (config.getCredentials() != null && matrixIds.indexOf(config.getCredentials().userId) < 0) {
-                MXSession session = createSession(config);
-                sessions.add(session);
+                configs.add(config);
                 matrixIds.add(config.getCredentials().userId);
             }
         }
 
-        synchronized (instance) {
-            mMXSessions = sessions;
+        // a dormant account is woken up by the pushes : without GCM, it would not receive any message
+        if (mGcmRegistrationManager.useGCM()) {
+            // the default session is always loaded
+            // the dormant accounts are flagged before the sessions are published
+            for(int index = 1; index < matrixIds.size(); index++) {
+                String matrixId = matrixIds.get(index);
+
+                if ((System.currentTimeMillis() - getSessionLastUse(matrixId)) > DORMANT_SESSION_DELAY_MS) {
+                    Log.d(LOG_TAG, "loadSessions : " + matrixId + " is dormant");
+                    mDormantMatrixIds.add(matrixId);
+                }
+            }
         }
 
-        return sessions.get(0);
+        mMXSessions.set(createSessions(mAppContext, configs));
+
+        return mMXSessions.getFirst();
+    }
+
+    /**
+     * Tells if a session is dormant i.e. its store is not loaded and its events stream is not started.
+     * It is woken up with {@link #hydrateSession(Context, MXSession)}.
+     * @param session the session
+     * @return true if the session is dormant
+     */
+    public boolean isDormantSession(MXSession session) {
+        return (null != session) && (null != session.getCredentials()) && mDormantMatrixIds.contains(session.getCredentials().userId);
+    }
+
+    /**
+     * @return the sessions which are not dormant.
+     */
+    public List<MXSession> getActiveSessions() {
+        List<MXSession> sessions = getSessions();
+
+        if (mDormantMatrixIds.isEmpty()) {
+            return sessions;
+        }
+
+        ArrayList<MXSession> activeSessions = new ArrayList<MXSession>();
+
+        for(MXSession session : sessions) {
+            if (!isDormantSession(session)) {
+                activeSessions.add(session);
+            }
+        }
+
+        return activeSessions;
+    }
+
+    /**
+     * @param matrixId the account matrix id
+     * @return the latest time the account was used, now if it is unknown.
+     */
+    private long getSessionLastUse(String matrixId) {
+        SharedPreferences preferences = mAppContext.getSharedPreferences(PREFS_SESSIONS_LAST_USE, Context.MODE_PRIVATE);
+
+        // unknown account : assume it is used now
+        if (!preferences.contains(matrixId)) {
+            markSessionAsUsed(matrixId);
+            return System.currentTimeMillis();
+        }
+
+        return preferences.getLong(matrixId, 0);
+    }
+
+    /**
+     * Save that an account has been used.
+     * @param matrixId the account matrix id
+     */
+    public void markSessionAsUsed(String matrixId) {
+        if (null == matrixId) {
+            return;
+        }
+
+        SharedPreferences preferences = mAppContext.getSharedPreferences(PREFS_SESSIONS_LAST_USE, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+
+        // avoid writing the preferences too often
+        if ((now - preferences.getLong(matrixId, 0)) > SESSION_LAST_USE_GRANULARITY_MS) {
+            preferences.edit().putLong(matrixId, now).commit();
+        }
+    }
+
+    /**
+     * Wake up a dormant session : its store is loaded and its events stream is started.
+     * @param context the context
+     * @param session the session
+     * @return true if the session was dormant.
+     */
+    public boolean hydrateSession(Context context, MXSession session) {
+        if ((null == session) || !session.isAlive()) {
+            return false;
+        }
+
+        String matrixId = session.getCredentials().userId;
+        markSessionAsUsed(matrixId);
+
+        if (!mDormantMatrixIds.remove(matrixId)) {
+            return false;
+        }
+
+        Log.d(LOG_TAG, "hydrateSession " + matrixId);
+
+        if (!session.getDataHandler().getStore().isReady()) {
+            session.getDataHandler().getStore().open();
+        }
+
+        EventStreamService eventStreamService = EventStreamService.getInstance();
+
+        if (null != eventStreamService) {
+            ArrayList<String> matrixIds = new ArrayList<String>();
+            matrixIds.add(matrixId);
+            eventStreamService.startAccounts(matrixIds);
+        } else {
+            CommonActivityUtils.startEventStreamService(context);
+        }
+
+        return true;
+    }
+
+    /**
+     * Wake up the dormant session which is the recipient of an event in a room.
+     * The push is matched to the account whose snapshot knows the room : the other dormant accounts are not woken up.
+     * A room which is unknown by all the accounts (e.g. a new invitation) does not wake any account up,
+     * it is received when the account is used.
+     * @param context the context
+     * @param roomId the room id
+     */
+    public void hydrateSessionForRoom(Context context, String roomId) {
+        if (mDormantMatrixIds.isEmpty() || (null == roomId)) {
+            return;
+        }
+
+        for(MXSession session : getActiveSessions()) {
+            if (session.isAlive() && (null != session.getDataHandler().getStore().getRoom(roomId))) {
+                return;
+            }
+        }
+
+        for(MXSession session : getSessions()) {
+            if (isDormantSession(session) && SessionSnapshot.hasRoom(context, session.getCredentials().userId, roomId)) {
+                hydrateSession(context, session);
+                return;
+            }
+        }
+
+        Log.d(LOG_TAG, "hydrateSessionForRoom : no dormant account knows " + roomId);
+    }
+
+    /**
+     * Wake up all the dormant sessions.
+     * They must be loaded when the pushes are disabled.
+     * @param context the context
+     */
+    public void hydrateDormantSessions(Context context) {
+        if (mDormantMatrixIds.isEmpty()) {
+            return;
+        }
+
+        for(MXSession session : getSessions()) {
+            hydrateSession(context, session);
+        }
     }
 
     /**
@@ -164,21 +358,11 @@ public class Matrix {
      * @param matrixId the matrix id
      * @return the MXsession if it exists.
      */
-    public synchronized MXSession getSession(String matrixId) {
-        if (null != matrixId) {
-            ArrayList<MXSession> sessions;
-
-            synchronized (this) {
-                sessions = getSessions();
-            }
-
-            for (MXSession session : sessions) {
-                Credentials credentials = session.getCredentials();
+    public MXSession getSession(String matrixId) {
+        MXSession session = mMXSessions.get(matrixId);
 
-                if ((null != credentials) && (credentials.userId.equals(matrixId))) {
-                    return session;
-                }
-            }
+        if (null != session) {
+            return session;
         }
 
         return getDefaultSession();
@@ -221,10 +405,23 @@ public class Matrix {
      * @return the mediasCache.
      */
     public MXMediasCache getMediasCache() {
-        if (getSessions().size() > 0) {
-            return getSessions().get(0).getMediasCache();
-        }
-        return null;
+        return getMediasCache(null);
+    }
+
+    /**
+     * Return the medias cache of a session : the medias it saves are recorded for its account.
+     * @param session the session, the first one is used if it is null
+     * @return the mediasCache.
+     */
+    public MXMediasCache getMediasCache(MXSession session) {
+        return mSharedMediasCache.getMediasCache((null != session) ? session : mMXSessions.getFirst());
+    }
+
+    /**
+     * @return the medias cache shared by all the accounts.
+     */
+    public SharedMediasCache getSharedMediasCache() {
+        return mSharedMediasCache;
     }
 
     /**
@@ -233,8 +430,10 @@ public class Matrix {
      * @return the latest messages cache.
      */
     public MXLatestChatMessageCache getDefaultLatestChatMessageCache() {
-        if (getSessions().size() > 0) {
-            return getSessions().get(0).getLatestChatMessageCache();
+        MXSession session = mMXSessions.getFirst();
+
+        if (null != session) {
+            return session.getLatestChatMessageCache();
         }
         return null;
     }
@@ -248,23 +447,20 @@ public class Matrix {
             return false;
         }
 
-        Boolean res;
+        List<MXSession> sessions = instance.getSessions();
+        Boolean res = (sessions.size() > 0);
 
-        synchronized (instance) {
-            res = (null != instance.mMXSessions) && (instance.mMXSessions.size() > 0);
+        if (!res) {
+            Log.e(LOG_TAG, "hasValidSessions : has no session");
+        } else {
+            for(MXSession session : sessions) {
+                // some GA issues reported that the data handler can be null
+                // so assume the application should be restarted
+                res &= (null != session.getDataHandler());
+            }
 
             if (!res) {
-                Log.e(LOG_TAG, "hasValidSessions : has no session");
-            } else {
-                for(MXSession session : instance.mMXSessions) {
-                    // some GA issues reported that the data handler can be null
-                    // so assume the application should be restarted
-                    res &= (null != session.getDataHandler());
-                }
-
-                if (!res) {
-                    Log.e(LOG_TAG, "hasValidSessions : one sesssion has no valid data hanlder");
-                }
+                Log.e(LOG_TAG, "hasValidSessions : one sesssion has no valid data hanlder");
             }
         }
 
@@ -275,13 +471,7 @@ public class Matrix {
      * Refresh the sessions push rules.
      */
     public void refreshPushRules() {
-        ArrayList<MXSession> sessions = null;
-
-        synchronized (this) {
-            sessions = getSessions();
-        }
-
-        for(MXSession session : sessions) {
+        for(MXSession session : getSessions()) {
             if (null != session.getDataHandler()) {
                 session.getDataHandler().refreshPushRules();
             }
@@ -299,11 +489,29 @@ public class Matrix {
             mLoginStorage.removeCredentials(session.getHomeserverConfig());
         }
 
-        session.clear(context);
+        if (null != session.getCredentials()) {
+            mDormantMatrixIds.remove(session.getCredentials().userId);
+
+            // the account rooms notifications must not outlive it
+            EventStreamService.cancelNotificationsForAccount(session.getCredentials().userId);
+
+            if (clearCredentials) {
+                SessionSnapshot.delete(context, session.getCredentials().userId);
+            }
+        }
 
-        synchronized (instance) {
-            mMXSessions.remove(session);
+        // the account medias are only deleted with the account
+        if (clearCredentials) {
+            mSharedMediasCache.onSessionRemoved(session);
+        } else {
+            mSharedMediasCache.onSessionClosed(session);
         }
+
+        mMetricsRegistry.unregister(session);
+
+        session.clear(context);
+
+        mMXSessions.remove(session);
     }
 
     /**
@@ -312,10 +520,10 @@ public class Matrix {
      * @param clearCredentials  true to clear the credentials.
      */
     public synchronized void clearSessions(Context context, Boolean clearCredentials) {
-        synchronized (instance) {
-            while (mMXSessions.size() > 0) {
-                clearSession(context, mMXSessions.get(0), clearCredentials);
-            }
+        MXSession session;
+
+        while (null != (session = mMXSessions.getFirst())) {
+            clearSession(context, session, clearCredentials);
         }
     }
 
@@ -325,9 +533,7 @@ public class Matrix {
      */
     public synchronized void addSession(MXSession session) {
         mLoginStorage.addCredentials(session.getHomeserverConfig());
-        synchronized (instance) {
-            mMXSessions.add(session);
-        }
+        mMXSessions.add(session);
     }
 
     /**
@@ -346,17 +552,111 @@ public class Matrix {
      * @return The session.
      */
     public MXSession createSession(Context context, HomeserverConnectionConfig hsConfig) {
-        IMXStore store;
+        return createSession(hsConfig, createStore(context, hsConfig));
+    }
 
-        Credentials credentials = hsConfig.getCredentials();
+    /**
+     * Creates the store of an account.
+     * The file store reads its metadata when it is created, so it can be slow on large accounts.
+     * @param context the context.
+     * @param hsConfig The HomeserverConnectionConfig to create a store for.
+     * @return the store.
+     */
+    private IMXStore createStore(Context context, HomeserverConnectionConfig hsConfig) {
+        IMXStore store;
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
 
-        if (true) {
-            store = new MXFileStore(hsConfig, context);
+        if (preferences.getBoolean(context.getString(R.string.settings_key_bounded_rooms_memory), false)) {
+            store = new HybridFileStore(hsConfig, context, getRoomsMemoryBudget(context));
+        } else if (true) {
+            store = new ConsoleFileStore(hsConfig, context);
         } else {
             store = new MXMemoryStore(hsConfig.getCredentials());
         }
 
-        return new MXSession(hsConfig, new MXDataHandler(store, credentials, new MXDataHandler.InvalidTokenListener() {
+        return store;
+    }
+
+    /**
+     * The budget is selected in the settings, or computed from the heap size.
+     * @param context the context
+     * @return the estimated bytes count of rooms messages that an account keeps in memory.
+     */
+    private long getRoomsMemoryBudget(Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        int budgetMB = preferences.getInt(context.getString(R.string.settings_key_rooms_memory_budget), 0);
+
+        if (budgetMB > 0) {
+            return budgetMB * 1024L * 1024L;
+        }
+
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        long memoryClassBytes = activityManager.getMemoryClass() * 1024L * 1024L;
+
+        return memoryClassBytes / ROOMS_MEMORY_BUDGET_HEAP_RATIO;
+    }
+
+    /**
+     * Select the rooms messages budget of the accounts.
+     * It is applied to the running sessions.
+     * @param context the context
+     * @param budgetMB the budget in MB, 0 to compute it from the heap size.
+     */
+    public void setRoomsMemoryBudget(Context context, int budgetMB) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit().putInt(context.getString(R.string.settings_key_rooms_memory_budget), budgetMB).commit();
+
+        long budget = getRoomsMemoryBudget(context);
+
+        for(MXSession session : getSessions()) {
+            if (session.isAlive() && (session.getDataHandler().getStore() instanceof HybridFileStore)) {
+                ((HybridFileStore)session.getDataHandler().getStore()).setMemoryBudget(budget);
+            }
+        }
+    }
+
+    /**
+     * Release some memory when the system requests it.
+     * @param level the ComponentCallbacks2 trim level
+     */
+    public void onTrimMemory(int level) {
+        Log.d(LOG_TAG, "onTrimMemory " + level);
+
+        for(MXSession session : getSessions()) {
+            if (session.isAlive() && (session.getDataHandler().getStore() instanceof HybridFileStore)) {
+                ((HybridFileStore)session.getDataHandler().getStore()).trimMemory(level);
+            }
+        }
+    }
+
+    /**
+     * Creates some MXSessions from their credentials.
+     * The method does not wait for the stores data : a store constructor only reads its metadata,
+     * and the rooms are loaded by IMXStore.open() on the store own thread, so the stores are loaded concurrently.
+     * The store readiness is signaled by its MXStoreListener.
+     * @param context the context.
+     * @param hsConfigs the HomeserverConnectionConfig list.
+     * @return the sessions, in the same order as hsConfigs.
+     */
+    private ArrayList<MXSession> createSessions(Context context, List<HomeserverConnectionConfig> hsConfigs) {
+        ArrayList<MXSession> sessions = new ArrayList<MXSession>();
+
+        for(HomeserverConnectionConfig config : hsConfigs) {
+            sessions.add(createSession(context, config));
+        }
+
+        return sessions;
+    }
+
+    /**
+     * Creates an MXSession from some credentials and its store.
+     * @param hsConfig The HomeserverConnectionConfig to create a session from.
+     * @param store the account store.
+     * @return The session.
+     */
+    private MXSession createSession(HomeserverConnectionConfig hsConfig, IMXStore store) {
+        Credentials credentials = hsConfig.getCredentials();
+
+        MXSession session = new MXSession(hsConfig, new MXDataHandler(store, credentials, new MXDataHandler.InvalidTokenListener() {
             @Override
             public void onTokenCorrupted() {
                 if (null != ConsoleApplication.getCurrentActivity()) {
@@ -364,16 +664,38 @@ public class Matrix {
                 }
             }
         }), mAppContext);
+
+        mMetricsRegistry.register(session);
+
+        return session;
     }
 
     /**
      * Reload the matrix sessions.
-     * The session caches are cleared before being reloaded.
+     * The stores data is kept so the sessions only catch up with the server.
      * Any opened activity is closed and the application switches to the splash screen.
      * @param fromActivity the caller activity
      */
     public void reloadSessions(Activity fromActivity) {
-        ArrayList<MXSession> sessions = getMXSessions(fromActivity);
+        reloadSessions(fromActivity, false);
+    }
+
+    /**
+     * Reload the matrix sessions.
+     * Any opened activity is closed and the application switches to the splash screen.
+     * @param fromActivity the caller activity
+     * @param clearCache true to clear the sessions caches, false to keep the stores data.
+     */
+    public void reloadSessions(final Activity fromActivity, boolean clearCache) {
+        if (!clearCache) {
+            softReloadSessions(fromActivity);
+            return;
+        }
+
+        // before the sessions are released
+        mSharedMediasCache.clear();
+
+        List<MXSession> sessions = getMXSessions(fromActivity);
 
         for(MXSession session : sessions) {
             CommonActivityUtils.logout(fromActivity, session, false);
@@ -381,16 +703,68 @@ public class Matrix {
 
         clearSessions(fromActivity, false);
 
-        synchronized (instance) {
-            // build a new sessions list
-            ArrayList<HomeserverConnectionConfig> configs = mLoginStorage.getCredentialsList();
+        rebuildSessions(fromActivity);
+    }
 
-            for(HomeserverConnectionConfig config : configs) {
-                MXSession session = createSession(config);
-                mMXSessions.add(session);
+    /**
+     * Reload the matrix sessions without deleting their stores data.
+     * Only the runtime items (data handlers, listeners, REST clients...) are rebuilt.
+     * A corrupted store is cleared, so its account performs an initial sync.
+     * @param fromActivity the caller activity
+     */
+    private void softReloadSessions(final Activity fromActivity) {
+        List<MXSession> sessions = getMXSessions(fromActivity);
+        EventStreamService eventStreamService = EventStreamService.getInstance();
+
+        // the sessions are rebuilt when the detached stores are saved, and when they are all detached
+        final AtomicInteger pendingDetachesCount = new AtomicInteger(1);
+        final Runnable onDetached = new Runnable() {
+            @Override
+            public void run() {
+                if (0 == pendingDetachesCount.decrementAndGet()) {
+                    rebuildSessions(fromActivity);
+                }
+            }
+        };
+
+        for(MXSession session : sessions) {
+            IMXStore store = session.getDataHandler().getStore();
+
+            if (!session.isAlive() || store.isCorrupted() || !(store instanceof ConsoleFileStore)) {
+                Log.d(LOG_TAG, "softReloadSessions : clear " + session.getMyUserId());
+                CommonActivityUtils.logout(fromActivity, session, false);
+            } else {
+                Log.d(LOG_TAG, "softReloadSessions : detach " + session.getMyUserId());
+
+                if (null != eventStreamService) {
+                    ArrayList<String> matrixIds = new ArrayList<String>();
+                    matrixIds.add(session.getMyUserId());
+                    eventStreamService.stopAccounts(matrixIds);
+                }
+
+                MyPresenceManager.remove(session);
+
+                // the session can be released without deleting its store data
+                pendingDetachesCount.incrementAndGet();
+                ((ConsoleFileStore) store).detach(onDetached);
+                mSharedMediasCache.onSessionClosed(session);
+                mMetricsRegistry.unregister(session);
+                session.clear(fromActivity);
+                mMXSessions.remove(session);
             }
         }
 
+        onDetached.run();
+    }
+
+    /**
+     * Build the sessions from the stored credentials and restart from the splash screen.
+     * @param fromActivity the caller activity
+     */
+    private void rebuildSessions(Activity fromActivity) {
+        // build a new sessions list
+        mMXSessions.set(createSessions(mAppContext, mLoginStorage.getCredentialsList()));
+
         Intent intent = new Intent(fromActivity, SplashActivity.class);
         intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
 
@@ -398,6 +772,13 @@ public class Matrix {
         fromActivity.finish();
     }
 
+    /**
+     * @return the runtime metrics of the sessions.
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return mMetricsRegistry;
+    }
+
     public GcmRegistrationManager getSharedGcmRegistrationManager() {
         return mGcmRegistrationManager;
     }
@@ -56,6 +56,7 @@ import org.matrix.console.contacts.ContactsManager;
 import org.matrix.console.contacts.PIDsRetriever;
 import org.matrix.console.fragments.AccountsSelectionDialogFragment;
 import org.matrix.console.services.EventStreamService;
+import org.matrix.console.store.HybridFileStore;
 import org.matrix.console.store.LoginStorage;
 import org.matrix.console.util.RageShake;
 
@@ -190,6 +191,11 @@ public class CommonActivityUtils {
         sendEventStreamAction(context, EventStreamService.StreamAction.PAUSE);
     }
 
+    public static void scheduleEventStream(Context context) {
+        Log.d(LOG_TAG, "scheduleEventStream");
+        sendEventStreamAction(context, EventStreamService.StreamAction.SCHEDULE);
+    }
+
     public static void resumeEventStream(Context context) {
         Log.d(LOG_TAG, "resumeEventStream");
         sendEventStreamAction(context, EventStreamService.StreamAction.RESUME);
@@ -202,8 +208,31 @@ public class CommonActivityUtils {
         }
     }
 
+    /**
+     * Catch up the events stream of an account.
+     * @param context the context
+     * @param matrixId the account id
+     */
+    public static void catchupEventStream(Context context, String matrixId) {
+        if (ConsoleApplication.isAppInBackground()) {
+            Log.d(LOG_TAG, "catchupEventStream " + matrixId);
+
+            Context appContext = context.getApplicationContext();
+            Intent intent = new Intent(appContext, EventStreamService.class);
+            intent.putExtra(EventStreamService.EXTRA_STREAM_ACTION, EventStreamService.StreamAction.CATCHUP.ordinal());
+            intent.putExtra(EventStreamService.EXTRA_CATCHUP_MATRIX_ID, matrixId);
+            appContext.startService(intent);
+        }
+    }
+
     public static void onGcmUpdate(Context context) {
         Log.d(LOG_TAG, "onGcmUpdate");
+
+        // without push, the dormant accounts would not receive any message
+        if (!Matrix.getInstance(context).getSharedGcmRegistrationManager().useGCM()) {
+            Matrix.getInstance(context).hydrateDormantSessions(context);
+        }
+
         sendEventStreamAction(context, EventStreamService.StreamAction.GCM_STATUS_UPDATE);
     }
 
@@ -213,7 +242,8 @@ public class CommonActivityUtils {
         // or the service has been killed on low memory
         if (EventStreamService.getInstance() == null) {
             ArrayList<String> matrixIds = new ArrayList<String>();
-            Collection<MXSession> sessions = Matrix.getInstance(context.getApplicationContext()).getSessions();
+            // the dormant accounts are started when they are used
+            Collection<MXSession> sessions = Matrix.getInstance(context.getApplicationContext()).getActiveSessions();
 
             if ((null != sessions) && (sessions.size() > 0)) {
                 Log.d(LOG_TAG, "restart EventStreamService");
@@ -303,6 +333,9 @@ public class CommonActivityUtils {
             return;
         }
 
+        // load the account if it is dormant
+        Matrix.getInstance(fromActivity).hydrateSession(fromActivity, session);
+
         final MXSession fSession = session;
 
         Room room = session.getDataHandler().getRoom(roomId);
@@ -313,34 +346,40 @@ public class CommonActivityUtils {
             return;
         }
 
-        fromActivity.runOnUiThread(new Runnable() {
-                                       @Override
-                                       public void run() {
-                                           // if the activity is not the home activity
-                                           if (!(fromActivity instanceof HomeActivity)) {
-                                               // pop to the home activity
-                                               Intent intent = new Intent(fromActivity, HomeActivity.class);
-                                               intent.setFlags(android.content.Intent.FLAG_ACTIVITY_CLEAR_TOP | android.content.Intent.FLAG_ACTIVITY_SINGLE_TOP);
-                                               intent.putExtra(HomeActivity.EXTRA_JUMP_TO_ROOM_ID, roomId);
-                                               intent.putExtra(HomeActivity.EXTRA_JUMP_MATRIX_ID, fSession.getCredentials().userId);
-                                               if (null != intentParam) {
-                                                   intent.putExtra(HomeActivity.EXTRA_ROOM_INTENT, intentParam);
-                                               }
-                                               fromActivity.startActivity(intent);
-                                           } else {
-                                               // already to the home activity
-                                               // so just need to open the room activity
-                                               Intent intent = new Intent(fromActivity, RoomActivity.class);
-                                               intent.putExtra(RoomActivity.EXTRA_ROOM_ID, roomId);
-                                               intent.putExtra(RoomActivity.EXTRA_MATRIX_ID, fSession.getCredentials().userId);
-                                               if (null != intentParam) {
-                                                   intent.putExtra(HomeActivity.EXTRA_ROOM_INTENT, intentParam);
-                                               }
-                                               fromActivity.startActivity(intent);
-                                           }
-                                       }
-                                   }
-        );
+        Runnable openRoomRunnable = new Runnable() {
+            @Override
+            public void run() {
+                // if the activity is not the home activity
+                if (!(fromActivity instanceof HomeActivity)) {
+                    // pop to the home activity
+                    Intent intent = new Intent(fromActivity, HomeActivity.class);
+                    intent.setFlags(android.content.Intent.FLAG_ACTIVITY_CLEAR_TOP | android.content.Intent.FLAG_ACTIVITY_SINGLE_TOP);
+                    intent.putExtra(HomeActivity.EXTRA_JUMP_TO_ROOM_ID, roomId);
+                    intent.putExtra(HomeActivity.EXTRA_JUMP_MATRIX_ID, fSession.getCredentials().userId);
+                    if (null != intentParam) {
+                        intent.putExtra(HomeActivity.EXTRA_ROOM_INTENT, intentParam);
+                    }
+                    fromActivity.startActivity(intent);
+                } else {
+                    // already to the home activity
+                    // so just need to open the room activity
+                    Intent intent = new Intent(fromActivity, RoomActivity.class);
+                    intent.putExtra(RoomActivity.EXTRA_ROOM_ID, roomId);
+                    intent.putExtra(RoomActivity.EXTRA_MATRIX_ID, fSession.getCredentials().userId);
+                    if (null != intentParam) {
+                        intent.putExtra(HomeActivity.EXTRA_ROOM_INTENT, intentParam);
+                    }
+                    fromActivity.startActivity(intent);
+                }
+            }
+        };
+
+        // the room messages might have to be read from the file system
+        if (session.getDataHandler().getStore() instanceof HybridFileStore) {
+            ((HybridFileStore) session.getDataHandler().getStore()).loadRoom(roomId, openRoomRunnable);
+        } else {
+            fromActivity.runOnUiThread(openRoomRunnable);
+        }
     }
 
     public static void goToOneToOneRoom(final String matrixId, final String otherUserId, final Activity fromActivity, final ApiCallback<Void> callback) {
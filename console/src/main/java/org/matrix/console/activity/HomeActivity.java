@@ -20,12 +20,18 @@ import android.annotation.SuppressLint;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
+import android.database.DataSetObserver;
+import android.graphics.Canvas;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.PowerManager;
+import android.preference.PreferenceManager;
 import android.support.v4.app.FragmentManager;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.text.Html;
 import android.text.Layout;
 import android.text.Spannable;
@@ -42,6 +48,7 @@ import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.inputmethod.InputMethodManager;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.EditText;
 import android.widget.ExpandableListView;
@@ -53,7 +60,6 @@ import org.matrix.androidsdk.MXSession;
 import org.matrix.androidsdk.call.IMXCall;
 import org.matrix.androidsdk.call.MXCallsManager;
 import org.matrix.androidsdk.data.Room;
-import org.matrix.androidsdk.data.RoomState;
 import org.matrix.androidsdk.data.RoomSummary;
 import org.matrix.androidsdk.fragments.IconAndTextDialogFragment;
 import org.matrix.androidsdk.listeners.MXEventListener;
@@ -75,14 +81,23 @@ import org.matrix.console.R;
 import org.matrix.console.ViewedRoomTracker;
 import org.matrix.console.adapters.ConsoleRoomSummaryAdapter;
 import org.matrix.console.adapters.DrawerAdapter;
+import org.matrix.console.adapters.RoomsRecyclerAdapter;
 import org.matrix.console.db.ConsoleContentProvider;
 import org.matrix.console.fragments.AccountsSelectionDialogFragment;
 import org.matrix.console.fragments.ContactsListDialogFragment;
 import org.matrix.console.fragments.RoomCreationDialogFragment;
 import org.matrix.console.gcm.GcmRegistrationManager;
 import org.matrix.console.services.EventStreamService;
+import org.matrix.console.store.PublicRoomsCache;
+import org.matrix.console.store.SessionSnapshot;
+import org.matrix.console.util.ChunkEventsDispatcher;
+import org.matrix.console.util.FrameDropMonitor;
+import org.matrix.console.util.ListRefreshCoordinator;
+import org.matrix.console.util.MembershipIndex;
 import org.matrix.console.util.RageShake;
+import org.matrix.console.util.RoomSearchIndex;
 import org.matrix.console.view.AddAccountAlertDialog;
+import org.matrix.console.view.StickyHeaderDecoration;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
@@ -94,8 +109,12 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -130,7 +149,23 @@ public class HomeActivity extends MXCActionBarActivity {
     private String mAutomaticallyOpenedMatrixId = null;
     private Intent mOpenedRoomIntent = null;
 
-    private boolean refreshOnChunkEnd = false;
+    // the room list refreshes are applied at most once per frame
+    private ListRefreshCoordinator mRefreshCoordinator = null;
+
+    // the search box looks for the rooms in this index
+    private RoomSearchIndex mRoomSearchIndex = null;
+
+    // the rooms list with incremental updates, it replaces mMyRoomList when it is enabled in the settings
+    private RecyclerView mRoomsRecyclerView = null;
+    private RoomsRecyclerAdapter mRoomsRecyclerAdapter = null;
+
+    // counts the frames dropped while the rooms list is scrolled
+    private FrameDropMonitor mFrameDropMonitor = null;
+    private int mMyRoomListScrollState = AbsListView.OnScrollListener.SCROLL_STATE_IDLE;
+
+    // the room tapped in a dormant account snapshot, it is opened when the account is loaded
+    private String mHydratingMatrixId = null;
+    private String mHydratingRoomId = null;
 
     private MenuItem mCallMenuItem = null;
 
@@ -171,55 +206,167 @@ public class HomeActivity extends MXCActionBarActivity {
     };
 
     private HashMap<MXSession, MXEventListener> mListenersBySession = new HashMap<MXSession, MXEventListener>();
+    private HashMap<MXSession, ChunkEventsDispatcher> mChunkEventsDispatchersBySession = new HashMap<MXSession, ChunkEventsDispatcher>();
     private HashMap<MXSession, MXCallsManager.MXCallsManagerListener> mCallListenersBySession = new HashMap<MXSession, MXCallsManager.MXCallsManagerListener>();
+    private HashMap<MXSession, MembershipIndex> mMembershipIndexesBySession = new HashMap<MXSession, MembershipIndex>();
 
     private ConsoleRoomSummaryAdapter mAdapter;
     private EditText mSearchRoomEditText;
 
+    // the public rooms are displayed from the directories cache
+    private final PublicRoomsCache.PublicRoomsListener mPublicRoomsListener = new PublicRoomsCache.PublicRoomsListener() {
+        @Override
+        public void onPublicRoomsUpdated(List<String> homeServers, List<List<PublicRoom>> publicRoomsLists) {
+            Log.d(LOG_TAG, "notifyDataSetChanged after the public rooms update.");
+
+            mPublicRoomsListList = new ArrayList<List<PublicRoom>>(publicRoomsLists);
+            mHomeServerNames = new ArrayList<String>(homeServers);
+
+            mAdapter.setPublicRoomsList(mPublicRoomsListList, mHomeServerNames);
+            mRoomSearchIndex.setPublicRooms(mPublicRoomsListList, mHomeServerNames);
+            mRefreshCoordinator.onSectionUpdated(mAdapter.mPublicsGroupStartIndex);
+        }
+    };
+
     private void refreshPublicRoomsList() {
-        refreshPublicRoomsList(new ArrayList<MXSession>(Matrix.getInstance(getApplicationContext()).getSessions()), new ArrayList<String>(), 0, new ArrayList<List<PublicRoom>>());
+        // the home servers directories are downloaded at the same time when they are expired
+        PublicRoomsCache.getInstance(this).refresh(Matrix.getInstance(getApplicationContext()).getSessions());
     }
 
-    private void refreshPublicRoomsList(final ArrayList<MXSession> sessions, final ArrayList<String> checkedHomeServers, final int index, final ArrayList<List<PublicRoom>> publicRoomsListList) {
-        // sanity checks
-        if ((null == sessions) || (index >= sessions.size())) {
-            Log.d(LOG_TAG, "notifyDataSetChanged after the public rooms update.");
+    /**
+     * Open a room from the rooms list.
+     * @param section the room section
+     * @param roomSummary the room summary
+     */
+    private void onRoomClick(int section, RoomSummary roomSummary) {
+        MXSession session = Matrix.getInstance(HomeActivity.this).getSession(roomSummary.getMatrixId());
+
+        if (null == session) {
+            return;
+        }
 
-            mAdapter.setPublicRoomsList(publicRoomsListList, checkedHomeServers);
-            mAdapter.notifyDataSetChanged();
-            mPublicRoomsListList = publicRoomsListList;
-            mHomeServerNames = checkedHomeServers;
+        // the store of a dormant account is not loaded : the room is opened once it is
+        if (Matrix.getInstance(this).isDormantSession(session)) {
+            mHydratingMatrixId = roomSummary.getMatrixId();
+            mHydratingRoomId = roomSummary.getRoomId();
+            Matrix.getInstance(this).hydrateSession(this, session);
             return;
         }
 
-        final MXSession session = sessions.get(index);
+        String roomId = roomSummary.getRoomId();
+        Room room = session.getDataHandler().getRoom(roomId);
+        // cannot join a leaving room
+        if ((null == room) || room.isLeaving()) {
+            roomId = null;
+        }
 
-        // check if the session is still active
-        if (session.isAlive()) {
-            final String homeServerUrl = session.getHomeserverConfig().getHomeserverUri().toString();
+        if (mAdapter.resetUnreadCount(section, roomId)) {
+            session.getDataHandler().getStore().flushSummary(roomSummary);
+        }
 
-            // the home server has already been checked ?
-            if (checkedHomeServers.indexOf(homeServerUrl) >= 0) {
-                // jump to the next session
-                refreshPublicRoomsList(sessions, checkedHomeServers, index + 1, publicRoomsListList);
-            } else {
-                // use any session to get the public rooms list
-                session.getEventsApiClient().loadPublicRooms(new SimpleApiCallback<List<PublicRoom>>(this) {
-                    @Override
-                    public void onSuccess(List<PublicRoom> publicRooms) {
-                        checkedHomeServers.add(homeServerUrl);
-                        publicRoomsListList.add(publicRooms);
+        if (null != roomId){
+            CommonActivityUtils.goToRoomPage(session, roomId, HomeActivity.this, null);
+        }
+    }
 
-                        // jump to the next session
-                        refreshPublicRoomsList(sessions, checkedHomeServers, index + 1, publicRoomsListList);
-                    }
-                });
+    /**
+     * Display the snapshot of the recent rooms of the dormant accounts.
+     * The snapshot rows are replaced by the account summaries when it is loaded.
+     */
+    private void displaySessionSnapshots() {
+        List<MXSession> sessions = Matrix.getMXSessions(this);
+
+        for(int section = 0; section < sessions.size(); section++) {
+            MXSession session = sessions.get(section);
+
+            if (Matrix.getInstance(this).isDormantSession(session)) {
+                for(RoomSummary summary : SessionSnapshot.load(this, session.getCredentials().userId)) {
+                    mAdapter.addRoomSummary(section, summary);
+                }
             }
-        } else {
-            refreshPublicRoomsList(sessions, checkedHomeServers, index + 1, publicRoomsListList);
         }
     }
 
+    /**
+     * A section header of the rooms list has been clicked.
+     * @param section the section
+     * @return true if a dormant account has been loaded.
+     */
+    private boolean onSectionClick(int section) {
+        if (mAdapter.isRecentsGroupIndex(section)) {
+            MXSession session = mAdapter.getSession(section);
+
+            // load the dormant account instead of collapsing its empty section
+            if (Matrix.getInstance(HomeActivity.this).hydrateSession(HomeActivity.this, session)) {
+                mAdapter.notifyDataSetChanged();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Display the rooms in a RecyclerView instead of the expandable list.
+     * The RecyclerView rows are updated from the rooms adapter content.
+     */
+    private void initRoomsRecyclerView() {
+        mMyRoomList.setVisibility(View.GONE);
+
+        mRoomsRecyclerView = (RecyclerView) findViewById(R.id.recyclerView_myRooms);
+        mRoomsRecyclerView.setVisibility(View.VISIBLE);
+        mRoomsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+
+        mRoomsRecyclerAdapter = new RoomsRecyclerAdapter(this, mAdapter, Matrix.getInstance(this).getMetricsRegistry());
+        mRoomsRecyclerAdapter.setOnItemClickListener(new RoomsRecyclerAdapter.OnItemClickListener() {
+            @Override
+            public void onRoomClick(int section, RoomSummary summary) {
+                HomeActivity.this.onRoomClick(section, summary);
+            }
+
+            @Override
+            public void onPublicRoomClick(int section, PublicRoom publicRoom) {
+                joinPublicRoom(mAdapter.getHomeServerURLAt(section), publicRoom);
+            }
+
+            @Override
+            public void onHeaderClick(int section) {
+                onSectionClick(section);
+            }
+        });
+
+        mRoomsRecyclerView.setAdapter(mRoomsRecyclerAdapter);
+        mRoomsRecyclerView.addItemDecoration(new StickyHeaderDecoration(mRoomsRecyclerAdapter));
+        mRoomsRecyclerView.addItemDecoration(new RecyclerView.ItemDecoration() {
+            @Override
+            public void onDrawOver(Canvas canvas, RecyclerView parent, RecyclerView.State state) {
+                if (RecyclerView.SCROLL_STATE_IDLE != parent.getScrollState()) {
+                    mFrameDropMonitor.onScrollStarted();
+                }
+            }
+        });
+
+        // each rooms adapter refresh is applied as row updates
+        mAdapter.registerDataSetObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                mRoomsRecyclerAdapter.refresh();
+            }
+
+            @Override
+            public void onInvalidated() {
+                mRoomsRecyclerAdapter.refresh();
+            }
+        });
+
+        // the public rooms are not displayed in expandable sections
+        if (mAdapter.displayPublicRooms()) {
+            refreshPublicRoomsList();
+        }
+
+        mRoomsRecyclerAdapter.refresh();
+    }
+
     private void joinPublicRoom(final String homeServerURL, final PublicRoom publicRoom) {
         Collection<MXSession> sessions = Matrix.getMXSessions(HomeActivity.this);
         ArrayList<MXSession> matchedSessions = new ArrayList<MXSession>();
@@ -277,6 +424,21 @@ public class HomeActivity extends MXCActionBarActivity {
         mMyRoomList.setGroupIndicator(null);
         mAdapter = new ConsoleRoomSummaryAdapter(this, Matrix.getMXSessions(this), R.layout.adapter_item_my_rooms, R.layout.adapter_room_section_header);
 
+        mRoomSearchIndex = new RoomSearchIndex();
+        mAdapter.setSearchIndex(mRoomSearchIndex);
+
+        mRefreshCoordinator = new ListRefreshCoordinator(Matrix.getInstance(this).getMetricsRegistry(), new ListRefreshCoordinator.RefreshListener() {
+            @Override
+            public void onRefresh(Map<Integer, Set<String>> updatedRoomIdsBySection, Set<Integer> updatedSections) {
+                // only the updated rooms are moved
+                for(Integer section : updatedRoomIdsBySection.keySet()) {
+                    mAdapter.repositionSummaries(section, updatedRoomIdsBySection.get(section));
+                }
+
+                mAdapter.notifyDataSetChanged();
+            }
+        });
+
         if (null != savedInstanceState) {
             if (savedInstanceState.containsKey(PUBLIC_ROOMS_LIST_LIST)) {
                 Serializable map = savedInstanceState.getSerializable(PUBLIC_ROOMS_LIST_LIST);
@@ -285,10 +447,14 @@ public class HomeActivity extends MXCActionBarActivity {
                     HashMap<String, List<PublicRoom>> hash = (HashMap<String, List<PublicRoom>>) map;
                     mPublicRoomsListList = new ArrayList<List<PublicRoom>>(hash.values());
                     mHomeServerNames = new ArrayList<>(hash.keySet());
+                    mRoomSearchIndex.setPublicRooms(mPublicRoomsListList, mHomeServerNames);
                 }
             }
         }
 
+        // render the cached public rooms directories
+        PublicRoomsCache.getInstance(this).addListener(mPublicRoomsListener);
+
         final Intent intent = getIntent();
         if (intent.hasExtra(EXTRA_JUMP_TO_ROOM_ID)) {
             mAutomaticallyOpenedRoomId = intent.getStringExtra(EXTRA_JUMP_TO_ROOM_ID);
@@ -316,6 +482,39 @@ public class HomeActivity extends MXCActionBarActivity {
         }
 
         mMyRoomList.setAdapter(mAdapter);
+
+        mFrameDropMonitor = new FrameDropMonitor(Matrix.getInstance(this).getMetricsRegistry(), new FrameDropMonitor.ScrollingChecker() {
+            @Override
+            public boolean isScrolling() {
+                if (null != mRoomsRecyclerView) {
+                    return RecyclerView.SCROLL_STATE_IDLE != mRoomsRecyclerView.getScrollState();
+                }
+
+                return AbsListView.OnScrollListener.SCROLL_STATE_IDLE != mMyRoomListScrollState;
+            }
+        });
+
+        mMyRoomList.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+                mMyRoomListScrollState = scrollState;
+
+                if (SCROLL_STATE_IDLE != scrollState) {
+                    mFrameDropMonitor.onScrollStarted();
+                }
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+            }
+        });
+
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
+
+        if (preferences.getBoolean(getString(R.string.settings_key_recycler_rooms_list), false)) {
+            initRoomsRecyclerView();
+        }
+
         Collection<MXSession> sessions = Matrix.getMXSessions(HomeActivity.this);
 
         // check if  there is some valid session
@@ -336,33 +535,15 @@ public class HomeActivity extends MXCActionBarActivity {
             addSessionListener(session);
         }
 
+        displaySessionSnapshots();
+
         mMyRoomList.setOnChildClickListener(new ExpandableListView.OnChildClickListener() {
             @Override
             public boolean onChildClick(ExpandableListView parent, View v,
                                         int groupPosition, int childPosition, long id) {
 
                 if (mAdapter.isRecentsGroupIndex(groupPosition)) {
-                    String roomId = null;
-                    MXSession session = null;
-
-                    RoomSummary roomSummary = mAdapter.getRoomSummaryAt(groupPosition, childPosition);
-                    session = Matrix.getInstance(HomeActivity.this).getSession(roomSummary.getMatrixId());
-
-                    roomId = roomSummary.getRoomId();
-                    Room room = session.getDataHandler().getRoom(roomId);
-                    // cannot join a leaving room
-                    if ((null == room) || room.isLeaving()) {
-                        roomId = null;
-                    }
-
-                    if (mAdapter.resetUnreadCount(groupPosition, roomId)) {
-                        session.getDataHandler().getStore().flushSummary(roomSummary);
-                    }
-
-                    if (null != roomId){
-                        CommonActivityUtils.goToRoomPage(session, roomId, HomeActivity.this, null);
-                    }
-
+                    onRoomClick(groupPosition, mAdapter.getRoomSummaryAt(groupPosition, childPosition));
                 } else if (mAdapter.isPublicsGroupIndex(groupPosition)) {
                     joinPublicRoom(mAdapter.getHomeServerURLAt(groupPosition), mAdapter.getPublicRoomAt(groupPosition, childPosition));
                 }
@@ -445,6 +626,10 @@ public class HomeActivity extends MXCActionBarActivity {
         mMyRoomList.setOnGroupClickListener(new ExpandableListView.OnGroupClickListener() {
             @Override
             public boolean onGroupClick(ExpandableListView parent, View v, int groupPosition, long id) {
+                if (onSectionClick(groupPosition)) {
+                    return true;
+                }
+
                 return mAdapter.getGroupCount() < 2;
             }
         });
@@ -453,7 +638,12 @@ public class HomeActivity extends MXCActionBarActivity {
         mSearchRoomEditText.addTextChangedListener(new TextWatcher() {
             public void afterTextChanged(android.text.Editable s) {
                 mAdapter.setSearchedPattern(s.toString());
-                mMyRoomList.smoothScrollToPosition(0);
+
+                if (null != mRoomsRecyclerView) {
+                    mRoomsRecyclerView.scrollToPosition(0);
+                } else {
+                    mMyRoomList.smoothScrollToPosition(0);
+                }
             }
 
             public void beforeTextChanged(CharSequence s, int start, int count, int after) {
@@ -580,42 +770,139 @@ public class HomeActivity extends MXCActionBarActivity {
     private void addSessionListener(final MXSession session) {
         removeSessionListener(session);
 
+        // the user membership is tracked before the summaries are classified
+        final MembershipIndex membershipIndex = new MembershipIndex(session);
+        session.getDataHandler().addListener(membershipIndex);
+        mMembershipIndexesBySession.put(session, membershipIndex);
+
         MXEventListener listener = new MXEventListener() {
             private boolean mInitialSyncComplete = false;
 
+            // the rooms updates received while the initial summaries are classified, they are replayed once they are displayed
+            private final ArrayList<Runnable> mPendingRoomUpdates = new ArrayList<Runnable>();
+
             @Override
             public void onInitialSyncComplete() {
-                runOnUiThread(new Runnable() {
+                // the summaries are only read on the UI thread : the worker gets the rooms ids, timestamps and memberships
+                final HashMap<String, RoomSummary> summariesByRoomId = new HashMap<String, RoomSummary>();
+                final ArrayList<String> roomIds = new ArrayList<String>();
+                final ArrayList<Long> timestamps = new ArrayList<Long>();
+
+                for (RoomSummary summary : session.getDataHandler().getStore().getSummaries()) {
+                    Event latestEvent = summary.getLatestEvent();
+
+                    summariesByRoomId.put(summary.getRoomId(), summary);
+                    roomIds.add(summary.getRoomId());
+                    // the summaries without latest event are displayed at the end
+                    timestamps.add((null != latestEvent) ? latestEvent.getOriginServerTs() : Long.MIN_VALUE);
+                }
+
+                final HashMap<String, String> membershipByRoomId = membershipIndex.readMemberships();
+
+                // the summaries are classified in background
+                Thread thread = new Thread(new Runnable() {
                     @Override
                     public void run() {
-                        mInitialSyncComplete = true;
+                        ArrayList<Integer> indexes = new ArrayList<Integer>();
 
-                        Collection<RoomSummary> summaries = session.getDataHandler().getStore().getSummaries();
+                        for (int index = 0; index < roomIds.size(); index++) {
+                            // only add summaries to rooms we have not left.
+                            if (!RoomMember.MEMBERSHIP_LEAVE.equals(membershipByRoomId.get(roomIds.get(index)))) {
+                                indexes.add(index);
+                            }
+                        }
+
+                        // the latest updated rooms first, as the adapter sorts them
+                        Collections.sort(indexes, new Comparator<Integer>() {
+                            @Override
+                            public int compare(Integer index1, Integer index2) {
+                                long timestamp1 = timestamps.get(index1);
+                                long timestamp2 = timestamps.get(index2);
 
-                        Log.e(LOG_TAG, ">>> onInitialSyncComplete : summaries " + summaries.size());
+                                return (timestamp1 > timestamp2) ? -1 : ((timestamp1 < timestamp2) ? 1 : 0);
+                            }
+                        });
 
+                        final ArrayList<String> displayedRoomIds = new ArrayList<String>();
 
-                        for (RoomSummary summary : summaries) {
-                            addSummary(summary);
+                        for (Integer index : indexes) {
+                            displayedRoomIds.add(roomIds.get(index));
                         }
 
-                        // highlighted public rooms
-                        mAdapter.highlightRoom("Matrix HQ");
-                        mAdapter.highlightRoom("#matrix:matrix.org");
-                        mAdapter.highlightRoom("#matrix-dev:matrix.org");
-                        mAdapter.highlightRoom("#matrix-fr:matrix.org");
+                        Log.d(LOG_TAG, ">>> onInitialSyncComplete : summaries " + roomIds.size() + ", displayed " + displayedRoomIds.size());
+
+                        runOnUiThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                onInitialSummariesBuilt(displayedRoomIds, summariesByRoomId, membershipByRoomId);
+                            }
+                        });
+                    }
+                });
+
+                thread.setName("HomeActivity initial summaries");
+                thread.start();
+            }
+
+            /**
+             * Display the summaries classified after the initial sync.
+             * The rooms updates received in the meantime are replayed.
+             * @param roomIds the displayed rooms ids
+             * @param summariesByRoomId the summaries read after the initial sync
+             * @param membershipByRoomId the memberships read after the initial sync
+             */
+            private void onInitialSummariesBuilt(List<String> roomIds, Map<String, RoomSummary> summariesByRoomId, Map<String, String> membershipByRoomId) {
+                // the session could have been removed in the meantime
+                if (mMembershipIndexesBySession.get(session) != membershipIndex) {
+                    mPendingRoomUpdates.clear();
+                    return;
+                }
+
+                membershipIndex.build(membershipByRoomId);
+                mInitialSyncComplete = true;
 
-                        mAdapter.sortSummaries();
-                        mAdapter.setPublicRoomsList(mPublicRoomsListList, mHomeServerNames);
+                List<MXSession> sessions = new ArrayList<MXSession>(Matrix.getMXSessions(HomeActivity.this));
+                int section = sessions.indexOf(session);
 
+                if (section >= 0) {
+                    // remove the dormant account snapshot rows
+                    mAdapter.removeRoomSummaries(section);
 
-                        expandAllGroups();
+                    for (String roomId : roomIds) {
+                        RoomSummary summary = summariesByRoomId.get(roomId);
 
-                        // load the public load in background
-                        // done onResume
-                        //refreshPublicRoomsList();
+                        // the room could have been left in the meantime
+                        if (prepareSummary(summary)) {
+                            mAdapter.addRoomSummary(section, summary);
+                        }
                     }
-                });
+                }
+
+                // highlighted public rooms
+                mAdapter.highlightRoom("Matrix HQ");
+                mAdapter.highlightRoom("#matrix:matrix.org");
+                mAdapter.highlightRoom("#matrix-dev:matrix.org");
+                mAdapter.highlightRoom("#matrix-fr:matrix.org");
+
+                // the rooms created, joined or reset during the classification
+                ArrayList<Runnable> pendingRoomUpdates = new ArrayList<Runnable>(mPendingRoomUpdates);
+                mPendingRoomUpdates.clear();
+
+                for (Runnable roomUpdate : pendingRoomUpdates) {
+                    roomUpdate.run();
+                }
+
+                mAdapter.sortSummaries();
+                mAdapter.setPublicRoomsList(mPublicRoomsListList, mHomeServerNames);
+
+                expandAllGroups();
+
+                // the room tapped while the account was dormant
+                if (TextUtils.equals(mHydratingMatrixId, session.getCredentials().userId)) {
+                    CommonActivityUtils.goToRoomPage(session, mHydratingRoomId, HomeActivity.this, null);
+                    mHydratingMatrixId = null;
+                    mHydratingRoomId = null;
+                }
             }
 
             @Override
@@ -623,35 +910,24 @@ public class HomeActivity extends MXCActionBarActivity {
                 runOnUiThread(new Runnable() {
                     @Override
                     public void run() {
-                        mAdapter.sortSummaries();
-                        mAdapter.notifyDataSetChanged();
+                        List<MXSession> sessions = new ArrayList<MXSession>(Matrix.getMXSessions(HomeActivity.this));
+                        mRefreshCoordinator.onRoomUpdated(sessions.indexOf(session), roomId);
                     }
                 });
             }
 
             @Override
-            public void onRoomInternalUpdate(String roomId) {
+            public void onRoomInternalUpdate(final String roomId) {
                 runOnUiThread(new Runnable() {
                     @Override
                     public void run() {
-                        mAdapter.sortSummaries();
-                        mAdapter.notifyDataSetChanged();
+                        List<MXSession> sessions = new ArrayList<MXSession>(Matrix.getMXSessions(HomeActivity.this));
+                        mRefreshCoordinator.onRoomUpdated(sessions.indexOf(session), roomId);
                     }
                 });
             }
 
 
-            @Override
-            public void onReceiptEvent(String roomId, List<String> senderIds) {
-                HomeActivity.this.runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        refreshOnChunkEnd = true;
-                    }
-                });
-
-            }
-
             @Override
             public void onLeaveRoom(final String roomId) {
                 HomeActivity.this.runOnUiThread(new Runnable() {
@@ -663,82 +939,45 @@ public class HomeActivity extends MXCActionBarActivity {
                         RoomSummary summary = mAdapter.getSummaryByRoomId(section, roomId);
                         if (null != summary) {
                             mAdapter.removeRoomSummary(section, summary);
+                            mRefreshCoordinator.onSectionUpdated(section);
                         }
-
-                        refreshOnChunkEnd = true;
                     }
                 });
             }
 
             @Override
-            public void onLiveEventsChunkProcessed() {
-                runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        Log.d(LOG_TAG, "onLiveEventsChunkProcessed");
-
-                        // clear the notification if they are not anymore valid
-                        // i.e the event has been read from another client
-                        // or deleted
-                        EventStreamService.checkDisplayedNotification();
-
-                        if (!mIsPaused && refreshOnChunkEnd) {
-                            mAdapter.sortSummaries();
-                            mAdapter.notifyDataSetChanged();
-                        }
-
-                        refreshOnChunkEnd = false;
-                    }
-                });
-            }
-
-            @Override
-            public void onLiveEvent(final Event event, final RoomState roomState) {
-                runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        if ((event.roomId != null) && RoomSummary.isSupportedEvent(event)) {
-                            List<MXSession> sessions = new ArrayList<MXSession>(Matrix.getMXSessions(HomeActivity.this));
-                            final int section = sessions.indexOf(session);
-                            String matrixId = session.getCredentials().userId;
-
-                            mAdapter.setLatestEvent(section, event, roomState, false);
-
-                            ViewedRoomTracker rTracker = ViewedRoomTracker.getInstance();
-                            String viewedRoomId = rTracker.getViewedRoomId();
-                            String fromMatrixId = rTracker.getMatrixId();
-
-                            // If we're not currently viewing this room or not sent by myself, increment the unread count
-                            if ((!event.roomId.equals(viewedRoomId) || !matrixId.equals(fromMatrixId))  && !event.getSender().equals(matrixId)) {
-                                RoomSummary summary = session.getDataHandler().getStore().getSummary(event.roomId);
-                                if (null != summary) {
-                                    summary.setHighlighted(summary.isHighlighted() || EventUtils.shouldHighlight(session, event));
-                                }
-                            }
-
-                            refreshOnChunkEnd = true;
+            public void onNewRoom(final String roomId) {
+                if (!mInitialSyncComplete) {
+                    mPendingRoomUpdates.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            onNewRoom(roomId);
                         }
-                    }
-                });
-            }
-
-
-            @Override
-            public void onNewRoom(String roomId) {
-                if (mInitialSyncComplete) {
+                    });
+                } else {
                     RoomSummary summary = session.getDataHandler().getStore().getSummary(roomId);
+                    List<MXSession> sessions = new ArrayList<MXSession>(Matrix.getMXSessions(HomeActivity.this));
+                    int section = sessions.indexOf(session);
 
                     // sanity checks
-                    if (null != summary) {
+                    // a replayed room could already be in the initial summaries
+                    if ((null != summary) && (null == mAdapter.getSummaryByRoomId(section, roomId))) {
                         addSummary(summary);
-                        mAdapter.sortSummaries();
+                        mRefreshCoordinator.onRoomUpdated(section, roomId);
                     }
                 }
             }
 
             @Override
-            public void onRoomSyncWithLimitedTimeline(String roomId) {
-                if (mInitialSyncComplete) {
+            public void onRoomSyncWithLimitedTimeline(final String roomId) {
+                if (!mInitialSyncComplete) {
+                    mPendingRoomUpdates.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            onRoomSyncWithLimitedTimeline(roomId);
+                        }
+                    });
+                } else {
                     List<MXSession> sessions = new ArrayList<MXSession>(Matrix.getMXSessions(HomeActivity.this));
                     final int section = sessions.indexOf(session);
 
@@ -752,10 +991,9 @@ public class HomeActivity extends MXCActionBarActivity {
                     // sanity checks
                     if (null != summary) {
                         addSummary(summary);
-                        mAdapter.sortSummaries();
                     }
 
-                    refreshOnChunkEnd = true;
+                    mRefreshCoordinator.onRoomUpdated(section, roomId);
                 }
             }
 
@@ -768,24 +1006,13 @@ public class HomeActivity extends MXCActionBarActivity {
                 onNewRoom(roomId);
             }
 
-            private boolean isMembershipInRoom(String membership, String selfUserId, RoomSummary summary) {
-                Room room = session.getDataHandler().getStore().getRoom(summary.getRoomId());
-
-                if (null != room) {
-                    Collection <RoomMember> members = room.getMembers();
-
-                    for (RoomMember member : members) {
-                        if (membership.equals(member.membership) && selfUserId.equals(member.getUserId())) {
-                            return true;
-                        }
-                    }
-                }
-                return false;
-            }
-
-            private void addSummary(RoomSummary summary) {
-                String selfUserId = session.getCredentials().userId;
-
+            /**
+             * Prepare a summary to be displayed.
+             * It updates the summary name so it must be called on the UI thread.
+             * @param summary the summary
+             * @return true if the summary has to be displayed.
+             */
+            private boolean prepareSummary(RoomSummary summary) {
                 if (summary.isInvited()) {
                     Room room = session.getDataHandler().getStore().getRoom(summary.getRoomId());
 
@@ -799,7 +1026,11 @@ public class HomeActivity extends MXCActionBarActivity {
                 }
 
                 // only add summaries to rooms we have not left.
-                if (!isMembershipInRoom(RoomMember.MEMBERSHIP_LEAVE, selfUserId, summary)) {
+                return !membershipIndex.isMembership(summary.getRoomId(), RoomMember.MEMBERSHIP_LEAVE);
+            }
+
+            private void addSummary(RoomSummary summary) {
+                if (prepareSummary(summary)) {
                     List<MXSession> sessions = new ArrayList<MXSession>(Matrix.getMXSessions(HomeActivity.this));
                     int section = sessions.indexOf(session);
 
@@ -811,6 +1042,57 @@ public class HomeActivity extends MXCActionBarActivity {
         session.getDataHandler().addListener(listener);
         mListenersBySession.put(session, listener);
 
+        // the live events are dispatched once per events chunk
+        ChunkEventsDispatcher chunkEventsDispatcher = new ChunkEventsDispatcher(Matrix.getInstance(this).getMetricsRegistry(), new ChunkEventsDispatcher.ChunkListener() {
+            @Override
+            public void onChunkProcessed(List<ChunkEventsDispatcher.RoomEvents> roomEventsList, boolean hasReceipts) {
+                Log.d(LOG_TAG, "onLiveEventsChunkProcessed");
+
+                // clear the notification if they are not anymore valid
+                // i.e the event has been read from another client
+                // or deleted
+                EventStreamService.checkDisplayedNotification();
+
+                List<MXSession> sessions = new ArrayList<MXSession>(Matrix.getMXSessions(HomeActivity.this));
+                final int section = sessions.indexOf(session);
+
+                if (!roomEventsList.isEmpty()) {
+                    String matrixId = session.getCredentials().userId;
+
+                    ViewedRoomTracker rTracker = ViewedRoomTracker.getInstance();
+                    String viewedRoomId = rTracker.getViewedRoomId();
+                    String fromMatrixId = rTracker.getMatrixId();
+
+                    for(ChunkEventsDispatcher.RoomEvents roomEvents : roomEventsList) {
+                        mAdapter.setLatestEvent(section, roomEvents.getLatestEvent(), roomEvents.getLatestRoomState(), false);
+                        mRefreshCoordinator.onRoomUpdated(section, roomEvents.getRoomId());
+
+                        // If we're not currently viewing this room, highlight it with the events not sent by myself
+                        if (!roomEvents.getRoomId().equals(viewedRoomId) || !matrixId.equals(fromMatrixId)) {
+                            RoomSummary summary = session.getDataHandler().getStore().getSummary(roomEvents.getRoomId());
+
+                            if ((null != summary) && !summary.isHighlighted()) {
+                                for(Event event : roomEvents.getEvents()) {
+                                    if (!event.getSender().equals(matrixId) && EventUtils.shouldHighlight(session, event)) {
+                                        summary.setHighlighted(true);
+                                        break;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+
+                // the unread messages counts could have been updated
+                if (hasReceipts) {
+                    mRefreshCoordinator.onSectionUpdated(section);
+                }
+            }
+        });
+
+        session.getDataHandler().addListener(chunkEventsDispatcher);
+        mChunkEventsDispatchersBySession.put(session, chunkEventsDispatcher);
+
         // call listener
         MXCallsManager.MXCallsManagerListener callsManagerListener = new MXCallsManager.MXCallsManagerListener() {
 
@@ -871,6 +1153,8 @@ public class HomeActivity extends MXCActionBarActivity {
 
         session.mCallsManager.addListener(callsManagerListener);
         mCallListenersBySession.put(session, callsManagerListener);
+
+        mRoomSearchIndex.addSession(session);
     }
 
     /**
@@ -883,15 +1167,33 @@ public class HomeActivity extends MXCActionBarActivity {
             mListenersBySession.remove(session);
         }
 
+        if (mChunkEventsDispatchersBySession.containsKey(session)) {
+            session.getDataHandler().removeListener(mChunkEventsDispatchersBySession.get(session));
+            mChunkEventsDispatchersBySession.remove(session);
+        }
+
         if (mCallListenersBySession.containsKey(session)) {
             session.mCallsManager.removeListener(mCallListenersBySession.get(session));
             mCallListenersBySession.remove(session);
         }
+
+        if (mMembershipIndexesBySession.containsKey(session)) {
+            session.getDataHandler().removeListener(mMembershipIndexesBySession.get(session));
+            mMembershipIndexesBySession.remove(session);
+        }
+
+        mRoomSearchIndex.removeSession(session);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
+        PublicRoomsCache.getInstance(this).removeListener(mPublicRoomsListener);
+
+        if (null != mRoomsRecyclerAdapter) {
+            mRoomsRecyclerAdapter.release();
+        }
+
         Collection<MXSession> sessions = Matrix.getInstance(this).getSessions();
 
         for(MXSession session : sessions) {
@@ -904,6 +1206,13 @@ public class HomeActivity extends MXCActionBarActivity {
         super.onPause();
         mExpandedGroups = getExpandedGroupsList();
         mIsPaused = true;
+        mRefreshCoordinator.onPause();
+        mFrameDropMonitor.stop();
+
+        // the snapshots are displayed while the accounts are dormant
+        for(MXSession session : Matrix.getInstance(this).getActiveSessions()) {
+            SessionSnapshot.save(this, session);
+        }
     }
 
     private void refreshSlidingList() {
@@ -957,6 +1266,7 @@ public class HomeActivity extends MXCActionBarActivity {
         // all the groups must be displayed during a search
         mAdapter.setDisplayAllGroups(mSearchRoomEditText.getVisibility() == View.VISIBLE);
         mAdapter.notifyDataSetChanged();
+        mRefreshCoordinator.onResume();
 
         // expand previously expanded groups.
         // to restore the same UX
@@ -1283,6 +1593,8 @@ public class HomeActivity extends MXCActionBarActivity {
                                 // expand/collapse to force the group refresh
                                 collapseAllGroups();
 
+                                // the pending updates could target the removed section
+                                mRefreshCoordinator.clear();
                                 mAdapter.removeSection(sectionPos);
                                 mAdapter.notifyDataSetChanged();
 
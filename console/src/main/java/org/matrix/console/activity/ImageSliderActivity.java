@@ -26,7 +26,6 @@ import android.support.v4.view.ViewPager;
 import android.util.Log;
 import android.view.View;
 
-import org.matrix.androidsdk.HomeserverConnectionConfig;
 import org.matrix.androidsdk.MXSession;
 import org.matrix.console.Matrix;
 import org.matrix.console.R;
@@ -112,9 +111,8 @@ public class ImageSliderActivity extends FragmentActivity {
         int maxImageHeight = intent.getIntExtra(ImageSliderActivity.KEY_THUMBNAIL_HEIGHT, 0);
 
         MXSession session = getSession(intent);
-        HomeserverConnectionConfig hsConfig = session != null ? session.getHomeserverConfig() : null;
 
-        ImagesSliderAdapter adapter = new ImagesSliderAdapter(this, hsConfig, listImageMessages, maxImageWidth, maxImageHeight);
+        ImagesSliderAdapter adapter = new ImagesSliderAdapter(this, session, listImageMessages, maxImageWidth, maxImageHeight);
         viewPager.setAdapter(adapter);
         viewPager.setCurrentItem(position);
         viewPager.setPageTransformer(true, new DepthPageTransformer());
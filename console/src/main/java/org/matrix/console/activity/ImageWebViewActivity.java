@@ -171,7 +171,7 @@ public class ImageWebViewActivity extends FragmentActivity {
             return;
         }
 
-        MXSession session = getSession(intent);
+        final MXSession session = getSession(intent);
         HomeserverConnectionConfig hsConfig = session != null ? session.getHomeserverConfig() : null;
 
         final int thumbnailWidth = intent.getIntExtra(KEY_THUMBNAIL_WIDTH, 0);
@@ -183,7 +183,7 @@ public class ImageWebViewActivity extends FragmentActivity {
             return;
         }
 
-        final MXMediasCache mediasCache = Matrix.getInstance(this).getMediasCache();
+        final MXMediasCache mediasCache = Matrix.getInstance(this).getMediasCache(session);
         File mediaFile = mediasCache.mediaCacheFile(mHighResUri, mHighResMimeType);
 
         // is the high picture already downloaded ?
@@ -280,7 +280,7 @@ public class ImageWebViewActivity extends FragmentActivity {
             @Override
             public boolean onLongClick(View v) {
                 final String highResMediaURI  = intent.getStringExtra(KEY_HIGHRES_IMAGE_URI);
-                final MXMediasCache mediasCache = Matrix.getInstance(ImageWebViewActivity.this).getMediasCache();
+                final MXMediasCache mediasCache = Matrix.getInstance(ImageWebViewActivity.this).getMediasCache(session);
                 final File mediaFile = mediasCache.mediaCacheFile(highResMediaURI, mHighResMimeType);
 
                 if (null != mediaFile) {
@@ -17,8 +17,6 @@
 package org.matrix.console.activity;
 
 import android.app.Activity;
-import android.app.NotificationManager;
-import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.text.Html;
@@ -36,6 +34,7 @@ import org.matrix.androidsdk.rest.model.MatrixError;
 import org.matrix.androidsdk.rest.model.Message;
 import org.matrix.console.Matrix;
 import org.matrix.console.R;
+import org.matrix.console.services.EventStreamService;
 
 public class LockScreenActivity extends Activity { // do NOT extend from UC*Activity, we do not want to login on this screen!
     public static final String EXTRA_SENDER_NAME = "extra_sender_name";
@@ -70,8 +69,7 @@ public class LockScreenActivity extends Activity { // do NOT extend from UC*Acti
         setContentView(R.layout.activity_lock_screen);
 
         // remove any pending notifications
-        NotificationManager notificationsManager= (NotificationManager) this.getSystemService(Context.NOTIFICATION_SERVICE);
-        notificationsManager.cancelAll();
+        EventStreamService.cancelAllNotifications();
 
         Intent intent = getIntent();
 
@@ -47,7 +47,7 @@ import org.matrix.console.adapters.DrawerAdapter;
 import org.matrix.console.services.EventStreamService;
 
 import java.lang.reflect.Method;
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * extends ActionBarActivity to manage the rageshake
@@ -58,7 +58,7 @@ public class MXCActionBarActivity extends ActionBarActivity {
 
     private boolean hasCorruptedStore(Activity activity) {
         boolean hasCorruptedStore = false;
-        ArrayList<MXSession> sessions = Matrix.getMXSessions(activity);
+        List<MXSession> sessions = Matrix.getMXSessions(activity);
 
         if (null != sessions) {
             for (MXSession session : sessions) {
@@ -443,7 +443,7 @@ public class MemberDetailsActivity extends MXCActionBarActivity {
 
         if (mMember.avatarUrl != null) {
             int size = getResources().getDimensionPixelSize(R.dimen.profile_avatar_size);
-            Matrix.getInstance(this).getMediasCache().loadAvatarThumbnail(mSession.getHomeserverConfig(), mThumbnailImageView, mMember.avatarUrl, size);
+            Matrix.getInstance(this).getMediasCache(mSession).loadAvatarThumbnail(mSession.getHomeserverConfig(), mThumbnailImageView, mMember.avatarUrl, size);
         }
     }
 
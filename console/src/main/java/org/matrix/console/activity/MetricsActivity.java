@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.activity;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+import org.matrix.console.Matrix;
+import org.matrix.console.R;
+
+/**
+ * Debug screen which displays the runtime metrics of each account.
+ */
+public class MetricsActivity extends MXCActionBarActivity {
+
+    private TextView mMetricsTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        if (CommonActivityUtils.shouldRestartApp()) {
+            CommonActivityUtils.restartApp(this);
+            return;
+        }
+
+        setContentView(R.layout.activity_metrics);
+
+        mMetricsTextView = (TextView) findViewById(R.id.textView_metrics);
+
+        Button refreshButton = (Button) findViewById(R.id.button_metrics_refresh);
+        refreshButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                refreshMetrics();
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refreshMetrics();
+    }
+
+    /**
+     * Display the metrics.
+     * The report is built in background because it computes the stores disk usage.
+     */
+    private void refreshMetrics() {
+        new AsyncTask<Void, Void, String>() {
+            @Override
+            protected String doInBackground(Void... voids) {
+                return Matrix.getInstance(MetricsActivity.this).getMetricsRegistry().toReport();
+            }
+
+            @Override
+            protected void onPostExecute(String report) {
+                if (null != mMetricsTextView) {
+                    mMetricsTextView.setText(report);
+                }
+            }
+        }.execute();
+    }
+}
@@ -18,11 +18,9 @@ package org.matrix.console.activity;
 
 import android.annotation.SuppressLint;
 import android.app.AlertDialog;
-import android.app.NotificationManager;
 import android.content.ClipData;
 import android.content.ContentResolver;
 import android.content.ContentValues;
-import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.graphics.Bitmap;
@@ -399,8 +397,7 @@ public class RoomActivity extends MXCActionBarActivity {
         // the user has tapped on the "View" notification button
         if ((null != intent.getAction()) && (intent.getAction().startsWith(NotificationUtils.TAP_TO_VIEW_ACTION))) {
             // remove any pending notifications
-            NotificationManager notificationsManager = (NotificationManager) this.getSystemService(Context.NOTIFICATION_SERVICE);
-            notificationsManager.cancelAll();
+            EventStreamService.cancelAllNotifications();
         }
 
         mPendingThumbnailUrl = null;
@@ -749,7 +746,7 @@ public class RoomActivity extends MXCActionBarActivity {
         });
 
         mLatestChatMessageCache = Matrix.getInstance(this).getDefaultLatestChatMessageCache();
-        mMediasCache = Matrix.getInstance(this).getMediasCache();
+        mMediasCache = Matrix.getInstance(this).getMediasCache(mSession);
 
         // some medias must be sent while opening the chat
         if (intent.hasExtra(HomeActivity.EXTRA_ROOM_INTENT)) {
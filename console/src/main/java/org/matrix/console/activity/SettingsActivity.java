@@ -37,11 +37,14 @@ import android.text.TextWatcher;
 import android.util.Log;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -95,7 +98,7 @@ public class SettingsActivity extends MXCActionBarActivity {
             avatarView.setImageResource(R.drawable.ic_contact_picture_holo_light);
         } else {
             int size = getResources().getDimensionPixelSize(R.dimen.profile_avatar_size);
-            mMediasCache.loadAvatarThumbnail(session.getHomeserverConfig(), avatarView, avatarUrl, size);
+            Matrix.getInstance(this).getMediasCache(session).loadAvatarThumbnail(session.getHomeserverConfig(), avatarView, avatarUrl, size);
         }
     }
 
@@ -106,7 +109,7 @@ public class SettingsActivity extends MXCActionBarActivity {
     private String computeApplicationCacheSize() {
         long size = 0;
 
-        size += mMediasCache.cacheSize();
+        size += Matrix.getInstance(this).getSharedMediasCache().diskUsage();
 
         for(MXSession session : Matrix.getMXSessions(SettingsActivity.this)) {
             if (session.isAlive()) {
@@ -270,8 +273,34 @@ public class SettingsActivity extends MXCActionBarActivity {
         listenBoxUpdate(preferences, R.id.checkbox_sortByLastSeen, getString(R.string.settings_key_sort_by_last_seen), true);
         listenBoxUpdate(preferences, R.id.checkbox_displayLeftMembers, getString(R.string.settings_key_display_left_members), false);
         listenBoxUpdate(preferences, R.id.checkbox_displayPublicRooms, getString(R.string.settings_key_display_public_rooms_recents), true);
+        listenBoxUpdate(preferences, R.id.checkbox_boundedRoomsMemory, getString(R.string.settings_key_bounded_rooms_memory), false);
+        listenBoxUpdate(preferences, R.id.checkbox_recyclerRoomsList, getString(R.string.settings_key_recycler_rooms_list), false);
         listenBoxUpdate(preferences, R.id.checkbox_rageshake, getString(R.string.settings_key_use_rage_shake), true);
 
+        final Spinner roomsMemoryBudgetSpinner = (Spinner) findViewById(R.id.spinner_roomsMemoryBudget);
+        ArrayAdapter<CharSequence> roomsMemoryBudgetAdapter = ArrayAdapter.createFromResource(this, R.array.settings_rooms_memory_budgets, android.R.layout.simple_spinner_item);
+        roomsMemoryBudgetAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        roomsMemoryBudgetSpinner.setAdapter(roomsMemoryBudgetAdapter);
+
+        int budgetMB = preferences.getInt(getString(R.string.settings_key_rooms_memory_budget), 0);
+
+        for(int index = 0; index < Matrix.ROOMS_MEMORY_BUDGETS_MB.length; index++) {
+            if (Matrix.ROOMS_MEMORY_BUDGETS_MB[index] == budgetMB) {
+                roomsMemoryBudgetSpinner.setSelection(index);
+            }
+        }
+
+        roomsMemoryBudgetSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                Matrix.getInstance(SettingsActivity.this).setRoomsMemoryBudget(SettingsActivity.this, Matrix.ROOMS_MEMORY_BUDGETS_MB[position]);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+
 
         final Button clearCacheButton = (Button) findViewById(R.id.button_clear_cache);
 
@@ -280,7 +309,7 @@ public class SettingsActivity extends MXCActionBarActivity {
         clearCacheButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                Matrix.getInstance(SettingsActivity.this).reloadSessions(SettingsActivity.this);
+                Matrix.getInstance(SettingsActivity.this).reloadSessions(SettingsActivity.this, true);
             }
         });
 
@@ -293,6 +322,15 @@ public class SettingsActivity extends MXCActionBarActivity {
             }
         });
 
+        final Button metricsButton = (Button) findViewById(R.id.button_metrics);
+
+        metricsButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                SettingsActivity.this.startActivity(new Intent(SettingsActivity.this, MetricsActivity.class));
+            }
+        });
+
         final GcmRegistrationManager gcmRegistrationManager = Matrix.getInstance(this).getSharedGcmRegistrationManager();
 
         refreshGCMEntries();
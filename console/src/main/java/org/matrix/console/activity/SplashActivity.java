@@ -34,6 +34,7 @@ import org.matrix.console.services.EventStreamService;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
 public class SplashActivity extends MXCActionBarActivity {
 
@@ -50,7 +51,7 @@ public class SplashActivity extends MXCActionBarActivity {
 
     private boolean hasCorruptedStore() {
         boolean hasCorruptedStore = false;
-        ArrayList<MXSession> sessions = Matrix.getMXSessions(this);
+        List<MXSession> sessions = Matrix.getMXSessions(this);
 
         for(MXSession session : sessions) {
             if (session.isAlive()) {
@@ -84,7 +85,8 @@ public class SplashActivity extends MXCActionBarActivity {
 
         setContentView(R.layout.activity_splash);
 
-        mSessions =  Matrix.getInstance(getApplicationContext()).getSessions();
+        // the dormant accounts are loaded when they are used
+        mSessions =  Matrix.getInstance(getApplicationContext()).getActiveSessions();
 
         if (mSessions == null) {
             Log.e(LOG_TAG, "onCreate no Sessions");
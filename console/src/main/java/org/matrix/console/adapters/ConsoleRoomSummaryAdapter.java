@@ -20,17 +20,27 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
+import android.view.View;
+import android.view.ViewGroup;
 
 import org.matrix.androidsdk.MXSession;
 import org.matrix.androidsdk.data.Room;
 import org.matrix.androidsdk.data.RoomSummary;
+import org.matrix.androidsdk.rest.model.Event;
+import org.matrix.androidsdk.rest.model.PublicRoom;
 import org.matrix.androidsdk.rest.model.User;
 import org.matrix.console.Matrix;
 import org.matrix.console.R;
 import org.matrix.androidsdk.adapters.RoomSummaryAdapter;
+import org.matrix.console.metrics.MetricsRegistry;
+import org.matrix.console.util.RoomSearchIndex;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 
 /**
  * An adapter which can display room information.
@@ -39,9 +49,25 @@ public class ConsoleRoomSummaryAdapter extends RoomSummaryAdapter {
 
     private ArrayList<MXSession> mSessions = null;
 
+    // when more than 1 / FULL_SORT_RATIO of a section rooms are updated, the section is fully sorted.
+    private static final int FULL_SORT_RATIO = 8;
+
+    // the rooms search index, the summaries are scanned by the SDK adapter when there is none
+    private RoomSearchIndex mSearchIndex = null;
+    // the pattern searched in the index
+    private String mIndexedSearchPattern = "";
+    // section -> the matched children positions, the best matches first
+    private final HashMap<Integer, ArrayList<Integer>> mMatchedPositionsBySection = new HashMap<Integer, ArrayList<Integer>>();
+    // section -> (room id -> child position), built when a search needs it
+    private final HashMap<Integer, HashMap<String, Integer>> mPositionsBySection = new HashMap<Integer, HashMap<String, Integer>>();
+
+    // counts the bound rows
+    private final MetricsRegistry mMetricsRegistry;
+
     public ConsoleRoomSummaryAdapter(Context context, Collection<MXSession> sessions, int layoutResourceId, int headerLayoutResourceId)  {
         super(context, sessions.size(), layoutResourceId, headerLayoutResourceId);
         mSessions = new ArrayList<MXSession>(sessions);
+        mMetricsRegistry = Matrix.getInstance(context).getMetricsRegistry();
     }
 
     public int getUnreadMessageBackgroundColor() {
@@ -100,12 +126,32 @@ public class ConsoleRoomSummaryAdapter extends RoomSummaryAdapter {
         return preferences.getBoolean(mContext.getString(R.string.settings_key_display_public_rooms_recents), true);
     }
 
+    /**
+     * Retrieve the session displayed in a recents section.
+     * @param section the section index
+     * @return the session, null if the section is not a recents one.
+     */
+    public MXSession getSession(int section) {
+        if ((section >= 0) && (section < mSessions.size())) {
+            return mSessions.get(section);
+        }
+
+        return null;
+    }
+
     public String myRoomsTitle(int section) {
         if (mSessions.size() == 1) {
             return mContext.getResources().getString(R.string.my_rooms);
         } else {
-            if (mSessions.get(section).isAlive()) {
-                return mSessions.get(section).getMyUserId();
+            MXSession session = mSessions.get(section);
+
+            if (session.isAlive()) {
+                // the dormant accounts are loaded when the user taps on their header
+                if (Matrix.getInstance(mContext).isDormantSession(session)) {
+                    return mContext.getResources().getString(R.string.my_rooms_dormant_account, session.getMyUserId());
+                }
+
+                return session.getMyUserId();
             } else {
                 return mContext.getResources().getString(R.string.my_rooms);
             }
@@ -122,9 +168,352 @@ public class ConsoleRoomSummaryAdapter extends RoomSummaryAdapter {
         return title;
     }
 
+    /**
+     * Provides the summary ordering key : the most recent rooms are displayed first,
+     * the rooms without latest event are displayed at the end.
+     * @param summary the room summary
+     * @return the latest event timestamp, Long.MIN_VALUE if there is no latest event.
+     */
+    private static long getLatestTimestamp(RoomSummary summary) {
+        if ((null == summary) || (null == summary.getLatestEvent())) {
+            return Long.MIN_VALUE;
+        }
+
+        return summary.getLatestEvent().getOriginServerTs();
+    }
+
+    /**
+     * Move a room summary to its position in a section.
+     * @param section the section index
+     * @param roomId the room id
+     */
+    public void repositionSummary(int section, String roomId) {
+        repositionSummaries(section, Collections.singletonList(roomId));
+    }
+
+    /**
+     * Move some room summaries to their position in a section.
+     * The other summaries are supposed to be ordered so only the moved ones are compared :
+     * the section is not sorted each time a room receives some events.
+     * @param section the section index
+     * @param roomIds the updated rooms ids
+     */
+    public void repositionSummaries(int section, Collection<String> roomIds) {
+        ArrayList<ArrayList<RoomSummary>> summariesList = getRecentsSummariesList();
+
+        // sanity check
+        if ((section < 0) || (section >= summariesList.size()) || roomIds.isEmpty()) {
+            return;
+        }
+
+        ArrayList<RoomSummary> updatedSummaries = new ArrayList<RoomSummary>();
+
+        for(String roomId : roomIds) {
+            RoomSummary summary = getSummaryByRoomId(section, roomId);
+
+            if (null != summary) {
+                updatedSummaries.add(summary);
+            }
+        }
+
+        repositionSummaries(summariesList.get(section), updatedSummaries);
+        mPositionsBySection.clear();
+    }
+
+    /**
+     * Move some summaries to their position in an ordered summaries list.
+     * The list is fully sorted when more than 1 / FULL_SORT_RATIO of its summaries are moved.
+     * @param summaries the summaries list, ordered except the updated summaries
+     * @param updatedSummaries the updated summaries
+     */
+    static void repositionSummaries(List<RoomSummary> summaries, Collection<RoomSummary> updatedSummaries) {
+        // a binary insertion per room is not worth it
+        if ((updatedSummaries.size() * FULL_SORT_RATIO) > summaries.size()) {
+            Collections.sort(summaries, new Comparator<RoomSummary>() {
+                @Override
+                public int compare(RoomSummary summary1, RoomSummary summary2) {
+                    long timestamp1 = getLatestTimestamp(summary1);
+                    long timestamp2 = getLatestTimestamp(summary2);
+
+                    return (timestamp1 > timestamp2) ? -1 : ((timestamp1 < timestamp2) ? 1 : 0);
+                }
+            });
+
+            return;
+        }
+
+        // the binary search needs the other summaries to be ordered, so all the updated ones are removed first
+        for(RoomSummary summary : updatedSummaries) {
+            // the summaries are not compared to find the former position
+            for(int index = 0; index < summaries.size(); index++) {
+                if (summaries.get(index) == summary) {
+                    summaries.remove(index);
+                    break;
+                }
+            }
+        }
+
+        for(RoomSummary summary : updatedSummaries) {
+            long timestamp = getLatestTimestamp(summary);
+
+            // the summary is inserted before the ones with the same timestamp
+            int low = 0;
+            int high = summaries.size();
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (getLatestTimestamp(summaries.get(middle)) > timestamp) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            summaries.add(low, summary);
+        }
+    }
+
+    /**
+     * Search the rooms in an index instead of scanning the summaries at each pattern update.
+     * @param searchIndex the rooms search index
+     */
+    public void setSearchIndex(RoomSearchIndex searchIndex) {
+        mSearchIndex = searchIndex;
+    }
+
+    /**
+     * @return true if the displayed rooms are the matches of a pattern searched in the index.
+     */
+    private boolean isIndexedSearch() {
+        return (null != mSearchIndex) && !TextUtils.isEmpty(mIndexedSearchPattern);
+    }
+
+    @Override
+    public void setSearchedPattern(String pattern) {
+        if (null == mSearchIndex) {
+            super.setSearchedPattern(pattern);
+            return;
+        }
+
+        String searchedPattern = (null == pattern) ? "" : pattern.trim();
+
+        // the SDK adapter pattern stays empty so it does not filter the summaries
+        if (!searchedPattern.equals(mIndexedSearchPattern)) {
+            mIndexedSearchPattern = searchedPattern;
+            notifyDataSetChanged();
+        }
+    }
+
+    @Override
+    public void notifyDataSetChanged() {
+        if (isIndexedSearch()) {
+            refreshMatchedPositions();
+        }
+
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * Search the pattern in the index and map the matched rooms to their children positions.
+     */
+    private void refreshMatchedPositions() {
+        mMatchedPositionsBySection.clear();
+
+        for(RoomSearchIndex.Entry entry : mSearchIndex.search(mIndexedSearchPattern)) {
+            int section = getEntrySection(entry);
+
+            if (section >= 0) {
+                Integer position = getChildPosition(section, entry.getRoomId());
+
+                if (null != position) {
+                    ArrayList<Integer> positions = mMatchedPositionsBySection.get(section);
+
+                    if (null == positions) {
+                        positions = new ArrayList<Integer>();
+                        mMatchedPositionsBySection.put(section, positions);
+                    }
+
+                    positions.add(position);
+                }
+            }
+        }
+    }
+
+    /**
+     * Provides the section displaying an indexed room.
+     * @param entry the index entry
+     * @return the section index, -1 if it is not displayed.
+     */
+    private int getEntrySection(RoomSearchIndex.Entry entry) {
+        if (entry.isPublicRoom()) {
+            if (null != mPublicRoomsHomeServerLists) {
+                int index = mPublicRoomsHomeServerLists.indexOf(entry.getHomeServer());
+
+                if (index >= 0) {
+                    return mPublicsGroupStartIndex + index;
+                }
+            }
+        } else {
+            for(int section = 0; section < mSessions.size(); section++) {
+                MXSession session = mSessions.get(section);
+
+                if (session.isAlive() && TextUtils.equals(session.getMyUserId(), entry.getMatrixId())) {
+                    return section;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Provides the unfiltered child position of a room.
+     * @param section the section index
+     * @param roomId the room id
+     * @return the child position, null if the room is not displayed in the section.
+     */
+    private Integer getChildPosition(int section, String roomId) {
+        HashMap<String, Integer> positions = mPositionsBySection.get(section);
+
+        if (null == positions) {
+            positions = new HashMap<String, Integer>();
+
+            if (isRecentsGroupIndex(section)) {
+                ArrayList<RoomSummary> summaries = getRecentsSummariesList().get(section);
+
+                for(int index = 0; index < summaries.size(); index++) {
+                    positions.put(summaries.get(index).getRoomId(), index);
+                }
+            } else if (isPublicsGroupIndex(section) && (null != mPublicRoomsLists)) {
+                List<PublicRoom> publicRooms = mPublicRoomsLists.get(section - mPublicsGroupStartIndex);
+
+                for(int index = 0; index < publicRooms.size(); index++) {
+                    positions.put(publicRooms.get(index).roomId, index);
+                }
+            }
+
+            mPositionsBySection.put(section, positions);
+        }
+
+        return positions.get(roomId);
+    }
+
+    /**
+     * Provides the unfiltered child position of a matched room.
+     * @param section the section index
+     * @param childPosition the displayed child position
+     * @return the child position, -1 if there is none.
+     */
+    private int getMatchedPosition(int section, int childPosition) {
+        ArrayList<Integer> positions = mMatchedPositionsBySection.get(section);
+
+        if ((null == positions) || (childPosition < 0) || (childPosition >= positions.size())) {
+            return -1;
+        }
+
+        return positions.get(childPosition);
+    }
+
+    @Override
+    public int getChildrenCount(int section) {
+        if (isIndexedSearch()) {
+            // the hidden sections stay hidden
+            if (0 == super.getChildrenCount(section)) {
+                return 0;
+            }
+
+            ArrayList<Integer> positions = mMatchedPositionsBySection.get(section);
+            return (null == positions) ? 0 : positions.size();
+        }
+
+        return super.getChildrenCount(section);
+    }
+
+    @Override
+    public View getChildView(int section, int childPosition, boolean isLastChild, View convertView, ViewGroup parent) {
+        mMetricsRegistry.getRoomListMetrics().onRoomListBind();
+
+        if (isIndexedSearch()) {
+            return super.getChildView(section, getMatchedPosition(section, childPosition), isLastChild, convertView, parent);
+        }
+
+        return super.getChildView(section, childPosition, isLastChild, convertView, parent);
+    }
+
+    /**
+     * Format an event timestamp as the room summaries rows display it.
+     * @param event the event
+     * @return the formatted timestamp
+     */
+    public String formatTimestamp(Event event) {
+        return getFormattedTimestamp(event);
+    }
+
+    @Override
+    public RoomSummary getRoomSummaryAt(int section, int childPosition) {
+        if (isIndexedSearch()) {
+            int position = getMatchedPosition(section, childPosition);
+            return (position < 0) ? null : super.getRoomSummaryAt(section, position);
+        }
+
+        return super.getRoomSummaryAt(section, childPosition);
+    }
+
+    @Override
+    public PublicRoom getPublicRoomAt(int section, int childPosition) {
+        if (isIndexedSearch()) {
+            int position = getMatchedPosition(section, childPosition);
+            return (position < 0) ? null : super.getPublicRoomAt(section, position);
+        }
+
+        return super.getPublicRoomAt(section, childPosition);
+    }
+
+    @Override
+    public void addRoomSummary(int section, RoomSummary summary) {
+        super.addRoomSummary(section, summary);
+        mPositionsBySection.clear();
+    }
+
+    @Override
+    public void removeRoomSummary(int section, RoomSummary summary) {
+        super.removeRoomSummary(section, summary);
+        mPositionsBySection.clear();
+    }
+
+    /**
+     * Remove all the room summaries of a section.
+     * @param section the section index
+     */
+    public void removeRoomSummaries(int section) {
+        ArrayList<ArrayList<RoomSummary>> summariesList = getRecentsSummariesList();
+
+        if ((section >= 0) && (section < summariesList.size())) {
+            for(RoomSummary summary : new ArrayList<RoomSummary>(summariesList.get(section))) {
+                super.removeRoomSummary(section, summary);
+            }
+        }
+
+        mPositionsBySection.clear();
+    }
+
+    @Override
+    public void sortSummaries() {
+        super.sortSummaries();
+        mPositionsBySection.clear();
+    }
+
+    @Override
+    public void setPublicRoomsList(List<List<PublicRoom>> publicRoomsList, List<String> homeServerNames) {
+        super.setPublicRoomsList(publicRoomsList, homeServerNames);
+        mPositionsBySection.clear();
+    }
+
     @Override
     public void removeSection(int section) {
         super.removeSection(section);
         mSessions.remove(section);
+        mPositionsBySection.clear();
     }
 }
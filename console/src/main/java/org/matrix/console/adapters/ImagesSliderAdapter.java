@@ -37,6 +37,7 @@ import com.google.android.gms.analytics.ExceptionReporter;
 import com.google.gson.JsonElement;
 
 import org.matrix.androidsdk.HomeserverConnectionConfig;
+import org.matrix.androidsdk.MXSession;
 import org.matrix.androidsdk.rest.model.MatrixError;
 import org.matrix.androidsdk.util.ImageUtils;
 import org.matrix.androidsdk.util.JsonUtils;
@@ -69,15 +70,17 @@ public class ImagesSliderAdapter extends PagerAdapter {
 
     private LayoutInflater mLayoutInflater;
 
+    private MXSession mSession;
     private HomeserverConnectionConfig mHsConfig;
 
-    public ImagesSliderAdapter(Context context, HomeserverConnectionConfig hsConfig, List<SlidableImageInfo> listImageMessages, int maxImageWidth, int maxImageHeight) {
+    public ImagesSliderAdapter(Context context, MXSession session, List<SlidableImageInfo> listImageMessages, int maxImageWidth, int maxImageHeight) {
         this.context = context;
         this.mListImageMessages = listImageMessages;
         this.mMaxImageWidth = maxImageWidth;
         this.mMaxImageHeight = maxImageHeight;
         this.mLayoutInflater = LayoutInflater.from(context);
-        this.mHsConfig = hsConfig;
+        this.mSession = session;
+        this.mHsConfig = (null != session) ? session.getHomeserverConfig() : null;
     }
 
     @Override
@@ -105,7 +108,7 @@ public class ImagesSliderAdapter extends PagerAdapter {
     private void downloadHighResPict(final View view, final int position) {
         final WebView webView = (WebView)view.findViewById(R.id.image_webview);
         final PieFractionView pieFractionView = (PieFractionView)view.findViewById(R.id.download_zoomed_image_piechart);
-        final MXMediasCache mediasCache = Matrix.getInstance(this.context).getMediasCache();
+        final MXMediasCache mediasCache = Matrix.getInstance(this.context).getMediasCache(mSession);
         final SlidableImageInfo imageInfo = mListImageMessages.get(position);
         final String viewportContent = "width=640";
         final String loadingUri = imageInfo.mImageUrl;
@@ -194,7 +197,7 @@ public class ImagesSliderAdapter extends PagerAdapter {
         final int rotationAngle = imageInfo.mRotationAngle;
         final String mimeType = imageInfo.mMimeType;
 
-        final MXMediasCache mediasCache = Matrix.getInstance(this.context).getMediasCache();
+        final MXMediasCache mediasCache = Matrix.getInstance(this.context).getMediasCache(mSession);
         File mediaFile = mediasCache.mediaCacheFile(mediaUrl, mimeType);
 
         // is the high picture already downloaded ?
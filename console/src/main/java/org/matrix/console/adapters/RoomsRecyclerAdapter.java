@@ -0,0 +1,520 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.adapters;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import org.matrix.androidsdk.MXSession;
+import org.matrix.androidsdk.data.Room;
+import org.matrix.androidsdk.data.RoomState;
+import org.matrix.androidsdk.data.RoomSummary;
+import org.matrix.androidsdk.rest.model.Event;
+import org.matrix.androidsdk.rest.model.PublicRoom;
+import org.matrix.androidsdk.util.EventDisplay;
+import org.matrix.console.R;
+import org.matrix.console.metrics.MetricsRegistry;
+import org.matrix.console.util.ListDiffer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * RecyclerView adapter which displays the rooms of the home rooms list.
+ * The rooms are read from a ConsoleRoomSummaryAdapter : its sections, search filter and order are kept.
+ * Each refresh takes a snapshot of the displayed rooms, the updates from the displayed snapshot
+ * are computed in background so only the inserted, moved and changed rows are bound again.
+ * Each row has a stable id per account and room.
+ */
+public class RoomsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+    private static final int VIEW_TYPE_HEADER = 0;
+    private static final int VIEW_TYPE_ROOM = 1;
+    private static final int VIEW_TYPE_PUBLIC_ROOM = 2;
+
+    /**
+     * Listener of the rows clicks.
+     */
+    public interface OnItemClickListener {
+        /**
+         * A room has been clicked.
+         * @param section the room section in the rooms adapter
+         * @param summary the room summary
+         */
+        void onRoomClick(int section, RoomSummary summary);
+
+        /**
+         * A public room has been clicked.
+         * @param section the public room section in the rooms adapter
+         * @param publicRoom the public room
+         */
+        void onPublicRoomClick(int section, PublicRoom publicRoom);
+
+        /**
+         * A section header has been clicked.
+         * @param section the section index in the rooms adapter
+         */
+        void onHeaderClick(int section);
+    }
+
+    /**
+     * A displayed row : a section header, a room or a public room.
+     * It keeps the displayed values to detect the rows to bind again.
+     */
+    public static class Item implements ListDiffer.Diffable<Item> {
+        private final int mViewType;
+        private final long mStableId;
+        private final int mSection;
+        private final int mHeaderPosition;
+
+        private String mTitle = null;
+        private RoomSummary mSummary = null;
+        private PublicRoom mPublicRoom = null;
+
+        // the displayed room values
+        private String mRoomName = null;
+        private String mLatestEventId = null;
+        private long mLatestEventTs = 0;
+        private int mUnreadCount = 0;
+        private boolean mIsHighlighted = false;
+        private boolean mIsInvited = false;
+
+        Item(int viewType, long stableId, int section, int headerPosition) {
+            mViewType = viewType;
+            mStableId = stableId;
+            mSection = section;
+            mHeaderPosition = headerPosition;
+        }
+
+        /**
+         * Create a section header row.
+         * @param stableId the row stable id
+         * @param section the section index in the rooms adapter
+         * @param headerPosition the row position
+         * @param title the section title
+         * @return the row
+         */
+        static Item headerItem(long stableId, int section, int headerPosition, String title) {
+            Item item = new Item(VIEW_TYPE_HEADER, stableId, section, headerPosition);
+            item.mTitle = title;
+            return item;
+        }
+
+        /**
+         * Create a room row, it keeps the room summary displayed values.
+         * @param stableId the row stable id
+         * @param section the section index in the rooms adapter
+         * @param headerPosition the section header position
+         * @param summary the room summary
+         * @return the row
+         */
+        static Item roomItem(long stableId, int section, int headerPosition, RoomSummary summary) {
+            Item item = new Item(VIEW_TYPE_ROOM, stableId, section, headerPosition);
+            Event latestEvent = summary.getLatestEvent();
+
+            item.mSummary = summary;
+            item.mRoomName = summary.getRoomName();
+            item.mLatestEventId = (null != latestEvent) ? latestEvent.eventId : null;
+            item.mLatestEventTs = (null != latestEvent) ? latestEvent.getOriginServerTs() : 0;
+            item.mUnreadCount = summary.getUnreadEventsCount();
+            item.mIsHighlighted = summary.isHighlighted();
+            item.mIsInvited = summary.isInvited();
+            return item;
+        }
+
+        /**
+         * Compare two displayed strings.
+         * It is TextUtils.equals, the items are also compared by the unit tests which run without the android framework.
+         * @param string1 the first string
+         * @param string2 the second string
+         * @return true if both are null or equal.
+         */
+        private static boolean isSameText(String string1, String string2) {
+            return (null == string1) ? (null == string2) : string1.equals(string2);
+        }
+
+        @Override
+        public long getStableId() {
+            return mStableId;
+        }
+
+        @Override
+        public boolean hasSameContent(Item other) {
+            if ((mViewType != other.mViewType) || (mSection != other.mSection)) {
+                return false;
+            }
+
+            if (VIEW_TYPE_HEADER == mViewType) {
+                return isSameText(mTitle, other.mTitle);
+            } else if (VIEW_TYPE_PUBLIC_ROOM == mViewType) {
+                return mPublicRoom == other.mPublicRoom;
+            }
+
+            return isSameText(mRoomName, other.mRoomName) &&
+                    isSameText(mLatestEventId, other.mLatestEventId) &&
+                    (mLatestEventTs == other.mLatestEventTs) &&
+                    (mUnreadCount == other.mUnreadCount) &&
+                    (mIsHighlighted == other.mIsHighlighted) &&
+                    (mIsInvited == other.mIsInvited);
+        }
+    }
+
+    private static class HeaderViewHolder extends RecyclerView.ViewHolder {
+        private final TextView mTitleView;
+
+        HeaderViewHolder(View itemView) {
+            super(itemView);
+            mTitleView = (TextView) itemView.findViewById(R.id.heading);
+            itemView.findViewById(R.id.heading_image).setVisibility(View.GONE);
+        }
+    }
+
+    private static class RoomViewHolder extends RecyclerView.ViewHolder {
+        private final TextView mNameView;
+        private final TextView mMessageView;
+        private final TextView mTimestampView;
+
+        RoomViewHolder(View itemView) {
+            super(itemView);
+            mNameView = (TextView) itemView.findViewById(R.id.roomSummaryAdapter_roomName);
+            mMessageView = (TextView) itemView.findViewById(R.id.roomSummaryAdapter_message);
+            mTimestampView = (TextView) itemView.findViewById(R.id.roomSummaryAdapter_ts);
+            itemView.findViewById(R.id.roomSummaryAdapter_delete_progress).setVisibility(View.GONE);
+        }
+    }
+
+    private final Context mContext;
+    private final LayoutInflater mLayoutInflater;
+    private final ConsoleRoomSummaryAdapter mRoomsAdapter;
+    private final MetricsRegistry mMetricsRegistry;
+    private OnItemClickListener mOnItemClickListener = null;
+
+    // the displayed rows
+    private List<Item> mItems = new ArrayList<Item>();
+
+    // row key -> stable id
+    private final HashMap<String, Long> mStableIdsByKey = new HashMap<String, Long>();
+    private long mNextStableId = 0;
+
+    private final ListDiffer<Item> mListDiffer;
+
+    /**
+     * Constructor
+     * @param context the context
+     * @param roomsAdapter the adapter which provides the displayed rooms
+     * @param metricsRegistry the metrics registry which counts the bound rows, can be null
+     */
+    public RoomsRecyclerAdapter(Context context, ConsoleRoomSummaryAdapter roomsAdapter, MetricsRegistry metricsRegistry) {
+        mContext = context;
+        mLayoutInflater = LayoutInflater.from(context);
+        mRoomsAdapter = roomsAdapter;
+        mMetricsRegistry = metricsRegistry;
+
+        setHasStableIds(true);
+
+        mListDiffer = new ListDiffer<Item>("RoomsRecyclerAdapter", new ListDiffer.UpdatesListener<Item>() {
+            @Override
+            public void onUpdates(List<Item> items, List<ListDiffer.Update> updates) {
+                applyUpdates(items, updates);
+            }
+        });
+    }
+
+    /**
+     * Set the rows click listener.
+     * @param listener the listener
+     */
+    public void setOnItemClickListener(OnItemClickListener listener) {
+        mOnItemClickListener = listener;
+    }
+
+    /**
+     * Take a snapshot of the rooms adapter and display it once its updates are computed.
+     * It must be called on the UI thread.
+     */
+    public void refresh() {
+        mListDiffer.submit(buildItems());
+    }
+
+    /**
+     * Stop computing the updates.
+     */
+    public void release() {
+        mListDiffer.release();
+    }
+
+    /**
+     * Provides the stable id of a row.
+     * @param key the row key
+     * @return the stable id
+     */
+    private long getStableId(String key) {
+        Long stableId = mStableIdsByKey.get(key);
+
+        if (null == stableId) {
+            stableId = mNextStableId++;
+            mStableIdsByKey.put(key, stableId);
+        }
+
+        return stableId;
+    }
+
+    /**
+     * Take a snapshot of the rows displayed by the rooms adapter.
+     * @return the rows
+     */
+    private List<Item> buildItems() {
+        ArrayList<Item> items = new ArrayList<Item>();
+
+        for(int section = 0; mRoomsAdapter.isRecentsGroupIndex(section); section++) {
+            MXSession session = mRoomsAdapter.getSession(section);
+            String matrixId = ((null != session) && session.isAlive()) ? session.getMyUserId() : String.valueOf(section);
+            int headerPosition = items.size();
+
+            // the account header is displayed even if it has no room : a dormant account is loaded by a tap on it
+            items.add(Item.headerItem(getStableId("header|" + matrixId), section, headerPosition, mRoomsAdapter.myRoomsTitle(section)));
+
+            int childrenCount = mRoomsAdapter.getChildrenCount(section);
+
+            for(int childPosition = 0; childPosition < childrenCount; childPosition++) {
+                RoomSummary summary = mRoomsAdapter.getRoomSummaryAt(section, childPosition);
+
+                if (null != summary) {
+                    items.add(Item.roomItem(getStableId(matrixId + "|" + summary.getRoomId()), section, headerPosition, summary));
+                }
+            }
+        }
+
+        if (mRoomsAdapter.displayPublicRooms()) {
+            for(int section = mRoomsAdapter.mPublicsGroupStartIndex; mRoomsAdapter.isPublicsGroupIndex(section); section++) {
+                int childrenCount = mRoomsAdapter.getChildrenCount(section);
+
+                if (0 == childrenCount) {
+                    continue;
+                }
+
+                String homeServer = mRoomsAdapter.getHomeServerURLAt(section);
+                int headerPosition = items.size();
+
+                items.add(Item.headerItem(getStableId("public|" + homeServer), section, headerPosition, mRoomsAdapter.publicRoomsTitle(section)));
+
+                for(int childPosition = 0; childPosition < childrenCount; childPosition++) {
+                    PublicRoom publicRoom = mRoomsAdapter.getPublicRoomAt(section, childPosition);
+
+                    if (null != publicRoom) {
+                        Item item = new Item(VIEW_TYPE_PUBLIC_ROOM, getStableId("public|" + homeServer + "|" + publicRoom.roomId), section, headerPosition);
+                        item.mPublicRoom = publicRoom;
+                        items.add(item);
+                    }
+                }
+            }
+        }
+
+        return items;
+    }
+
+    /**
+     * Display the rows and notify their updates.
+     * @param items the rows
+     * @param updates the updates from the displayed rows, null to refresh all of them.
+     */
+    private void applyUpdates(List<Item> items, List<ListDiffer.Update> updates) {
+        mItems = items;
+
+        if (null == updates) {
+            notifyDataSetChanged();
+            return;
+        }
+
+        for(ListDiffer.Update update : updates) {
+            switch (update.mType) {
+                case ListDiffer.Update.TYPE_REMOVE:
+                    notifyItemRemoved(update.mFromPosition);
+                    break;
+                case ListDiffer.Update.TYPE_INSERT:
+                    notifyItemInserted(update.mToPosition);
+                    break;
+                case ListDiffer.Update.TYPE_MOVE:
+                    notifyItemMoved(update.mFromPosition, update.mToPosition);
+                    break;
+                case ListDiffer.Update.TYPE_CHANGE:
+                    notifyItemChanged(update.mToPosition);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Tells if a row is a section header.
+     * @param position the row position
+     * @return true if it is a header.
+     */
+    public boolean isHeader(int position) {
+        return (position >= 0) && (position < mItems.size()) && (VIEW_TYPE_HEADER == mItems.get(position).mViewType);
+    }
+
+    /**
+     * Provides the header position of a row section.
+     * @param position the row position
+     * @return the header position, -1 if there is none.
+     */
+    public int getHeaderPosition(int position) {
+        if ((position < 0) || (position >= mItems.size())) {
+            return -1;
+        }
+
+        return mItems.get(position).mHeaderPosition;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mItems.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mItems.get(position).mStableId;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return mItems.get(position).mViewType;
+    }
+
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        final RecyclerView.ViewHolder holder;
+
+        if (VIEW_TYPE_HEADER == viewType) {
+            holder = new HeaderViewHolder(mLayoutInflater.inflate(R.layout.adapter_room_section_header, parent, false));
+        } else {
+            holder = new RoomViewHolder(mLayoutInflater.inflate(R.layout.adapter_item_my_rooms, parent, false));
+        }
+
+        holder.itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                int position = holder.getPosition();
+
+                if ((null != mOnItemClickListener) && (position >= 0) && (position < mItems.size())) {
+                    Item item = mItems.get(position);
+
+                    if (VIEW_TYPE_HEADER == item.mViewType) {
+                        mOnItemClickListener.onHeaderClick(item.mSection);
+                    } else if (VIEW_TYPE_ROOM == item.mViewType) {
+                        mOnItemClickListener.onRoomClick(item.mSection, item.mSummary);
+                    } else {
+                        mOnItemClickListener.onPublicRoomClick(item.mSection, item.mPublicRoom);
+                    }
+                }
+            }
+        });
+
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        Item item = mItems.get(position);
+
+        if (null != mMetricsRegistry) {
+            mMetricsRegistry.getRoomListMetrics().onRoomListBind();
+        }
+
+        if (VIEW_TYPE_HEADER == item.mViewType) {
+            ((HeaderViewHolder) holder).mTitleView.setText(item.mTitle);
+        } else if (VIEW_TYPE_ROOM == item.mViewType) {
+            bindRoom((RoomViewHolder) holder, item.mSummary);
+        } else {
+            bindPublicRoom((RoomViewHolder) holder, item.mPublicRoom);
+        }
+    }
+
+    /**
+     * Display a room summary as the rooms adapter does.
+     * @param holder the row holder
+     * @param summary the room summary
+     */
+    private void bindRoom(RoomViewHolder holder, RoomSummary summary) {
+        RoomState latestRoomState = summary.getLatestRoomState();
+        String roomName = ((null != latestRoomState) && !summary.isInvited()) ? latestRoomState.getDisplayName(summary.getMatrixId()) : summary.getRoomName();
+        int unreadCount = summary.getUnreadEventsCount();
+
+        if ((unreadCount > 0) && !summary.isInvited()) {
+            roomName += " (" + unreadCount + ")";
+        }
+
+        holder.mNameView.setText(roomName);
+
+        Event latestEvent = summary.getLatestEvent();
+        CharSequence message = null;
+        String timestamp = null;
+
+        if (summary.isInvited() && (null != summary.getInviterUserId())) {
+            message = mContext.getString(R.string.summary_user_invitation, mRoomsAdapter.memberDisplayName(summary.getMatrixId(), summary.getInviterUserId()));
+        } else if (null != latestEvent) {
+            EventDisplay eventDisplay = new EventDisplay(mContext, latestEvent, latestRoomState);
+            eventDisplay.setPrependMessagesWithAuthor(true);
+            message = eventDisplay.getTextualDisplay();
+        }
+
+        if (null != latestEvent) {
+            timestamp = mRoomsAdapter.formatTimestamp(latestEvent);
+        }
+
+        holder.mMessageView.setText(message);
+        holder.mTimestampView.setText(timestamp);
+
+        if (summary.isHighlighted()) {
+            holder.itemView.setBackgroundColor(mRoomsAdapter.getHighlightMessageBackgroundColor());
+        } else if (unreadCount > 0) {
+            holder.itemView.setBackgroundColor(mRoomsAdapter.getUnreadMessageBackgroundColor());
+        } else {
+            holder.itemView.setBackgroundColor(Color.TRANSPARENT);
+        }
+
+        // the left rooms are greyed until they are removed
+        Room room = mRoomsAdapter.roomFromRoomSummary(summary);
+        holder.itemView.setAlpha(((null != room) && room.isLeaving()) ? 0.3f : 1.0f);
+    }
+
+    /**
+     * Display a public room.
+     * @param holder the row holder
+     * @param publicRoom the public room
+     */
+    private void bindPublicRoom(RoomViewHolder holder, PublicRoom publicRoom) {
+        String roomName = publicRoom.name;
+
+        if (TextUtils.isEmpty(roomName)) {
+            roomName = TextUtils.isEmpty(publicRoom.alias) ? publicRoom.roomId : publicRoom.alias;
+        }
+
+        holder.mNameView.setText(roomName);
+        holder.mMessageView.setText(publicRoom.topic);
+        holder.mTimestampView.setText(mContext.getResources().getQuantityString(R.plurals.num_members, publicRoom.numJoinedMembers, publicRoom.numJoinedMembers));
+        holder.itemView.setBackgroundColor(Color.TRANSPARENT);
+        holder.itemView.setAlpha(1.0f);
+    }
+}
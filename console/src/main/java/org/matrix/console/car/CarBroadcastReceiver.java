@@ -1,6 +1,5 @@
 package org.matrix.console.car;
 
-import android.app.NotificationManager;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
@@ -15,6 +14,7 @@ import org.matrix.androidsdk.rest.model.Event;
 import org.matrix.androidsdk.rest.model.MatrixError;
 import org.matrix.androidsdk.rest.model.Message;
 import org.matrix.console.Matrix;
+import org.matrix.console.services.EventStreamService;
 import org.matrix.console.util.NotificationUtils;
 
 public class CarBroadcastReceiver extends BroadcastReceiver {
@@ -23,9 +23,9 @@ public class CarBroadcastReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(final Context context, final Intent intent) {
         String roomId = intent.getStringExtra(NotificationUtils.EXTRA_ROOM_ID);
-        if (NotificationUtils.ACTION_MESSAGE_HEARD.equals(intent.getAction())) {
-            NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-            notificationManager.cancelAll();
+        if (NotificationUtils.ACTION_MESSAGE_HEARD.equals(intent.getAction()) || NotificationUtils.ACTION_MESSAGE_DISMISSED.equals(intent.getAction())) {
+            // only the heard or dismissed room notification is cancelled
+            EventStreamService.cancelNotificationsForRoomId(intent.getStringExtra(NotificationUtils.EXTRA_MATRIX_ID), roomId);
         } else if (NotificationUtils.ACTION_MESSAGE_REPLY.equals(intent.getAction())) {
             final CharSequence reply = getMessageText(intent);
 
@@ -0,0 +1,713 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.db;
+
+import android.content.Context;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.matrix.androidsdk.HomeserverConnectionConfig;
+import org.matrix.androidsdk.MXSession;
+import org.matrix.androidsdk.db.MXMediasCache;
+import org.matrix.androidsdk.util.ContentUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Application level medias cache shared by all the accounts.
+ * The medias are downloaded once whatever the number of accounts which display them :
+ * the cache files are named from the mxc URL (and the thumbnail size) resolved by one content manager per homeserver,
+ * so the SDK also merges the pending downloads of the same media.
+ * Each account gets its own MXMediasCache instance on the shared folder, which records the medias it loads, downloads or uploads :
+ * the medias only used by an account are deleted with it, and the tracked medias are kept below a single disk quota.
+ * The other files of the medias folder (the SDK per session caches, the pending uploads copies) are never evicted.
+ */
+public class SharedMediasCache {
+    private static final String LOG_TAG = "SharedMediasCache";
+
+    // the MXMediasCache root folder
+    private static final String MXMEDIA_STORE_FOLDER = "MXMediaStore";
+
+    // the shared cache folder name, it cannot match a matrix user id
+    private static final String SHARED_CACHE_ID = "shared";
+
+    // the medias disk quota
+    private static final long MAX_DISK_USAGE_BYTES = 200L * 1024L * 1024L;
+
+    // the quota is checked at most once per delay
+    private static final long QUOTA_CHECK_DELAY_MS = 10L * 60L * 1000L;
+
+    // the accounts using each media are saved next to the medias folder
+    private static final String REFERENCES_FILE = "SharedMediasCache_references";
+
+    // the full size medias have no width and no height
+    private static final int FULL_SIZE_MEDIA = -1;
+
+    /**
+     * A media used by some accounts.
+     */
+    private static class MediaReference {
+        final String mHomeserverUrl;
+        final String mUrl;
+        final int mWidth;
+        final int mHeight;
+        final String mMimeType;
+        // true for the avatars thumbnails, which are saved in their own folder
+        final boolean mIsThumbnail;
+        final HashSet<String> mMatrixIds = new HashSet<String>();
+
+        MediaReference(String homeserverUrl, String url, int width, int height, String mimeType, boolean isThumbnail) {
+            mHomeserverUrl = homeserverUrl;
+            mUrl = url;
+            mWidth = width;
+            mHeight = height;
+            mMimeType = mimeType;
+            mIsThumbnail = isThumbnail;
+        }
+
+        /**
+         * @return the reference key
+         */
+        String getKey() {
+            return mediaKey(mHomeserverUrl, mUrl, mWidth, mHeight, mIsThumbnail);
+        }
+    }
+
+    /**
+     * The medias cache of an account : it records the medias which are saved in the shared folder.
+     */
+    private class ReferencingMediasCache extends MXMediasCache {
+        private final MXSession mSession;
+
+        // the avatar thumbnails are loaded as bitmaps in the thumbnails folder
+        private boolean mIsLoadingAvatarThumbnail = false;
+
+        ReferencingMediasCache(MXSession session) {
+            super(session.getContentManager(), SHARED_CACHE_ID, mContext);
+            mSession = session;
+        }
+
+        @Override
+        public synchronized String loadAvatarThumbnail(HomeserverConnectionConfig hsConfig, ImageView imageView, String url, int size) {
+            addReference(mSession, url, size, size, null, true);
+
+            mIsLoadingAvatarThumbnail = true;
+
+            try {
+                return super.loadAvatarThumbnail(hsConfig, imageView, url, size);
+            } finally {
+                mIsLoadingAvatarThumbnail = false;
+            }
+        }
+
+        @Override
+        public synchronized String loadBitmap(Context context, HomeserverConnectionConfig hsConfig, ImageView imageView, String url, int width, int height, int rotationAngle, int orientation, String mimeType, File folderFile) {
+            // the other loadBitmap() methods end here
+            if (!mIsLoadingAvatarThumbnail) {
+                addReference(mSession, url, width, height, mimeType, false);
+            }
+
+            return super.loadBitmap(context, hsConfig, imageView, url, width, height, rotationAngle, orientation, mimeType, folderFile);
+        }
+
+        @Override
+        public String downloadMedia(Context context, HomeserverConnectionConfig hsConfig, String url, String mimeType) {
+            addReference(mSession, url, FULL_SIZE_MEDIA, FULL_SIZE_MEDIA, mimeType, false);
+            return super.downloadMedia(context, hsConfig, url, mimeType);
+        }
+
+        @Override
+        public void saveFileMediaForUrl(String mediaUrl, String fileUrl, int width, int height, String mimeType, boolean keepSource) {
+            // an uploaded media is renamed from its pending copy
+            addReference(mSession, mediaUrl, width, height, mimeType, false);
+            super.saveFileMediaForUrl(mediaUrl, fileUrl, width, height, mimeType, keepSource);
+        }
+    }
+
+    private final Context mContext;
+    private final File mMediasFolderFile;
+    private final File mReferencesFile;
+
+    // matrix id -> the medias cache of the account
+    private final HashMap<String, ReferencingMediasCache> mMediasCaches = new HashMap<String, ReferencingMediasCache>();
+
+    // media key -> the accounts which use it
+    private final HashMap<String, MediaReference> mReferencesByKey = new HashMap<String, MediaReference>();
+    private boolean mAreReferencesLoaded = false;
+    private boolean mAreReferencesUpdated = false;
+    private boolean mIsSavingReferences = false;
+
+    private long mLastQuotaCheck = 0;
+
+    /**
+     * Constructor
+     * @param context the context
+     */
+    public SharedMediasCache(Context context) {
+        mContext = context.getApplicationContext();
+        mMediasFolderFile = new File(mContext.getFilesDir(), MXMEDIA_STORE_FOLDER);
+        mReferencesFile = new File(mContext.getFilesDir(), REFERENCES_FILE);
+    }
+
+    /**
+     * @param session the session
+     * @return the url of the session homeserver
+     */
+    private static String homeserverUrl(MXSession session) {
+        return session.getHomeserverConfig().getHomeserverUri().toString();
+    }
+
+    /**
+     * Provides the MXMediasCache of a session.
+     * The medias of each account are resolved and downloaded from its own homeserver,
+     * and the ones saved in the shared folder are recorded for this account.
+     * @param session the session which uses the cache
+     * @return the medias cache, null if there is no session.
+     */
+    public synchronized MXMediasCache getMediasCache(MXSession session) {
+        if ((null == session) || (null == session.getCredentials()) || (null == session.getHomeserverConfig())) {
+            return null;
+        }
+
+        String matrixId = session.getCredentials().userId;
+        ReferencingMediasCache mediasCache = mMediasCaches.get(matrixId);
+
+        // the account could have been logged in again
+        if (((null == mediasCache) || (mediasCache.mSession != session)) && session.isAlive()) {
+            mediasCache = new ReferencingMediasCache(session);
+            mMediasCaches.put(matrixId, mediasCache);
+        }
+
+        return mediasCache;
+    }
+
+    /**
+     * Provides a medias cache which resolves the medias of a homeserver.
+     * @param homeserverUrl the homeserver url
+     * @return the medias cache, null if no account of this homeserver is used.
+     */
+    private synchronized MXMediasCache getHomeserverMediasCache(String homeserverUrl) {
+        for(ReferencingMediasCache mediasCache : mMediasCaches.values()) {
+            if (homeserverUrl.equals(homeserverUrl(mediasCache.mSession))) {
+                return mediasCache;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param homeserverUrl the homeserver url
+     * @param url the media url
+     * @param width the media width, FULL_SIZE_MEDIA for the full size media
+     * @param height the media height, FULL_SIZE_MEDIA for the full size media
+     * @param isThumbnail true for an avatar thumbnail
+     * @return the media key
+     */
+    private static String mediaKey(String homeserverUrl, String url, int width, int height, boolean isThumbnail) {
+        return homeserverUrl + "#" + url + "#" + width + "x" + height + (isThumbnail ? "#thumbnail" : "");
+    }
+
+    /**
+     * @param mediasCache a medias cache of the media homeserver
+     * @param reference the media reference
+     * @return the media file, null if it is not saved.
+     */
+    private static File mediaFile(MXMediasCache mediasCache, MediaReference reference) {
+        if (reference.mIsThumbnail) {
+            return mediasCache.thumbnailCacheFile(reference.mUrl, reference.mWidth);
+        }
+
+        return mediasCache.mediaCacheFile(reference.mUrl, reference.mWidth, reference.mHeight, reference.mMimeType);
+    }
+
+    /**
+     * Load the saved references if they are not yet loaded.
+     * It must be called with the mReferencesByKey lock.
+     */
+    private void loadReferences() {
+        if (mAreReferencesLoaded) {
+            return;
+        }
+
+        mAreReferencesLoaded = true;
+
+        if (!mReferencesFile.exists()) {
+            return;
+        }
+
+        InputStreamReader reader = null;
+
+        try {
+            reader = new InputStreamReader(new FileInputStream(mReferencesFile), "UTF-8");
+            List<MediaReference> references = new Gson().fromJson(reader, new TypeToken<List<MediaReference>>() {}.getType());
+
+            if (null != references) {
+                for(MediaReference reference : references) {
+                    mReferencesByKey.put(reference.getKey(), reference);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "loadReferences failed " + e.getLocalizedMessage());
+        } finally {
+            if (null != reader) {
+                try {
+                    reader.close();
+                } catch (Exception e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Save the references in background.
+     * The saves are merged while a previous one is running.
+     */
+    private void saveReferences() {
+        synchronized (mReferencesByKey) {
+            mAreReferencesUpdated = true;
+
+            if (mIsSavingReferences) {
+                return;
+            }
+
+            mIsSavingReferences = true;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    String json;
+
+                    synchronized (mReferencesByKey) {
+                        if (!mAreReferencesUpdated) {
+                            mIsSavingReferences = false;
+                            return;
+                        }
+
+                        mAreReferencesUpdated = false;
+                        json = new Gson().toJson(new ArrayList<MediaReference>(mReferencesByKey.values()));
+                    }
+
+                    // write a temporary file to never keep a truncated one
+                    File tmpFile = new File(mReferencesFile.getPath() + ".tmp");
+                    OutputStreamWriter writer = null;
+
+                    try {
+                        writer = new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8");
+                        writer.write(json);
+                        writer.close();
+                        writer = null;
+
+                        if (!tmpFile.renameTo(mReferencesFile)) {
+                            Log.e(LOG_TAG, "saveReferences : cannot rename " + tmpFile.getPath());
+                        }
+                    } catch (Exception e) {
+                        Log.e(LOG_TAG, "saveReferences failed " + e.getLocalizedMessage());
+                    } finally {
+                        if (null != writer) {
+                            try {
+                                writer.close();
+                            } catch (Exception e) {
+                            }
+                        }
+                    }
+                }
+            }
+        });
+
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Save that an account uses a media.
+     * @param session the account session
+     * @param url the media url
+     * @param width the media width, FULL_SIZE_MEDIA for the full size media
+     * @param height the media height, FULL_SIZE_MEDIA for the full size media
+     * @param mimeType the media mime type
+     * @param isThumbnail true for an avatar thumbnail
+     */
+    private void addReference(MXSession session, String url, int width, int height, String mimeType, boolean isThumbnail) {
+        if ((null == session) || (null == session.getCredentials()) || (null == url)) {
+            return;
+        }
+
+        boolean isUpdated;
+
+        synchronized (mReferencesByKey) {
+            loadReferences();
+
+            String homeserverUrl = homeserverUrl(session);
+            String key = mediaKey(homeserverUrl, url, width, height, isThumbnail);
+            MediaReference reference = mReferencesByKey.get(key);
+
+            if (null == reference) {
+                reference = new MediaReference(homeserverUrl, url, width, height, mimeType, isThumbnail);
+                mReferencesByKey.put(key, reference);
+            }
+
+            isUpdated = reference.mMatrixIds.add(session.getCredentials().userId);
+        }
+
+        if (isUpdated) {
+            saveReferences();
+        }
+
+        checkQuota();
+    }
+
+    /**
+     * Retrieve the cached thumbnail of a media.
+     * @param session the account session
+     * @param url the media url
+     * @param size the thumbnail size
+     * @return the cached file, null if it is not cached.
+     */
+    public File thumbnailCacheFile(MXSession session, String url, int size) {
+        MXMediasCache mediasCache = getMediasCache(session);
+        return (null == mediasCache) ? null : mediasCache.thumbnailCacheFile(url, size);
+    }
+
+    /**
+     * Load an avatar thumbnail into an image view.
+     * @param session the account session
+     * @param imageView the image view
+     * @param url the avatar url
+     * @param size the thumbnail size
+     * @return the download id, null if the thumbnail is cached.
+     */
+    public String loadAvatarThumbnail(MXSession session, ImageView imageView, String url, int size) {
+        MXMediasCache mediasCache = getMediasCache(session);
+        return (null == mediasCache) ? null : mediasCache.loadAvatarThumbnail(session.getHomeserverConfig(), imageView, url, size);
+    }
+
+    /**
+     * Retrieve the cached file of a media.
+     * @param session the account session
+     * @param url the media url
+     * @param mimeType the media mime type
+     * @return the cached file, null if it is not cached.
+     */
+    public File mediaCacheFile(MXSession session, String url, String mimeType) {
+        MXMediasCache mediasCache = getMediasCache(session);
+        return (null == mediasCache) ? null : mediasCache.mediaCacheFile(url, mimeType);
+    }
+
+    /**
+     * Download a media.
+     * A pending download of the same media is reused.
+     * @param session the account session
+     * @param url the media url
+     * @param mimeType the media mime type
+     * @return the download id, null if the media is cached.
+     */
+    public String downloadMedia(MXSession session, String url, String mimeType) {
+        MXMediasCache mediasCache = getMediasCache(session);
+        return (null == mediasCache) ? null : mediasCache.downloadMedia(mContext, session.getHomeserverConfig(), url, mimeType);
+    }
+
+    /**
+     * Listen to a media download.
+     * @param downloadId the download id
+     * @param callback the listener
+     */
+    public void addDownloadListener(String downloadId, MXMediasCache.DownloadCallback callback) {
+        MXMediasCache mediasCache = null;
+
+        synchronized (this) {
+            if (mMediasCaches.size() > 0) {
+                mediasCache = mMediasCaches.values().iterator().next();
+            }
+        }
+
+        // the downloads are tracked by the SDK whatever the cache which starts them
+        if (null != mediasCache) {
+            mediasCache.addDownloadListener(downloadId, callback);
+        }
+    }
+
+    /**
+     * A session is closed, but its account is kept.
+     * The medias caches built with its content manager are released.
+     * @param session the closed session
+     */
+    public synchronized void onSessionClosed(MXSession session) {
+        if ((null == session) || (null == session.getCredentials())) {
+            return;
+        }
+
+        String matrixId = session.getCredentials().userId;
+        ReferencingMediasCache mediasCache = mMediasCaches.get(matrixId);
+
+        if ((null != mediasCache) && (mediasCache.mSession == session)) {
+            mMediasCaches.remove(matrixId);
+        }
+    }
+
+    /**
+     * An account is removed.
+     * The medias which were only used by this account are deleted.
+     * @param session the removed session
+     */
+    public void onSessionRemoved(MXSession session) {
+        if ((null == session) || (null == session.getCredentials())) {
+            return;
+        }
+
+        String matrixId = session.getCredentials().userId;
+        ArrayList<MediaReference> unusedReferences = new ArrayList<MediaReference>();
+        boolean isUpdated = false;
+
+        synchronized (mReferencesByKey) {
+            loadReferences();
+
+            ArrayList<String> keys = new ArrayList<String>(mReferencesByKey.keySet());
+
+            for(String key : keys) {
+                MediaReference reference = mReferencesByKey.get(key);
+
+                if (reference.mMatrixIds.remove(matrixId)) {
+                    isUpdated = true;
+
+                    if (reference.mMatrixIds.isEmpty()) {
+                        mReferencesByKey.remove(key);
+                        unusedReferences.add(reference);
+                    }
+                }
+            }
+        }
+
+        if (isUpdated) {
+            saveReferences();
+        }
+
+        // the account medias are resolved by the content manager of its homeserver
+        MXMediasCache mediasCache = getMediasCache(session);
+
+        if (null == mediasCache) {
+            mediasCache = getHomeserverMediasCache(homeserverUrl(session));
+        }
+
+        // the content manager is released with its session
+        onSessionClosed(session);
+
+        if ((null == mediasCache) && (unusedReferences.size() > 0)) {
+            Log.e(LOG_TAG, "onSessionRemoved : " + unusedReferences.size() + " medias cannot be resolved without a live session");
+        } else if (null != mediasCache) {
+            for(MediaReference reference : unusedReferences) {
+                File file = mediaFile(mediasCache, reference);
+
+                if ((null != file) && !file.delete()) {
+                    Log.e(LOG_TAG, "onSessionRemoved : cannot delete " + file.getPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the cached medias.
+     * The medias folder is deleted even if no session provides the medias cache.
+     */
+    public void clear() {
+        ArrayList<MXMediasCache> mediasCaches;
+
+        synchronized (this) {
+            mediasCaches = new ArrayList<MXMediasCache>(mMediasCaches.values());
+
+            // they are rebuilt with their folders tree
+            mMediasCaches.clear();
+        }
+
+        // the decoded bitmaps are also released
+        for(MXMediasCache mediasCache : mediasCaches) {
+            mediasCache.clearCache();
+        }
+
+        if (mMediasFolderFile.exists() && !ContentUtils.deleteDirectory(mMediasFolderFile)) {
+            Log.e(LOG_TAG, "clear : cannot delete " + mMediasFolderFile.getPath());
+        }
+
+        synchronized (mReferencesByKey) {
+            mReferencesByKey.clear();
+            mAreReferencesLoaded = true;
+        }
+
+        saveReferences();
+    }
+
+    /**
+     * @return the disk usage of all the medias caches.
+     */
+    public long diskUsage() {
+        long size = 0;
+
+        for(File file : listFiles(mMediasFolderFile)) {
+            size += file.length();
+        }
+
+        return size;
+    }
+
+    /**
+     * List the files of a folder and of its sub folders.
+     * @param folder the folder
+     * @return the files list
+     */
+    private static ArrayList<File> listFiles(File folder) {
+        ArrayList<File> files = new ArrayList<File>();
+        File[] children = folder.listFiles();
+
+        if (null != children) {
+            for(File child : children) {
+                if (child.isDirectory()) {
+                    files.addAll(listFiles(child));
+                } else {
+                    files.add(child);
+                }
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * A saved media file and its reference.
+     */
+    private static class ReferencedFile {
+        final MediaReference mReference;
+        final File mFile;
+        final long mLength;
+        final long mLastModified;
+
+        ReferencedFile(MediaReference reference, File file) {
+            mReference = reference;
+            mFile = file;
+            mLength = file.length();
+            mLastModified = file.lastModified();
+        }
+    }
+
+    /**
+     * Delete the least recently saved medias when the tracked medias exceed the disk quota.
+     * Only the referenced medias are evicted, and their references are removed with them.
+     * The check is performed in background and at most once per QUOTA_CHECK_DELAY_MS.
+     */
+    private void checkQuota() {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+
+            if ((now - mLastQuotaCheck) < QUOTA_CHECK_DELAY_MS) {
+                return;
+            }
+
+            mLastQuotaCheck = now;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<MediaReference> references;
+
+                synchronized (mReferencesByKey) {
+                    loadReferences();
+                    references = new ArrayList<MediaReference>(mReferencesByKey.values());
+                }
+
+                // the pending downloads have no file yet, the medias of an unused homeserver cannot be resolved
+                ArrayList<ReferencedFile> files = new ArrayList<ReferencedFile>();
+                HashMap<String, MXMediasCache> mediasCachesByHomeserverUrl = new HashMap<String, MXMediasCache>();
+                long size = 0;
+
+                for(MediaReference reference : references) {
+                    MXMediasCache mediasCache = mediasCachesByHomeserverUrl.get(reference.mHomeserverUrl);
+
+                    if ((null == mediasCache) && !mediasCachesByHomeserverUrl.containsKey(reference.mHomeserverUrl)) {
+                        mediasCache = getHomeserverMediasCache(reference.mHomeserverUrl);
+                        mediasCachesByHomeserverUrl.put(reference.mHomeserverUrl, mediasCache);
+                    }
+
+                    File file = (null != mediasCache) ? mediaFile(mediasCache, reference) : null;
+
+                    if (null != file) {
+                        ReferencedFile referencedFile = new ReferencedFile(reference, file);
+                        files.add(referencedFile);
+                        size += referencedFile.mLength;
+                    }
+                }
+
+                if (size <= MAX_DISK_USAGE_BYTES) {
+                    return;
+                }
+
+                Log.d(LOG_TAG, "checkQuota : " + size + " bytes, delete the oldest medias");
+
+                // the oldest files first
+                Collections.sort(files, new Comparator<ReferencedFile>() {
+                    @Override
+                    public int compare(ReferencedFile lhs, ReferencedFile rhs) {
+                        return (lhs.mLastModified < rhs.mLastModified) ? -1 : ((lhs.mLastModified == rhs.mLastModified) ? 0 : 1);
+                    }
+                });
+
+                boolean isUpdated = false;
+
+                for(ReferencedFile referencedFile : files) {
+                    if (size <= MAX_DISK_USAGE_BYTES) {
+                        break;
+                    }
+
+                    if (referencedFile.mFile.delete()) {
+                        size -= referencedFile.mLength;
+
+                        synchronized (mReferencesByKey) {
+                            // the media could have been cleared meanwhile
+                            if (mReferencesByKey.get(referencedFile.mReference.getKey()) == referencedFile.mReference) {
+                                mReferencesByKey.remove(referencedFile.mReference.getKey());
+                                isUpdated = true;
+                            }
+                        }
+                    } else {
+                        Log.e(LOG_TAG, "checkQuota : cannot delete " + referencedFile.mFile.getPath());
+                    }
+                }
+
+                if (isUpdated) {
+                    saveReferences();
+                }
+            }
+        });
+
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+}
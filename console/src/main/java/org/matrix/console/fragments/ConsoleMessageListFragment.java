@@ -101,7 +101,7 @@ public class ConsoleMessageListFragment extends MatrixMessageListFragment {
 
     @Override
     public MXMediasCache getMXMediasCache() {
-       return Matrix.getInstance(getActivity()).getMediasCache();
+       return Matrix.getInstance(getActivity()).getMediasCache(mSession);
     }
 
     @Override
@@ -482,14 +482,14 @@ public class ConsoleMessageListFragment extends MatrixMessageListFragment {
             FileMessage fileMessage = JsonUtils.toFileMessage(event.content);
 
             if (null != fileMessage.url) {
-                File mediaFile =  mSession.getMediasCache().mediaCacheFile(fileMessage.url, fileMessage.getMimeType());
+                File mediaFile =  Matrix.getInstance(getActivity()).getSharedMediasCache().mediaCacheFile(mSession, fileMessage.url, fileMessage.getMimeType());
 
                 // is the file already saved
                 if (null != mediaFile) {
                     String savedMediaPath = CommonActivityUtils.saveMediaIntoDownloads(getActivity(), mediaFile, fileMessage.body, fileMessage.getMimeType());
                     CommonActivityUtils.openMedia(getActivity(), savedMediaPath, fileMessage.getMimeType());
                 } else {
-                    mSession.getMediasCache().downloadMedia(getActivity(), mSession.getHomeserverConfig(), fileMessage.url, fileMessage.getMimeType());
+                    Matrix.getInstance(getActivity()).getSharedMediasCache().downloadMedia(mSession, fileMessage.url, fileMessage.getMimeType());
                     mAdapter.notifyDataSetChanged();
                 }
             }
@@ -497,16 +497,16 @@ public class ConsoleMessageListFragment extends MatrixMessageListFragment {
            final VideoMessage videoMessage = JsonUtils.toVideoMessage(event.content);
 
             if (null != videoMessage.url) {
-                File mediaFile =  mSession.getMediasCache().mediaCacheFile(videoMessage.url, videoMessage.getVideoMimeType());
+                File mediaFile =  Matrix.getInstance(getActivity()).getSharedMediasCache().mediaCacheFile(mSession, videoMessage.url, videoMessage.getVideoMimeType());
 
                 // is the file already saved
                 if (null != mediaFile) {
                     String savedMediaPath = CommonActivityUtils.saveMediaIntoDownloads(getActivity(), mediaFile, videoMessage.body, videoMessage.getVideoMimeType());
                     CommonActivityUtils.openMedia(getActivity(), savedMediaPath, videoMessage.getVideoMimeType());
                 } else {
-                    final String expectedDownloadId = mSession.getMediasCache().downloadMedia(getActivity(), mSession.getHomeserverConfig(), videoMessage.url, videoMessage.getVideoMimeType());
+                    final String expectedDownloadId = Matrix.getInstance(getActivity()).getSharedMediasCache().downloadMedia(mSession, videoMessage.url, videoMessage.getVideoMimeType());
 
-                    mSession.getMediasCache().addDownloadListener(expectedDownloadId, new MXMediasCache.DownloadCallback() {
+                    Matrix.getInstance(getActivity()).getSharedMediasCache().addDownloadListener(expectedDownloadId, new MXMediasCache.DownloadCallback() {
                         @Override
                         public void onDownloadStart(String downloadId) {
                         }
@@ -522,7 +522,7 @@ public class ConsoleMessageListFragment extends MatrixMessageListFragment {
                         @Override
                         public void onDownloadComplete(String aDownloadId) {
                             if (TextUtils.equals(aDownloadId, expectedDownloadId)) {
-                                File mediaFile =  mSession.getMediasCache().mediaCacheFile(videoMessage.url, videoMessage.getVideoMimeType());
+                                File mediaFile =  Matrix.getInstance(getActivity()).getSharedMediasCache().mediaCacheFile(mSession, videoMessage.url, videoMessage.getVideoMimeType());
 
                                 // is the file already saved
                                 if (null != mediaFile) {
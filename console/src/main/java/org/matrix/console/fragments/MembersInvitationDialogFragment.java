@@ -81,7 +81,7 @@ public class MembersInvitationDialogFragment extends DialogFragment {
      * @return the used medias cache
      */
     public MXMediasCache getMXMediasCache() {
-        return Matrix.getInstance(getActivity()).getMediasCache();
+        return Matrix.getInstance(getActivity()).getMediasCache(mSession);
     }
 
     @Override
@@ -89,7 +89,7 @@ public class ReadReceiptsDialogFragment extends DialogFragment {
      * @return the used medias cache
      */
     public MXMediasCache getMXMediasCache() {
-        return Matrix.getInstance(getActivity()).getMediasCache();
+        return Matrix.getInstance(getActivity()).getMediasCache(mSession);
     }
 
     @Override
@@ -163,7 +163,7 @@ public class RoomMembersDialogFragment extends DialogFragment {
      * @return the used medias cache
      */
     public MXMediasCache getMXMediasCache() {
-        return Matrix.getInstance(getActivity()).getMediasCache();
+        return Matrix.getInstance(getActivity()).getMediasCache(mSession);
     }
 
     @Override
@@ -17,13 +17,22 @@
 package org.matrix.console.gcm;
 
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.google.android.gms.gcm.GcmListenerService;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
+import org.matrix.androidsdk.MXSession;
+import org.matrix.androidsdk.rest.model.Event;
 import org.matrix.console.ConsoleApplication;
 import org.matrix.console.Matrix;
 import org.matrix.console.activity.CommonActivityUtils;
+import org.matrix.console.services.EventStreamService;
+
+import java.util.List;
 
 import java.util.logging.Handler;
 
@@ -33,6 +42,75 @@ public class MatrixGcmListenerService extends GcmListenerService {
     private Boolean mCheckLaunched = false;
     private android.os.Handler mUIhandler = null;
 
+    /**
+     * The message described by a push payload.
+     */
+    private static class PushMessage {
+        String mRoomId;
+        String mRoomName;
+        String mEventId;
+        String mFrom;
+        String mBody;
+    }
+
+    /**
+     * Extract the message from a push payload.
+     * @param data the push payload
+     * @return the message, null if the payload does not describe a text message.
+     */
+    private static PushMessage parsePushMessage(Bundle data) {
+        String contentAsString = data.getString("content");
+
+        if (!Event.EVENT_TYPE_MESSAGE.equals(data.getString("type")) || (null == contentAsString)) {
+            return null;
+        }
+
+        PushMessage pushMessage = new PushMessage();
+        pushMessage.mRoomId = data.getString("room_id");
+        pushMessage.mRoomName = data.getString("room_name");
+        pushMessage.mEventId = data.getString("event_id");
+        pushMessage.mFrom = data.getString("sender_display_name");
+
+        if (TextUtils.isEmpty(pushMessage.mFrom)) {
+            pushMessage.mFrom = data.getString("sender");
+        }
+
+        try {
+            JsonObject content = new JsonParser().parse(contentAsString).getAsJsonObject();
+            pushMessage.mBody = content.get("body").getAsString();
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "parsePushMessage : invalid content " + e.getLocalizedMessage());
+        }
+
+        if ((null == pushMessage.mRoomId) || (null == pushMessage.mEventId) || (null == pushMessage.mFrom) || (null == pushMessage.mBody)) {
+            return null;
+        }
+
+        return pushMessage;
+    }
+
+    /**
+     * Provides the session which has joined a room.
+     * @param roomId the room id
+     * @return the session, null if it cannot be found.
+     */
+    private MXSession getRoomSession(String roomId) {
+        List<MXSession> sessions = Matrix.getInstance(getApplicationContext()).getSessions();
+
+        for(MXSession session : sessions) {
+            if (session.isAlive() && (null != session.getDataHandler().getStore().getRoom(roomId))) {
+                return session;
+            }
+        }
+
+        // the store could still be loading
+        if ((1 == sessions.size()) && sessions.get(0).isAlive()) {
+            return sessions.get(0);
+        }
+
+        return null;
+    }
+
     /**
      * Called when message is received.
      *
@@ -44,6 +122,9 @@ public class MatrixGcmListenerService extends GcmListenerService {
     public void onMessageReceived(final String from, final Bundle data) {
         Log.d(LOG_TAG, " onMessageReceived ");
 
+        final long pushTime = SystemClock.elapsedRealtime();
+        final PushMessage pushMessage = parsePushMessage(data);
+
         if (null == mUIhandler) {
             mUIhandler = new android.os.Handler(ConsoleApplication.getInstance().getMainLooper());
         }
@@ -51,6 +132,8 @@ public class MatrixGcmListenerService extends GcmListenerService {
         mUIhandler.post(new Runnable() {
             @Override
             public void run() {
+                Matrix.getInstance(getApplicationContext()).getMetricsRegistry().getPushMetrics().onPushReceived();
+
                 for (String key : data.keySet()) {
                     Log.e(LOG_TAG, " >>> " + key + " : " + data.get(key));
                 }
@@ -62,7 +145,29 @@ public class MatrixGcmListenerService extends GcmListenerService {
                     mCheckLaunched = true;
                 }
 
-                CommonActivityUtils.catchupEventStream(MatrixGcmListenerService.this);
+                String roomId = data.getString("room_id");
+
+                // the push could target a dormant account
+                Matrix.getInstance(getApplicationContext()).hydrateSessionForRoom(MatrixGcmListenerService.this, roomId);
+
+                // the catchup is only routed to the account which has joined the pushed room
+                MXSession session = (null != roomId) ? getRoomSession(roomId) : null;
+
+                if ((null != pushMessage) && (null != session) && ConsoleApplication.isAppInBackground()) {
+                    // the notification is displayed from the payload
+                    // the events stream is caught up to get the avatars, the read receipts...
+                    if (EventStreamService.displayPushNotification(getApplicationContext(), session.getCredentials().userId, pushMessage.mRoomId, pushMessage.mRoomName, pushMessage.mEventId, pushMessage.mFrom, pushMessage.mBody)) {
+                        Matrix.getInstance(getApplicationContext()).getMetricsRegistry().getPushMetrics().onPushNotified(SystemClock.elapsedRealtime() - pushTime, true);
+                    }
+                } else {
+                    EventStreamService.onPushReceived(pushTime);
+                }
+
+                if (null != session) {
+                    CommonActivityUtils.catchupEventStream(MatrixGcmListenerService.this, session.getCredentials().userId);
+                } else {
+                    CommonActivityUtils.catchupEventStream(MatrixGcmListenerService.this);
+                }
             }
         });
     }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.metrics;
+
+import org.matrix.androidsdk.MXSession;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Registry of the runtime metrics, one entry per MXSession and one per application subsystem.
+ */
+public class MetricsRegistry {
+
+    // matrix id -> metrics
+    private final LinkedHashMap<String, SessionMetrics> mMetricsByMatrixId = new LinkedHashMap<String, SessionMetrics>();
+
+    // the application level metrics, one object per subsystem
+    private final PushMetrics mPushMetrics = new PushMetrics();
+    private final RoomListMetrics mRoomListMetrics = new RoomListMetrics();
+
+    /**
+     * Start measuring a session.
+     * @param session the session
+     */
+    public void register(MXSession session) {
+        if ((null == session) || (null == session.getCredentials())) {
+            return;
+        }
+
+        SessionMetrics metrics = new SessionMetrics(session);
+        SessionMetrics formerMetrics;
+
+        synchronized (mMetricsByMatrixId) {
+            formerMetrics = mMetricsByMatrixId.put(session.getCredentials().userId, metrics);
+        }
+
+        if (null != formerMetrics) {
+            if (formerMetrics.getSession().isAlive()) {
+                formerMetrics.getSession().getDataHandler().removeListener(formerMetrics);
+            }
+        }
+
+        session.getDataHandler().addListener(metrics);
+    }
+
+    /**
+     * Stop measuring a session.
+     * @param session the session
+     */
+    public void unregister(MXSession session) {
+        if ((null == session) || (null == session.getCredentials())) {
+            return;
+        }
+
+        SessionMetrics metrics;
+
+        synchronized (mMetricsByMatrixId) {
+            metrics = mMetricsByMatrixId.get(session.getCredentials().userId);
+
+            // a new session could have been registered for the same account
+            if ((null == metrics) || (metrics.getSession() != session)) {
+                return;
+            }
+
+            mMetricsByMatrixId.remove(session.getCredentials().userId);
+        }
+
+        if (session.isAlive()) {
+            session.getDataHandler().removeListener(metrics);
+        }
+    }
+
+    /**
+     * A sync request has been started by a catchup.
+     * @param session the synced session
+     */
+    public void onSyncRequested(MXSession session) {
+        if ((null == session) || (null == session.getCredentials())) {
+            return;
+        }
+
+        SessionMetrics metrics;
+
+        synchronized (mMetricsByMatrixId) {
+            metrics = mMetricsByMatrixId.get(session.getCredentials().userId);
+        }
+
+        if ((null != metrics) && (metrics.getSession() == session)) {
+            metrics.onSyncRequested();
+        }
+    }
+
+    /**
+     * @return the pushes handling metrics
+     */
+    public PushMetrics getPushMetrics() {
+        return mPushMetrics;
+    }
+
+    /**
+     * @return the home rooms list metrics
+     */
+    public RoomListMetrics getRoomListMetrics() {
+        return mRoomListMetrics;
+    }
+
+    /**
+     * @return the registered metrics
+     */
+    public List<SessionMetrics> getMetrics() {
+        synchronized (mMetricsByMatrixId) {
+            return new ArrayList<SessionMetrics>(mMetricsByMatrixId.values());
+        }
+    }
+
+    /**
+     * Describe the metrics of all the sessions.
+     * It computes the stores disk usage so it can be slow with large stores.
+     * @return the description
+     */
+    public String toReport() {
+        String report = mPushMetrics.toReport();
+        report += mRoomListMetrics.toReport() + "\n";
+
+        for(SessionMetrics metrics : getMetrics()) {
+            report += metrics.toReport() + "\n";
+        }
+
+        return report;
+    }
+}
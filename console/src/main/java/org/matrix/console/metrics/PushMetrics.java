@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runtime metrics of the pushes handling.
+ * They are updated from the push listener and from the events stream service threads.
+ */
+public class PushMetrics {
+
+    // the catchups performed per push while some calls are active
+    private final SessionMetrics.Histogram mCallCatchupCycles = new SessionMetrics.Histogram(new long[]{1, 2, 5, 10, 20, 50});
+
+    // the delays (in ms) between a push and its notification,
+    // when it is rendered from the push payload and when it is rendered after catching up the events stream
+    private final SessionMetrics.Histogram mPayloadNotificationDelays = new SessionMetrics.Histogram(new long[]{10, 50, 100, 500, 1000, 5000});
+    private final SessionMetrics.Histogram mCatchupNotificationDelays = new SessionMetrics.Histogram(new long[]{10, 50, 100, 500, 1000, 5000});
+
+    // the received pushes and the accounts syncs performed by the catchups
+    private final AtomicLong mPushesCount = new AtomicLong(0);
+    private final AtomicLong mCatchupSyncsCount = new AtomicLong(0);
+
+    /**
+     * The event stream has been caught up several times after a push because some calls were active.
+     * @param cycles the catchups count
+     */
+    public void onCallCatchupCycles(int cycles) {
+        mCallCatchupCycles.add(cycles);
+    }
+
+    /**
+     * A push has been received.
+     */
+    public void onPushReceived() {
+        mPushesCount.incrementAndGet();
+    }
+
+    /**
+     * Some events streams have been caught up.
+     * @param syncsCount the caught up accounts count
+     */
+    public void onCatchupSyncs(int syncsCount) {
+        mCatchupSyncsCount.addAndGet(syncsCount);
+    }
+
+    /**
+     * A push has been notified.
+     * @param delay the delay in milliseconds between the push reception and the notification
+     * @param fromPayload true if the notification has been rendered from the push payload
+     */
+    public void onPushNotified(long delay, boolean fromPayload) {
+        if (fromPayload) {
+            mPayloadNotificationDelays.add(delay);
+        } else {
+            mCatchupNotificationDelays.add(delay);
+        }
+    }
+
+    /**
+     * Describe the metrics.
+     * @return the description
+     */
+    public String toReport() {
+        String report = "call catchups per push : " + mCallCatchupCycles.toString("");
+        report += "push to notification from the payload : " + mPayloadNotificationDelays.toString("ms");
+        report += "push to notification after a catchup : " + mCatchupNotificationDelays.toString("ms");
+        report += "pushes : " + mPushesCount.get() + " received, " + mCatchupSyncsCount.get() + " accounts syncs\n";
+
+        return report;
+    }
+}
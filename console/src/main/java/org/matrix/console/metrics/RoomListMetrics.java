@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runtime metrics of the home rooms list rendering.
+ * They are updated from the events threads and from the UI thread.
+ */
+public class RoomListMetrics {
+
+    // the live events received by the UI listeners and the UI updates they triggered
+    private final AtomicLong mUiReceivedEventsCount = new AtomicLong(0);
+    private final AtomicLong mUiUpdatesCount = new AtomicLong(0);
+
+    // the home list refreshes requested by the listeners and the ones applied once per frame
+    private final AtomicLong mListRefreshRequestsCount = new AtomicLong(0);
+    private final AtomicLong mListRefreshesCount = new AtomicLong(0);
+
+    // the home list rows bindings, the frames drawn while it is scrolled and the dropped ones
+    private final AtomicLong mRoomListBindsCount = new AtomicLong(0);
+    private final AtomicLong mScrollFramesCount = new AtomicLong(0);
+    private final AtomicLong mScrollDroppedFramesCount = new AtomicLong(0);
+
+    /**
+     * An events chunk has been dispatched to the UI.
+     * @param receivedEventsCount the live events received within the chunk
+     */
+    public void onChunkDispatched(int receivedEventsCount) {
+        mUiReceivedEventsCount.addAndGet(receivedEventsCount);
+        mUiUpdatesCount.incrementAndGet();
+    }
+
+    /**
+     * A list refresh has been requested.
+     */
+    public void onListRefreshRequested() {
+        mListRefreshRequestsCount.incrementAndGet();
+    }
+
+    /**
+     * The pending list refresh requests have been applied.
+     */
+    public void onListRefreshApplied() {
+        mListRefreshesCount.incrementAndGet();
+    }
+
+    /**
+     * A home list row has been bound.
+     */
+    public void onRoomListBind() {
+        mRoomListBindsCount.incrementAndGet();
+    }
+
+    /**
+     * The home list has been scrolled.
+     * @param framesCount the drawn frames
+     * @param droppedFramesCount the dropped frames
+     */
+    public void onRoomListScrolled(long framesCount, long droppedFramesCount) {
+        mScrollFramesCount.addAndGet(framesCount);
+        mScrollDroppedFramesCount.addAndGet(droppedFramesCount);
+    }
+
+    /**
+     * Describe the metrics.
+     * @return the description
+     */
+    public String toReport() {
+        String report = "UI dispatch : " + mUiReceivedEventsCount.get() + " live events, " + mUiUpdatesCount.get() + " UI updates\n";
+        report += "list refresh : " + mListRefreshRequestsCount.get() + " requests, " + mListRefreshesCount.get() + " applied refreshes\n";
+        report += "list rendering : " + mRoomListBindsCount.get() + " bound rows, " + mScrollFramesCount.get() + " scroll frames, " + mScrollDroppedFramesCount.get() + " dropped frames\n";
+
+        return report;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.metrics;
+
+import android.os.SystemClock;
+
+import org.matrix.androidsdk.MXSession;
+import org.matrix.androidsdk.data.IMXStore;
+import org.matrix.androidsdk.data.RoomState;
+import org.matrix.androidsdk.listeners.MXEventListener;
+import org.matrix.androidsdk.rest.model.Event;
+
+/**
+ * Runtime metrics of a MXSession.
+ * It listens to the session events to measure the sync requests and the chunks processing.
+ */
+public class SessionMetrics extends MXEventListener {
+
+    /**
+     * Histogram with fixed buckets.
+     */
+    public static class Histogram {
+        // the buckets upper bounds, the last bucket has no upper bound
+        private final long[] mBounds;
+        private final long[] mCounts;
+
+        private long mCount = 0;
+        private long mTotal = 0;
+        private long mMax = 0;
+
+        /**
+         * Constructor
+         * @param bounds the ascending buckets upper bounds
+         */
+        public Histogram(long[] bounds) {
+            mBounds = bounds;
+            mCounts = new long[bounds.length + 1];
+        }
+
+        /**
+         * Add a value.
+         * @param value the value
+         */
+        public synchronized void add(long value) {
+            int index = 0;
+
+            while ((index < mBounds.length) && (value > mBounds[index])) {
+                index++;
+            }
+
+            mCounts[index]++;
+            mCount++;
+            mTotal += value;
+            mMax = Math.max(mMax, value);
+        }
+
+        /**
+         * @return the values count
+         */
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        /**
+         * Describe the histogram.
+         * @param unit the values unit
+         * @return the description
+         */
+        public synchronized String toString(String unit) {
+            if (0 == mCount) {
+                return "no value\n";
+            }
+
+            String text = "count " + mCount + ", mean " + (mTotal / mCount) + unit + ", max " + mMax + unit + "\n";
+
+            for(int index = 0; index < mCounts.length; index++) {
+                if (0 != mCounts[index]) {
+                    text += "    " + ((index < mBounds.length) ? ("<= " + mBounds[index] + unit) : ("> " + mBounds[mBounds.length - 1] + unit)) + " : " + mCounts[index] + "\n";
+                }
+            }
+
+            return text;
+        }
+    }
+
+    private final MXSession mSession;
+    private final long mStartTime = SystemClock.elapsedRealtime();
+
+    // sync request start to processed chunk (it includes the server long polling when there is no new event)
+    private final Histogram mSyncLatency = new Histogram(new long[]{100, 250, 500, 1000, 2500, 5000, 10000, 30000});
+
+    // the pending sync request start, 0 if the events stream is paused
+    private long mSyncRequestTime = 0;
+
+    // live events per chunk
+    private final Histogram mEventsPerChunk = new Histogram(new long[]{0, 1, 5, 10, 50, 100, 500});
+
+    // time between the first live event of a chunk and onLiveEventsChunkProcessed
+    private final Histogram mChunkProcessing = new Histogram(new long[]{5, 10, 25, 50, 100, 250, 500, 1000});
+
+    // the pending chunk
+    private long mChunkStartTime = 0;
+    private int mChunkEventsCount = 0;
+
+    private long mLiveEventsCount = 0;
+
+    /**
+     * Constructor
+     * @param session the measured session
+     */
+    public SessionMetrics(MXSession session) {
+        mSession = session;
+    }
+
+    /**
+     * @return the measured session.
+     */
+    public MXSession getSession() {
+        return mSession;
+    }
+
+    /**
+     * A sync request has been started by a catchup.
+     * The live events stream starts its next request when a chunk is processed.
+     */
+    public synchronized void onSyncRequested() {
+        mSyncRequestTime = SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void onLiveEvent(Event event, RoomState roomState) {
+        synchronized (this) {
+            if (0 == mChunkEventsCount) {
+                mChunkStartTime = SystemClock.elapsedRealtime();
+            }
+
+            mChunkEventsCount++;
+            mLiveEventsCount++;
+        }
+    }
+
+    @Override
+    public void onLiveEventsChunkProcessed() {
+        long now = SystemClock.elapsedRealtime();
+
+        synchronized (this) {
+            mEventsPerChunk.add(mChunkEventsCount);
+
+            if (0 != mChunkEventsCount) {
+                mChunkProcessing.add(now - mChunkStartTime);
+            }
+
+            // the first chunk after the registration has no known request start
+            if (0 != mSyncRequestTime) {
+                mSyncLatency.add(now - mSyncRequestTime);
+            }
+
+            // the live events stream chains its requests, a paused one is restarted by onSyncRequested()
+            mSyncRequestTime = now;
+            mChunkEventsCount = 0;
+        }
+    }
+
+    /**
+     * Describe the metrics.
+     * It computes the store disk usage so it can be slow with large stores.
+     * @return the description
+     */
+    public String toReport() {
+        String report = "";
+
+        report += "account : " + mSession.getMyUserId() + "\n";
+
+        long elapsedMinutes = Math.max(1, (SystemClock.elapsedRealtime() - mStartTime) / (60 * 1000));
+
+        synchronized (this) {
+            report += "live events : " + mLiveEventsCount + " (" + (mLiveEventsCount / elapsedMinutes) + " per minute)\n";
+        }
+
+        report += "sync latency : " + mSyncLatency.toString("ms");
+        report += "events per chunk : " + mEventsPerChunk.toString("");
+        report += "chunk processing : " + mChunkProcessing.toString("ms");
+
+        if (mSession.isAlive()) {
+            IMXStore store = mSession.getDataHandler().getStore();
+
+            report += "store : " + (store.isReady() ? "ready" : "not ready") + (store.isCorrupted() ? ", corrupted" : "") + "\n";
+            report += "rooms : " + store.getRooms().size() + "\n";
+            report += "store disk usage : " + (store.diskUsage() / 1024) + " KB\n";
+        } else {
+            report += "the session is closed\n";
+        }
+
+        return report;
+    }
+}
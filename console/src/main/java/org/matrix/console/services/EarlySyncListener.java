@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.services;
+
+import android.content.Context;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.util.Log;
+
+import org.matrix.androidsdk.MXSession;
+import org.matrix.androidsdk.network.NetworkConnectivityReceiver;
+import org.matrix.androidsdk.rest.model.Sync.SyncResponse;
+import org.matrix.androidsdk.sync.DefaultEventsThreadListener;
+import org.matrix.androidsdk.sync.EventsThreadListener;
+
+import java.util.ArrayList;
+
+/**
+ * Events thread listener which lets the events stream start before the store is loaded.
+ * The MXFileStore reads the sync token when it is created whereas it loads the rooms in background,
+ * so the sync requests can be sent while the rooms are loading.
+ * The sync responses are buffered until the store is ready,
+ * then they are given to the data handler in their reception order.
+ */
+public class EarlySyncListener implements EventsThreadListener {
+    private static final String LOG_TAG = "EarlySyncListener";
+
+    // the session network receiver is private, so the early synced sessions share this one
+    private static NetworkConnectivityReceiver mNetworkConnectivityReceiver = null;
+
+    private final DefaultEventsThreadListener mDefaultListener;
+
+    // the sync responses received before the store is ready
+    private final ArrayList<SyncResponse> mPendingResponses = new ArrayList<SyncResponse>();
+    private boolean mIsStoreReady = false;
+    private boolean mIsDiscarded = false;
+
+    // the responses are given to the data handler one at a time
+    private final Object mDispatchLock = new Object();
+
+    /**
+     * Provides the network receiver used by the early synced events streams.
+     * @param context the context
+     * @return the network receiver
+     */
+    public static synchronized NetworkConnectivityReceiver getNetworkConnectivityReceiver(Context context) {
+        if (null == mNetworkConnectivityReceiver) {
+            mNetworkConnectivityReceiver = new NetworkConnectivityReceiver();
+            context.getApplicationContext().registerReceiver(mNetworkConnectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+
+        return mNetworkConnectivityReceiver;
+    }
+
+    /**
+     * Constructor
+     * @param session the session
+     */
+    public EarlySyncListener(MXSession session) {
+        mDefaultListener = new DefaultEventsThreadListener(session.getDataHandler());
+    }
+
+    @Override
+    public void onSyncResponse(SyncResponse response, boolean isInitialSync) {
+        synchronized (mPendingResponses) {
+            if (mIsDiscarded) {
+                return;
+            }
+
+            if (!mIsStoreReady) {
+                Log.d(LOG_TAG, "onSyncResponse : the store is not ready, " + (mPendingResponses.size() + 1) + " pending responses");
+                mPendingResponses.add(response);
+                return;
+            }
+        }
+
+        synchronized (mDispatchLock) {
+            mDefaultListener.onSyncResponse(response, isInitialSync);
+        }
+    }
+
+    @Override
+    public void onInvalidToken() {
+        mDefaultListener.onInvalidToken();
+    }
+
+    /**
+     * The store is loaded.
+     * The pending responses are given to the data handler in background,
+     * the next ones are given when the pending ones are processed.
+     */
+    public void onStoreReady() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mDispatchLock) {
+                    while (true) {
+                        ArrayList<SyncResponse> responses;
+
+                        synchronized (mPendingResponses) {
+                            if (mIsDiscarded || mPendingResponses.isEmpty()) {
+                                mIsStoreReady = true;
+                                return;
+                            }
+
+                            responses = new ArrayList<SyncResponse>(mPendingResponses);
+                            mPendingResponses.clear();
+                        }
+
+                        Log.d(LOG_TAG, "onStoreReady : process " + responses.size() + " pending responses");
+
+                        for(SyncResponse response : responses) {
+                            mDefaultListener.onSyncResponse(response, false);
+                        }
+                    }
+                }
+            }
+        });
+
+        thread.setName("EarlySyncListener");
+        thread.start();
+    }
+
+    /**
+     * The pending and the next responses are ignored.
+     * It is used when the store cannot be loaded : its sync token is no longer valid.
+     */
+    public void discard() {
+        synchronized (mPendingResponses) {
+            mIsDiscarded = true;
+            mPendingResponses.clear();
+        }
+    }
+}
@@ -20,12 +20,19 @@ import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.net.ConnectivityManager;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
 import android.text.TextUtils;
 import android.util.Log;
 import android.widget.Toast;
@@ -52,7 +59,10 @@ import org.matrix.console.util.NotificationUtils;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -66,39 +76,187 @@ public class EventStreamService extends Service {
         PAUSE,
         RESUME,
         CATCHUP,
-        GCM_STATUS_UPDATE
+        GCM_STATUS_UPDATE,
+        SCHEDULE
     }
 
     public static final String EXTRA_STREAM_ACTION = "org.matrix.console.services.EventStreamService.EXTRA_STREAM_ACTION";
     public static final String EXTRA_MATRIX_IDS = "org.matrix.console.services.EventStreamService.EXTRA_MATRIX_IDS";
+    public static final String EXTRA_CATCHUP_MATRIX_ID = "org.matrix.console.services.EventStreamService.EXTRA_CATCHUP_MATRIX_ID";
 
     private static final String LOG_TAG = "EventStreamService";
     private static final int NOTIFICATION_ID = 42;
-    private static final int MSG_NOTIFICATION_ID = 43;
     private static final int PENDING_CALL_ID = 44;
 
     private ArrayList<MXSession> mSessions;
     private ArrayList<String> mMatrixIds;
     private StreamAction mState = StreamAction.UNKNOWN;
 
-    // store the notifications description
-    private String mNotificationSessionId = null;
-    private String mNotificationRoomId = null;
-    private String mNotificationEventId = null;
-
     // call in progress
     // foreground notification
     private String mCallId = null;
 
-    // current displayed notification
-    // use to hide the "incoming call" notification
-    private String mNotifiedCallId = null;
-
     private Boolean mIsForegound = false;
-    private int mUnreadMessagesCounter = 0;
-    private HashMap<String, HashMap<String, Integer>> mUnreadMessagesMapByRoomId = new HashMap<String, HashMap<String, Integer>>();
 
-    private Notification mLatestNotification = null;
+    // syncs the accounts together while the application is in background without GCM
+    private SyncScheduler mSyncScheduler = null;
+
+    // the sync profile selected from the device state while the application is in background without GCM
+    private SyncProfile mSyncProfile = null;
+    private BroadcastReceiver mDeviceStateReceiver = null;
+
+    /**
+     * Description of a bing event.
+     * The notification lines are only built when they are displayed.
+     * The session and the room are retrieved from the room notification ids : they are not kept after a logout.
+     */
+    private static class PendingNotification {
+        final Event mEvent;
+        final RoomState mRoomState;
+        final BingRule mBingRule;
+        final boolean mIsInvitationEvent;
+        final int mUnreadMessagesCounter;
+        final int mUnreadNotifForThisUser;
+
+        PendingNotification(Event event, RoomState roomState, BingRule bingRule, boolean isInvitationEvent, int unreadMessagesCounter, int unreadNotifForThisUser) {
+            mEvent = event;
+            mRoomState = roomState;
+            mBingRule = bingRule;
+            mIsInvitationEvent = isInvitationEvent;
+            mUnreadMessagesCounter = unreadMessagesCounter;
+            mUnreadNotifForThisUser = unreadNotifForThisUser;
+        }
+    }
+
+    /**
+     * The notification of a room.
+     * It is updated incrementally : the new bing events are appended to its lines.
+     */
+    private static class RoomNotification {
+        final String mSessionId;
+        final String mRoomId;
+        final String mTag;
+
+        // the latest notified event id
+        String mEventId = null;
+
+        // the notified incoming call id, null if there is none
+        String mCallId = null;
+
+        // the latest displayed lines, the oldest first
+        final LinkedList<CharSequence> mLines = new LinkedList<CharSequence>();
+        int mMessagesCount = 0;
+
+        // the bing events which are not yet displayed
+        final ArrayList<PendingNotification> mPendingNotifications = new ArrayList<PendingNotification>();
+
+        // the events displayed from the push payloads, before the events stream has received them
+        final HashSet<String> mPushedEventIds = new HashSet<String>();
+
+        RoomNotification(String sessionId, String roomId) {
+            mSessionId = sessionId;
+            mRoomId = roomId;
+            mTag = NotificationUtils.getMessageNotificationTag(sessionId, roomId);
+        }
+    }
+
+    // the maximum number of lines displayed in a room notification
+    private static final int MAX_NOTIFICATION_LINES = 5;
+
+    // notification tag -> room notification
+    // the push notifications are displayed before the service is started so the rooms notifications are shared.
+    // they are only used from the UI thread.
+    private static final HashMap<String, RoomNotification> mRoomNotifications = new HashMap<String, RoomNotification>();
+
+    // the reception time of the oldest push which has not been notified, 0 if there is none
+    private static long mUnnotifiedPushTime = 0;
+
+    // the room notifications which have some bing events to display
+    private final ArrayList<RoomNotification> mPendingRoomNotifications = new ArrayList<RoomNotification>();
+
+    // the notifications received during this delay are displayed at once
+    private static final long NOTIFICATION_COALESCING_DELAY_MS = 1000;
+
+    // the screen is turned on at most once per quiet period
+    private static final long SCREEN_WAKE_QUIET_PERIOD_MS = 10000;
+    private static final long SCREEN_WAKE_DURATION_MS = 3000;
+
+    private final Handler mNotificationHandler = new Handler(Looper.getMainLooper());
+    private boolean mIsNotificationScheduled = false;
+    private long mLastNotificationTime = 0;
+    private long mLastScreenWakeTime = 0;
+    private PowerManager.WakeLock mScreenWakeLock = null;
+
+    private final Runnable mDisplayNotificationRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mIsNotificationScheduled = false;
+            displayPendingNotifications();
+        }
+    };
+
+    // the catchup cadence while some calls are active
+    private static final long CALL_CATCHUP_MIN_DELAY_MS = 1000;
+    private static final long CALL_CATCHUP_MAX_DELAY_MS = 10000;
+
+    private final Handler mCallCatchupHandler = new Handler(Looper.getMainLooper());
+    private boolean mIsCallCatchupScheduled = false;
+    private long mCallCatchupDelay = CALL_CATCHUP_MIN_DELAY_MS;
+
+    // the catchups triggered by the active calls since the latest push
+    private int mCallCatchupCycles = 0;
+
+    private final Runnable mCallCatchupRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mIsCallCatchupScheduled = false;
+
+            ArrayList<String> matrixIds = getActiveCallsMatrixIds();
+
+            // only the accounts with an active call are caught up
+            if ((mState == StreamAction.CATCHUP) && (matrixIds.size() > 0)) {
+                Log.d(LOG_TAG, "Catchup again because there are active calls");
+                mCallCatchupCycles++;
+                catchup(matrixIds);
+            } else {
+                stopCallCatchup();
+            }
+        }
+    };
+
+    // the pushes received during this delay trigger a single catchup per account
+    private static final long PUSH_CATCHUP_COALESCING_DELAY_MS = 2000;
+
+    private final Handler mPushCatchupHandler = new Handler(Looper.getMainLooper());
+    private boolean mIsPushCatchupScheduled = false;
+    private long mLastPushCatchupTime = 0;
+
+    // the accounts to catch up when the coalescing delay is over
+    private final HashSet<String> mPushCatchupMatrixIds = new HashSet<String>();
+    private boolean mIsFullPushCatchupPending = false;
+
+    private final Runnable mPushCatchupRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mIsPushCatchupScheduled = false;
+            runPushCatchups();
+        }
+    };
+
+    // the notification avatars cache size (in KB)
+    private static final int AVATARS_CACHE_SIZE_KB = 1024;
+
+    // avatar url and size -> decoded avatar
+    // the cached bitmaps are never recycled because the posted notifications could still use them.
+    private final LruCache<String, Bitmap> mAvatarsCache = new LruCache<String, Bitmap>(AVATARS_CACHE_SIZE_KB) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return Math.max(1, (bitmap.getRowBytes() * bitmap.getHeight()) / 1024);
+        }
+    };
+
+    // the default avatar
+    private Bitmap mPlaceholderBitmap = null;
 
     private static EventStreamService mActiveEventStreamService = null;
 
@@ -108,35 +266,174 @@ public class EventStreamService extends Service {
 
     /**
      * Cancel the push notifications for a dedicated roomId.
-     * If the roomId is null, cancel all the push notification.
-     * @param roomId
+     * The other rooms notifications are kept.
+     * @param accountId the account id
+     * @param roomId the room id
      */
     public static void cancelNotificationsForRoomId(String accountId, String roomId) {
         if (null != mActiveEventStreamService) {
             mActiveEventStreamService.cancelNotifications(accountId ,roomId);
+        } else if ((null != accountId) && (null != roomId)) {
+            // the push notifications are displayed without the service
+            String tag = NotificationUtils.getMessageNotificationTag(accountId, roomId);
+            mRoomNotifications.remove(tag);
+
+            NotificationManager nm = (NotificationManager) ConsoleApplication.getInstance().getSystemService(Context.NOTIFICATION_SERVICE);
+            nm.cancel(tag, NotificationUtils.MESSAGE_NOTIFICATION_ID);
         }
     }
 
-    private void clearNotification() {
-        NotificationManager nm = (NotificationManager) EventStreamService.this.getSystemService(Context.NOTIFICATION_SERVICE);
-        nm.cancelAll();
+    /**
+     * Cancel the push notifications of an account.
+     * It must be called when the account is removed : its rooms notifications are not kept.
+     * @param accountId the account id
+     */
+    public static void cancelNotificationsForAccount(String accountId) {
+        if (null == accountId) {
+            return;
+        }
 
-        // reset the identifiers
-        mNotificationSessionId = null;
-        mNotificationRoomId = null;
-        mNotificationEventId = null;
+        for(RoomNotification roomNotification : new ArrayList<RoomNotification>(mRoomNotifications.values())) {
+            if (accountId.equals(roomNotification.mSessionId)) {
+                cancelNotificationsForRoomId(accountId, roomNotification.mRoomId);
+            }
+        }
+    }
+
+    /**
+     * Cancel all the push notifications.
+     * The rooms notifications are cleared too : the next bing events do not append their lines to the dismissed ones.
+     */
+    public static void cancelAllNotifications() {
+        for(RoomNotification roomNotification : new ArrayList<RoomNotification>(mRoomNotifications.values())) {
+            cancelNotificationsForRoomId(roomNotification.mSessionId, roomNotification.mRoomId);
+        }
+
+        // the notifications which are not tracked (e.g. the failed pushes)
+        NotificationManager nm = (NotificationManager) ConsoleApplication.getInstance().getSystemService(Context.NOTIFICATION_SERVICE);
+        nm.cancelAll();
     }
 
     private void cancelNotifications(String accountId, String roomId) {
         // sanity checks
         if ((null != accountId) && (null != roomId)) {
-            // cancel the notifications
-            if (TextUtils.equals(mNotificationRoomId, roomId) && TextUtils.equals(accountId, mNotificationSessionId)) {
-                clearNotification();
+            RoomNotification roomNotification = mRoomNotifications.get(NotificationUtils.getMessageNotificationTag(accountId, roomId));
+
+            // cancel the room notification
+            if (null != roomNotification) {
+                cancelRoomNotification(roomNotification);
             }
         }
     }
 
+    /**
+     * Cancel a room notification, even if it is not yet displayed.
+     * The other rooms notifications are not updated.
+     * @param roomNotification the room notification
+     */
+    private void cancelRoomNotification(RoomNotification roomNotification) {
+        mRoomNotifications.remove(roomNotification.mTag);
+        mPendingRoomNotifications.remove(roomNotification);
+        roomNotification.mPendingNotifications.clear();
+
+        NotificationManager nm = (NotificationManager) EventStreamService.this.getSystemService(Context.NOTIFICATION_SERVICE);
+        nm.cancel(roomNotification.mTag, NotificationUtils.MESSAGE_NOTIFICATION_ID);
+    }
+
+    /**
+     * Provides the notification of a room.
+     * It is created if it does not exist.
+     * @param sessionId the session id
+     * @param roomId the room id
+     * @return the room notification
+     */
+    private static RoomNotification getRoomNotification(String sessionId, String roomId) {
+        String tag = NotificationUtils.getMessageNotificationTag(sessionId, roomId);
+        RoomNotification roomNotification = mRoomNotifications.get(tag);
+
+        if (null == roomNotification) {
+            roomNotification = new RoomNotification(sessionId, roomId);
+            mRoomNotifications.put(tag, roomNotification);
+        }
+
+        return roomNotification;
+    }
+
+    /**
+     * A push has been received but it could not be notified from its payload.
+     * The delay until the events stream notifies it is measured.
+     * It must be called from the UI thread.
+     * @param pushTime the push reception time (elapsedRealtime)
+     */
+    public static void onPushReceived(long pushTime) {
+        // the oldest unnotified push is measured
+        if (0 == mUnnotifiedPushTime) {
+            mUnnotifiedPushTime = pushTime;
+        }
+    }
+
+    /**
+     * Display a message notification from a push payload, before the events stream is caught up.
+     * The line is appended to the room notification, the event is not appended again
+     * when the events stream receives it.
+     * It must be called from the UI thread.
+     * @param context the context
+     * @param matrixId the account id
+     * @param roomId the room id
+     * @param roomName the room name, can be null
+     * @param eventId the event id
+     * @param from the sender display name
+     * @param body the message body
+     * @return true if the notification has been displayed.
+     */
+    public static boolean displayPushNotification(Context context, String matrixId, String roomId, String roomName, String eventId, String from, String body) {
+        RoomNotification roomNotification = getRoomNotification(matrixId, roomId);
+
+        // the push has been received twice or the event has already been notified
+        if (roomNotification.mPushedEventIds.contains(eventId) || TextUtils.equals(roomNotification.mEventId, eventId)) {
+            return false;
+        }
+
+        roomNotification.mEventId = eventId;
+        roomNotification.mCallId = null;
+        roomNotification.mPushedEventIds.add(eventId);
+
+        roomNotification.mLines.add(context.getString(R.string.user_says_body, from, body));
+
+        if (roomNotification.mLines.size() > MAX_NOTIFICATION_LINES) {
+            roomNotification.mLines.removeFirst();
+        }
+
+        roomNotification.mMessagesCount++;
+
+        // the avatars are only downloaded by the events stream
+        Bitmap largeBitmap = (null != mActiveEventStreamService) ? mActiveEventStreamService.getPlaceholderBitmap() : null;
+
+        Notification notification = NotificationUtils.buildMessageNotification(
+                context,
+                from, matrixId,
+                null,
+                Matrix.getMXSessions(context).size() > 1,
+                largeBitmap,
+                UnreadMessagesCounters.getInstance(context).getTotal(),
+                0,
+                body,
+                new ArrayList<CharSequence>(roomNotification.mLines),
+                roomNotification.mMessagesCount,
+                roomId,
+                roomName,
+                true);
+
+        NotificationManager nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        nm.notify(roomNotification.mTag, NotificationUtils.MESSAGE_NOTIFICATION_ID, notification);
+
+        if (null != mActiveEventStreamService) {
+            mActiveEventStreamService.wakeScreen();
+        }
+
+        return true;
+    }
+
     /**
      * Check if a notification must be cleared because the linked event has been read, deleted ...
      */
@@ -146,28 +443,280 @@ public class EventStreamService extends Service {
         }
     }
 
+    /**
+     * Each room notification is checked on its own :
+     * only the ones whose event has been read are cancelled.
+     */
     private void checkNotification() {
-        if (null != mNotificationRoomId) {
-            boolean clearNotification = true;
-            MXSession session = Matrix.getInstance(this).getSession(mNotificationSessionId);
-
-            if (null != session) {
-                Room room = session.getDataHandler().getRoom(mNotificationRoomId);
-
-                if (null != room) {
-                    // invitation notification
-                    if (null == mNotificationEventId) {
-                        clearNotification = !room.isInvited();
-                    } else {
-                        clearNotification = room.isEventRead(mNotificationEventId);
-                    }
+        if (mRoomNotifications.isEmpty()) {
+            return;
+        }
+
+        for(RoomNotification roomNotification : new ArrayList<RoomNotification>(mRoomNotifications.values())) {
+            if (isRoomNotificationRead(roomNotification)) {
+                cancelRoomNotification(roomNotification);
+            }
+        }
+    }
+
+    /**
+     * @param roomNotification the room notification
+     * @return true if the room notification is no more valid.
+     */
+    private boolean isRoomNotificationRead(RoomNotification roomNotification) {
+        MXSession session = Matrix.getInstance(this).getSession(roomNotification.mSessionId);
+
+        if (null != session) {
+            Room room = session.getDataHandler().getRoom(roomNotification.mRoomId);
+
+            if (null != room) {
+                // invitation notification
+                if (null == roomNotification.mEventId) {
+                    return !room.isInvited();
+                } else {
+                    return room.isEventRead(roomNotification.mEventId);
                 }
             }
+        }
+
+        return true;
+    }
+
+    /**
+     * Schedule the display of the pending notifications.
+     * The notifications are displayed at most once per NOTIFICATION_COALESCING_DELAY_MS :
+     * the ones received during this delay are merged into a single update per room.
+     */
+    private void scheduleNotification() {
+        if (mIsNotificationScheduled) {
+            return;
+        }
+
+        long delay = mLastNotificationTime + NOTIFICATION_COALESCING_DELAY_MS - SystemClock.elapsedRealtime();
+
+        if (delay <= 0) {
+            displayPendingNotifications();
+        } else {
+            mIsNotificationScheduled = true;
+            mNotificationHandler.postDelayed(mDisplayNotificationRunnable, delay);
+        }
+    }
 
-            if (clearNotification) {
-                clearNotification();
+    /**
+     * Cancel the scheduled notifications.
+     * The displayed ones are not updated.
+     */
+    private void cancelScheduledNotification() {
+        mNotificationHandler.removeCallbacks(mDisplayNotificationRunnable);
+        mIsNotificationScheduled = false;
+
+        for(RoomNotification roomNotification : mPendingRoomNotifications) {
+            roomNotification.mPendingNotifications.clear();
+
+            // nothing has been displayed for this room
+            if (0 == roomNotification.mMessagesCount) {
+                mRoomNotifications.remove(roomNotification.mTag);
             }
         }
+
+        mPendingRoomNotifications.clear();
+    }
+
+    /**
+     * Update the rooms notifications with their pending bing events.
+     * The other rooms notifications are not posted again.
+     */
+    private void displayPendingNotifications() {
+        if (mPendingRoomNotifications.isEmpty()) {
+            return;
+        }
+
+        ArrayList<RoomNotification> roomNotifications = new ArrayList<RoomNotification>(mPendingRoomNotifications);
+        mPendingRoomNotifications.clear();
+
+        mLastNotificationTime = SystemClock.elapsedRealtime();
+
+        NotificationManager nm = (NotificationManager) EventStreamService.this.getSystemService(Context.NOTIFICATION_SERVICE);
+        boolean isDisplayed = false;
+
+        for(RoomNotification roomNotification : roomNotifications) {
+            try {
+                Notification notification = buildNotification(roomNotification);
+
+                if (null != notification) {
+                    // the room notification is replaced
+                    nm.notify(roomNotification.mTag, NotificationUtils.MESSAGE_NOTIFICATION_ID, notification);
+                    isDisplayed = true;
+                }
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "displayPendingNotifications crashed "+ e.getLocalizedMessage());
+            }
+        }
+
+        if (isDisplayed) {
+            wakeScreen();
+
+            if (0 != mUnnotifiedPushTime) {
+                Matrix.getInstance(this).getMetricsRegistry().getPushMetrics().onPushNotified(mLastNotificationTime - mUnnotifiedPushTime, false);
+                mUnnotifiedPushTime = 0;
+            }
+        }
+    }
+
+    /**
+     * Turn the screen on for SCREEN_WAKE_DURATION_MS.
+     * The screen is not turned on again during SCREEN_WAKE_QUIET_PERIOD_MS.
+     */
+    private void wakeScreen() {
+        long now = SystemClock.elapsedRealtime();
+
+        if ((0 != mLastScreenWakeTime) && ((now - mLastScreenWakeTime) < SCREEN_WAKE_QUIET_PERIOD_MS)) {
+            return;
+        }
+
+        PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
+
+        // the user is already looking at the screen
+        if (pm.isScreenOn()) {
+            return;
+        }
+
+        if (null == mScreenWakeLock) {
+            mScreenWakeLock = pm.newWakeLock(PowerManager.FULL_WAKE_LOCK, "MXEventListener");
+            mScreenWakeLock.setReferenceCounted(false);
+        }
+
+        mLastScreenWakeTime = now;
+
+        // the wake lock is released after the timeout
+        mScreenWakeLock.acquire(SCREEN_WAKE_DURATION_MS);
+    }
+
+    /**
+     * Provides the notification text of a bing event.
+     * @param pendingNotification the bing event description
+     * @param room the bing event room
+     * @return the notification text
+     */
+    private String getNotificationBody(PendingNotification pendingNotification, Room room) {
+        Event event = pendingNotification.mEvent;
+
+        // call invitation
+        if (event.isCallEvent()) {
+            if (event.type.equals(Event.EVENT_TYPE_CALL_INVITE)) {
+                return getApplicationContext().getString(R.string.incoming_call);
+            } else {
+                EventDisplay eventDisplay = new EventDisplay(getApplicationContext(), event, room.getLiveState());
+                return eventDisplay.getTextualDisplay().toString();
+            }
+        } else if (Event.EVENT_TYPE_STATE_ROOM_MEMBER.equals(event.type)) {
+            return EventDisplay.getMembershipNotice(getApplicationContext(), event, pendingNotification.mRoomState);
+        } else {
+            return event.getContentAsJsonObject().getAsJsonPrimitive("body").getAsString();
+        }
+    }
+
+    /**
+     * Append the pending bing events of a room to its notification.
+     * @param roomNotification the room notification
+     * @return the updated notification, null if it cannot be built.
+     */
+    private Notification buildNotification(RoomNotification roomNotification) {
+        ArrayList<PendingNotification> pendingNotifications = new ArrayList<PendingNotification>(roomNotification.mPendingNotifications);
+        roomNotification.mPendingNotifications.clear();
+
+        MXSession session = Matrix.getInstance(this).getSession(roomNotification.mSessionId);
+
+        // the session could have been closed or the account removed (getSession() falls back to the default session)
+        if ((null == session) || !session.isAlive() || !TextUtils.equals(roomNotification.mSessionId, session.getCredentials().userId)) {
+            return null;
+        }
+
+        Room room = session.getDataHandler().getRoom(roomNotification.mRoomId);
+
+        if (null == room) {
+            return null;
+        }
+
+        PendingNotification latestNotification = null;
+        RoomMember latestMember = null;
+        String latestFrom = null;
+        String latestBody = null;
+        boolean hasNewLines = false;
+
+        for(PendingNotification pendingNotification : pendingNotifications) {
+            String from = "";
+            RoomMember member = null;
+
+            // when the event is an invitation one
+            // don't check if the sender ID is known because the members list are not yet downloaded
+            if (!pendingNotification.mIsInvitationEvent) {
+                member = room.getMember(pendingNotification.mEvent.getSender());
+
+                // invalid member
+                if (null == member) {
+                    continue;
+                }
+
+                from = member.getName();
+            }
+
+            String body = getNotificationBody(pendingNotification, room);
+
+            // the line has already been displayed from the push payload
+            if (!roomNotification.mPushedEventIds.remove(pendingNotification.mEvent.eventId)) {
+                roomNotification.mLines.add(TextUtils.isEmpty(from) ? body : getString(R.string.user_says_body, from, body));
+
+                if (roomNotification.mLines.size() > MAX_NOTIFICATION_LINES) {
+                    roomNotification.mLines.removeFirst();
+                }
+
+                roomNotification.mMessagesCount++;
+                hasNewLines = true;
+            }
+
+            latestNotification = pendingNotification;
+            latestMember = member;
+            latestFrom = from;
+            latestBody = body;
+        }
+
+        // nothing to append
+        if (null == latestNotification) {
+            return null;
+        }
+
+        Bitmap largeBitmap = null;
+
+        if (null != latestMember) {
+            largeBitmap = getAvatarBitmap(session, latestMember.avatarUrl);
+        }
+
+        if (null == largeBitmap) {
+            largeBitmap = getPlaceholderBitmap();
+        }
+
+        String roomName = null;
+        if(session.getMyUser() != null) {
+            roomName = room.getName(session.getMyUserId());
+        }
+
+        BingRule bingRule = latestNotification.mBingRule;
+
+        return NotificationUtils.buildMessageNotification(
+                EventStreamService.this,
+                latestFrom, session.getCredentials().userId,
+                roomNotification.mCallId,
+                Matrix.getMXSessions(getApplicationContext()).size() > 1,
+                largeBitmap,
+                latestNotification.mUnreadMessagesCounter,
+                latestNotification.mUnreadNotifForThisUser,
+                latestBody,
+                new ArrayList<CharSequence>(roomNotification.mLines),
+                roomNotification.mMessagesCount,
+                room.getRoomId(),
+                roomName,
+                hasNewLines && bingRule.isDefaultNotificationSound(bingRule.notificationSound()));
     }
 
     private MXEventListener mListener = new MXEventListener() {
@@ -200,6 +749,9 @@ public class EventStreamService extends Service {
 
             Log.d(LOG_TAG, "manageHangUpEvent stopRinging");
             CallViewActivity.stopRinging();
+
+            // the call state is known
+            stopCallCatchup();
         }
 
         // White list of displayable events
@@ -268,90 +820,41 @@ public class EventStreamService extends Service {
             }
 
             Boolean isInvitationEvent = false;
-            String body;
 
-            mNotifiedCallId = null;
+            String notifiedCallId = null;
 
-            // call invitation
             if (event.isCallEvent()) {
                 if (event.type.equals(Event.EVENT_TYPE_CALL_INVITE)) {
-                    body = getApplicationContext().getString(R.string.incoming_call);
-
                     try {
-                        mNotifiedCallId = event.getContentAsJsonObject().get("call_id").getAsString();
-                     } catch (Exception e) {}
-                } else {
-                    EventDisplay eventDisplay = new EventDisplay(getApplicationContext(), event, room.getLiveState());
-                    body = eventDisplay.getTextualDisplay().toString();
+                        notifiedCallId = event.getContentAsJsonObject().get("call_id").getAsString();
+                    } catch (Exception e) {}
                 }
             } else if (Event.EVENT_TYPE_STATE_ROOM_MEMBER.equals(event.type)) {
-                body = EventDisplay.getMembershipNotice(getApplicationContext(), event, roomState);
-
                 try {
                     isInvitationEvent = "invite".equals(event.getContentAsJsonObject().getAsJsonPrimitive("membership").getAsString());
                 } catch (Exception e) {}
-
-            } else {
-                body = event.getContentAsJsonObject().getAsJsonPrimitive("body").getAsString();
             }
 
             int unreadNotifForThisUser = 0;
 
+            UnreadMessagesCounters unreadMessagesCounters = getUnreadMessagesCounters();
+
             // update the badge
             if (ConsoleApplication.isAppInBackground()) {
-                CommonActivityUtils.updateUnreadMessagesBadge(getApplicationContext(), ++mUnreadMessagesCounter);
-
-                HashMap<String, Integer> countByUserIds = null;
-
-                if (mUnreadMessagesMapByRoomId.containsKey(roomId)) {
-                    countByUserIds = mUnreadMessagesMapByRoomId.get(roomId);
-                } else {
-                    countByUserIds = new HashMap<String, Integer>();
-                    mUnreadMessagesMapByRoomId.put(roomId, countByUserIds);
-                }
-
-                if (countByUserIds.containsKey(senderID)) {
-                    unreadNotifForThisUser = countByUserIds.get(senderID);
-                }
-
-                unreadNotifForThisUser++;
-                countByUserIds.put(senderID, unreadNotifForThisUser);
+                unreadNotifForThisUser = unreadMessagesCounters.increment(roomId, senderID);
+                CommonActivityUtils.updateUnreadMessagesBadge(getApplicationContext(), unreadMessagesCounters.getTotal());
             }
 
-            String from = "";
-            Bitmap largeBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.ic_contact_picture_holo_light);
-
             // when the event is an invitation one
             // don't check if the sender ID is known because the members list are not yet downloaded
-            if (!isInvitationEvent) {
-                RoomMember member = room.getMember(senderID);
-
+            if (!isInvitationEvent && (null == room.getMember(senderID))) {
                 // invalid member
-                if (null == member) {
-                    return;
-                }
-
-                from = member.getName();
-
-                int size = getApplicationContext().getResources().getDimensionPixelSize(org.matrix.androidsdk.R.dimen.chat_avatar_size);
-
-                File f = session.getMediasCache().thumbnailCacheFile(member.avatarUrl, size);
-
-                if (null != f) {
-                    BitmapFactory.Options options = new BitmapFactory.Options();
-                    options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-                    largeBitmap = BitmapFactory.decodeFile(f.getPath(), options);
-                }
-            }
-
-            String roomName = null;
-            if(session.getMyUser() != null) {
-                roomName = room.getName(session.getMyUserId());
+                return;
             }
 
-            mNotificationSessionId = session.getCredentials().userId;
-            mNotificationRoomId = roomId;
-            mNotificationEventId = event.eventId;
+            RoomNotification roomNotification = getRoomNotification(session.getCredentials().userId, roomId);
+            roomNotification.mEventId = event.eventId;
+            roomNotification.mCallId = notifiedCallId;
 
             if (bingRule.isCallRingNotificationSound(bingRule.notificationSound())) {
                 if (null == CallViewActivity.getActiveCall()) {
@@ -360,57 +863,30 @@ public class EventStreamService extends Service {
                 }
             }
 
-            mLatestNotification = NotificationUtils.buildMessageNotification(
-                    EventStreamService.this,
-                    from, session.getCredentials().userId,
-                    mNotifiedCallId,
-                    Matrix.getMXSessions(getApplicationContext()).size() > 1,
-                    largeBitmap,
-                    mUnreadMessagesCounter,
-                    unreadNotifForThisUser,
-                    body,
-                    event.roomId,
-                    roomName,
-                    bingRule.isDefaultNotificationSound(bingRule.notificationSound()));
+            // the notification lines are only built when the chunk is processed
+            if (roomNotification.mPendingNotifications.isEmpty()) {
+                mPendingRoomNotifications.add(roomNotification);
+            }
+
+            roomNotification.mPendingNotifications.add(new PendingNotification(event, roomState, bingRule, isInvitationEvent, unreadMessagesCounters.getTotal(), unreadNotifForThisUser));
         }
 
         @Override
         public void onLiveEventsChunkProcessed() {
-            if (null != mLatestNotification) {
-
-                try {
-                    NotificationManager nm = (NotificationManager) EventStreamService.this.getSystemService(Context.NOTIFICATION_SERVICE);
-                    nm.cancelAll();
-                    nm.notify(MSG_NOTIFICATION_ID, mLatestNotification);
-
-                    // turn the screen on for 3 seconds
-                    PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
-                    PowerManager.WakeLock wl = pm.newWakeLock(PowerManager.FULL_WAKE_LOCK, "MXEventListener");
-                    wl.acquire(3000);
-                    wl.release();
-                } catch (Exception e) {
-                    Log.e(LOG_TAG, "onLiveEventsChunkProcessed crashed "+ e.getLocalizedMessage());
-                }
-
-                mLatestNotification = null;
+            if (!mPendingRoomNotifications.isEmpty()) {
+                scheduleNotification();
             }
 
             // special catchup cases
             if (mState == StreamAction.CATCHUP) {
-
-                Boolean hasActiveCalls = false;
-
-                for(MXSession session : mSessions) {
-                    hasActiveCalls |= session.mCallsManager.hasActiveCalls();
-                }
-
                 // if there are some active calls, the catchup should not be stopped.
                 // because an user could answer to a call from another device.
                 // there will no push because it is his own message.
                 // so, the client has no choice to catchup until the ring is shutdown
-                if (hasActiveCalls) {
-                    Log.d(LOG_TAG, "Catchup again because there are active calls");
-                    catchup();
+                if (hasActiveCalls()) {
+                    scheduleCallCatchup();
+                } else {
+                    stopCallCatchup();
                 }
             }
         }
@@ -428,9 +904,7 @@ public class EventStreamService extends Service {
 
                 mSessions.add(session);
                 mMatrixIds.add(matrixId);
-                session.getDataHandler().addListener(mListener);
-                // perform a full sync
-                session.startEventStream(null);
+                startSessionEventStream(session);
             }
         }
     }
@@ -486,10 +960,16 @@ public class EventStreamService extends Service {
                 pause();
                 break;
             case CATCHUP:
-                catchup();
+                // a new push is received
+                stopCallCatchup();
+                schedulePushCatchup(intent.getStringExtra(EXTRA_CATCHUP_MATRIX_ID));
                 break;
             case GCM_STATUS_UPDATE:
                 gcmStatusUpdate();
+                break;
+            case SCHEDULE:
+                schedule();
+                break;
             default:
                 break;
         }
@@ -502,6 +982,71 @@ public class EventStreamService extends Service {
         stop();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        // the bitmaps are decoded again when they are required
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            Log.d(LOG_TAG, "onTrimMemory " + level + " : release the notification avatars");
+
+            mAvatarsCache.evictAll();
+            mPlaceholderBitmap = null;
+        }
+    }
+
+    /**
+     * @return the unread messages counters, they are saved to survive to the process death.
+     */
+    private UnreadMessagesCounters getUnreadMessagesCounters() {
+        return UnreadMessagesCounters.getInstance(this);
+    }
+
+    /**
+     * Provides the notification avatar of a member.
+     * The decoded avatars are cached.
+     * @param session the session
+     * @param avatarUrl the avatar url
+     * @return the avatar bitmap, null if it is not downloaded.
+     */
+    private Bitmap getAvatarBitmap(MXSession session, String avatarUrl) {
+        if (null == avatarUrl) {
+            return null;
+        }
+
+        int size = getApplicationContext().getResources().getDimensionPixelSize(org.matrix.androidsdk.R.dimen.chat_avatar_size);
+        String key = avatarUrl + "#" + size;
+
+        Bitmap bitmap = mAvatarsCache.get(key);
+
+        if (null == bitmap) {
+            File f = Matrix.getInstance(getApplicationContext()).getSharedMediasCache().thumbnailCacheFile(session, avatarUrl, size);
+
+            if (null != f) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+                bitmap = BitmapFactory.decodeFile(f.getPath(), options);
+
+                if (null != bitmap) {
+                    mAvatarsCache.put(key, bitmap);
+                }
+            }
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * @return the default notification avatar.
+     */
+    private Bitmap getPlaceholderBitmap() {
+        if (null == mPlaceholderBitmap) {
+            mPlaceholderBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.ic_contact_picture_holo_light);
+        }
+
+        return mPlaceholderBitmap;
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -512,19 +1057,73 @@ public class EventStreamService extends Service {
         session.startEventStream(store.getEventStreamToken());
     }
 
+    /**
+     * Listen to a session and start its events stream.
+     * When the store is loading, the events stream is started with the saved sync token
+     * and the sync responses are processed once the store is loaded.
+     * @param session the session
+     */
+    private void startSessionEventStream(final MXSession session) {
+        session.getDataHandler().addListener(mListener);
+        final IMXStore store = session.getDataHandler().getStore();
+
+        // the store is ready (no data loading in progress...)
+        if (store.isReady()) {
+            startEventStream(session, store);
+        } else if (null != store.getEventStreamToken()) {
+            // the sync token is read before the rooms are loaded
+            // so the events stream is started while the store is loading
+            final EarlySyncListener earlySyncListener = new EarlySyncListener(session);
+
+            Log.d(LOG_TAG, "startSessionEventStream : start the events stream before the store is ready");
+            session.startEventStream(earlySyncListener, EarlySyncListener.getNetworkConnectivityReceiver(this), store.getEventStreamToken());
+
+            store.setMXStoreListener(new IMXStore.MXStoreListener() {
+                @Override
+                public void onStoreReady(String accountId) {
+                    session.getDataHandler().checkPermanentStorageData();
+                    earlySyncListener.onStoreReady();
+                }
+
+                @Override
+                public void onStoreCorrupted(String accountId, String description) {
+                    Toast.makeText(getApplicationContext(), accountId + " : " + description, Toast.LENGTH_LONG).show();
+
+                    // the store data has been deleted so the early sync token is no more valid
+                    earlySyncListener.discard();
+                    session.stopEventStream();
+                    startEventStream(session, store);
+                }
+            });
+        } else {
+            // wait that the store is ready  before starting the events listener
+            store.setMXStoreListener(new IMXStore.MXStoreListener() {
+                @Override
+                public void onStoreReady(String accountId) {
+                    startEventStream(session, store);
+                }
+
+                @Override
+                public void onStoreCorrupted(String accountId, String description) {
+                    Toast.makeText(getApplicationContext(), accountId + " : " + description, Toast.LENGTH_LONG).show();
+                    startEventStream(session, store);
+                }
+            });
+        }
+    }
+
     private void start() {
         // reset the badge counter when resuming the application
-        if (0 != mUnreadMessagesCounter) {
-            mUnreadMessagesCounter = 0;
-            CommonActivityUtils.updateUnreadMessagesBadge(this, mUnreadMessagesCounter);
-            mUnreadMessagesMapByRoomId = new HashMap<String, HashMap<String, Integer>>();
+        if (0 != getUnreadMessagesCounters().getTotal()) {
+            getUnreadMessagesCounters().reset();
+            CommonActivityUtils.updateUnreadMessagesBadge(this, 0);
         }
 
         if (mState == StreamAction.START) {
             Log.e(LOG_TAG, "Already started.");
             return;
         }
-        else if ((mState == StreamAction.PAUSE) || (mState == StreamAction.CATCHUP)) {
+        else if ((mState == StreamAction.PAUSE) || (mState == StreamAction.CATCHUP) || (mState == StreamAction.SCHEDULE)) {
             Log.e(LOG_TAG, "Resuming active stream.");
             resume();
             return;
@@ -537,28 +1136,7 @@ public class EventStreamService extends Service {
         mActiveEventStreamService = this;
 
         for(MXSession session : mSessions) {
-            session.getDataHandler().addListener(mListener);
-            final IMXStore store = session.getDataHandler().getStore();
-
-            // the store is ready (no data loading in progress...)
-            if (store.isReady()) {
-                startEventStream(session, store);
-            } else {
-                final MXSession fSession = session;
-                // wait that the store is ready  before starting the events listener
-                store.setMXStoreListener(new IMXStore.MXStoreListener() {
-                    @Override
-                    public void onStoreReady(String accountId) {
-                        startEventStream(fSession, store);
-                    }
-
-                    @Override
-                    public void onStoreCorrupted(String accountId, String description) {
-                        Toast.makeText(getApplicationContext(), accountId + " : " + description, Toast.LENGTH_LONG).show();
-                        startEventStream(fSession, store);
-                    }
-                });
-            };
+            startSessionEventStream(session);
         }
 
         updateListenerNotification();
@@ -567,6 +1145,11 @@ public class EventStreamService extends Service {
     }
 
     private void stop() {
+        cancelScheduledNotification();
+        stopCallCatchup();
+        cancelPushCatchups();
+        stopSchedule();
+
         if (mIsForegound) {
             stopForeground(true);
         }
@@ -602,7 +1185,15 @@ public class EventStreamService extends Service {
     }
 
     private void catchup() {
-        Log.d(LOG_TAG, "catchup with state " + mState + " CurrentActivity " + ConsoleApplication.getCurrentActivity());
+        catchup(null);
+    }
+
+    /**
+     * Catch up the events streams.
+     * @param matrixIds the accounts to catch up, null to catch up all the accounts.
+     */
+    private void catchup(Collection<String> matrixIds) {
+        Log.d(LOG_TAG, "catchup " + ((null != matrixIds) ? matrixIds.toString() : "all the accounts") + " with state " + mState + " CurrentActivity " + ConsoleApplication.getCurrentActivity());
 
         // the catchup should only be done when the thread is suspended
         Boolean canCatchup = (mState == StreamAction.PAUSE) || (mState == StreamAction.CATCHUP);
@@ -617,9 +1208,17 @@ public class EventStreamService extends Service {
 
         if (canCatchup) {
             if (mSessions != null) {
+                int syncsCount = 0;
+
                 for (MXSession session : mSessions) {
-                    session.catchupEventStream();
+                    if ((null == matrixIds) || matrixIds.contains(session.getCredentials().userId)) {
+                        Matrix.getInstance(getApplicationContext()).getMetricsRegistry().onSyncRequested(session);
+                        session.catchupEventStream();
+                        syncsCount++;
+                    }
                 }
+
+                Matrix.getInstance(getApplicationContext()).getMetricsRegistry().getPushMetrics().onCatchupSyncs(syncsCount);
             } else {
                 Log.e(LOG_TAG, "catchup no session");
             }
@@ -630,13 +1229,235 @@ public class EventStreamService extends Service {
         }
     }
 
+    /**
+     * Catch up an account after a push.
+     * The pushes received within PUSH_CATCHUP_COALESCING_DELAY_MS after a catchup
+     * are merged into a single catchup per account when the delay is over.
+     * @param matrixId the pushed account, null if it is unknown.
+     */
+    private void schedulePushCatchup(String matrixId) {
+        if (null == matrixId) {
+            mIsFullPushCatchupPending = true;
+        } else {
+            mPushCatchupMatrixIds.add(matrixId);
+        }
+
+        if (mIsPushCatchupScheduled) {
+            return;
+        }
+
+        long delay = mLastPushCatchupTime + PUSH_CATCHUP_COALESCING_DELAY_MS - SystemClock.elapsedRealtime();
+
+        if (delay <= 0) {
+            runPushCatchups();
+        } else {
+            mIsPushCatchupScheduled = true;
+            mPushCatchupHandler.postDelayed(mPushCatchupRunnable, delay);
+        }
+    }
+
+    /**
+     * Catch up the pushed accounts.
+     */
+    private void runPushCatchups() {
+        mLastPushCatchupTime = SystemClock.elapsedRealtime();
+
+        if (mIsFullPushCatchupPending) {
+            catchup(null);
+        } else if (!mPushCatchupMatrixIds.isEmpty()) {
+            catchup(new ArrayList<String>(mPushCatchupMatrixIds));
+        }
+
+        mIsFullPushCatchupPending = false;
+        mPushCatchupMatrixIds.clear();
+    }
+
+    /**
+     * Cancel the pending push catchups.
+     */
+    private void cancelPushCatchups() {
+        mPushCatchupHandler.removeCallbacks(mPushCatchupRunnable);
+        mIsPushCatchupScheduled = false;
+        mIsFullPushCatchupPending = false;
+        mPushCatchupMatrixIds.clear();
+    }
+
+    /**
+     * Sync the events streams according to the device state while the application is in background without GCM.
+     * The sync profile is updated each time the battery, the network or the screen state changes.
+     */
+    private void schedule() {
+        if ((mState == StreamAction.START) || (mState == StreamAction.RESUME)) {
+            mState = StreamAction.SCHEDULE;
+
+            mDeviceStateReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    applySyncProfile();
+                }
+            };
+
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_SCREEN_ON);
+            filter.addAction(Intent.ACTION_SCREEN_OFF);
+            filter.addAction(Intent.ACTION_POWER_CONNECTED);
+            filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+            filter.addAction(Intent.ACTION_BATTERY_LOW);
+            filter.addAction(Intent.ACTION_BATTERY_OKAY);
+            filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+            registerReceiver(mDeviceStateReceiver, filter);
+
+            applySyncProfile();
+        } else {
+            Log.e(LOG_TAG, "onStartCommand invalid state schedule " + mState);
+        }
+    }
+
+    /**
+     * Select the sync profile matching the device state and apply it.
+     * Several accounts are synced together by the sync scheduler.
+     * A single account keeps its long polling request with the real time profile.
+     */
+    private void applySyncProfile() {
+        if ((mState != StreamAction.SCHEDULE) || (null == mSessions)) {
+            return;
+        }
+
+        SyncProfile profile = SyncProfile.fromDeviceState(this);
+
+        if (profile == mSyncProfile) {
+            return;
+        }
+
+        Log.d(LOG_TAG, "applySyncProfile " + mSyncProfile + " -> " + profile);
+        mSyncProfile = profile;
+
+        if ((SyncProfile.REALTIME == profile) && (mSessions.size() < 2)) {
+            if (null != mSyncScheduler) {
+                stopSyncScheduler();
+
+                for(MXSession session : mSessions) {
+                    if (session.isAlive()) {
+                        session.resumeEventStream();
+                    }
+                }
+            }
+        } else {
+            if (null == mSyncScheduler) {
+                mSyncScheduler = new SyncScheduler(this, mSessions);
+            }
+
+            mSyncScheduler.setRoundInterval(profile.getRoundInterval());
+            mSyncScheduler.start();
+        }
+
+        // display the profile in the foreground notification
+        if (null == mCallId) {
+            updateListenerNotification();
+        }
+    }
+
+    /**
+     * Stop syncing the events streams according to the device state.
+     */
+    private void stopSchedule() {
+        if (null != mDeviceStateReceiver) {
+            try {
+                unregisterReceiver(mDeviceStateReceiver);
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "stopSchedule : unregisterReceiver failed " + e.getLocalizedMessage());
+            }
+
+            mDeviceStateReceiver = null;
+        }
+
+        mSyncProfile = null;
+        stopSyncScheduler();
+    }
+
+    /**
+     * Stop the sync scheduler.
+     */
+    private void stopSyncScheduler() {
+        if (null != mSyncScheduler) {
+            mSyncScheduler.stop();
+            mSyncScheduler = null;
+        }
+    }
+
+    /**
+     * @return the matrix ids of the accounts which have an active call.
+     */
+    private ArrayList<String> getActiveCallsMatrixIds() {
+        ArrayList<String> matrixIds = new ArrayList<String>();
+
+        if (null != mSessions) {
+            for(MXSession session : mSessions) {
+                if (session.isAlive() && session.mCallsManager.hasActiveCalls()) {
+                    matrixIds.add(session.getCredentials().userId);
+                }
+            }
+        }
+
+        return matrixIds;
+    }
+
+    /**
+     * @return true if a session has an active call.
+     */
+    private boolean hasActiveCalls() {
+        return getActiveCallsMatrixIds().size() > 0;
+    }
+
+    /**
+     * Catchup again while some calls are active.
+     * The delay between two catchups is doubled after each one, up to CALL_CATCHUP_MAX_DELAY_MS.
+     */
+    private void scheduleCallCatchup() {
+        if (mIsCallCatchupScheduled) {
+            return;
+        }
+
+        mIsCallCatchupScheduled = true;
+        mCallCatchupHandler.postDelayed(mCallCatchupRunnable, mCallCatchupDelay);
+        mCallCatchupDelay = Math.min(mCallCatchupDelay * 2, CALL_CATCHUP_MAX_DELAY_MS);
+    }
+
+    /**
+     * Stop catching up for the active calls.
+     * The number of performed catchups is added to the runtime metrics.
+     */
+    private void stopCallCatchup() {
+        mCallCatchupHandler.removeCallbacks(mCallCatchupRunnable);
+        mIsCallCatchupScheduled = false;
+        mCallCatchupDelay = CALL_CATCHUP_MIN_DELAY_MS;
+
+        if (0 != mCallCatchupCycles) {
+            Log.d(LOG_TAG, "stopCallCatchup : " + mCallCatchupCycles + " catchups were performed for the active calls");
+
+            Matrix.getInstance(getApplicationContext()).getMetricsRegistry().getPushMetrics().onCallCatchupCycles(mCallCatchupCycles);
+            mCallCatchupCycles = 0;
+        }
+    }
+
     private void resume() {
+        boolean wasScheduled = (mState == StreamAction.SCHEDULE);
+
+        stopCallCatchup();
+        cancelPushCatchups();
+        stopSchedule();
+
         if (mSessions != null) {
             for(MXSession session : mSessions) {
                 session.resumeEventStream();
             }
         }
 
+        // remove the sync profile from the foreground notification
+        if (wasScheduled && (null == mCallId)) {
+            updateListenerNotification();
+        }
+
         mState = StreamAction.START;
     }
 
@@ -675,8 +1496,14 @@ public class EventStreamService extends Service {
 
         PendingIntent pi = PendingIntent.getActivity(this, 0, i, 0);
 
+        String text = "Listening for events";
+
+        if (null != mSyncProfile) {
+            text = getString(R.string.notification_listening_sync_profile, mSyncProfile.getDescription(this));
+        }
+
         notification.setLatestEventInfo(this, getString(R.string.app_name),
-                "Listening for events",
+                text,
                 pi);
         notification.flags |= Notification.FLAG_NO_CLEAR;
         return notification;
@@ -706,11 +1533,11 @@ public class EventStreamService extends Service {
             mCallId = null;
         }
 
-        // hide the "incoming call" notification
-        if (TextUtils.equals(mNotifiedCallId, callId)) {
-            NotificationManager nm = (NotificationManager) EventStreamService.this.getSystemService(Context.NOTIFICATION_SERVICE);
-            nm.cancelAll();
-            mNotifiedCallId = null;
+        // hide the "incoming call" notification, even if it is not yet displayed
+        for(RoomNotification roomNotification : new ArrayList<RoomNotification>(mRoomNotifications.values())) {
+            if (TextUtils.equals(roomNotification.mCallId, callId)) {
+                cancelRoomNotification(roomNotification);
+            }
         }
     }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.services;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+
+import org.matrix.console.R;
+
+/**
+ * The way the events streams are synced while the application is in background without GCM.
+ * It is selected from the device state : battery, network and screen.
+ */
+public enum SyncProfile {
+    // the device is charging : a single account keeps its long polling request
+    REALTIME(30000, R.string.sync_profile_realtime),
+    // the screen is off
+    BALANCED(60000, R.string.sync_profile_balanced),
+    // the network is metered
+    ECO(3 * 60000, R.string.sync_profile_eco),
+    // the battery is low
+    LOW_POWER(10 * 60000, R.string.sync_profile_low_power);
+
+    // the battery level (in percent) below which the battery is low
+    private static final int LOW_BATTERY_LEVEL = 15;
+
+    private final long mRoundInterval;
+    private final int mDescriptionResId;
+
+    SyncProfile(long roundInterval, int descriptionResId) {
+        mRoundInterval = roundInterval;
+        mDescriptionResId = descriptionResId;
+    }
+
+    /**
+     * @return the delay between two syncs of the accounts.
+     */
+    public long getRoundInterval() {
+        return mRoundInterval;
+    }
+
+    /**
+     * @param context the context
+     * @return the profile description
+     */
+    public String getDescription(Context context) {
+        return context.getString(mDescriptionResId);
+    }
+
+    /**
+     * Select the profile matching the device state.
+     * @param context the context
+     * @return the sync profile
+     */
+    public static SyncProfile fromDeviceState(Context context) {
+        // the battery state is a sticky broadcast
+        Intent batteryIntent = context.getApplicationContext().registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+
+        if (null != batteryIntent) {
+            int status = batteryIntent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+
+            if ((BatteryManager.BATTERY_STATUS_CHARGING == status) || (BatteryManager.BATTERY_STATUS_FULL == status)) {
+                return REALTIME;
+            }
+
+            int level = batteryIntent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = batteryIntent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+
+            if ((level >= 0) && (scale > 0) && ((level * 100 / scale) <= LOW_BATTERY_LEVEL)) {
+                return LOW_POWER;
+            }
+        }
+
+        if (isMeteredNetwork(context)) {
+            return ECO;
+        }
+
+        PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+
+        return pm.isScreenOn() ? REALTIME : BALANCED;
+    }
+
+    /**
+     * @param context the context
+     * @return true if the active network is metered.
+     */
+    private static boolean isMeteredNetwork(Context context) {
+        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return connectivityManager.isActiveNetworkMetered();
+        }
+
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return (null != networkInfo) && (ConnectivityManager.TYPE_MOBILE == networkInfo.getType());
+    }
+}
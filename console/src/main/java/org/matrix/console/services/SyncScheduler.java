@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.services;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.matrix.androidsdk.MXSession;
+import org.matrix.androidsdk.listeners.MXEventListener;
+import org.matrix.console.Matrix;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Syncs the accounts together while the application is in background without GCM.
+ * Each account event stream runs its own long polling request,
+ * so each account wakes the radio up at its own time.
+ * The scheduler pauses the event streams and catches them up in rounds, at the same time :
+ * the next round is only scheduled when each account has processed its events chunk.
+ * The accounts share the same connectivity state and the same backoff.
+ */
+public class SyncScheduler {
+    private static final String LOG_TAG = "SyncScheduler";
+
+    // the default delay between two rounds
+    private static final long ROUND_INTERVAL_MS = 30000;
+
+    // the delay between two rounds while a call is active
+    private static final long CALL_ROUND_INTERVAL_MS = 5000;
+
+    // the maximum delay between two rounds when they fail
+    private static final long MAX_ROUND_INTERVAL_MS = 5 * 60000;
+
+    // a round fails when an account has not processed its events chunk within this delay
+    private static final long ROUND_TIMEOUT_MS = 60000;
+
+    private final Context mContext;
+    private final List<MXSession> mSessions;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private boolean mIsStarted = false;
+
+    // the network state at the latest connectivity change
+    private boolean mIsConnected = false;
+    private long mRoundInterval = ROUND_INTERVAL_MS;
+    private long mInterval = ROUND_INTERVAL_MS;
+
+    // the accounts which have not yet processed the events chunk of the current round
+    private final HashSet<MXSession> mPendingSessions = new HashSet<MXSession>();
+
+    // session -> chunks listener
+    private final HashMap<MXSession, MXEventListener> mListenerBySession = new HashMap<MXSession, MXEventListener>();
+
+    private long mStartTime = 0;
+    // the start time of the latest round, 0 if there is none
+    private long mLastRoundTime = 0;
+    private int mRoundsCount = 0;
+
+    private final Runnable mRoundRunnable = new Runnable() {
+        @Override
+        public void run() {
+            startRound();
+        }
+    };
+
+    private final Runnable mRoundTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Log.e(LOG_TAG, "the round has timed out, " + mPendingSessions.size() + " accounts did not answer");
+
+            mPendingSessions.clear();
+            onRoundEnd(false);
+        }
+    };
+
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // the sticky broadcast describes the state at registration time
+            if (isInitialStickyBroadcast()) {
+                return;
+            }
+
+            boolean wasConnected = mIsConnected;
+            mIsConnected = isConnected();
+
+            // sync as soon as the network is back
+            // the other connectivity changes (e.g. a switch from the mobile network to wifi) do not trigger a round
+            if (!wasConnected && mIsConnected && mPendingSessions.isEmpty()) {
+                // the selected profile interval remains the minimum delay between two rounds
+                long delay = Math.max(0, mLastRoundTime + mRoundInterval - SystemClock.elapsedRealtime());
+
+                Log.d(LOG_TAG, "the network is available, sync in " + delay + " ms");
+
+                mInterval = mRoundInterval;
+                mHandler.removeCallbacks(mRoundRunnable);
+                mHandler.postDelayed(mRoundRunnable, delay);
+            }
+        }
+    };
+
+    /**
+     * Constructor
+     * @param context the context
+     * @param sessions the synced sessions, the list can be updated while the scheduler is started.
+     */
+    public SyncScheduler(Context context, List<MXSession> sessions) {
+        mContext = context.getApplicationContext();
+        mSessions = sessions;
+    }
+
+    /**
+     * @return true if the scheduler is started.
+     */
+    public boolean isStarted() {
+        return mIsStarted;
+    }
+
+    /**
+     * Update the delay between two rounds.
+     * @param roundInterval the delay in milliseconds
+     */
+    public void setRoundInterval(long roundInterval) {
+        if (roundInterval == mRoundInterval) {
+            return;
+        }
+
+        mRoundInterval = roundInterval;
+        mInterval = roundInterval;
+
+        // the pending round is rescheduled
+        if (mIsStarted && mPendingSessions.isEmpty()) {
+            scheduleRound();
+        }
+    }
+
+    /**
+     * Pause the events streams and start syncing them together.
+     */
+    public void start() {
+        if (mIsStarted) {
+            return;
+        }
+
+        Log.d(LOG_TAG, "start with " + mSessions.size() + " accounts");
+
+        mIsStarted = true;
+        mInterval = mRoundInterval;
+        mStartTime = SystemClock.elapsedRealtime();
+        mLastRoundTime = 0;
+        mRoundsCount = 0;
+
+        for(MXSession session : mSessions) {
+            if (session.isAlive()) {
+                session.pauseEventStream();
+            }
+        }
+
+        mIsConnected = isConnected();
+        mContext.registerReceiver(mConnectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        scheduleRound();
+    }
+
+    /**
+     * Stop syncing the events streams.
+     * The caller has to resume or to stop them.
+     */
+    public void stop() {
+        if (!mIsStarted) {
+            return;
+        }
+
+        long elapsedMinutes = Math.max(1, (SystemClock.elapsedRealtime() - mStartTime) / 60000);
+        Log.d(LOG_TAG, "stop : " + mRoundsCount + " rounds in " + elapsedMinutes + " minutes");
+
+        mIsStarted = false;
+        mHandler.removeCallbacks(mRoundRunnable);
+        mHandler.removeCallbacks(mRoundTimeoutRunnable);
+        mPendingSessions.clear();
+
+        try {
+            mContext.unregisterReceiver(mConnectivityReceiver);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "stop : unregisterReceiver failed " + e.getLocalizedMessage());
+        }
+
+        for(MXSession session : mListenerBySession.keySet()) {
+            if (session.isAlive()) {
+                session.getDataHandler().removeListener(mListenerBySession.get(session));
+            }
+        }
+
+        mListenerBySession.clear();
+    }
+
+    /**
+     * @return true if the network is available.
+     */
+    private boolean isConnected() {
+        ConnectivityManager connectivityManager = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+
+        return (null != networkInfo) && networkInfo.isConnected();
+    }
+
+    /**
+     * @return true if a session has an active call.
+     */
+    private boolean hasActiveCalls() {
+        for(MXSession session : mSessions) {
+            if (session.isAlive() && session.mCallsManager.hasActiveCalls()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Schedule the next round.
+     */
+    private void scheduleRound() {
+        if (!mIsStarted) {
+            return;
+        }
+
+        long delay = hasActiveCalls() ? Math.min(mInterval, CALL_ROUND_INTERVAL_MS) : mInterval;
+
+        mHandler.removeCallbacks(mRoundRunnable);
+        mHandler.postDelayed(mRoundRunnable, delay);
+    }
+
+    /**
+     * Catch up all the events streams.
+     */
+    private void startRound() {
+        if (!mIsStarted) {
+            return;
+        }
+
+        // the connectivity receiver starts a round when the network is back
+        if (!isConnected()) {
+            Log.d(LOG_TAG, "startRound : no available network");
+            return;
+        }
+
+        mRoundsCount++;
+        mLastRoundTime = SystemClock.elapsedRealtime();
+        mPendingSessions.clear();
+
+        for(final MXSession session : new ArrayList<MXSession>(mSessions)) {
+            if (session.isAlive()) {
+                if (!mListenerBySession.containsKey(session)) {
+                    MXEventListener listener = new MXEventListener() {
+                        @Override
+                        public void onLiveEventsChunkProcessed() {
+                            onChunkProcessed(session);
+                        }
+                    };
+
+                    mListenerBySession.put(session, listener);
+                    session.getDataHandler().addListener(listener);
+                }
+
+                mPendingSessions.add(session);
+                Matrix.getInstance(mContext).getMetricsRegistry().onSyncRequested(session);
+                session.catchupEventStream();
+            }
+        }
+
+        if (mPendingSessions.isEmpty()) {
+            scheduleRound();
+        } else {
+            mHandler.postDelayed(mRoundTimeoutRunnable, ROUND_TIMEOUT_MS);
+        }
+    }
+
+    /**
+     * An account has processed its events chunk.
+     * @param session the account session
+     */
+    private void onChunkProcessed(MXSession session) {
+        if (mPendingSessions.remove(session) && mPendingSessions.isEmpty()) {
+            mHandler.removeCallbacks(mRoundTimeoutRunnable);
+            onRoundEnd(true);
+        }
+    }
+
+    /**
+     * The round is completed.
+     * @param succeeded true if all the accounts have been synced.
+     */
+    private void onRoundEnd(boolean succeeded) {
+        mInterval = succeeded ? mRoundInterval : Math.min(mInterval * 2, Math.max(mRoundInterval, MAX_ROUND_INTERVAL_MS));
+        scheduleRound();
+    }
+}
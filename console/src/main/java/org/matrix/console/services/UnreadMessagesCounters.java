@@ -0,0 +1,285 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.services;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Unread messages counters displayed in the application badge and in the notifications.
+ * The counters are stored per room and per sender in a primitive array :
+ * the rooms and the senders are mapped once to a counter slot.
+ * They are saved in background after each update so they survive to the process death.
+ */
+public class UnreadMessagesCounters {
+    private static final String LOG_TAG = "UnreadMsgsCounters";
+
+    private static final String COUNTERS_FILE_NAME = "UnreadMessagesCounters";
+    private static final int FILE_VERSION = 1;
+
+    // the updates are saved at most once per delay
+    private static final long CHECKPOINT_DELAY_MS = 1000;
+
+    private static final int INITIAL_SLOTS_COUNT = 16;
+
+    private static UnreadMessagesCounters mInstance = null;
+
+    private final File mCountersFile;
+
+    // room id -> sender id -> counter slot
+    private final HashMap<String, HashMap<String, Integer>> mSlotsByRoomId = new HashMap<String, HashMap<String, Integer>>();
+    private int[] mCounters = new int[INITIAL_SLOTS_COUNT];
+    private int mSlotsCount = 0;
+    private int mTotal = 0;
+
+    private boolean mIsCheckpointScheduled = false;
+    private final Handler mCheckpointHandler;
+
+    private final Runnable mCheckpointRunnable = new Runnable() {
+        @Override
+        public void run() {
+            checkpoint();
+        }
+    };
+
+    /**
+     * Provides the process counters.
+     * The saved counters are loaded at the first call.
+     * @param context the context
+     * @return the counters
+     */
+    public static synchronized UnreadMessagesCounters getInstance(Context context) {
+        if (null == mInstance) {
+            mInstance = new UnreadMessagesCounters(context);
+        }
+
+        return mInstance;
+    }
+
+    /**
+     * Constructor
+     * @param context the context
+     */
+    private UnreadMessagesCounters(Context context) {
+        mCountersFile = new File(context.getApplicationContext().getFilesDir(), COUNTERS_FILE_NAME);
+
+        HandlerThread handlerThread = new HandlerThread("UnreadMessagesCounters", Thread.MIN_PRIORITY);
+        handlerThread.start();
+        mCheckpointHandler = new Handler(handlerThread.getLooper());
+
+        load();
+    }
+
+    /**
+     * @return the unread messages count.
+     */
+    public synchronized int getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * Count an unread message.
+     * @param roomId the room id
+     * @param senderId the sender id
+     * @return the unread messages count of this sender in this room.
+     */
+    public synchronized int increment(String roomId, String senderId) {
+        int slot = getSlot(roomId, senderId);
+
+        mCounters[slot]++;
+        mTotal++;
+
+        scheduleCheckpoint();
+
+        return mCounters[slot];
+    }
+
+    /**
+     * Reset the counters.
+     */
+    public synchronized void reset() {
+        if ((0 == mTotal) && (0 == mSlotsCount)) {
+            return;
+        }
+
+        mSlotsByRoomId.clear();
+        mCounters = new int[INITIAL_SLOTS_COUNT];
+        mSlotsCount = 0;
+        mTotal = 0;
+
+        scheduleCheckpoint();
+    }
+
+    /**
+     * Provides the counter slot of a sender in a room.
+     * It is created if it does not exist.
+     * @param roomId the room id
+     * @param senderId the sender id
+     * @return the counter slot
+     */
+    private int getSlot(String roomId, String senderId) {
+        HashMap<String, Integer> slotsBySenderId = mSlotsByRoomId.get(roomId);
+
+        if (null == slotsBySenderId) {
+            slotsBySenderId = new HashMap<String, Integer>();
+            mSlotsByRoomId.put(roomId, slotsBySenderId);
+        }
+
+        Integer slot = slotsBySenderId.get(senderId);
+
+        if (null == slot) {
+            if (mSlotsCount == mCounters.length) {
+                mCounters = Arrays.copyOf(mCounters, mCounters.length * 2);
+            }
+
+            slot = mSlotsCount++;
+            slotsBySenderId.put(senderId, slot);
+        }
+
+        return slot;
+    }
+
+    /**
+     * Save the counters after CHECKPOINT_DELAY_MS.
+     */
+    private void scheduleCheckpoint() {
+        if (!mIsCheckpointScheduled) {
+            mIsCheckpointScheduled = true;
+            mCheckpointHandler.postDelayed(mCheckpointRunnable, CHECKPOINT_DELAY_MS);
+        }
+    }
+
+    /**
+     * Save the counters.
+     * The file is replaced only when it is fully written : the temporary file is deleted when the write fails.
+     */
+    private void checkpoint() {
+        File tmpFile = new File(mCountersFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        boolean isWritten = false;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+
+            synchronized (this) {
+                mIsCheckpointScheduled = false;
+
+                out.writeInt(FILE_VERSION);
+                out.writeInt(mTotal);
+                out.writeInt(mSlotsByRoomId.size());
+
+                for(String roomId : mSlotsByRoomId.keySet()) {
+                    HashMap<String, Integer> slotsBySenderId = mSlotsByRoomId.get(roomId);
+
+                    out.writeUTF(roomId);
+                    out.writeInt(slotsBySenderId.size());
+
+                    for(String senderId : slotsBySenderId.keySet()) {
+                        out.writeUTF(senderId);
+                        out.writeInt(mCounters[slotsBySenderId.get(senderId)]);
+                    }
+                }
+            }
+
+            // the buffered data is flushed by close()
+            out.close();
+            out = null;
+            isWritten = true;
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "checkpoint failed " + e.getLocalizedMessage());
+        } finally {
+            if (null != out) {
+                try {
+                    out.close();
+                } catch (Exception e) {
+                }
+            }
+        }
+
+        if (isWritten && !tmpFile.renameTo(mCountersFile)) {
+            Log.e(LOG_TAG, "checkpoint : cannot rename " + tmpFile.getPath());
+            isWritten = false;
+        }
+
+        if (!isWritten && tmpFile.exists() && !tmpFile.delete()) {
+            Log.e(LOG_TAG, "checkpoint : cannot delete " + tmpFile.getPath());
+        }
+    }
+
+    /**
+     * Load the saved counters.
+     * A file which cannot be read is deleted, so the counters restart from zero.
+     */
+    private synchronized void load() {
+        if (!mCountersFile.exists()) {
+            return;
+        }
+
+        DataInputStream in = null;
+        boolean isCorrupted = false;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mCountersFile)));
+
+            if (FILE_VERSION == in.readInt()) {
+                mTotal = in.readInt();
+
+                int roomsCount = in.readInt();
+
+                for(int roomIndex = 0; roomIndex < roomsCount; roomIndex++) {
+                    String roomId = in.readUTF();
+                    int sendersCount = in.readInt();
+
+                    for(int senderIndex = 0; senderIndex < sendersCount; senderIndex++) {
+                        String senderId = in.readUTF();
+                        mCounters[getSlot(roomId, senderId)] = in.readInt();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "load failed " + e.getLocalizedMessage());
+
+            mSlotsByRoomId.clear();
+            mSlotsCount = 0;
+            mTotal = 0;
+            isCorrupted = true;
+        } finally {
+            if (null != in) {
+                try {
+                    in.close();
+                } catch (Exception e) {
+                }
+            }
+        }
+
+        if (isCorrupted && !mCountersFile.delete()) {
+            Log.e(LOG_TAG, "load : cannot delete " + mCountersFile.getPath());
+        }
+    }
+}
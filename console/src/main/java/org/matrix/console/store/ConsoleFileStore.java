@@ -0,0 +1,196 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.store;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.matrix.androidsdk.HomeserverConnectionConfig;
+import org.matrix.androidsdk.data.MXFileStore;
+
+import java.io.File;
+
+/**
+ * MXFileStore which can be detached from its session.
+ * A detached store keeps its data when the session is cleared,
+ * so a new session can be built from it without performing an initial sync.
+ */
+public class ConsoleFileStore extends MXFileStore {
+    private static final String LOG_TAG = "ConsoleFileStore";
+
+    // the MXFileStore layout
+    private static final String MXFILE_STORE_FOLDER = "MXFileStore";
+
+    // the store files are written when they have not changed during this delay
+    private static final long WRITES_QUIET_DELAY_MS = 500;
+    // the commit callback is not delayed after this one
+    private static final long WRITES_MAX_DELAY_MS = 10000;
+
+    // the commits are serialized on a background thread shared by the stores
+    private static Handler mCommitHandler = null;
+
+    private final File mStoreFolderFile;
+
+    private boolean mIsDetached = false;
+
+    /**
+     * Constructor
+     * @param hsConfig the account configuration
+     * @param context the context
+     */
+    public ConsoleFileStore(HomeserverConnectionConfig hsConfig, Context context) {
+        super(hsConfig, context);
+
+        mStoreFolderFile = new File(new File(context.getApplicationContext().getFilesDir(), MXFILE_STORE_FOLDER), hsConfig.getCredentials().userId);
+    }
+
+    /**
+     * @return the folder of the account store files.
+     */
+    protected File getStoreFolderFile() {
+        return mStoreFolderFile;
+    }
+
+    /**
+     * Detach the store from its session.
+     * The pending data is saved, and the store is closed once it is written.
+     * The session can then be cleared without deleting the store data.
+     * @param onDetached called on the UI thread when the store is closed.
+     */
+    public void detach(final Runnable onDetached) {
+        Log.d(LOG_TAG, "detach");
+
+        mIsDetached = true;
+
+        // closing the store cancels the pending writes
+        commit(new Runnable() {
+            @Override
+            public void run() {
+                Log.d(LOG_TAG, "detach : the data is saved");
+                ConsoleFileStore.super.close();
+
+                if (null != onDetached) {
+                    new Handler(Looper.getMainLooper()).post(onDetached);
+                }
+            }
+        });
+    }
+
+    /**
+     * Save the pending data, and call back when it is written.
+     * MXFileStore performs its writes on its own write thread and does not report their end,
+     * so the data is considered written when the store files stop changing.
+     * The method returns immediately : the commit and the check are done on a background thread.
+     * @param onSaved called on a background thread when the data is written.
+     */
+    public void commit(Runnable onSaved) {
+        commit(mStoreFolderFile, onSaved);
+    }
+
+    /**
+     * Save the pending data, and call back when the files of a folder are written.
+     * @param writtenFolderFile the folder whose files are checked.
+     * @param onSaved called on a background thread when the data is written.
+     */
+    protected void commit(final File writtenFolderFile, final Runnable onSaved) {
+        final Handler commitHandler = getCommitHandler();
+
+        commitHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                ConsoleFileStore.super.commit();
+                checkWrites(commitHandler, writtenFolderFile, SystemClock.elapsedRealtime(), -1, onSaved);
+            }
+        });
+    }
+
+    /**
+     * Call back when the files of a folder have not changed during WRITES_QUIET_DELAY_MS.
+     * @param commitHandler the commit thread handler
+     * @param folderFile the checked folder
+     * @param startTime the commit time (elapsedRealtime)
+     * @param signature the folder files signature at the previous check, -1 if there is none.
+     * @param onSaved the callback
+     */
+    private void checkWrites(final Handler commitHandler, final File folderFile, final long startTime, long signature, final Runnable onSaved) {
+        final long newSignature = filesSignature(folderFile);
+
+        if ((newSignature == signature) || ((SystemClock.elapsedRealtime() - startTime) > WRITES_MAX_DELAY_MS)) {
+            onSaved.run();
+        } else {
+            commitHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    checkWrites(commitHandler, folderFile, startTime, newSignature, onSaved);
+                }
+            }, WRITES_QUIET_DELAY_MS);
+        }
+    }
+
+    /**
+     * @param file a file or a folder
+     * @return a value which changes when a file of the tree is created, deleted or written.
+     */
+    private static long filesSignature(File file) {
+        long signature = 0;
+        File[] files = file.listFiles();
+
+        if (null != files) {
+            for(File child : files) {
+                signature = signature * 31 + filesSignature(child);
+            }
+        } else {
+            signature = file.lastModified() * 31 + file.length();
+        }
+
+        return signature;
+    }
+
+    /**
+     * @return the handler of the thread which commits the stores.
+     */
+    private static synchronized Handler getCommitHandler() {
+        if (null == mCommitHandler) {
+            HandlerThread commitThread = new HandlerThread(LOG_TAG + "_commit", Thread.MIN_PRIORITY);
+            commitThread.start();
+            mCommitHandler = new Handler(commitThread.getLooper());
+        }
+
+        return mCommitHandler;
+    }
+
+    @Override
+    public void close() {
+        // a detached store is closed when its data is saved
+        if (!mIsDetached) {
+            super.close();
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (mIsDetached) {
+            Log.d(LOG_TAG, "clear : the detached store data is kept");
+        } else {
+            super.clear();
+        }
+    }
+}
@@ -0,0 +1,636 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.store;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+
+import org.matrix.androidsdk.HomeserverConnectionConfig;
+import org.matrix.androidsdk.data.EventTimeline;
+import org.matrix.androidsdk.rest.model.Event;
+import org.matrix.androidsdk.rest.model.TokensChunkResponse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * File store which keeps only the recently used rooms messages in memory.
+ * The messages of the least recently used rooms are released when they exceed a memory budget.
+ * They are reloaded from the file system when they are accessed again,
+ * or in background with loadRoom() before a room is displayed.
+ * The rooms states and summaries remain resident.
+ */
+public class HybridFileStore extends ConsoleFileStore {
+    private static final String LOG_TAG = "HybridFileStore";
+
+    // the MXFileStore layout
+    private static final String MXFILE_STORE_GZ_ROOMS_MESSAGES_FOLDER = "messages_gz";
+    private static final String MXFILE_STORE_ROOMS_TOKENS_FOLDER = "tokens";
+
+    // memory usage of a stored event without its content
+    private static final long EVENT_OVERHEAD_BYTES = 256;
+
+    // the rooms which are never released when the memory is trimmed
+    private static final int MIN_RESIDENT_ROOMS = 2;
+
+    // room id -> last update time, the least recently used room first
+    private final LinkedHashMap<String, Long> mRoomsLastUpdate = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    // the rooms whose messages are only on the file system
+    private final HashSet<String> mReleasedRoomIds = new HashSet<String>();
+
+    // room id -> estimated memory usage of its messages, computed from their contents
+    private final HashMap<String, Long> mRoomsMessagesSizes = new HashMap<String, Long>();
+
+    // the released rooms are reloaded in background on a thread shared by the stores
+    private static Handler mLoadingHandler = null;
+
+    // the rooms updated since the last commit
+    private final HashSet<String> mUpdatedRoomIds = new HashSet<String>();
+    // room id -> the number of commits which are saving its messages
+    private final HashMap<String, Integer> mSavingRoomIds = new HashMap<String, Integer>();
+    // a save of a released room would delete its messages file
+    private int mPendingCommitsCount = 0;
+
+    private final File mMessagesFolderFile;
+    private final File mTokensFolderFile;
+
+    private long mMemoryBudget;
+
+    /**
+     * Constructor
+     * @param hsConfig the account configuration
+     * @param context the context
+     * @param memoryBudget the estimated bytes count of rooms messages to keep in memory.
+     */
+    public HybridFileStore(HomeserverConnectionConfig hsConfig, Context context, long memoryBudget) {
+        super(hsConfig, context);
+
+        mMemoryBudget = memoryBudget;
+        mMessagesFolderFile = new File(getStoreFolderFile(), MXFILE_STORE_GZ_ROOMS_MESSAGES_FOLDER);
+        mTokensFolderFile = new File(getStoreFolderFile(), MXFILE_STORE_ROOMS_TOKENS_FOLDER);
+    }
+
+    /**
+     * Update the memory budget.
+     * @param memoryBudget the estimated bytes count of rooms messages to keep in memory.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        mMemoryBudget = memoryBudget;
+        releaseColdRooms(mMemoryBudget, 0);
+    }
+
+    /**
+     * Release some memory according to the android trim level.
+     * @param level the ComponentCallbacks2 trim level
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            releaseColdRooms(0, MIN_RESIDENT_ROOMS);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            releaseColdRooms(mMemoryBudget / 4, MIN_RESIDENT_ROOMS);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            releaseColdRooms(mMemoryBudget / 2, MIN_RESIDENT_ROOMS);
+        }
+    }
+
+    /**
+     * @param event an event
+     * @return the estimated memory usage of the event.
+     */
+    private static long eventSize(Event event) {
+        // the JSON content is the main part, its strings are UTF-16 ones
+        return EVENT_OVERHEAD_BYTES + ((null != event.content) ? (2 * event.content.toString().length()) : 0);
+    }
+
+    /**
+     * @param events some events
+     * @return the estimated memory usage of the events.
+     */
+    private static long eventsSize(Collection<Event> events) {
+        long size = 0;
+
+        for(Event event : events) {
+            size += eventSize(event);
+        }
+
+        return size;
+    }
+
+    /**
+     * The size is computed once, and then updated when the room receives a live event.
+     * @param roomId the room id
+     * @return the estimated memory usage of the room messages.
+     */
+    private long roomMessagesSize(String roomId) {
+        LinkedHashMap<String, Event> events = mRoomEvents.get(roomId);
+
+        if (null == events) {
+            return 0;
+        }
+
+        Long size = mRoomsMessagesSizes.get(roomId);
+
+        if (null == size) {
+            size = eventsSize(events.values());
+            mRoomsMessagesSizes.put(roomId, size);
+        }
+
+        return size;
+    }
+
+    /**
+     * Release the least recently used rooms messages until the resident ones fit in a budget.
+     * @param budget the estimated bytes count to keep
+     * @param minResidentRooms the number of most recently used rooms to keep
+     */
+    private void releaseColdRooms(long budget, int minResidentRooms) {
+        // the rooms are loaded by open()
+        if (!isReady()) {
+            return;
+        }
+
+        synchronized (mRoomEvents) {
+            // track the rooms loaded by open()
+            ArrayList<String> untrackedRoomIds = new ArrayList<String>();
+
+            for(String roomId : mRoomEvents.keySet()) {
+                if (!mRoomsLastUpdate.containsKey(roomId)) {
+                    untrackedRoomIds.add(roomId);
+                }
+            }
+
+            // they are the least recently used ones
+            if (untrackedRoomIds.size() > 0) {
+                LinkedHashMap<String, Long> lastUpdates = new LinkedHashMap<String, Long>(mRoomsLastUpdate);
+                mRoomsLastUpdate.clear();
+
+                for(String roomId : untrackedRoomIds) {
+                    mRoomsLastUpdate.put(roomId, 0L);
+                }
+
+                mRoomsLastUpdate.putAll(lastUpdates);
+            }
+
+            long size = 0;
+
+            for(String roomId : mRoomsLastUpdate.keySet()) {
+                size += roomMessagesSize(roomId);
+            }
+
+            int residentRoomsCount = mRoomsLastUpdate.size() - mReleasedRoomIds.size();
+
+            // iterate without changing the access order
+            Iterator<Map.Entry<String, Long>> iterator = mRoomsLastUpdate.entrySet().iterator();
+
+            while ((size > budget) && (residentRoomsCount > minResidentRooms) && iterator.hasNext()) {
+                Map.Entry<String, Long> entry = iterator.next();
+                String roomId = entry.getKey();
+
+                if (!mReleasedRoomIds.contains(roomId) && canBeReleased(roomId)) {
+                    size -= roomMessagesSize(roomId);
+                    mRoomEvents.remove(roomId);
+                    mRoomEventIds.remove(roomId);
+                    mRoomsMessagesSizes.remove(roomId);
+                    mReleasedRoomIds.add(roomId);
+                    residentRoomsCount--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells if the messages of a room can be released.
+     * @param roomId the room id
+     * @return true if its messages can be reloaded from the file system.
+     */
+    private boolean canBeReleased(String roomId) {
+        // its messages file must be up to date, and no save must be pending
+        if ((mPendingCommitsCount > 0) || mUpdatedRoomIds.contains(roomId) || mSavingRoomIds.containsKey(roomId)) {
+            return false;
+        }
+
+        if (!new File(mMessagesFolderFile, roomId).exists()) {
+            return false;
+        }
+
+        LinkedHashMap<String, Event> events = mRoomEvents.get(roomId);
+
+        if (null != events) {
+            // the pending events are not reloaded as they were
+            for(Event event : events.values()) {
+                if (!event.isSent()) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reload the back pagination token of a released room.
+     * The saved messages might have been reduced, so the in-memory token can refer to unsaved messages.
+     * @param roomId the room id
+     * @param events the saved messages
+     */
+    private void loadReleasedRoomToken(String roomId, LinkedHashMap<String, Event> events) {
+        String token = null;
+
+        // the saved messages are reduced to start with a paginated one
+        if (events.size() > 0) {
+            token = events.values().iterator().next().mToken;
+        }
+
+        if (null == token) {
+            ObjectInputStream ois = null;
+
+            try {
+                ois = new ObjectInputStream(new FileInputStream(new File(mTokensFolderFile, roomId)));
+                token = (String) ois.readObject();
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "loadReleasedRoomToken " + roomId + " failed : " + e.getLocalizedMessage());
+            } finally {
+                if (null != ois) {
+                    try {
+                        ois.close();
+                    } catch (Exception e) {
+                    }
+                }
+            }
+        }
+
+        if (null != token) {
+            mRoomTokens.put(roomId, token);
+        }
+    }
+
+    /**
+     * Read the messages of a released room.
+     * It does not update the store, so it can be called without holding its lock.
+     * @param roomId the room id
+     * @return the saved messages, null if they cannot be read.
+     */
+    @SuppressWarnings("unchecked")
+    private LinkedHashMap<String, Event> readReleasedRoom(String roomId) {
+        ObjectInputStream ois = null;
+
+        try {
+            FileInputStream fis = new FileInputStream(new File(mMessagesFolderFile, roomId));
+            ois = new ObjectInputStream(new GZIPInputStream(fis));
+
+            LinkedHashMap<String, Event> events = (LinkedHashMap<String, Event>) ois.readObject();
+
+            for(Event event : events.values()) {
+                event.finalizeDeserialization();
+            }
+
+            return events;
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "readReleasedRoom " + roomId + " failed : " + e.getLocalizedMessage());
+        } finally {
+            if (null != ois) {
+                try {
+                    ois.close();
+                } catch (Exception e) {
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Restore the messages of a released room.
+     * @param roomId the room id
+     * @param events the saved messages, null if they cannot be read.
+     */
+    private void restoreReleasedRoom(String roomId, LinkedHashMap<String, Event> events) {
+        if (null == events) {
+            return;
+        }
+
+        ArrayList<String> eventIds = new ArrayList<String>();
+
+        for(Event event : events.values()) {
+            eventIds.add(event.eventId);
+        }
+
+        mRoomEvents.put(roomId, events);
+        mRoomEventIds.put(roomId, eventIds);
+        mRoomsMessagesSizes.put(roomId, eventsSize(events.values()));
+        loadReleasedRoomToken(roomId, events);
+    }
+
+    /**
+     * @return the handler of the thread which reloads the released rooms.
+     */
+    private static synchronized Handler getLoadingHandler() {
+        if (null == mLoadingHandler) {
+            HandlerThread loadingThread = new HandlerThread(LOG_TAG + "_loading", Thread.MIN_PRIORITY);
+            loadingThread.start();
+            mLoadingHandler = new Handler(loadingThread.getLooper());
+        }
+
+        return mLoadingHandler;
+    }
+
+    /**
+     * Load the messages of a room before displaying it.
+     * A released room is reloaded on a background thread, so its messages are not read from the UI thread.
+     * @param roomId the room id
+     * @param onLoaded called on the UI thread when the messages are in memory.
+     */
+    public void loadRoom(final String roomId, final Runnable onLoaded) {
+        final Handler uiHandler = new Handler(Looper.getMainLooper());
+        boolean isReleased;
+
+        synchronized (mRoomEvents) {
+            isReleased = mReleasedRoomIds.contains(roomId);
+        }
+
+        if (!isReleased) {
+            uiHandler.post(onLoaded);
+            return;
+        }
+
+        getLoadingHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                // the file is read without blocking the store
+                LinkedHashMap<String, Event> events = readReleasedRoom(roomId);
+
+                synchronized (mRoomEvents) {
+                    // the room could have been reloaded by an access in the meantime
+                    if (mReleasedRoomIds.remove(roomId)) {
+                        restoreReleasedRoom(roomId, events);
+                    }
+                }
+
+                onRoomAccess(roomId, false);
+                uiHandler.post(onLoaded);
+            }
+        });
+    }
+
+    /**
+     * A room is accessed.
+     * Its messages are reloaded if they were released.
+     * @param roomId the room id
+     * @param isUpdate true when the room messages are updated
+     */
+    private void onRoomAccess(String roomId, boolean isUpdate) {
+        if (null == roomId) {
+            return;
+        }
+
+        boolean checkBudget;
+
+        synchronized (mRoomEvents) {
+            // the room has not been loaded with loadRoom()
+            if (mReleasedRoomIds.remove(roomId)) {
+                if (Looper.myLooper() == Looper.getMainLooper()) {
+                    Log.w(LOG_TAG, "onRoomAccess : " + roomId + " is reloaded on the UI thread");
+                }
+
+                restoreReleasedRoom(roomId, readReleasedRoom(roomId));
+            }
+
+            Long lastUpdate = mRoomsLastUpdate.get(roomId);
+            checkBudget = (null == lastUpdate);
+            mRoomsLastUpdate.put(roomId, (isUpdate || checkBudget) ? System.currentTimeMillis() : lastUpdate);
+        }
+
+        // a new resident room
+        if (checkBudget) {
+            releaseColdRooms(mMemoryBudget, 0);
+        }
+    }
+
+    /**
+     * The messages of a room have been updated.
+     * They must not be released until they are saved by the next commit.
+     * @param roomId the room id
+     */
+    private void onRoomUpdated(String roomId) {
+        if (null == roomId) {
+            return;
+        }
+
+        synchronized (mRoomEvents) {
+            mUpdatedRoomIds.add(roomId);
+            mRoomsMessagesSizes.remove(roomId);
+        }
+    }
+
+    /**
+     * A room is removed from the store.
+     * @param roomId the room id
+     */
+    private void onRoomDeletion(String roomId) {
+        synchronized (mRoomEvents) {
+            mRoomsLastUpdate.remove(roomId);
+            mReleasedRoomIds.remove(roomId);
+            mUpdatedRoomIds.remove(roomId);
+            mRoomsMessagesSizes.remove(roomId);
+        }
+    }
+
+    @Override
+    public void commit() {
+        final ArrayList<String> savedRoomIds;
+
+        synchronized (mRoomEvents) {
+            savedRoomIds = new ArrayList<String>(mUpdatedRoomIds);
+            mUpdatedRoomIds.clear();
+
+            for(String roomId : savedRoomIds) {
+                Integer count = mSavingRoomIds.get(roomId);
+                mSavingRoomIds.put(roomId, (null == count) ? 1 : (count + 1));
+            }
+
+            mPendingCommitsCount++;
+        }
+
+        // only the messages files are checked
+        commit(mMessagesFolderFile, new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRoomEvents) {
+                    for(String roomId : savedRoomIds) {
+                        Integer count = mSavingRoomIds.get(roomId);
+
+                        if ((null == count) || (count <= 1)) {
+                            mSavingRoomIds.remove(roomId);
+                        } else {
+                            mSavingRoomIds.put(roomId, count - 1);
+                        }
+                    }
+
+                    mPendingCommitsCount--;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void clear() {
+        synchronized (mRoomEvents) {
+            mRoomsLastUpdate.clear();
+            mReleasedRoomIds.clear();
+            mUpdatedRoomIds.clear();
+            mRoomsMessagesSizes.clear();
+        }
+
+        super.clear();
+    }
+
+    @Override
+    public Event getOldestEvent(String roomId) {
+        onRoomAccess(roomId, false);
+        return super.getOldestEvent(roomId);
+    }
+
+    @Override
+    public Event getLatestEvent(String roomId) {
+        onRoomAccess(roomId, false);
+        return super.getLatestEvent(roomId);
+    }
+
+    @Override
+    public void storeLiveRoomEvent(Event event) {
+        onRoomAccess(event.roomId, true);
+        boolean isNewEvent = !super.doesEventExist(event.eventId, event.roomId);
+        super.storeLiveRoomEvent(event);
+
+        synchronized (mRoomEvents) {
+            Long size = mRoomsMessagesSizes.get(event.roomId);
+            onRoomUpdated(event.roomId);
+
+            // the most common update : the size is not computed again
+            if ((null != size) && isNewEvent) {
+                mRoomsMessagesSizes.put(event.roomId, size + eventSize(event));
+            }
+        }
+    }
+
+    @Override
+    public boolean doesEventExist(String eventId, String roomId) {
+        onRoomAccess(roomId, false);
+        return super.doesEventExist(eventId, roomId);
+    }
+
+    @Override
+    public Event getEvent(String eventId, String roomId) {
+        onRoomAccess(roomId, false);
+        return super.getEvent(eventId, roomId);
+    }
+
+    @Override
+    public void deleteEvent(Event event) {
+        onRoomAccess(event.roomId, true);
+        super.deleteEvent(event);
+        onRoomUpdated(event.roomId);
+    }
+
+    @Override
+    public void deleteRoom(String roomId) {
+        onRoomDeletion(roomId);
+        super.deleteRoom(roomId);
+    }
+
+    @Override
+    public void deleteRoomData(String roomId) {
+        onRoomDeletion(roomId);
+        super.deleteRoomData(roomId);
+    }
+
+    @Override
+    public void deleteAllRoomMessages(String roomId, boolean keepUnsent) {
+        onRoomAccess(roomId, true);
+        super.deleteAllRoomMessages(roomId, keepUnsent);
+        onRoomUpdated(roomId);
+    }
+
+    @Override
+    public void storeRoomEvents(String roomId, TokensChunkResponse<Event> eventsResponse, EventTimeline.Direction direction) {
+        onRoomAccess(roomId, true);
+        super.storeRoomEvents(roomId, eventsResponse, direction);
+        onRoomUpdated(roomId);
+    }
+
+    @Override
+    public void storeBackToken(String roomId, String backToken) {
+        onRoomAccess(roomId, true);
+        super.storeBackToken(roomId, backToken);
+        onRoomUpdated(roomId);
+    }
+
+    @Override
+    public boolean updateEventContent(String roomId, String eventId, JsonObject newContent) {
+        onRoomAccess(roomId, true);
+        boolean res = super.updateEventContent(roomId, eventId, newContent);
+        onRoomUpdated(roomId);
+        return res;
+    }
+
+    @Override
+    public Collection<Event> getRoomMessages(String roomId) {
+        onRoomAccess(roomId, false);
+        return super.getRoomMessages(roomId);
+    }
+
+    @Override
+    public TokensChunkResponse<Event> getEarlierMessages(String roomId, String fromToken, int limit) {
+        onRoomAccess(roomId, false);
+        return super.getEarlierMessages(roomId, fromToken, limit);
+    }
+
+    @Override
+    public Collection<Event> getLatestUnsentEvents(String roomId) {
+        onRoomAccess(roomId, false);
+        return super.getLatestUnsentEvents(roomId);
+    }
+
+    @Override
+    public Collection<Event> getUndeliverableEvents(String roomId) {
+        onRoomAccess(roomId, false);
+        return super.getUndeliverableEvents(roomId);
+    }
+
+    @Override
+    protected List<Event> eventsAfter(String roomId, String eventId, String excludedUserId, List<String> allowedTypes) {
+        onRoomAccess(roomId, false);
+        return super.eventsAfter(roomId, eventId, excludedUserId, allowedTypes);
+    }
+}
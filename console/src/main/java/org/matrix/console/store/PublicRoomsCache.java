@@ -0,0 +1,430 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.store;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.matrix.androidsdk.MXSession;
+import org.matrix.androidsdk.rest.callback.SimpleApiCallback;
+import org.matrix.androidsdk.rest.model.MatrixError;
+import org.matrix.androidsdk.rest.model.PublicRoom;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Cache of the home servers public rooms directories.
+ * The directories are kept in memory and saved on disk so they can be displayed at once.
+ * A directory is downloaded again when it is older than DIRECTORY_TTL_MS,
+ * the home servers directories are downloaded at the same time.
+ * The listeners are only called when a directory content has changed.
+ * It must be used from the UI thread.
+ */
+public class PublicRoomsCache {
+    private static final String LOG_TAG = "PublicRoomsCache";
+
+    private static final String CACHE_FOLDER_NAME = "PublicRoomsCache";
+
+    // a directory is downloaded again when it is older than this delay
+    private static final long DIRECTORY_TTL_MS = 10 * 60000;
+
+    /**
+     * Listener of the public rooms updates.
+     */
+    public interface PublicRoomsListener {
+        /**
+         * The public rooms have been updated.
+         * It is called on the UI thread.
+         * @param homeServers the home servers urls
+         * @param publicRoomsLists the public rooms of each home server
+         */
+        void onPublicRoomsUpdated(List<String> homeServers, List<List<PublicRoom>> publicRoomsLists);
+    }
+
+    /**
+     * A cached directory.
+     */
+    private static class Directory {
+        private final List<PublicRoom> mPublicRooms;
+        // the hash of the saved json, to detect the unchanged directories
+        private final int mJsonHash;
+        private long mFetchTime;
+
+        Directory(List<PublicRoom> publicRooms, int jsonHash, long fetchTime) {
+            mPublicRooms = publicRooms;
+            mJsonHash = jsonHash;
+            mFetchTime = fetchTime;
+        }
+    }
+
+    private static PublicRoomsCache mInstance = null;
+
+    private final File mCacheFolder;
+    private final Gson mGson = new Gson();
+
+    private final Handler mUiHandler = new Handler(Looper.getMainLooper());
+    private final Handler mFileHandler;
+
+    // home server url -> directory
+    private final HashMap<String, Directory> mDirectories = new HashMap<String, Directory>();
+
+    // the home servers whose directory is being read or downloaded
+    private final HashSet<String> mPendingHomeServers = new HashSet<String>();
+
+    // the displayed home servers, in the sessions order
+    private ArrayList<String> mHomeServers = new ArrayList<String>();
+
+    private final ArrayList<PublicRoomsListener> mListeners = new ArrayList<PublicRoomsListener>();
+
+    /**
+     * Provides the process cache.
+     * @param context the context
+     * @return the cache
+     */
+    public static synchronized PublicRoomsCache getInstance(Context context) {
+        if (null == mInstance) {
+            mInstance = new PublicRoomsCache(context);
+        }
+
+        return mInstance;
+    }
+
+    /**
+     * Constructor
+     * @param context the context
+     */
+    private PublicRoomsCache(Context context) {
+        mCacheFolder = new File(context.getApplicationContext().getCacheDir(), CACHE_FOLDER_NAME);
+
+        HandlerThread handlerThread = new HandlerThread("PublicRoomsCache", Thread.MIN_PRIORITY);
+        handlerThread.start();
+        mFileHandler = new Handler(handlerThread.getLooper());
+    }
+
+    /**
+     * Add a listener.
+     * The cached directories are given at once to the listener.
+     * @param listener the listener
+     */
+    public void addListener(PublicRoomsListener listener) {
+        if (mListeners.indexOf(listener) < 0) {
+            mListeners.add(listener);
+            notifyListeners(Collections.singletonList(listener));
+        }
+    }
+
+    /**
+     * Remove a listener.
+     * @param listener the listener
+     */
+    public void removeListener(PublicRoomsListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Provide the public rooms of the sessions home servers.
+     * The cached directories are given at once to the listeners when the home servers list has changed,
+     * the missing or updated ones are given when they are read or downloaded.
+     * @param sessions the sessions
+     */
+    public void refresh(Collection<MXSession> sessions) {
+        // any session of a home server can download its directory
+        LinkedHashMap<String, MXSession> sessionByHomeServer = new LinkedHashMap<String, MXSession>();
+
+        for(MXSession session : sessions) {
+            if (session.isAlive()) {
+                String homeServer = session.getHomeserverConfig().getHomeserverUri().toString();
+
+                if (!sessionByHomeServer.containsKey(homeServer)) {
+                    sessionByHomeServer.put(homeServer, session);
+                }
+            }
+        }
+
+        ArrayList<String> homeServers = new ArrayList<String>(sessionByHomeServer.keySet());
+
+        // render the cached directories of the new home servers
+        if (!homeServers.equals(mHomeServers)) {
+            mHomeServers = homeServers;
+            notifyListeners(mListeners);
+        }
+
+        for(String homeServer : mHomeServers) {
+            if (mPendingHomeServers.contains(homeServer)) {
+                continue;
+            }
+
+            Directory directory = mDirectories.get(homeServer);
+
+            if (null == directory) {
+                loadDirectory(homeServer, sessionByHomeServer.get(homeServer));
+            } else if (isExpired(directory)) {
+                downloadDirectory(homeServer, sessionByHomeServer.get(homeServer));
+            }
+        }
+    }
+
+    /**
+     * @param directory the directory
+     * @return true if the directory has to be downloaded again.
+     */
+    private static boolean isExpired(Directory directory) {
+        return (System.currentTimeMillis() - directory.mFetchTime) > DIRECTORY_TTL_MS;
+    }
+
+    /**
+     * Provides the file of a home server directory.
+     * @param homeServer the home server url
+     * @return the file
+     */
+    private File getDirectoryFile(String homeServer) {
+        return new File(mCacheFolder, homeServer.replaceAll("[^a-zA-Z0-9.\\-]", "_"));
+    }
+
+    /**
+     * Read a directory from the disk, then download it if it is missing or expired.
+     * @param homeServer the home server url
+     * @param session the session used to download the directory
+     */
+    private void loadDirectory(final String homeServer, final MXSession session) {
+        mPendingHomeServers.add(homeServer);
+
+        mFileHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final Directory directory = readDirectory(homeServer);
+
+                mUiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mPendingHomeServers.remove(homeServer);
+
+                        if (null != directory) {
+                            mDirectories.put(homeServer, directory);
+                            notifyListeners(mListeners);
+                        }
+
+                        if ((null == directory) || isExpired(directory)) {
+                            downloadDirectory(homeServer, session);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Download a directory.
+     * @param homeServer the home server url
+     * @param session the session used to download the directory
+     */
+    private void downloadDirectory(final String homeServer, final MXSession session) {
+        if (!session.isAlive()) {
+            return;
+        }
+
+        mPendingHomeServers.add(homeServer);
+
+        Log.d(LOG_TAG, "downloadDirectory " + homeServer);
+
+        session.getEventsApiClient().loadPublicRooms(new SimpleApiCallback<List<PublicRoom>>() {
+            @Override
+            public void onSuccess(final List<PublicRoom> publicRooms) {
+                final Directory cachedDirectory = mDirectories.get(homeServer);
+
+                mFileHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        final Directory directory = saveDirectory(homeServer, publicRooms, cachedDirectory);
+
+                        mUiHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onDirectoryDownloaded(homeServer, directory);
+                            }
+                        });
+                    }
+                });
+            }
+
+            private void onError(String errorMessage) {
+                Log.e(LOG_TAG, "downloadDirectory " + homeServer + " failed " + errorMessage);
+                mPendingHomeServers.remove(homeServer);
+            }
+
+            @Override
+            public void onNetworkError(Exception e) {
+                onError(e.getLocalizedMessage());
+            }
+
+            @Override
+            public void onMatrixError(MatrixError e) {
+                onError(e.getLocalizedMessage());
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                onError(e.getLocalizedMessage());
+            }
+        });
+    }
+
+    /**
+     * A directory has been downloaded and saved.
+     * @param homeServer the home server url
+     * @param directory the downloaded directory
+     */
+    private void onDirectoryDownloaded(String homeServer, Directory directory) {
+        mPendingHomeServers.remove(homeServer);
+
+        Directory cachedDirectory = mDirectories.get(homeServer);
+
+        // the unchanged directories are not displayed again
+        if ((null != cachedDirectory) && (cachedDirectory.mJsonHash == directory.mJsonHash)) {
+            Log.d(LOG_TAG, "onDirectoryDownloaded " + homeServer + " : unchanged");
+            cachedDirectory.mFetchTime = directory.mFetchTime;
+            return;
+        }
+
+        Log.d(LOG_TAG, "onDirectoryDownloaded " + homeServer + " : " + directory.mPublicRooms.size() + " rooms");
+
+        mDirectories.put(homeServer, directory);
+        notifyListeners(mListeners);
+    }
+
+    /**
+     * Give the cached directories of the displayed home servers to some listeners.
+     * @param listeners the listeners
+     */
+    private void notifyListeners(List<PublicRoomsListener> listeners) {
+        ArrayList<String> homeServers = new ArrayList<String>();
+        ArrayList<List<PublicRoom>> publicRoomsLists = new ArrayList<List<PublicRoom>>();
+
+        for(String homeServer : mHomeServers) {
+            Directory directory = mDirectories.get(homeServer);
+
+            if (null != directory) {
+                homeServers.add(homeServer);
+                publicRoomsLists.add(directory.mPublicRooms);
+            }
+        }
+
+        if (homeServers.isEmpty()) {
+            return;
+        }
+
+        for(PublicRoomsListener listener : new ArrayList<PublicRoomsListener>(listeners)) {
+            listener.onPublicRoomsUpdated(homeServers, publicRoomsLists);
+        }
+    }
+
+    /**
+     * Read a directory file.
+     * It must be called on the file thread.
+     * @param homeServer the home server url
+     * @return the directory, null if there is none.
+     */
+    private Directory readDirectory(String homeServer) {
+        File file = getDirectoryFile(homeServer);
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            InputStream inputStream = new FileInputStream(file);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int len;
+
+            try {
+                while ((len = inputStream.read(buffer)) > 0) {
+                    outputStream.write(buffer, 0, len);
+                }
+            } finally {
+                inputStream.close();
+            }
+
+            String json = outputStream.toString("UTF-8");
+            List<PublicRoom> publicRooms = mGson.fromJson(json, new TypeToken<List<PublicRoom>>() {}.getType());
+
+            if (null != publicRooms) {
+                return new Directory(publicRooms, json.hashCode(), file.lastModified());
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "readDirectory " + homeServer + " failed " + e.getLocalizedMessage());
+            file.delete();
+        }
+
+        return null;
+    }
+
+    /**
+     * Save a downloaded directory.
+     * The file is not rewritten when the directory is unchanged.
+     * It must be called on the file thread.
+     * @param homeServer the home server url
+     * @param publicRooms the public rooms
+     * @param cachedDirectory the cached directory, null if there is none
+     * @return the directory
+     */
+    private Directory saveDirectory(String homeServer, List<PublicRoom> publicRooms, Directory cachedDirectory) {
+        long now = System.currentTimeMillis();
+        String json = mGson.toJson(publicRooms);
+        Directory directory = new Directory(publicRooms, json.hashCode(), now);
+        File file = getDirectoryFile(homeServer);
+
+        try {
+            if (file.exists() && (null != cachedDirectory) && (cachedDirectory.mJsonHash == directory.mJsonHash)) {
+                file.setLastModified(now);
+            } else {
+                if (!mCacheFolder.exists()) {
+                    mCacheFolder.mkdirs();
+                }
+
+                FileOutputStream outputStream = new FileOutputStream(file);
+
+                try {
+                    outputStream.write(json.getBytes("UTF-8"));
+                } finally {
+                    outputStream.close();
+                }
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "saveDirectory " + homeServer + " failed " + e.getLocalizedMessage());
+        }
+
+        return directory;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.store;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+
+import org.matrix.androidsdk.MXSession;
+import org.matrix.androidsdk.data.IMXStore;
+import org.matrix.androidsdk.data.Room;
+import org.matrix.androidsdk.data.RoomState;
+import org.matrix.androidsdk.data.RoomSummary;
+import org.matrix.androidsdk.rest.model.Event;
+import org.matrix.androidsdk.rest.model.Message;
+import org.matrix.androidsdk.rest.model.RoomMember;
+import org.matrix.androidsdk.util.EventDisplay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tiny snapshot of the most recent rooms of an account.
+ * It is saved while the account is loaded, and it is displayed while the account is dormant
+ * so its section is not empty although its store is not loaded.
+ * The ids of all the account rooms are saved too, so a push can be routed to its dormant account.
+ */
+public class SessionSnapshot {
+    private static final String LOG_TAG = "SessionSnapshot";
+
+    private static final String PREFS_SESSIONS_SNAPSHOTS = "org.matrix.console.store.SessionSnapshot.PREFS_SESSIONS_SNAPSHOTS";
+    private static final String PREFS_SESSIONS_ROOM_IDS = "org.matrix.console.store.SessionSnapshot.PREFS_SESSIONS_ROOM_IDS";
+
+    // the number of rooms kept per account
+    private static final int MAX_ROOMS_COUNT = 5;
+
+    /**
+     * A room of the snapshot : the displayed values of its summary.
+     */
+    private static class RoomEntry {
+        String mRoomId;
+        String mRoomName;
+        String mSender;
+        String mSenderName;
+        String mBody;
+        long mTimestamp;
+        int mUnreadCount;
+    }
+
+    /**
+     * Save the snapshot of a loaded account.
+     * @param context the context
+     * @param session the session
+     */
+    public static void save(Context context, MXSession session) {
+        if (!session.isAlive() || !session.getDataHandler().getStore().isReady()) {
+            return;
+        }
+
+        IMXStore store = session.getDataHandler().getStore();
+        String matrixId = session.getCredentials().userId;
+        ArrayList<RoomSummary> summaries;
+
+        try {
+            summaries = new ArrayList<RoomSummary>(store.getSummaries());
+        } catch (Exception e) {
+            // the summaries are being updated by the events thread : the next save will be done
+            Log.e(LOG_TAG, "save " + matrixId + " failed " + e.getLocalizedMessage());
+            return;
+        }
+
+        Collections.sort(summaries, new Comparator<RoomSummary>() {
+            @Override
+            public int compare(RoomSummary summary1, RoomSummary summary2) {
+                long timestamp1 = (null != summary1.getLatestEvent()) ? summary1.getLatestEvent().getOriginServerTs() : Long.MIN_VALUE;
+                long timestamp2 = (null != summary2.getLatestEvent()) ? summary2.getLatestEvent().getOriginServerTs() : Long.MIN_VALUE;
+
+                return (timestamp1 > timestamp2) ? -1 : ((timestamp1 < timestamp2) ? 1 : 0);
+            }
+        });
+
+        HashSet<String> roomIds = new HashSet<String>();
+
+        for(RoomSummary summary : summaries) {
+            roomIds.add(summary.getRoomId());
+        }
+
+        ArrayList<RoomEntry> entries = new ArrayList<RoomEntry>();
+
+        for(RoomSummary summary : summaries) {
+            Event latestEvent = summary.getLatestEvent();
+
+            if (null == latestEvent) {
+                break;
+            }
+
+            Room room = store.getRoom(summary.getRoomId());
+            RoomState roomState = summary.getLatestRoomState();
+
+            if ((null == roomState) && (null != room)) {
+                roomState = room.getState();
+            }
+
+            EventDisplay eventDisplay = new EventDisplay(context, latestEvent, roomState);
+            eventDisplay.setPrependMessagesWithAuthor(false);
+            CharSequence body = eventDisplay.getTextualDisplay();
+
+            RoomEntry entry = new RoomEntry();
+            entry.mRoomId = summary.getRoomId();
+            entry.mRoomName = (null != room) ? room.getName(matrixId) : summary.getRoomName();
+            entry.mSender = latestEvent.getSender();
+            entry.mSenderName = (null != roomState) ? roomState.getMemberName(entry.mSender) : entry.mSender;
+            entry.mBody = (null != body) ? body.toString() : "";
+            entry.mTimestamp = latestEvent.getOriginServerTs();
+            entry.mUnreadCount = summary.getUnreadEventsCount();
+            entries.add(entry);
+
+            if (entries.size() == MAX_ROOMS_COUNT) {
+                break;
+            }
+        }
+
+        SharedPreferences preferences = context.getSharedPreferences(PREFS_SESSIONS_SNAPSHOTS, Context.MODE_PRIVATE);
+        preferences.edit().putString(matrixId, new Gson().toJson(entries)).apply();
+
+        context.getSharedPreferences(PREFS_SESSIONS_ROOM_IDS, Context.MODE_PRIVATE).edit().putStringSet(matrixId, roomIds).apply();
+    }
+
+    /**
+     * Tells if an account knew a room when its snapshot was saved.
+     * @param context the context
+     * @param matrixId the account matrix id
+     * @param roomId the room id
+     * @return true if the room was one of the account rooms.
+     */
+    public static boolean hasRoom(Context context, String matrixId, String roomId) {
+        Set<String> roomIds = context.getSharedPreferences(PREFS_SESSIONS_ROOM_IDS, Context.MODE_PRIVATE).getStringSet(matrixId, null);
+        return (null != roomIds) && roomIds.contains(roomId);
+    }
+
+    /**
+     * Build the summaries of a dormant account from its snapshot.
+     * The summaries only display the room name and the latest message.
+     * @param context the context
+     * @param matrixId the account matrix id
+     * @return the summaries, the most recent first.
+     */
+    public static List<RoomSummary> load(Context context, String matrixId) {
+        ArrayList<RoomSummary> summaries = new ArrayList<RoomSummary>();
+        SharedPreferences preferences = context.getSharedPreferences(PREFS_SESSIONS_SNAPSHOTS, Context.MODE_PRIVATE);
+        String json = preferences.getString(matrixId, null);
+
+        if (null == json) {
+            return summaries;
+        }
+
+        List<RoomEntry> entries = null;
+
+        try {
+            entries = new Gson().fromJson(json, new TypeToken<List<RoomEntry>>() {}.getType());
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "load " + matrixId + " failed " + e.getLocalizedMessage());
+        }
+
+        if (null == entries) {
+            return summaries;
+        }
+
+        for(RoomEntry entry : entries) {
+            RoomState roomState = new RoomState();
+            roomState.roomId = entry.mRoomId;
+            roomState.name = entry.mRoomName;
+
+            // the sender name is displayed before the message
+            if (null != entry.mSender) {
+                RoomMember member = new RoomMember();
+                member.displayname = entry.mSenderName;
+                member.membership = RoomMember.MEMBERSHIP_JOIN;
+                roomState.setMember(entry.mSender, member);
+            }
+
+            JsonObject content = new JsonObject();
+            content.addProperty("msgtype", Message.MSGTYPE_TEXT);
+            content.addProperty("body", entry.mBody);
+
+            Event event = new Event(Event.EVENT_TYPE_MESSAGE, content, entry.mSender, entry.mRoomId);
+            event.originServerTs = entry.mTimestamp;
+
+            RoomSummary summary = new RoomSummary();
+            summary.setMatrixId(matrixId);
+            summary.setRoomId(entry.mRoomId);
+            summary.setName(entry.mRoomName);
+            summary.setLatestEvent(event);
+            summary.setLatestRoomState(roomState);
+            summary.setUnreadEventsCount(entry.mUnreadCount);
+            summaries.add(summary);
+        }
+
+        return summaries;
+    }
+
+    /**
+     * Delete the snapshot of an account.
+     * @param context the context
+     * @param matrixId the account matrix id
+     */
+    public static void delete(Context context, String matrixId) {
+        context.getSharedPreferences(PREFS_SESSIONS_SNAPSHOTS, Context.MODE_PRIVATE).edit().remove(matrixId).apply();
+        context.getSharedPreferences(PREFS_SESSIONS_ROOM_IDS, Context.MODE_PRIVATE).edit().remove(matrixId).apply();
+    }
+}
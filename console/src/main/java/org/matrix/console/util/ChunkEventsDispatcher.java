@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.util;
+
+import org.matrix.androidsdk.data.RoomState;
+import org.matrix.androidsdk.data.RoomSummary;
+import org.matrix.androidsdk.listeners.MXEventListener;
+import org.matrix.androidsdk.rest.model.Event;
+import org.matrix.console.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Events listener which dispatches the live events to the UI once per events chunk.
+ * The events which are not displayed in the rooms list are filtered out,
+ * the other ones are grouped by room and dispatched when the chunk is processed.
+ */
+public class ChunkEventsDispatcher extends MXEventListener {
+
+    /**
+     * The live events of a room within an events chunk.
+     */
+    public static class RoomEvents {
+        private final String mRoomId;
+        private final ArrayList<Event> mEvents = new ArrayList<Event>();
+        private RoomState mLatestRoomState;
+
+        RoomEvents(String roomId) {
+            mRoomId = roomId;
+        }
+
+        /**
+         * @return the room id
+         */
+        public String getRoomId() {
+            return mRoomId;
+        }
+
+        /**
+         * @return the events, the oldest first
+         */
+        public List<Event> getEvents() {
+            return mEvents;
+        }
+
+        /**
+         * @return the latest event
+         */
+        public Event getLatestEvent() {
+            return mEvents.get(mEvents.size() - 1);
+        }
+
+        /**
+         * @return the room state of the latest event
+         */
+        public RoomState getLatestRoomState() {
+            return mLatestRoomState;
+        }
+    }
+
+    /**
+     * Listener of the events chunks.
+     */
+    public interface ChunkListener {
+        /**
+         * An events chunk has been processed.
+         * It is called on the UI thread.
+         * @param roomEventsList the live events grouped by room
+         * @param hasReceipts true if some receipts have been received
+         */
+        void onChunkProcessed(List<RoomEvents> roomEventsList, boolean hasReceipts);
+    }
+
+    private final MetricsRegistry mMetricsRegistry;
+    private final ChunkListener mListener;
+
+    // room id -> the pending live events
+    private final LinkedHashMap<String, RoomEvents> mRoomEventsByRoomId = new LinkedHashMap<String, RoomEvents>();
+    private boolean mHasReceipts = false;
+    private int mReceivedEventsCount = 0;
+
+    /**
+     * Constructor
+     * @param metricsRegistry the metrics registry which counts the received events and the dispatched chunks, can be null
+     * @param listener the chunks listener
+     */
+    public ChunkEventsDispatcher(MetricsRegistry metricsRegistry, ChunkListener listener) {
+        mMetricsRegistry = metricsRegistry;
+        mListener = listener;
+    }
+
+    @Override
+    public void onLiveEvent(Event event, RoomState roomState) {
+        mReceivedEventsCount++;
+
+        if ((null != event.roomId) && RoomSummary.isSupportedEvent(event)) {
+            RoomEvents roomEvents = mRoomEventsByRoomId.get(event.roomId);
+
+            if (null == roomEvents) {
+                roomEvents = new RoomEvents(event.roomId);
+                mRoomEventsByRoomId.put(event.roomId, roomEvents);
+            }
+
+            roomEvents.mEvents.add(event);
+            roomEvents.mLatestRoomState = roomState;
+        }
+    }
+
+    @Override
+    public void onReceiptEvent(String roomId, List<String> senderIds) {
+        mHasReceipts = true;
+    }
+
+    @Override
+    public void onLiveEventsChunkProcessed() {
+        List<RoomEvents> roomEventsList = new ArrayList<RoomEvents>(mRoomEventsByRoomId.values());
+        boolean hasReceipts = mHasReceipts;
+
+        if (null != mMetricsRegistry) {
+            mMetricsRegistry.getRoomListMetrics().onChunkDispatched(mReceivedEventsCount);
+        }
+
+        mRoomEventsByRoomId.clear();
+        mHasReceipts = false;
+        mReceivedEventsCount = 0;
+
+        mListener.onChunkProcessed(roomEventsList, hasReceipts);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+import org.matrix.console.metrics.MetricsRegistry;
+
+/**
+ * Counts the frames dropped while a list is scrolled.
+ * The frames are only observed while the list is scrolling so the idle list does not request a frame at each vsync.
+ * It requires Choreographer : it does nothing before Jelly Bean.
+ * It must be used from the UI thread.
+ */
+public class FrameDropMonitor {
+
+    /**
+     * Provides the list scrolling state.
+     */
+    public interface ScrollingChecker {
+        /**
+         * @return true if the list is scrolling.
+         */
+        boolean isScrolling();
+    }
+
+    // the expected frame interval (60 fps)
+    private static final long FRAME_INTERVAL_NANOS = 16666667;
+
+    // a frame interval longer than this one means some frames have been dropped
+    private static final long DROPPED_FRAME_THRESHOLD_NANOS = FRAME_INTERVAL_NANOS * 3 / 2;
+
+    private final MetricsRegistry mMetricsRegistry;
+    private final ScrollingChecker mScrollingChecker;
+
+    private boolean mIsStarted = false;
+    private long mLastFrameTimeNanos = 0;
+    private long mFramesCount = 0;
+    private long mDroppedFramesCount = 0;
+
+    // Choreographer is only available from Jelly Bean
+    private Object mFrameCallback = null;
+
+    /**
+     * Constructor
+     * @param metricsRegistry the metrics registry which receives the frames counts
+     * @param scrollingChecker the list scrolling state provider
+     */
+    public FrameDropMonitor(MetricsRegistry metricsRegistry, ScrollingChecker scrollingChecker) {
+        mMetricsRegistry = metricsRegistry;
+        mScrollingChecker = scrollingChecker;
+    }
+
+    /**
+     * The list has started scrolling : observe the frames until it stops.
+     */
+    public void onScrollStarted() {
+        if (mIsStarted || (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)) {
+            return;
+        }
+
+        mIsStarted = true;
+        mLastFrameTimeNanos = 0;
+        postFrameCallback();
+    }
+
+    /**
+     * Stop observing the frames.
+     */
+    public void stop() {
+        if (!mIsStarted) {
+            return;
+        }
+
+        mIsStarted = false;
+        removeFrameCallback();
+        report();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (null == mFrameCallback) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    onFrame(frameTimeNanos);
+                }
+            };
+        }
+
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void removeFrameCallback() {
+        if (null != mFrameCallback) {
+            Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+        }
+    }
+
+    /**
+     * A frame is being drawn.
+     * @param frameTimeNanos the frame time
+     */
+    private void onFrame(long frameTimeNanos) {
+        if (!mIsStarted) {
+            return;
+        }
+
+        if (0 != mLastFrameTimeNanos) {
+            long interval = frameTimeNanos - mLastFrameTimeNanos;
+
+            mFramesCount++;
+
+            if (interval > DROPPED_FRAME_THRESHOLD_NANOS) {
+                mDroppedFramesCount += (interval / FRAME_INTERVAL_NANOS) - 1;
+            }
+        }
+
+        mLastFrameTimeNanos = frameTimeNanos;
+
+        if (mScrollingChecker.isScrolling()) {
+            postFrameCallback();
+        } else {
+            mIsStarted = false;
+            report();
+        }
+    }
+
+    /**
+     * Give the counted frames to the metrics registry.
+     */
+    private void report() {
+        if ((null != mMetricsRegistry) && (mFramesCount > 0)) {
+            mMetricsRegistry.getRoomListMetrics().onRoomListScrolled(mFramesCount, mDroppedFramesCount);
+        }
+
+        mFramesCount = 0;
+        mDroppedFramesCount = 0;
+    }
+}
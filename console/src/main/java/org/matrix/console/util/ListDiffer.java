@@ -0,0 +1,291 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.util;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Computes in background the updates between two versions of a list,
+ * then gives them to the UI thread in the submission order.
+ * The items are identified by a stable id : the updates are the removed, inserted, moved and changed items.
+ * The updates are computed against the previously submitted list so they can be applied one after the other.
+ * @param <T> the items type
+ */
+public class ListDiffer<T extends ListDiffer.Diffable<T>> {
+
+    // above this ratio of updated items, the list is fully refreshed
+    private static final int MAX_UPDATES_RATIO = 2;
+
+    /**
+     * A list item.
+     * @param <T> the items type
+     */
+    public interface Diffable<T> {
+        /**
+         * @return the item id, it is unique in the list.
+         */
+        long getStableId();
+
+        /**
+         * Tells if the item displays the same content as another version of it.
+         * @param other the other version, it has the same stable id.
+         * @return true if the displayed content is the same.
+         */
+        boolean hasSameContent(T other);
+    }
+
+    /**
+     * A list update, it is applied to the list updated by the previous ones.
+     */
+    public static class Update {
+        public static final int TYPE_REMOVE = 0;
+        public static final int TYPE_INSERT = 1;
+        public static final int TYPE_MOVE = 2;
+        public static final int TYPE_CHANGE = 3;
+
+        public final int mType;
+        // the removed, moved or changed item position
+        public final int mFromPosition;
+        // the inserted, moved or changed item position
+        public final int mToPosition;
+
+        Update(int type, int fromPosition, int toPosition) {
+            mType = type;
+            mFromPosition = fromPosition;
+            mToPosition = toPosition;
+        }
+    }
+
+    /**
+     * Applies the computed updates.
+     * @param <T> the items type
+     */
+    public interface UpdatesListener<T> {
+        /**
+         * The updates have been computed.
+         * It is called on the UI thread.
+         * @param items the new items
+         * @param updates the updates from the previous items, null if the list has to be fully refreshed.
+         */
+        void onUpdates(List<T> items, List<Update> updates);
+    }
+
+    private final UpdatesListener<T> mListener;
+    private final Handler mUiHandler = new Handler(Looper.getMainLooper());
+    private final HandlerThread mHandlerThread;
+    private final Handler mDiffHandler;
+
+    // the last submitted items, read on the diff thread only
+    private List<T> mSubmittedItems = new ArrayList<T>();
+
+    /**
+     * Constructor
+     * @param name the diff thread name
+     * @param listener the updates listener
+     */
+    public ListDiffer(String name, UpdatesListener<T> listener) {
+        mListener = listener;
+
+        mHandlerThread = new HandlerThread(name, Thread.MIN_PRIORITY);
+        mHandlerThread.start();
+        mDiffHandler = new Handler(mHandlerThread.getLooper());
+    }
+
+    /**
+     * Submit a new version of the list.
+     * The items must not be modified after their submission.
+     * @param items the items
+     */
+    public void submit(final List<T> items) {
+        mDiffHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final List<Update> updates = computeUpdates(mSubmittedItems, items);
+                mSubmittedItems = items;
+
+                mUiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mListener.onUpdates(items, updates);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stop the diff thread, the pending submissions are ignored.
+     */
+    public void release() {
+        mDiffHandler.removeCallbacksAndMessages(null);
+        mHandlerThread.quit();
+    }
+
+    /**
+     * Compute the updates between two lists.
+     * The removals are computed first, then the insertions and the moves in the new order,
+     * then the changes on the new positions.
+     * The kept items which are in the same order in both lists are not moved.
+     * @param oldItems the old items
+     * @param newItems the new items
+     * @param <T> the items type
+     * @return the updates, null if the list has to be fully refreshed.
+     */
+    public static <T extends Diffable<T>> List<Update> computeUpdates(List<T> oldItems, List<T> newItems) {
+        ArrayList<Update> updates = new ArrayList<Update>();
+        int maxUpdatesCount = Math.max(oldItems.size(), newItems.size()) / MAX_UPDATES_RATIO;
+
+        HashMap<Long, T> newItemsById = new HashMap<Long, T>();
+
+        for(T item : newItems) {
+            newItemsById.put(item.getStableId(), item);
+        }
+
+        HashMap<Long, T> oldItemsById = new HashMap<Long, T>();
+
+        // the old ids list is updated as the updates are applied
+        ArrayList<Long> ids = new ArrayList<Long>(oldItems.size());
+
+        for(T item : oldItems) {
+            oldItemsById.put(item.getStableId(), item);
+            ids.add(item.getStableId());
+        }
+
+        // the removals from the end so the positions stay valid
+        for(int position = ids.size() - 1; position >= 0; position--) {
+            if (!newItemsById.containsKey(ids.get(position))) {
+                ids.remove(position);
+                updates.add(new Update(Update.TYPE_REMOVE, position, position));
+            }
+        }
+
+        HashSet<Long> unmovedIds = getUnmovedIds(ids, newItems);
+
+        // the insertions and the moves, in the new order
+        for(int position = 0; position < newItems.size(); position++) {
+            long id = newItems.get(position).getStableId();
+
+            if ((position < ids.size()) && (id == ids.get(position))) {
+                continue;
+            }
+
+            if (!oldItemsById.containsKey(id)) {
+                ids.add(position, id);
+                updates.add(new Update(Update.TYPE_INSERT, position, position));
+            } else if (unmovedIds.contains(id)) {
+                // the items before it have a later new position : they are moved to the end, then to their new positions
+                for(int count = ids.indexOf(id) - position; count > 0; count--) {
+                    ids.add(ids.remove(position));
+                    updates.add(new Update(Update.TYPE_MOVE, position, ids.size() - 1));
+                }
+            } else {
+                // the former position is after this one
+                int fromPosition = ids.indexOf(id);
+
+                ids.remove(fromPosition);
+                ids.add(position, id);
+                updates.add(new Update(Update.TYPE_MOVE, fromPosition, position));
+            }
+
+            // a full refresh is cheaper than many moves
+            if (updates.size() > maxUpdatesCount) {
+                return null;
+            }
+        }
+
+        // the changes on the new positions
+        for(int position = 0; position < newItems.size(); position++) {
+            T newItem = newItems.get(position);
+            T oldItem = oldItemsById.get(newItem.getStableId());
+
+            if ((null != oldItem) && !newItem.hasSameContent(oldItem)) {
+                updates.add(new Update(Update.TYPE_CHANGE, position, position));
+            }
+        }
+
+        return updates;
+    }
+
+    /**
+     * Provides the kept items which do not need to move : the longest list of items in the same order in both lists.
+     * @param ids the old items ids, without the removed ones
+     * @param newItems the new items
+     * @param <T> the items type
+     * @return the ids of the items to keep in place
+     */
+    private static <T extends Diffable<T>> HashSet<Long> getUnmovedIds(List<Long> ids, List<T> newItems) {
+        HashMap<Long, Integer> oldPositionsById = new HashMap<Long, Integer>();
+
+        for(int position = 0; position < ids.size(); position++) {
+            oldPositionsById.put(ids.get(position), position);
+        }
+
+        // the old positions of the kept items, in the new order
+        int[] oldPositions = new int[ids.size()];
+        int count = 0;
+
+        for(T item : newItems) {
+            Integer oldPosition = oldPositionsById.get(item.getStableId());
+
+            if (null != oldPosition) {
+                oldPositions[count++] = oldPosition;
+            }
+        }
+
+        // longest increasing subsequence : tails[length - 1] is the index of the smallest tail of the subsequences of this length
+        int[] tails = new int[count];
+        int[] previousIndexes = new int[count];
+        int length = 0;
+
+        for(int index = 0; index < count; index++) {
+            int low = 0;
+            int high = length;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (oldPositions[tails[middle]] < oldPositions[index]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            previousIndexes[index] = (low > 0) ? tails[low - 1] : -1;
+            tails[low] = index;
+
+            if (low == length) {
+                length++;
+            }
+        }
+
+        HashSet<Long> unmovedIds = new HashSet<Long>();
+
+        for(int index = (length > 0) ? tails[length - 1] : -1; index >= 0; index = previousIndexes[index]) {
+            unmovedIds.add(ids.get(oldPositions[index]));
+        }
+
+        return unmovedIds;
+    }
+}
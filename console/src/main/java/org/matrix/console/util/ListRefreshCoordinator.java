@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import org.matrix.console.metrics.MetricsRegistry;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Coalesces the refreshes of a sectioned list.
+ * The updated rooms and sections are collected and applied at most once per frame.
+ * The refreshes requested while the list is paused are ignored : the list is fully refreshed when it is resumed.
+ * It must be used from the UI thread.
+ */
+public class ListRefreshCoordinator {
+
+    /**
+     * Applies the collected updates.
+     */
+    public interface RefreshListener {
+        /**
+         * Refresh the list.
+         * It is called on the UI thread, at most once per frame.
+         * @param updatedRoomIdsBySection section index -> the rooms whose latest event has been updated
+         * @param updatedSections the sections whose content has been updated
+         */
+        void onRefresh(Map<Integer, Set<String>> updatedRoomIdsBySection, Set<Integer> updatedSections);
+    }
+
+    // the frame delay used when Choreographer is not available
+    private static final long FRAME_DELAY_MS = 16;
+
+    private final MetricsRegistry mMetricsRegistry;
+    private final RefreshListener mListener;
+
+    private HashMap<Integer, Set<String>> mUpdatedRoomIdsBySection = new HashMap<Integer, Set<String>>();
+    private HashSet<Integer> mUpdatedSections = new HashSet<Integer>();
+
+    private boolean mIsPaused = false;
+    private boolean mIsRefreshScheduled = false;
+
+    // Choreographer is only available from Jelly Bean
+    private Object mFrameCallback = null;
+    private Handler mHandler = null;
+
+    private final Runnable mRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            applyRefresh();
+        }
+    };
+
+    /**
+     * Constructor
+     * @param metricsRegistry the metrics registry which counts the requested and the applied refreshes, can be null
+     * @param listener the refresh listener
+     */
+    public ListRefreshCoordinator(MetricsRegistry metricsRegistry, RefreshListener listener) {
+        mMetricsRegistry = metricsRegistry;
+        mListener = listener;
+    }
+
+    /**
+     * A room latest event has been updated : the room could be moved in its section.
+     * @param section the section index
+     * @param roomId the room id
+     */
+    public void onRoomUpdated(int section, String roomId) {
+        if (onRefreshRequested()) {
+            Set<String> roomIds = mUpdatedRoomIdsBySection.get(section);
+
+            if (null == roomIds) {
+                roomIds = new HashSet<String>();
+                mUpdatedRoomIdsBySection.put(section, roomIds);
+            }
+
+            roomIds.add(roomId);
+            scheduleRefresh();
+        }
+    }
+
+    /**
+     * A section content has been updated without moving its rooms (removed room, read receipts...).
+     * @param section the section index
+     */
+    public void onSectionUpdated(int section) {
+        if (onRefreshRequested()) {
+            mUpdatedSections.add(section);
+            scheduleRefresh();
+        }
+    }
+
+    /**
+     * The list has been paused : the refreshes are ignored until it is resumed.
+     */
+    public void onPause() {
+        mIsPaused = true;
+        clear();
+    }
+
+    /**
+     * The list has been resumed and fully refreshed.
+     */
+    public void onResume() {
+        mIsPaused = false;
+    }
+
+    /**
+     * Forget the pending updates because the list has been fully refreshed.
+     */
+    public void clear() {
+        mUpdatedRoomIdsBySection.clear();
+        mUpdatedSections.clear();
+
+        if (mIsRefreshScheduled) {
+            mIsRefreshScheduled = false;
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                removeFrameCallback();
+            } else if (null != mHandler) {
+                mHandler.removeCallbacks(mRefreshRunnable);
+            }
+        }
+    }
+
+    /**
+     * Count a refresh request.
+     * @return true if the refresh has to be applied.
+     */
+    private boolean onRefreshRequested() {
+        if (null != mMetricsRegistry) {
+            mMetricsRegistry.getRoomListMetrics().onListRefreshRequested();
+        }
+
+        return !mIsPaused;
+    }
+
+    /**
+     * Apply the pending updates at the next frame.
+     */
+    private void scheduleRefresh() {
+        if (mIsRefreshScheduled) {
+            return;
+        }
+
+        mIsRefreshScheduled = true;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback();
+        } else {
+            if (null == mHandler) {
+                mHandler = new Handler(Looper.getMainLooper());
+            }
+
+            mHandler.postDelayed(mRefreshRunnable, FRAME_DELAY_MS);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (null == mFrameCallback) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    applyRefresh();
+                }
+            };
+        }
+
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void removeFrameCallback() {
+        if (null != mFrameCallback) {
+            Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+        }
+    }
+
+    /**
+     * Give the pending updates to the listener.
+     */
+    private void applyRefresh() {
+        mIsRefreshScheduled = false;
+
+        if (mIsPaused || (mUpdatedRoomIdsBySection.isEmpty() && mUpdatedSections.isEmpty())) {
+            return;
+        }
+
+        HashMap<Integer, Set<String>> updatedRoomIdsBySection = mUpdatedRoomIdsBySection;
+        HashSet<Integer> updatedSections = mUpdatedSections;
+
+        mUpdatedRoomIdsBySection = new HashMap<Integer, Set<String>>();
+        mUpdatedSections = new HashSet<Integer>();
+
+        if (null != mMetricsRegistry) {
+            mMetricsRegistry.getRoomListMetrics().onListRefreshApplied();
+        }
+
+        mListener.onRefresh(updatedRoomIdsBySection, updatedSections);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.util;
+
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+
+import org.matrix.androidsdk.MXSession;
+import org.matrix.androidsdk.data.Room;
+import org.matrix.androidsdk.data.RoomState;
+import org.matrix.androidsdk.listeners.MXEventListener;
+import org.matrix.androidsdk.rest.model.Event;
+import org.matrix.androidsdk.rest.model.RoomMember;
+import org.matrix.androidsdk.util.JsonUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of the user own membership in each room of a session.
+ * It is built once from the store rooms, then it is updated from the member events of the user.
+ * The lookups do not iterate the rooms members.
+ * The indexed memberships can be read from any thread, the store rooms are only read on the UI thread.
+ */
+public class MembershipIndex extends MXEventListener {
+    private static final String LOG_TAG = "MembershipIndex";
+
+    private final MXSession mSession;
+    private final String mMyUserId;
+
+    // room id -> the user membership
+    private final HashMap<String, String> mMembershipByRoomId = new HashMap<String, String>();
+
+    /**
+     * Constructor
+     * @param session the session
+     */
+    public MembershipIndex(MXSession session) {
+        mSession = session;
+        mMyUserId = session.getCredentials().userId;
+    }
+
+    /**
+     * Read the user membership in the store rooms.
+     * It must be called on the UI thread, the rooms are not read while they are updated.
+     * @return the memberships by room id
+     */
+    public HashMap<String, String> readMemberships() {
+        HashMap<String, String> membershipByRoomId = new HashMap<String, String>();
+
+        if (!mSession.isAlive()) {
+            return membershipByRoomId;
+        }
+
+        for(Room room : mSession.getDataHandler().getStore().getRooms()) {
+            RoomMember member = room.getMember(mMyUserId);
+
+            if ((null != member) && (null != member.membership)) {
+                membershipByRoomId.put(room.getRoomId(), member.membership);
+            }
+        }
+
+        return membershipByRoomId;
+    }
+
+    /**
+     * Index the memberships read by readMemberships().
+     * The memberships received from the live events since the reading are kept.
+     * @param membershipByRoomId the memberships by room id
+     */
+    public void build(Map<String, String> membershipByRoomId) {
+        HashMap<String, String> memberships = new HashMap<String, String>(membershipByRoomId);
+
+        synchronized (this) {
+            // the live memberships are more recent
+            memberships.putAll(mMembershipByRoomId);
+            mMembershipByRoomId.clear();
+            mMembershipByRoomId.putAll(memberships);
+        }
+
+        Log.d(LOG_TAG, "build : " + memberships.size() + " memberships for " + mMyUserId);
+    }
+
+    /**
+     * Provides the user membership in a room.
+     * The membership in a room added after the build is read from the store, it must then be called on the UI thread.
+     * @param roomId the room id
+     * @return the membership, null if it is unknown.
+     */
+    public String getMembership(String roomId) {
+        synchronized (this) {
+            if (mMembershipByRoomId.containsKey(roomId)) {
+                return mMembershipByRoomId.get(roomId);
+            }
+        }
+
+        // the room has been added after the index build
+        String membership = null;
+
+        if (mSession.isAlive()) {
+            Room room = mSession.getDataHandler().getStore().getRoom(roomId);
+
+            if (null != room) {
+                RoomMember member = room.getMember(mMyUserId);
+
+                if (null != member) {
+                    membership = member.membership;
+                }
+            }
+        }
+
+        if (null != membership) {
+            synchronized (this) {
+                if (!mMembershipByRoomId.containsKey(roomId)) {
+                    mMembershipByRoomId.put(roomId, membership);
+                }
+            }
+        }
+
+        return membership;
+    }
+
+    /**
+     * Tells if the user has a membership in a room.
+     * @param roomId the room id
+     * @param membership the membership
+     * @return true if the user membership is this one.
+     */
+    public boolean isMembership(String roomId, String membership) {
+        return membership.equals(getMembership(roomId));
+    }
+
+    @Override
+    public void onLiveEvent(Event event, RoomState roomState) {
+        if ((null != event.roomId) && Event.EVENT_TYPE_STATE_ROOM_MEMBER.equals(event.type) && mMyUserId.equals(event.stateKey)) {
+            JsonObject content = event.getContentAsJsonObject();
+
+            if (null != content) {
+                RoomMember member = JsonUtils.toRoomMember(content);
+
+                if ((null != member) && (null != member.membership)) {
+                    synchronized (this) {
+                        mMembershipByRoomId.put(event.roomId, member.membership);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onLeaveRoom(String roomId) {
+        synchronized (this) {
+            mMembershipByRoomId.put(roomId, RoomMember.MEMBERSHIP_LEAVE);
+        }
+    }
+}
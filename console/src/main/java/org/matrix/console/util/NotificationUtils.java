@@ -25,8 +25,10 @@ import android.text.style.StyleSpan;
 import org.matrix.console.R;
 import org.matrix.console.activity.LockScreenActivity;
 import org.matrix.console.activity.RoomActivity;
+import org.matrix.console.car.CarBroadcastReceiver;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -39,7 +41,12 @@ public class NotificationUtils {
     public static final String CAR_VOICE_REPLY_KEY = "org.matrix.console.services.EventStreamService.CAR_VOICE_REPLY_KEY" ;
     public static final String ACTION_MESSAGE_HEARD = "org.matrix.console.ACTION_MESSAGE_HEARD";
     public static final String ACTION_MESSAGE_REPLY = "org.matrix.console.ACTION_MESSAGE_REPLY";
+    public static final String ACTION_MESSAGE_DISMISSED = "org.matrix.console.ACTION_MESSAGE_DISMISSED";
     public static final String EXTRA_ROOM_ID = "org.matrix.console.EXTRA_ROOM_ID";
+    public static final String EXTRA_MATRIX_ID = "org.matrix.console.EXTRA_MATRIX_ID";
+
+    // the messages notifications are posted with this id and a tag per room
+    public static final int MESSAGE_NOTIFICATION_ID = 43;
 
     // the bubble radius is computed for 99 
     static int mUnreadBubbleWidth = -1;
@@ -78,6 +85,14 @@ public class NotificationUtils {
         PendingIntent pendingIntent = stackBuilder.getPendingIntent((new Random()).nextInt(1000), PendingIntent.FLAG_UPDATE_CURRENT);
         builder.setContentIntent(pendingIntent);
 
+        // the room notification state is cleared when the user swipes the notification away
+        Intent dismissIntent = new Intent(context, CarBroadcastReceiver.class)
+                .setAction(ACTION_MESSAGE_DISMISSED)
+                .putExtra(EXTRA_MATRIX_ID, matrixId)
+                .putExtra(EXTRA_ROOM_ID, roomId);
+
+        builder.setDeleteIntent(PendingIntent.getBroadcast(context, getMessageNotificationTag(matrixId, roomId).hashCode(), dismissIntent, PendingIntent.FLAG_UPDATE_CURRENT));
+
         Notification n = builder.build();
         n.flags |= Notification.FLAG_SHOW_LIGHTS;
         n.defaults |= Notification.DEFAULT_LIGHTS;
@@ -85,8 +100,37 @@ public class NotificationUtils {
         return n;
     }
 
+    /**
+     * Provides the tag of a room messages notification.
+     * @param matrixId the account id
+     * @param roomId the room id
+     * @return the notification tag
+     */
+    public static String getMessageNotificationTag(String matrixId, String roomId) {
+        return matrixId + "|" + roomId;
+    }
+
+    /**
+     * Build a room messages notification.
+     * @param context the context
+     * @param from the latest message sender
+     * @param matrixId the account id
+     * @param callId the incoming call id, null if there is none
+     * @param displayMatrixId true to display the account id
+     * @param largeIcon the sender avatar
+     * @param globalUnseen the unseen messages count
+     * @param memberUnseen the sender unseen messages count
+     * @param body the latest message
+     * @param lines the latest room messages, the oldest first
+     * @param messagesCount the notified room messages count
+     * @param roomId the room id
+     * @param roomName the room name
+     * @param shouldPlaySound true to play the default sound
+     * @return the notification
+     */
     public static Notification buildMessageNotification(
-            Context context, String from, String matrixId, String callId, Boolean displayMatrixId, Bitmap largeIcon, int globalUnseen, int memberUnseen, String body, String roomId, String roomName,
+            Context context, String from, String matrixId, String callId, Boolean displayMatrixId, Bitmap largeIcon, int globalUnseen, int memberUnseen, String body,
+            List<CharSequence> lines, int messagesCount, String roomId, String roomName,
             boolean shouldPlaySound) {
         NotificationCompat.Builder builder = new NotificationCompat.Builder(context);
         builder.setWhen(System.currentTimeMillis());
@@ -227,10 +271,30 @@ public class NotificationUtils {
         PendingIntent pendingIntent = stackBuilder.getPendingIntent((new Random()).nextInt(1000), PendingIntent.FLAG_UPDATE_CURRENT);
         builder.setContentIntent(pendingIntent);
 
-        // display the message with more than 1 lines when the device supports it
-        NotificationCompat.BigTextStyle textStyle = new NotificationCompat.BigTextStyle();
-        textStyle.bigText(from + ":" + body);
-        builder.setStyle(textStyle);
+        // the room notification state is cleared when the user swipes the notification away
+        Intent dismissIntent = new Intent(context, CarBroadcastReceiver.class)
+                .setAction(ACTION_MESSAGE_DISMISSED)
+                .putExtra(EXTRA_MATRIX_ID, matrixId)
+                .putExtra(EXTRA_ROOM_ID, roomId);
+
+        builder.setDeleteIntent(PendingIntent.getBroadcast(context, getMessageNotificationTag(matrixId, roomId).hashCode(), dismissIntent, PendingIntent.FLAG_UPDATE_CURRENT));
+
+        if (lines.size() > 1) {
+            // display the latest room messages when the device supports it
+            NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle();
+
+            for(CharSequence line : lines) {
+                inboxStyle.addLine(line);
+            }
+
+            builder.setStyle(inboxStyle);
+            builder.setNumber(messagesCount);
+        } else {
+            // display the message with more than 1 lines when the device supports it
+            NotificationCompat.BigTextStyle textStyle = new NotificationCompat.BigTextStyle();
+            textStyle.bigText(from + ":" + body);
+            builder.setStyle(textStyle);
+        }
 
         // do not offer to quick respond if the user did not dismiss the previous one
         if (!LockScreenActivity.isDisplayingALockScreenActivity() && (null == callId)) {
@@ -267,7 +331,7 @@ public class NotificationUtils {
                     stackBuildertap.getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT));
         }
 
-        extendForCar(context, builder, roomId, roomName, from, body);
+        extendForCar(context, builder, matrixId, roomId, roomName, lines);
 
         Notification n = builder.build();
         n.flags |= Notification.FLAG_SHOW_LIGHTS;
@@ -284,11 +348,12 @@ public class NotificationUtils {
         return n;
     }
 
-    private static void extendForCar(Context context, NotificationCompat.Builder builder, String roomId, String roomName, String from, String body) {
-        int carConversationId = roomId.hashCode();
+    private static void extendForCar(Context context, NotificationCompat.Builder builder, String matrixId, String roomId, String roomName, List<CharSequence> lines) {
+        int carConversationId = getMessageNotificationTag(matrixId, roomId).hashCode();
         Intent msgHeardIntent = new Intent()
                 .addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES)
                 .setAction(ACTION_MESSAGE_HEARD)
+                .putExtra(EXTRA_MATRIX_ID, matrixId)
                 .putExtra(EXTRA_ROOM_ID, roomId);
 
         PendingIntent msgHeardPendingIntent =
@@ -320,8 +385,11 @@ public class NotificationUtils {
                         .setReadPendingIntent(msgHeardPendingIntent)
                         .setReplyAction(msgReplyPendingIntent, remoteInput);
 
-        unreadConvBuilder.addMessage(context.getString(R.string.user_says_body, from, body))
-                .setLatestTimestamp(System.currentTimeMillis());
+        for(CharSequence line : lines) {
+            unreadConvBuilder.addMessage(line.toString());
+        }
+
+        unreadConvBuilder.setLatestTimestamp(System.currentTimeMillis());
         builder.extend(new NotificationCompat.CarExtender()
                 .setUnreadConversation(unreadConvBuilder.build()));
 
@@ -41,6 +41,7 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Environment;
 import android.preference.PreferenceManager;
@@ -92,113 +93,134 @@ public class RageShake implements SensorEventListener {
         mDialogs.add(new WeakReference<Dialog>(d));
     }
 
+    /**
+     * Send a bug report.
+     * The screenshot is taken on the UI thread, the report is built in background because it computes the stores disk usage.
+     */
     public void sendBugReport() {
-        Bitmap screenShot = this.takeScreenshot();
+        final Bitmap screenShot = this.takeScreenshot();
 
         if (null != screenShot) {
-            try {
-                // store the file in shared place
-                String path = MediaStore.Images.Media.insertImage(mContext.getContentResolver(), screenShot, "screenshot-" + new Date(), null);
-
-                Intent intent = new Intent(Intent.ACTION_SEND_MULTIPLE);
-                intent.setType("text/html");
-                intent.putExtra(Intent.EXTRA_EMAIL, new String[]{"rageshake@matrix.org"});
-                intent.putExtra(Intent.EXTRA_SUBJECT, "Matrix bug report");
-
-                String message = "Something went wrong on my Matrix client : \n\n\n";
-                message += "-----> my comments <-----\n\n\n";
-                message += "------------------------------\n";
-
-                message += "Application info\n";
+            new AsyncTask<Void, Void, Intent>() {
+                @Override
+                protected Intent doInBackground(Void... voids) {
+                    try {
+                        // store the file in shared place
+                        String path = MediaStore.Images.Media.insertImage(mContext.getContentResolver(), screenShot, "screenshot-" + new Date(), null);
+
+                        Intent intent = new Intent(Intent.ACTION_SEND_MULTIPLE);
+                        intent.setType("text/html");
+                        intent.putExtra(Intent.EXTRA_EMAIL, new String[]{"rageshake@matrix.org"});
+                        intent.putExtra(Intent.EXTRA_SUBJECT, "Matrix bug report");
+
+                        String message = "Something went wrong on my Matrix client : \n\n\n";
+                        message += "-----> my comments <-----\n\n\n";
+                        message += "------------------------------\n";
+
+                        message += "Application info\n";
+
+                        Collection<MXSession> sessions = Matrix.getMXSessions(mContext);
+                        int profileIndex = 1;
+
+                        for(MXSession session : sessions) {
+                            message += "Profile " + profileIndex + " :\n";
+                            profileIndex++;
+
+                            MyUser mMyUser = session.getMyUser();
+                            message += "userId : "+ mMyUser.user_id + "\n";
+                            message += "displayname : " + mMyUser.displayname + "\n";
+                            message += "homeServer :" + session.getCredentials().homeServer + "\n";
+                        }
 
-                Collection<MXSession> sessions = Matrix.getMXSessions(mContext);
-                int profileIndex = 1;
+                        message += "\n";
 
-                for(MXSession session : sessions) {
-                    message += "Profile " + profileIndex + " :\n";
-                    profileIndex++;
+                        message += "Runtime metrics\n";
+                        message += Matrix.getInstance(mContext).getMetricsRegistry().toReport();
 
-                    MyUser mMyUser = session.getMyUser();
-                    message += "userId : "+ mMyUser.user_id + "\n";
-                    message += "displayname : " + mMyUser.displayname + "\n";
-                    message += "homeServer :" + session.getCredentials().homeServer + "\n";
-                }
+                        message += "matrixConsole version: " + Matrix.getInstance(mContext).getVersion(true) + "\n";
+                        message += "SDK version:  " + Matrix.getInstance(mContext).getDefaultSession().getVersion(true) + "\n";
 
-                message += "\n";
+                        message += "\n\n\n";
 
-                message += "matrixConsole version: " + Matrix.getInstance(mContext).getVersion(true) + "\n";
-                message += "SDK version:  " + Matrix.getInstance(mContext).getDefaultSession().getVersion(true) + "\n";
+                        intent.putExtra(Intent.EXTRA_TEXT, message);
 
-                message += "\n\n\n";
+                        ArrayList<Uri> attachmentUris = new ArrayList<Uri>();
 
-                intent.putExtra(Intent.EXTRA_TEXT, message);
+                        // attachments
+                        intent.setType("image/jpg");
+                        attachmentUris.add(Uri.parse(path));
 
-                ArrayList<Uri> attachmentUris = new ArrayList<Uri>();
+                        String errorLog = LogUtilities.getLogCatError();
+                        String debugLog = LogUtilities.getLogCatDebug();
 
-                // attachments
-                intent.setType("image/jpg");
-                attachmentUris.add(Uri.parse(path));
+                        errorLog += "\n\n\n\n\n\n\n\n\n\n------------------ Debug logs ------------------\n\n\n\n\n\n\n\n";
+                        errorLog += debugLog;
 
-                String errorLog = LogUtilities.getLogCatError();
-                String debugLog = LogUtilities.getLogCatDebug();
+                        try {
 
-                errorLog += "\n\n\n\n\n\n\n\n\n\n------------------ Debug logs ------------------\n\n\n\n\n\n\n\n";
-                errorLog += debugLog;
+                            // add the current device logs
+                            {
+                                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                                GZIPOutputStream gzip = new GZIPOutputStream(os);
+                                gzip.write(errorLog.getBytes());
+                                gzip.finish();
 
-                try {
+                                File debugLogFile = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS), "logs-" + new Date() + ".gz");
+                                FileOutputStream fos = new FileOutputStream(debugLogFile);
+                                os.writeTo(fos);
+                                os.flush();
+                                os.close();
 
-                    // add the current device logs
-                    {
-                        ByteArrayOutputStream os = new ByteArrayOutputStream();
-                        GZIPOutputStream gzip = new GZIPOutputStream(os);
-                        gzip.write(errorLog.getBytes());
-                        gzip.finish();
+                                attachmentUris.add(Uri.fromFile(debugLogFile));
+                            }
 
-                        File debugLogFile = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS), "logs-" + new Date() + ".gz");
-                        FileOutputStream fos = new FileOutputStream(debugLogFile);
-                        os.writeTo(fos);
-                        os.flush();
-                        os.close();
+                            // add the stored logs
+                            ArrayList<File> logsList = LogUtilities.getLogsFileList();
 
-                        attachmentUris.add(Uri.fromFile(debugLogFile));
-                    }
+                            long marker = System.currentTimeMillis();
 
-                    // add the stored logs
-                    ArrayList<File> logsList = LogUtilities.getLogsFileList();
+                            for(File file : logsList) {
+                                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                                GZIPOutputStream glogzip = new GZIPOutputStream(bos);
 
-                    long marker = System.currentTimeMillis();
+                                FileInputStream inputStream = new FileInputStream(file);
 
-                    for(File file : logsList) {
-                        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                        GZIPOutputStream glogzip = new GZIPOutputStream(bos);
+                                byte[] buffer = new byte[1024 * 10];
+                                int len;
+                                while ((len = inputStream.read(buffer)) != -1) {
+                                    glogzip.write(buffer, 0, len);
+                                }
+                                glogzip.finish();
 
-                        FileInputStream inputStream = new FileInputStream(file);
+                                File storedLogFile = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS), marker + "-" + file.getName() + ".gz");
+                                FileOutputStream flogOs = new FileOutputStream(storedLogFile);
+                                bos.writeTo(flogOs);
+                                flogOs.flush();
+                                flogOs.close();
 
-                        byte[] buffer = new byte[1024 * 10];
-                        int len;
-                        while ((len = inputStream.read(buffer)) != -1) {
-                            glogzip.write(buffer, 0, len);
+                                attachmentUris.add(Uri.fromFile(storedLogFile));
+                            }
+                        }
+                        catch (IOException e) {
+                            Log.e(LOG_TAG, "" + e);
                         }
-                        glogzip.finish();
 
-                        File storedLogFile = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS), marker + "-" + file.getName() + ".gz");
-                        FileOutputStream flogOs = new FileOutputStream(storedLogFile);
-                        bos.writeTo(flogOs);
-                        flogOs.flush();
-                        flogOs.close();
+                        intent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, attachmentUris);
 
-                        attachmentUris.add(Uri.fromFile(storedLogFile));
+                        return intent;
+                    } catch (Exception e) {
+                        Log.e(LOG_TAG, "sendBugReport failed " + e.getLocalizedMessage());
+                        return null;
                     }
                 }
-                catch (IOException e) {
-                    Log.e(LOG_TAG, "" + e);
-                }
 
-                intent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, attachmentUris);
-
-                ConsoleApplication.getCurrentActivity().startActivity(intent);
-            } catch (Exception e) {
-            }
+                @Override
+                protected void onPostExecute(Intent intent) {
+                    if ((null != intent) && (null != ConsoleApplication.getCurrentActivity())) {
+                        ConsoleApplication.getCurrentActivity().startActivity(intent);
+                    }
+                }
+            }.execute();
         }
     }
 
@@ -0,0 +1,677 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.util;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.matrix.androidsdk.MXSession;
+import org.matrix.androidsdk.data.Room;
+import org.matrix.androidsdk.data.RoomState;
+import org.matrix.androidsdk.listeners.MXEventListener;
+import org.matrix.androidsdk.rest.model.Event;
+import org.matrix.androidsdk.rest.model.PublicRoom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory search index of the rooms displayed in the home rooms list.
+ * It indexes the rooms of every added session and the public rooms of each home server.
+ * The searchable terms are the room names (the computed name of a room without name is the one-to-one partner display name),
+ * the room aliases and the topics.
+ * A pattern matches the terms words by prefix ; the patterns longer than two characters also match inside the terms with their trigrams.
+ * The indexed rooms are updated from the live events of the added sessions.
+ * It can be used from any thread.
+ */
+public class RoomSearchIndex {
+    private static final String LOG_TAG = "RoomSearchIndex";
+
+    // the match scores : the best match of an entry ranks it
+    private static final int SCORE_EXACT = 8;
+    private static final int SCORE_TERM_PREFIX = 6;
+    private static final int SCORE_WORD_PREFIX = 4;
+    private static final int SCORE_INFIX = 2;
+
+    // a topic match ranks lower than the same match on a name or an alias
+    private static final int TOPIC_SCORE_PENALTY = 1;
+
+    private static final int TRIGRAM_LENGTH = 3;
+
+    // the terms are split into words on the non letter or digit characters
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * An indexed room.
+     */
+    public static class Entry {
+        private final String mMatrixId;
+        private final String mHomeServer;
+        private final String mRoomId;
+
+        // the lower cased names and aliases
+        private ArrayList<String> mNames = new ArrayList<String>();
+        // the lower cased topic, null if there is none
+        private String mTopic = null;
+        // true if the room name is computed from its members
+        private boolean mIsNamedByMembers = false;
+
+        // the indexed words and trigrams
+        private HashSet<String> mWords = new HashSet<String>();
+        private HashSet<String> mTrigrams = new HashSet<String>();
+
+        // the id of the latest search which has listed the entry as a candidate
+        private int mSearchId = 0;
+
+        // the entry position in the entries sorted by name
+        private int mNameRank;
+
+        Entry(String matrixId, String homeServer, String roomId) {
+            mMatrixId = matrixId;
+            mHomeServer = homeServer;
+            mRoomId = roomId;
+        }
+
+        /**
+         * @return the account matrix id, null for a public room.
+         */
+        public String getMatrixId() {
+            return mMatrixId;
+        }
+
+        /**
+         * @return the home server url, null for a joined room.
+         */
+        public String getHomeServer() {
+            return mHomeServer;
+        }
+
+        /**
+         * @return the room id
+         */
+        public String getRoomId() {
+            return mRoomId;
+        }
+
+        /**
+         * @return true if the entry is a public room.
+         */
+        public boolean isPublicRoom() {
+            return null != mHomeServer;
+        }
+    }
+
+    // entry key -> entry
+    private final HashMap<String, Entry> mEntriesByKey = new HashMap<String, Entry>();
+
+    // word -> entries, sorted to find the words by prefix
+    private final TreeMap<String, HashSet<Entry>> mEntriesByWord = new TreeMap<String, HashSet<Entry>>();
+
+    // trigram -> entries
+    private final HashMap<String, HashSet<Entry>> mEntriesByTrigram = new HashMap<String, HashSet<Entry>>();
+
+    // the entries sorted by name, the removed entries stay until the next refresh
+    private Entry[] mEntriesByNameRank = new Entry[0];
+
+    // true when the entries names ranks must be refreshed before the next search
+    private boolean mIsNameRankOutdated = false;
+
+    // the latest search id
+    private int mSearchId = 0;
+
+    // session -> events listener
+    private final HashMap<MXSession, MXEventListener> mListenersBySession = new HashMap<MXSession, MXEventListener>();
+
+    /**
+     * Index the rooms of a session and follow their updates.
+     * The session rooms are indexed when its initial sync is completed.
+     * @param session the session
+     */
+    public void addSession(final MXSession session) {
+        removeSession(session);
+
+        MXEventListener listener = new MXEventListener() {
+            @Override
+            public void onInitialSyncComplete() {
+                Collection<Room> rooms = session.getDataHandler().getStore().getRooms();
+
+                for(Room room : rooms) {
+                    indexRoom(session, room);
+                }
+
+                Log.d(LOG_TAG, "onInitialSyncComplete : " + rooms.size() + " indexed rooms for " + session.getMyUserId());
+            }
+
+            @Override
+            public void onLiveEvent(Event event, RoomState roomState) {
+                if ((null == event.roomId) || (null == event.type)) {
+                    return;
+                }
+
+                if (Event.EVENT_TYPE_STATE_ROOM_NAME.equals(event.type) ||
+                        Event.EVENT_TYPE_STATE_ROOM_TOPIC.equals(event.type) ||
+                        Event.EVENT_TYPE_STATE_ROOM_ALIASES.equals(event.type) ||
+                        Event.EVENT_TYPE_STATE_CANONICAL_ALIAS.equals(event.type)) {
+                    indexRoom(session, event.roomId);
+                } else if (Event.EVENT_TYPE_STATE_ROOM_MEMBER.equals(event.type)) {
+                    // the members only update the rooms named by their members
+                    if (isNamedByMembers(session.getMyUserId(), event.roomId)) {
+                        indexRoom(session, event.roomId);
+                    }
+                }
+            }
+
+            @Override
+            public void onNewRoom(String roomId) {
+                indexRoom(session, roomId);
+            }
+
+            @Override
+            public void onJoinRoom(String roomId) {
+                indexRoom(session, roomId);
+            }
+
+            @Override
+            public void onRoomInitialSyncComplete(String roomId) {
+                indexRoom(session, roomId);
+            }
+
+            @Override
+            public void onLeaveRoom(String roomId) {
+                removeRoom(session.getMyUserId(), roomId);
+            }
+        };
+
+        synchronized (mListenersBySession) {
+            mListenersBySession.put(session, listener);
+        }
+
+        // the listener is called at once if the initial sync is already completed
+        session.getDataHandler().addListener(listener);
+    }
+
+    /**
+     * Remove the rooms of a session from the index.
+     * @param session the session
+     */
+    public void removeSession(MXSession session) {
+        MXEventListener listener;
+
+        synchronized (mListenersBySession) {
+            listener = mListenersBySession.remove(session);
+        }
+
+        if (null != listener) {
+            session.getDataHandler().removeListener(listener);
+        }
+
+        String matrixId = session.getMyUserId();
+
+        synchronized (this) {
+            Iterator<Entry> iterator = mEntriesByKey.values().iterator();
+
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+
+                if (TextUtils.equals(matrixId, entry.mMatrixId)) {
+                    unindexEntry(entry);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace the indexed public rooms.
+     * @param publicRoomsLists the public rooms of each home server
+     * @param homeServers the home servers urls
+     */
+    public synchronized void setPublicRooms(List<List<PublicRoom>> publicRoomsLists, List<String> homeServers) {
+        Iterator<Entry> iterator = mEntriesByKey.values().iterator();
+
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+
+            if (entry.isPublicRoom()) {
+                unindexEntry(entry);
+                iterator.remove();
+            }
+        }
+
+        // sanity check
+        if ((null == publicRoomsLists) || (null == homeServers)) {
+            return;
+        }
+
+        for(int index = 0; (index < publicRoomsLists.size()) && (index < homeServers.size()); index++) {
+            String homeServer = homeServers.get(index);
+            List<PublicRoom> publicRooms = publicRoomsLists.get(index);
+
+            if (null != publicRooms) {
+                for(PublicRoom publicRoom : publicRooms) {
+                    ArrayList<String> names = new ArrayList<String>();
+
+                    names.add(publicRoom.name);
+                    names.add(publicRoom.alias);
+                    names.add(publicRoom.roomAliasName);
+
+                    if (null != publicRoom.aliases) {
+                        names.addAll(publicRoom.aliases);
+                    }
+
+                    putEntry(new Entry(null, homeServer, publicRoom.roomId), names, publicRoom.topic, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Search the rooms matching a pattern.
+     * @param pattern the searched pattern
+     * @return the matching rooms, the best matches first.
+     */
+    public synchronized List<Entry> search(String pattern) {
+        ArrayList<Entry> entries = new ArrayList<Entry>();
+
+        if (TextUtils.isEmpty(pattern)) {
+            return entries;
+        }
+
+        final String lowerCasePattern = pattern.trim().toLowerCase(Locale.getDefault());
+
+        if (lowerCasePattern.length() == 0) {
+            return entries;
+        }
+
+        // the candidates are flagged with the search id instead of being hashed into a set
+        mSearchId++;
+        ArrayList<Entry> candidates = new ArrayList<Entry>();
+
+        // the words starting with the pattern first word
+        String[] patternWords = WORD_SEPARATOR.split(lowerCasePattern);
+        String prefix = (patternWords.length > 0) ? patternWords[0] : "";
+
+        if (prefix.length() == 0) {
+            for(String word : patternWords) {
+                if (word.length() > 0) {
+                    prefix = word;
+                    break;
+                }
+            }
+        }
+
+        if (prefix.length() > 0) {
+            for(HashSet<Entry> wordEntries : mEntriesByWord.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+                addCandidates(wordEntries, candidates);
+            }
+        }
+
+        // the terms containing all the pattern trigrams
+        if (lowerCasePattern.length() >= TRIGRAM_LENGTH) {
+            addCandidates(getTrigramCandidates(lowerCasePattern), candidates);
+        }
+
+        if (mIsNameRankOutdated) {
+            refreshNameRanks();
+        }
+
+        // the candidates are only sharing some words or trigrams with the pattern
+        // the matches are sorted on a (score, name rank) key : comparing their names at each search would be far slower
+        long[] keys = new long[candidates.size()];
+        int matchesCount = 0;
+
+        for(Entry entry : candidates) {
+            int score = getScore(entry, lowerCasePattern);
+
+            if (score > 0) {
+                keys[matchesCount++] = (((long) (SCORE_EXACT - score)) << 32) | entry.mNameRank;
+            }
+        }
+
+        Arrays.sort(keys, 0, matchesCount);
+
+        for(int index = 0; index < matchesCount; index++) {
+            entries.add(mEntriesByNameRank[(int) keys[index]]);
+        }
+
+        return entries;
+    }
+
+    /**
+     * Add the entries which are not yet candidates of the current search.
+     * @param entries the entries
+     * @param candidates the candidates
+     */
+    private void addCandidates(Collection<Entry> entries, List<Entry> candidates) {
+        for(Entry entry : entries) {
+            if (entry.mSearchId != mSearchId) {
+                entry.mSearchId = mSearchId;
+                candidates.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Sort the entries by name to refresh their names ranks.
+     */
+    private void refreshNameRanks() {
+        ArrayList<Entry> entries = new ArrayList<Entry>(mEntriesByKey.values());
+
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry entry1, Entry entry2) {
+                String name1 = entry1.mNames.isEmpty() ? "" : entry1.mNames.get(0);
+                String name2 = entry2.mNames.isEmpty() ? "" : entry2.mNames.get(0);
+
+                return name1.compareTo(name2);
+            }
+        });
+
+        mEntriesByNameRank = entries.toArray(new Entry[entries.size()]);
+
+        for(int index = 0; index < mEntriesByNameRank.length; index++) {
+            mEntriesByNameRank[index].mNameRank = index;
+        }
+
+        mIsNameRankOutdated = false;
+    }
+
+    /**
+     * Provides the entries whose terms contain all the pattern trigrams.
+     * @param lowerCasePattern the lower cased pattern
+     * @return the entries
+     */
+    private Set<Entry> getTrigramCandidates(String lowerCasePattern) {
+        ArrayList<HashSet<Entry>> entriesList = new ArrayList<HashSet<Entry>>();
+
+        for(int index = 0; index + TRIGRAM_LENGTH <= lowerCasePattern.length(); index++) {
+            HashSet<Entry> trigramEntries = mEntriesByTrigram.get(lowerCasePattern.substring(index, index + TRIGRAM_LENGTH));
+
+            // no entry contains this trigram
+            if (null == trigramEntries) {
+                return Collections.emptySet();
+            }
+
+            entriesList.add(trigramEntries);
+        }
+
+        // intersect from the smallest set
+        Collections.sort(entriesList, new Comparator<HashSet<Entry>>() {
+            @Override
+            public int compare(HashSet<Entry> entries1, HashSet<Entry> entries2) {
+                return entries1.size() - entries2.size();
+            }
+        });
+
+        HashSet<Entry> candidates = new HashSet<Entry>(entriesList.get(0));
+
+        for(int index = 1; (index < entriesList.size()) && !candidates.isEmpty(); index++) {
+            candidates.retainAll(entriesList.get(index));
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Compute the match score of an entry.
+     * @param entry the entry
+     * @param lowerCasePattern the lower cased pattern
+     * @return the score, 0 if the entry does not match.
+     */
+    private static int getScore(Entry entry, String lowerCasePattern) {
+        int score = 0;
+
+        for(String name : entry.mNames) {
+            score = Math.max(score, getTermScore(name, lowerCasePattern));
+        }
+
+        if (null != entry.mTopic) {
+            int topicScore = getTermScore(entry.mTopic, lowerCasePattern);
+
+            if (topicScore > 0) {
+                score = Math.max(score, topicScore - TOPIC_SCORE_PENALTY);
+            }
+        }
+
+        return score;
+    }
+
+    /**
+     * Compute the match score of a term.
+     * @param term the lower cased term
+     * @param lowerCasePattern the lower cased pattern
+     * @return the score, 0 if the term does not match.
+     */
+    private static int getTermScore(String term, String lowerCasePattern) {
+        int pos = term.indexOf(lowerCasePattern);
+
+        if (pos < 0) {
+            return 0;
+        }
+
+        if (0 == pos) {
+            return (term.length() == lowerCasePattern.length()) ? SCORE_EXACT : SCORE_TERM_PREFIX;
+        }
+
+        // check if the pattern starts a word
+        while (pos > 0) {
+            if (!Character.isLetterOrDigit(term.charAt(pos - 1))) {
+                return SCORE_WORD_PREFIX;
+            }
+
+            pos = term.indexOf(lowerCasePattern, pos + 1);
+        }
+
+        return SCORE_INFIX;
+    }
+
+    /**
+     * Tells if an indexed room name is computed from its members.
+     * @param matrixId the account matrix id
+     * @param roomId the room id
+     * @return true if the room name is computed from its members.
+     */
+    private synchronized boolean isNamedByMembers(String matrixId, String roomId) {
+        Entry entry = mEntriesByKey.get(getKey(matrixId, roomId));
+        return (null != entry) && entry.mIsNamedByMembers;
+    }
+
+    /**
+     * Index a session room.
+     * @param session the session
+     * @param roomId the room id
+     */
+    private void indexRoom(MXSession session, String roomId) {
+        if (session.isAlive()) {
+            Room room = session.getDataHandler().getStore().getRoom(roomId);
+
+            if (null != room) {
+                indexRoom(session, room);
+            }
+        }
+    }
+
+    /**
+     * Index a session room.
+     * @param session the session
+     * @param room the room
+     */
+    private void indexRoom(MXSession session, Room room) {
+        String myUserId = session.getMyUserId();
+        RoomState roomState = room.getLiveState();
+        ArrayList<String> names = new ArrayList<String>();
+        String topic = null;
+        boolean isNamedByMembers = true;
+
+        // the computed name is the partner display name for a one-to-one room
+        names.add(room.getName(myUserId));
+
+        if (null != roomState) {
+            names.add(roomState.name);
+            names.add(roomState.alias);
+
+            if (null != roomState.aliases) {
+                names.addAll(roomState.aliases);
+            }
+
+            topic = roomState.topic;
+            isNamedByMembers = TextUtils.isEmpty(roomState.name) && TextUtils.isEmpty(roomState.alias) && ((null == roomState.aliases) || roomState.aliases.isEmpty());
+        }
+
+        synchronized (this) {
+            putEntry(new Entry(myUserId, null, room.getRoomId()), names, topic, isNamedByMembers);
+        }
+    }
+
+    /**
+     * Remove a session room from the index.
+     * @param matrixId the account matrix id
+     * @param roomId the room id
+     */
+    private synchronized void removeRoom(String matrixId, String roomId) {
+        Entry entry = mEntriesByKey.remove(getKey(matrixId, roomId));
+
+        if (null != entry) {
+            unindexEntry(entry);
+        }
+    }
+
+    /**
+     * Provides the key of an entry.
+     * @param owner the account matrix id or the home server url
+     * @param roomId the room id
+     * @return the key
+     */
+    private static String getKey(String owner, String roomId) {
+        return owner + "|" + roomId;
+    }
+
+    /**
+     * Add or replace an entry.
+     * @param entry the entry
+     * @param names the names and aliases, the null or empty ones are ignored
+     * @param topic the topic, can be null
+     * @param isNamedByMembers true if the room name is computed from its members
+     */
+    private void putEntry(Entry entry, List<String> names, String topic, boolean isNamedByMembers) {
+        String key = getKey(entry.isPublicRoom() ? entry.mHomeServer : entry.mMatrixId, entry.mRoomId);
+        Entry formerEntry = mEntriesByKey.get(key);
+
+        if (null != formerEntry) {
+            unindexEntry(formerEntry);
+        }
+
+        for(String name : names) {
+            if (!TextUtils.isEmpty(name)) {
+                String lowerCaseName = name.toLowerCase(Locale.getDefault());
+
+                if (!entry.mNames.contains(lowerCaseName)) {
+                    entry.mNames.add(lowerCaseName);
+                }
+            }
+        }
+
+        if (!TextUtils.isEmpty(topic)) {
+            entry.mTopic = topic.toLowerCase(Locale.getDefault());
+        }
+
+        entry.mIsNamedByMembers = isNamedByMembers;
+
+        for(String name : entry.mNames) {
+            addTerm(entry, name);
+        }
+
+        if (null != entry.mTopic) {
+            addTerm(entry, entry.mTopic);
+        }
+
+        for(String word : entry.mWords) {
+            HashSet<Entry> entries = mEntriesByWord.get(word);
+
+            if (null == entries) {
+                entries = new HashSet<Entry>();
+                mEntriesByWord.put(word, entries);
+            }
+
+            entries.add(entry);
+        }
+
+        for(String trigram : entry.mTrigrams) {
+            HashSet<Entry> entries = mEntriesByTrigram.get(trigram);
+
+            if (null == entries) {
+                entries = new HashSet<Entry>();
+                mEntriesByTrigram.put(trigram, entries);
+            }
+
+            entries.add(entry);
+        }
+
+        mEntriesByKey.put(key, entry);
+        mIsNameRankOutdated = true;
+    }
+
+    /**
+     * Collect the words and the trigrams of a term.
+     * @param entry the entry
+     * @param term the lower cased term
+     */
+    private static void addTerm(Entry entry, String term) {
+        for(String word : WORD_SEPARATOR.split(term)) {
+            if (word.length() > 0) {
+                entry.mWords.add(word);
+            }
+        }
+
+        for(int index = 0; index + TRIGRAM_LENGTH <= term.length(); index++) {
+            entry.mTrigrams.add(term.substring(index, index + TRIGRAM_LENGTH));
+        }
+    }
+
+    /**
+     * Remove an entry from the words and trigrams indexes.
+     * @param entry the entry
+     */
+    private void unindexEntry(Entry entry) {
+        for(String word : entry.mWords) {
+            HashSet<Entry> entries = mEntriesByWord.get(word);
+
+            if ((null != entries) && entries.remove(entry) && entries.isEmpty()) {
+                mEntriesByWord.remove(word);
+            }
+        }
+
+        for(String trigram : entry.mTrigrams) {
+            HashSet<Entry> entries = mEntriesByTrigram.get(trigram);
+
+            if ((null != entries) && entries.remove(entry) && entries.isEmpty()) {
+                mEntriesByTrigram.remove(trigram);
+            }
+        }
+    }
+}
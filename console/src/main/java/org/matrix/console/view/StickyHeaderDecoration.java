@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.view;
+
+import android.graphics.Canvas;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import org.matrix.console.adapters.RoomsRecyclerAdapter;
+
+/**
+ * Draws the section header of the first visible row above the rooms list,
+ * until the next section header pushes it up.
+ * The header view is bound once per displayed section, not at each frame.
+ */
+public class StickyHeaderDecoration extends RecyclerView.ItemDecoration {
+
+    private final RoomsRecyclerAdapter mAdapter;
+
+    // the drawn header
+    private RecyclerView.ViewHolder mHeaderHolder = null;
+    // its bound position, -1 when it must be bound again
+    private int mHeaderPosition = -1;
+
+    /**
+     * Constructor
+     * @param adapter the rooms list adapter
+     */
+    public StickyHeaderDecoration(RoomsRecyclerAdapter adapter) {
+        mAdapter = adapter;
+
+        // the header content or position might have been updated
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                mHeaderPosition = -1;
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                mHeaderPosition = -1;
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                mHeaderPosition = -1;
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                mHeaderPosition = -1;
+            }
+
+            @Override
+            public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                mHeaderPosition = -1;
+            }
+        });
+    }
+
+    /**
+     * Provides the header view bound to a position.
+     * @param parent the list
+     * @param headerPosition the header position
+     * @return the measured header view
+     */
+    private View getHeaderView(RecyclerView parent, int headerPosition) {
+        if (null == mHeaderHolder) {
+            mHeaderHolder = mAdapter.createViewHolder(parent, mAdapter.getItemViewType(headerPosition));
+        }
+
+        View headerView = mHeaderHolder.itemView;
+
+        if ((mHeaderPosition != headerPosition) || (headerView.getWidth() != parent.getWidth())) {
+            mAdapter.bindViewHolder(mHeaderHolder, headerPosition);
+            mHeaderPosition = headerPosition;
+
+            int widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), View.MeasureSpec.EXACTLY);
+            int heightSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+            headerView.measure(widthSpec, heightSpec);
+            headerView.layout(0, 0, headerView.getMeasuredWidth(), headerView.getMeasuredHeight());
+        }
+
+        return headerView;
+    }
+
+    @Override
+    public void onDrawOver(Canvas canvas, RecyclerView parent, RecyclerView.State state) {
+        if (0 == parent.getChildCount()) {
+            return;
+        }
+
+        View firstChild = parent.getChildAt(0);
+        int firstPosition = parent.getChildPosition(firstChild);
+        int headerPosition = mAdapter.getHeaderPosition(firstPosition);
+
+        if (headerPosition < 0) {
+            return;
+        }
+
+        // the section header row is fully displayed
+        if ((headerPosition == firstPosition) && (firstChild.getTop() >= 0)) {
+            return;
+        }
+
+        View headerView = getHeaderView(parent, headerPosition);
+        int headerHeight = headerView.getHeight();
+        int offset = 0;
+
+        // the next section header pushes the sticky one up
+        for(int index = 1; index < parent.getChildCount(); index++) {
+            View child = parent.getChildAt(index);
+
+            if (child.getTop() >= headerHeight) {
+                break;
+            }
+
+            if (mAdapter.isHeader(parent.getChildPosition(child))) {
+                offset = child.getTop() - headerHeight;
+                break;
+            }
+        }
+
+        canvas.save();
+        canvas.translate(0, offset);
+        headerView.draw(canvas);
+        canvas.restore();
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console;
+
+import org.junit.Test;
+import org.matrix.androidsdk.MXSession;
+import org.matrix.androidsdk.rest.model.login.Credentials;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class MXSessionsRegistryTest {
+
+    private static MXSession session(String userId) {
+        Credentials credentials = new Credentials();
+        credentials.userId = userId;
+
+        // the lookups must not record the mock invocations
+        MXSession session = mock(MXSession.class, withSettings().stubOnly());
+        when(session.getCredentials()).thenReturn(credentials);
+        return session;
+    }
+
+    @Test
+    public void getSessions_isNotUpdatedByTheNextWrites() {
+        MXSessionsRegistry registry = new MXSessionsRegistry();
+        MXSession alice = session("@alice:matrix.org");
+        MXSession bob = session("@bob:matrix.org");
+
+        registry.add(alice);
+        List<MXSession> snapshot = registry.getSessions();
+
+        registry.add(bob);
+        registry.remove(alice);
+
+        assertEquals(Arrays.asList(alice), snapshot);
+        assertEquals(Arrays.asList(bob), registry.getSessions());
+    }
+
+    @Test
+    public void getSessions_isUnmodifiable() {
+        MXSessionsRegistry registry = new MXSessionsRegistry();
+        registry.add(session("@alice:matrix.org"));
+
+        try {
+            registry.getSessions().clear();
+            fail("the snapshot must be immutable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void get_findsTheSessionsByUserId() {
+        MXSessionsRegistry registry = new MXSessionsRegistry();
+        MXSession alice = session("@alice:matrix.org");
+        MXSession bob = session("@bob:matrix.org");
+
+        registry.set(Arrays.asList(alice, bob));
+
+        assertSame(alice, registry.get("@alice:matrix.org"));
+        assertSame(bob, registry.get("@bob:matrix.org"));
+        assertNull(registry.get("@carol:matrix.org"));
+        assertNull(registry.get(null));
+
+        registry.remove(bob);
+        assertNull(registry.get("@bob:matrix.org"));
+    }
+
+    @Test
+    public void get_keepsTheFirstSessionOfADuplicatedUserId() {
+        MXSessionsRegistry registry = new MXSessionsRegistry();
+        MXSession first = session("@alice:matrix.org");
+        MXSession second = session("@alice:matrix.org");
+
+        registry.add(first);
+        registry.add(second);
+
+        assertSame(first, registry.get("@alice:matrix.org"));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void get_ignoresTheSessionsWithoutCredentials() {
+        MXSessionsRegistry registry = new MXSessionsRegistry();
+        MXSession session = mock(MXSession.class);
+
+        registry.add(session);
+
+        assertEquals(1, registry.size());
+        assertNull(registry.get("@alice:matrix.org"));
+    }
+
+    @Test
+    public void getFirst_isTheDefaultSessionFallback() {
+        MXSessionsRegistry registry = new MXSessionsRegistry();
+        MXSession alice = session("@alice:matrix.org");
+        MXSession bob = session("@bob:matrix.org");
+
+        // Matrix.getDefaultSession() loads the stored sessions when there is none
+        assertNull(registry.getFirst());
+        assertTrue(registry.isEmpty());
+
+        registry.add(alice);
+        registry.add(bob);
+        assertSame(alice, registry.getFirst());
+
+        // the next registered session becomes the default one
+        registry.remove(alice);
+        assertSame(bob, registry.getFirst());
+
+        List<MXSession> cleared = registry.clear();
+        assertEquals(Arrays.asList(bob), cleared);
+        assertNull(registry.getFirst());
+        assertFalse(registry.remove(bob));
+    }
+
+    @Test
+    public void set_withNullClearsTheRegistry() {
+        MXSessionsRegistry registry = new MXSessionsRegistry();
+        registry.add(session("@alice:matrix.org"));
+
+        registry.set(null);
+
+        assertTrue(registry.isEmpty());
+        assertNull(registry.get("@alice:matrix.org"));
+    }
+
+    /**
+     * The sessions lookup used by the contention test.
+     */
+    private interface SessionsLookup {
+        MXSession get(String userId);
+
+        void add(MXSession session);
+
+        void remove(MXSession session);
+    }
+
+    /**
+     * The former Matrix lookup : the sessions list is copied under the lock then scanned.
+     */
+    private static class LockedSessionsList implements SessionsLookup {
+        private final ArrayList<MXSession> mMXSessions = new ArrayList<MXSession>();
+
+        private ArrayList<MXSession> getSessions() {
+            synchronized (this) {
+                return new ArrayList<MXSession>(mMXSessions);
+            }
+        }
+
+        @Override
+        public synchronized MXSession get(String userId) {
+            for (MXSession session : getSessions()) {
+                Credentials credentials = session.getCredentials();
+
+                if ((null != credentials) && (credentials.userId.equals(userId))) {
+                    return session;
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public synchronized void add(MXSession session) {
+            mMXSessions.add(session);
+        }
+
+        @Override
+        public synchronized void remove(MXSession session) {
+            mMXSessions.remove(session);
+        }
+    }
+
+    /**
+     * Look the sessions up from several threads while another one adds and removes a session.
+     * @param lookup the sessions lookup
+     * @return the lookups duration in nanoseconds
+     */
+    private static long lookUpUnderContention(final SessionsLookup lookup) throws Exception {
+        final int SESSIONS_COUNT = 8;
+        final int READERS_COUNT = 4;
+        final int LOOKUPS_COUNT = 20000;
+
+        final ArrayList<String> userIds = new ArrayList<String>();
+
+        for(int index = 0; index < SESSIONS_COUNT; index++) {
+            String userId = "@user" + index + ":matrix.org";
+            userIds.add(userId);
+            lookup.add(session(userId));
+        }
+
+        final MXSession transientSession = session("@transient:matrix.org");
+        final AtomicInteger failuresCount = new AtomicInteger(0);
+        final AtomicLong lookupsNanos = new AtomicLong(0);
+        final AtomicBoolean isRunning = new AtomicBoolean(true);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (isRunning.get()) {
+                    lookup.add(transientSession);
+                    lookup.remove(transientSession);
+                }
+            }
+        });
+
+        ArrayList<Thread> readers = new ArrayList<Thread>();
+
+        for(int index = 0; index < READERS_COUNT; index++) {
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.nanoTime();
+
+                    for(int lookupIndex = 0; lookupIndex < LOOKUPS_COUNT; lookupIndex++) {
+                        if (null == lookup.get(userIds.get(lookupIndex % SESSIONS_COUNT))) {
+                            failuresCount.incrementAndGet();
+                        }
+                    }
+
+                    lookupsNanos.addAndGet(System.nanoTime() - start);
+                }
+            }));
+        }
+
+        writer.start();
+
+        for(Thread reader : readers) {
+            reader.start();
+        }
+
+        for(Thread reader : readers) {
+            reader.join();
+        }
+
+        isRunning.set(false);
+        writer.join();
+
+        // the stable sessions are always found
+        assertEquals(0, failuresCount.get());
+
+        return lookupsNanos.get();
+    }
+
+    /**
+     * The readers must always see a consistent snapshot,
+     * and the lookups must be faster than the former locked copy and scan.
+     */
+    @Test
+    public void get_underContention() throws Exception {
+        final MXSessionsRegistry registry = new MXSessionsRegistry();
+
+        long registryNanos = lookUpUnderContention(new SessionsLookup() {
+            @Override
+            public MXSession get(String userId) {
+                return registry.get(userId);
+            }
+
+            @Override
+            public void add(MXSession session) {
+                registry.add(session);
+            }
+
+            @Override
+            public void remove(MXSession session) {
+                registry.remove(session);
+            }
+        });
+
+        assertEquals(8, registry.size());
+
+        long baselineNanos = lookUpUnderContention(new LockedSessionsList());
+
+        assertTrue("registry : " + registryNanos + " ns, locked list : " + baselineNanos + " ns", registryNanos < baselineNanos);
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.adapters;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.matrix.androidsdk.data.RoomSummary;
+import org.matrix.androidsdk.rest.model.Event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class ConsoleRoomSummaryAdapterTest {
+
+    /**
+     * @return the sections sizes
+     */
+    @Parameterized.Parameters(name = "{0} rooms")
+    public static Collection<Object[]> summariesCounts() {
+        return Arrays.asList(new Object[][] {{100}, {1000}, {10000}});
+    }
+
+    private final int mSummariesCount;
+
+    public ConsoleRoomSummaryAdapterTest(int summariesCount) {
+        mSummariesCount = summariesCount;
+    }
+
+    // the RoomSummaryAdapter.sortSummaries() comparator
+    private static final Comparator<RoomSummary> SORT_SUMMARIES_COMPARATOR = new Comparator<RoomSummary>() {
+        @Override
+        public int compare(RoomSummary summary1, RoomSummary summary2) {
+            if ((null == summary1) || (null == summary1.getLatestEvent())) {
+                return 1;
+            } else if ((null == summary2) || (null == summary2.getLatestEvent())) {
+                return -1;
+            }
+
+            long timestamp1 = summary1.getLatestEvent().getOriginServerTs();
+            long timestamp2 = summary2.getLatestEvent().getOriginServerTs();
+
+            return (timestamp1 > timestamp2) ? -1 : ((timestamp1 < timestamp2) ? 1 : 0);
+        }
+    };
+
+    /**
+     * A summary which counts the reads of its latest event.
+     */
+    private static class CountingRoomSummary extends RoomSummary {
+        private static long mLatestEventReads = 0;
+
+        @Override
+        public Event getLatestEvent() {
+            mLatestEventReads++;
+            return super.getLatestEvent();
+        }
+    }
+
+    private static RoomSummary summary(String roomId, Long timestamp) {
+        RoomSummary summary = new CountingRoomSummary();
+        summary.setRoomId(roomId);
+        setTimestamp(summary, timestamp);
+        return summary;
+    }
+
+    private static void setTimestamp(RoomSummary summary, Long timestamp) {
+        if (null == timestamp) {
+            summary.setLatestEvent(null);
+        } else {
+            Event event = new Event();
+            event.originServerTs = timestamp;
+            summary.setLatestEvent(event);
+        }
+    }
+
+    /**
+     * @param count the summaries count
+     * @param random the timestamps generator
+     * @return some summaries ordered as sortSummaries() does
+     */
+    private static ArrayList<RoomSummary> sortedSummaries(int count, Random random) {
+        ArrayList<RoomSummary> summaries = new ArrayList<RoomSummary>();
+
+        for(int index = 0; index < count; index++) {
+            summaries.add(summary("!room" + index + ":matrix.org", (long) random.nextInt(count * 10)));
+        }
+
+        Collections.sort(summaries, SORT_SUMMARIES_COMPARATOR);
+        return summaries;
+    }
+
+    /**
+     * The summaries with the same timestamp can be swapped, so the orders are compared by timestamps.
+     */
+    private static List<Long> timestamps(List<RoomSummary> summaries) {
+        ArrayList<Long> timestamps = new ArrayList<Long>();
+
+        for(RoomSummary summary : summaries) {
+            timestamps.add((null != summary.getLatestEvent()) ? summary.getLatestEvent().getOriginServerTs() : null);
+        }
+
+        return timestamps;
+    }
+
+    private static void assertSortSummariesOrder(List<RoomSummary> summaries) {
+        ArrayList<RoomSummary> sortedSummaries = new ArrayList<RoomSummary>(summaries);
+        Collections.sort(sortedSummaries, SORT_SUMMARIES_COMPARATOR);
+
+        assertEquals(timestamps(sortedSummaries), timestamps(summaries));
+    }
+
+    @Test
+    public void repositionSummaries_insertsAnUpdatedSummary() {
+        Random random = new Random(1);
+
+        for(int test = 0; test < 20; test++) {
+            ArrayList<RoomSummary> summaries = sortedSummaries(mSummariesCount, random);
+            RoomSummary updatedSummary = summaries.get(random.nextInt(summaries.size()));
+            setTimestamp(updatedSummary, (long) random.nextInt(mSummariesCount * 10));
+
+            ConsoleRoomSummaryAdapter.repositionSummaries(summaries, Collections.singletonList(updatedSummary));
+
+            assertEquals(mSummariesCount, summaries.size());
+            assertSortSummariesOrder(summaries);
+        }
+    }
+
+    @Test
+    public void repositionSummaries_insertsSomeUpdatedSummaries() {
+        Random random = new Random(2);
+        ArrayList<RoomSummary> summaries = sortedSummaries(mSummariesCount, random);
+        ArrayList<RoomSummary> updatedSummaries = new ArrayList<RoomSummary>();
+
+        // below 1 / 8 of the section : one binary insertion per summary
+        for(int index = 0; index < mSummariesCount / 10; index++) {
+            RoomSummary updatedSummary = summaries.get(index * 7);
+            setTimestamp(updatedSummary, (long) random.nextInt(mSummariesCount * 10));
+            updatedSummaries.add(updatedSummary);
+        }
+
+        ConsoleRoomSummaryAdapter.repositionSummaries(summaries, updatedSummaries);
+
+        assertEquals(mSummariesCount, summaries.size());
+        assertSortSummariesOrder(summaries);
+    }
+
+    @Test
+    public void repositionSummaries_sortsTheSectionWhenManySummariesAreUpdated() {
+        Random random = new Random(3);
+        ArrayList<RoomSummary> summaries = sortedSummaries(mSummariesCount, random);
+        ArrayList<RoomSummary> updatedSummaries = new ArrayList<RoomSummary>();
+
+        for(int index = 0; index < mSummariesCount / 2; index++) {
+            RoomSummary updatedSummary = summaries.get(index * 2);
+            setTimestamp(updatedSummary, (long) random.nextInt(mSummariesCount * 10));
+            updatedSummaries.add(updatedSummary);
+        }
+
+        ConsoleRoomSummaryAdapter.repositionSummaries(summaries, updatedSummaries);
+
+        assertEquals(mSummariesCount, summaries.size());
+        assertSortSummariesOrder(summaries);
+    }
+
+    @Test
+    public void repositionSummaries_keepsTheSummariesWithoutLatestEventAtTheEnd() {
+        ArrayList<RoomSummary> summaries = new ArrayList<RoomSummary>();
+        int summariesWithEventCount = mSummariesCount * 3 / 4;
+
+        for(int index = 0; index < mSummariesCount; index++) {
+            summaries.add(summary("!room" + index + ":matrix.org", (index < summariesWithEventCount) ? (long) (mSummariesCount - index) : null));
+        }
+
+        RoomSummary emptiedSummary = summaries.get(0);
+        setTimestamp(emptiedSummary, null);
+        ConsoleRoomSummaryAdapter.repositionSummaries(summaries, Collections.singletonList(emptiedSummary));
+
+        RoomSummary updatedSummary = summaries.get(mSummariesCount - 2);
+        setTimestamp(updatedSummary, (long) (mSummariesCount * 2));
+        ConsoleRoomSummaryAdapter.repositionSummaries(summaries, Collections.singletonList(updatedSummary));
+
+        assertEquals(updatedSummary, summaries.get(0));
+        assertSortSummariesOrder(summaries);
+    }
+
+    /**
+     * The binary insertion of the room which receives a message must read fewer latest events than a full sort of its section.
+     * The reads are counted instead of timed : they do not depend on the JIT or on the device load.
+     */
+    @Test
+    public void repositionSummaries_isCheaperThanSortSummaries() {
+        final int UPDATES_COUNT = 100;
+
+        Random random = new Random(4);
+        ArrayList<RoomSummary> summaries = sortedSummaries(mSummariesCount, random);
+        ArrayList<RoomSummary> sortedSummaries = sortedSummaries(mSummariesCount, random);
+        long insertionReads = 0;
+        long sortReads = 0;
+
+        for(int update = 0; update < UPDATES_COUNT; update++) {
+            long timestamp = mSummariesCount * 10 + update;
+
+            // the most common update : a room receives a new message
+            RoomSummary updatedSummary = summaries.get(random.nextInt(mSummariesCount));
+            setTimestamp(updatedSummary, timestamp);
+
+            CountingRoomSummary.mLatestEventReads = 0;
+            ConsoleRoomSummaryAdapter.repositionSummaries(summaries, Collections.singletonList(updatedSummary));
+            insertionReads += CountingRoomSummary.mLatestEventReads;
+
+            setTimestamp(sortedSummaries.get(random.nextInt(mSummariesCount)), timestamp);
+
+            CountingRoomSummary.mLatestEventReads = 0;
+            Collections.sort(sortedSummaries, SORT_SUMMARIES_COMPARATOR);
+            sortReads += CountingRoomSummary.mLatestEventReads;
+        }
+
+        assertSortSummariesOrder(summaries);
+
+        // a binary search : two reads per compared summary
+        long maxReadsPerUpdate = 2 * (64 - Long.numberOfLeadingZeros(mSummariesCount) + 1);
+        assertTrue("repositionSummaries : " + insertionReads + " reads for " + UPDATES_COUNT + " updates", insertionReads <= (maxReadsPerUpdate * UPDATES_COUNT));
+        assertTrue("repositionSummaries : " + insertionReads + " reads, sortSummaries : " + sortReads + " reads", insertionReads < sortReads);
+    }
+}
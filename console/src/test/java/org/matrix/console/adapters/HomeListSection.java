@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.matrix.console.adapters;
+
+import org.matrix.androidsdk.data.RoomSummary;
+import org.matrix.console.util.ChunkEventsDispatcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Stand-in of a home list section : it applies the events chunks as the HomeActivity chunk listener does,
+ * i.e. it sets the latest event of each updated summary then moves the summaries to their new position.
+ */
+public class HomeListSection implements ChunkEventsDispatcher.ChunkListener {
+
+    private final ArrayList<RoomSummary> mSummaries = new ArrayList<RoomSummary>();
+    private final HashMap<String, RoomSummary> mSummariesByRoomId = new HashMap<String, RoomSummary>();
+
+    private int mChunksCount = 0;
+    private int mReceiptsChunksCount = 0;
+
+    @Override
+    public void onChunkProcessed(List<ChunkEventsDispatcher.RoomEvents> roomEventsList, boolean hasReceipts) {
+        mChunksCount++;
+
+        if (hasReceipts) {
+            mReceiptsChunksCount++;
+        }
+
+        ArrayList<RoomSummary> updatedSummaries = new ArrayList<RoomSummary>();
+
+        for(ChunkEventsDispatcher.RoomEvents roomEvents : roomEventsList) {
+            RoomSummary summary = mSummariesByRoomId.get(roomEvents.getRoomId());
+
+            // a new room is added at the end of the section, the repositioning moves it
+            if (null == summary) {
+                summary = new RoomSummary();
+                summary.setRoomId(roomEvents.getRoomId());
+                mSummariesByRoomId.put(roomEvents.getRoomId(), summary);
+                mSummaries.add(summary);
+            }
+
+            summary.setLatestEvent(roomEvents.getLatestEvent());
+            updatedSummaries.add(summary);
+        }
+
+        if (!updatedSummaries.isEmpty()) {
+            ConsoleRoomSummaryAdapter.repositionSummaries(mSummaries, updatedSummaries);
+        }
+    }
+
+    /**
+     * @return the section summaries, as they are displayed
+     */
+    public List<RoomSummary> getSummaries() {
+        return mSummaries;
+    }
+
+    /**
+     * @return the applied chunks count
+     */
+    public int getChunksCount() {
+        return mChunksCount;
+    }
+
+    /**
+     * @return the applied chunks with some read receipts
+     */
+    public int getReceiptsChunksCount() {
+        return mReceiptsChunksCount;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.adapters;
+
+import org.junit.Test;
+import org.matrix.androidsdk.data.RoomSummary;
+import org.matrix.androidsdk.rest.model.Event;
+import org.matrix.console.util.ListDiffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RoomsRecyclerAdapterTest {
+
+    private static RoomSummary summary(int index, long timestamp) {
+        RoomSummary summary = new RoomSummary();
+        summary.setRoomId("!room" + index + ":matrix.org");
+        summary.setName("Room " + index);
+        setLatestEvent(summary, timestamp);
+        return summary;
+    }
+
+    private static void setLatestEvent(RoomSummary summary, long timestamp) {
+        Event event = new Event();
+        event.eventId = "$" + timestamp + summary.getRoomId();
+        event.originServerTs = timestamp;
+        summary.setLatestEvent(event);
+    }
+
+    /**
+     * @param count the rooms count
+     * @return some summaries, the latest updated first
+     */
+    private static ArrayList<RoomSummary> summaries(int count) {
+        ArrayList<RoomSummary> summaries = new ArrayList<RoomSummary>();
+
+        for(int index = 0; index < count; index++) {
+            summaries.add(summary(index, count - index));
+        }
+
+        return summaries;
+    }
+
+    /**
+     * Take a snapshot of an account section as RoomsRecyclerAdapter.buildItems() does.
+     * The room index is its stable id.
+     */
+    private static List<RoomsRecyclerAdapter.Item> items(List<RoomSummary> summaries) {
+        ArrayList<RoomsRecyclerAdapter.Item> items = new ArrayList<RoomsRecyclerAdapter.Item>();
+        items.add(RoomsRecyclerAdapter.Item.headerItem(-1, 0, 0, "@alice:matrix.org"));
+
+        for(RoomSummary summary : summaries) {
+            String roomId = summary.getRoomId();
+            long stableId = Long.parseLong(roomId.substring("!room".length(), roomId.indexOf(':')));
+            items.add(RoomsRecyclerAdapter.Item.roomItem(stableId, 0, 0, summary));
+        }
+
+        return items;
+    }
+
+    /**
+     * @return the rows bound again by the updates : the moved rows keep their views.
+     */
+    private static int boundRowsCount(List<ListDiffer.Update> updates) {
+        int count = 0;
+
+        for(ListDiffer.Update update : updates) {
+            if ((ListDiffer.Update.TYPE_INSERT == update.mType) || (ListDiffer.Update.TYPE_CHANGE == update.mType)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Test
+    public void items_newMessageBindsOneRow() {
+        ArrayList<RoomSummary> summaries = summaries(100);
+        List<RoomsRecyclerAdapter.Item> oldItems = items(summaries);
+
+        RoomSummary summary = summaries.remove(42);
+        setLatestEvent(summary, 1000);
+        summaries.add(0, summary);
+
+        List<ListDiffer.Update> updates = ListDiffer.computeUpdates(oldItems, items(summaries));
+
+        assertNotNull(updates);
+        assertEquals(2, updates.size());
+        assertEquals(ListDiffer.Update.TYPE_MOVE, updates.get(0).mType);
+        assertEquals(43, updates.get(0).mFromPosition);
+        assertEquals(1, updates.get(0).mToPosition);
+        assertEquals(1, boundRowsCount(updates));
+    }
+
+    @Test
+    public void items_unreadCountBindsOneRow() {
+        ArrayList<RoomSummary> summaries = summaries(100);
+        List<RoomsRecyclerAdapter.Item> oldItems = items(summaries);
+
+        summaries.get(10).setUnreadEventsCount(3);
+
+        List<ListDiffer.Update> updates = ListDiffer.computeUpdates(oldItems, items(summaries));
+
+        assertEquals(1, updates.size());
+        assertEquals(ListDiffer.Update.TYPE_CHANGE, updates.get(0).mType);
+        assertEquals(11, updates.get(0).mToPosition);
+    }
+
+    @Test
+    public void items_sameSnapshotBindsNoRow() {
+        ArrayList<RoomSummary> summaries = summaries(100);
+
+        assertTrue(ListDiffer.computeUpdates(items(summaries), items(summaries)).isEmpty());
+    }
+
+    /**
+     * Time the snapshot, which is taken on the UI thread, and the diff of the rows when rooms receive messages,
+     * and count the bound rows instead of rebinding the whole list.
+     */
+    @Test
+    public void items_benchmark() {
+        final int ROOMS_COUNT = 2000;
+        final int REFRESHES_COUNT = 500;
+
+        Random random = new Random(1);
+        ArrayList<RoomSummary> summaries = summaries(ROOMS_COUNT);
+        List<RoomsRecyclerAdapter.Item> items = items(summaries);
+        long snapshotNanos = 0;
+        long diffNanos = 0;
+        int boundRowsCount = 0;
+
+        for(int refresh = 0; refresh < REFRESHES_COUNT; refresh++) {
+            // one to three rooms receive a message between two refreshes
+            for(int count = 1 + random.nextInt(3); count > 0; count--) {
+                RoomSummary summary = summaries.remove(random.nextInt(ROOMS_COUNT));
+                setLatestEvent(summary, ROOMS_COUNT + refresh);
+                summaries.add(0, summary);
+            }
+
+            long start = System.nanoTime();
+            List<RoomsRecyclerAdapter.Item> newItems = items(summaries);
+            snapshotNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<ListDiffer.Update> updates = ListDiffer.computeUpdates(items, newItems);
+            diffNanos += System.nanoTime() - start;
+
+            assertNotNull(updates);
+            boundRowsCount += boundRowsCount(updates);
+            items = newItems;
+        }
+
+        long snapshotMicros = snapshotNanos / REFRESHES_COUNT / 1000;
+        long diffMicros = diffNanos / REFRESHES_COUNT / 1000;
+
+        // only the updated rooms are bound again
+        assertTrue(boundRowsCount + " bound rows for " + REFRESHES_COUNT + " refreshes", boundRowsCount <= REFRESHES_COUNT * 3);
+
+        // the snapshot is taken on the UI thread : it must fit in a small part of a frame
+        assertTrue("the snapshot took " + snapshotMicros + " us", snapshotMicros < 4000);
+        assertTrue("the diff took " + diffMicros + " us", diffMicros < 10000);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.matrix.console.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Homeserver stand-in which serves queued /sync responses on the loopback interface.
+ * The responses are served in their queuing order, whatever the requested since token.
+ */
+public class FakeHomeserver {
+
+    public static final String SYNC_PATH = "/_matrix/client/r0/sync";
+
+    static {
+        // the response headers and body are written apart : without it, each response waits for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer mServer;
+
+    // the queued responses bodies
+    private final LinkedList<String> mResponses = new LinkedList<String>();
+
+    // the since token of each served request, null for the initial sync
+    private final ArrayList<String> mRequestedTokens = new ArrayList<String>();
+
+    /**
+     * Start the stand-in on a free loopback port.
+     * @throws IOException if the server cannot be bound
+     */
+    public FakeHomeserver() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+
+        mServer.createContext(SYNC_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String since = getQueryParameter(exchange.getRequestURI().getRawQuery(), "since");
+                String response;
+
+                synchronized (mResponses) {
+                    mRequestedTokens.add(since);
+                    response = mResponses.poll();
+                }
+
+                // nothing happened during the long poll
+                if (null == response) {
+                    response = "{\"next_batch\":\"" + ((null != since) ? since : "") + "\"}";
+                }
+
+                byte[] body = response.getBytes("UTF-8");
+
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+
+                OutputStream outputStream = exchange.getResponseBody();
+
+                try {
+                    outputStream.write(body);
+                } finally {
+                    outputStream.close();
+                }
+            }
+        });
+
+        mServer.start();
+    }
+
+    /**
+     * @param query the raw request query
+     * @param name the parameter name
+     * @return the decoded parameter value, null if it is not set
+     */
+    private static String getQueryParameter(String query, String name) throws IOException {
+        if (null == query) {
+            return null;
+        }
+
+        for(String parameter : query.split("&")) {
+            int separatorIndex = parameter.indexOf('=');
+
+            if ((separatorIndex > 0) && name.equals(parameter.substring(0, separatorIndex))) {
+                return URLDecoder.decode(parameter.substring(separatorIndex + 1), "UTF-8");
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the /sync url
+     */
+    public String getSyncUrl() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + SYNC_PATH;
+    }
+
+    /**
+     * Queue a /sync response.
+     * @param body the response body
+     */
+    public void enqueue(String body) {
+        synchronized (mResponses) {
+            mResponses.add(body);
+        }
+    }
+
+    /**
+     * Queue a /sync response saved in the sync test resources.
+     * @param name the response file name
+     * @throws IOException if the resource cannot be read
+     */
+    public void enqueueRecorded(String name) throws IOException {
+        InputStream inputStream = FakeHomeserver.class.getResourceAsStream("/sync/" + name);
+
+        if (null == inputStream) {
+            throw new IOException("no recorded response " + name);
+        }
+
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int length;
+
+            while ((length = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, length);
+            }
+
+            enqueue(outputStream.toString("UTF-8"));
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * @return the since token of each served request
+     */
+    public List<String> getRequestedTokens() {
+        synchronized (mResponses) {
+            return new ArrayList<String>(mRequestedTokens);
+        }
+    }
+
+    /**
+     * Stop the stand-in.
+     */
+    public void stop() {
+        mServer.stop(0);
+    }
+}
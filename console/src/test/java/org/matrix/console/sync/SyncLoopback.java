@@ -0,0 +1,266 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.matrix.console.sync;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import org.matrix.androidsdk.listeners.IMXEventListener;
+import org.matrix.androidsdk.rest.model.Event;
+import org.matrix.androidsdk.rest.model.Sync.RoomSync;
+import org.matrix.androidsdk.rest.model.Sync.SyncResponse;
+import org.matrix.androidsdk.util.JsonUtils;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Client side of the /sync loopback : it polls a homeserver stand-in and dispatches each response
+ * to an events listener as the SDK data handler does, i.e. the live events room by room then the chunk end.
+ * The events thread and the SDK store need an Android runtime, so the responses are decoded and dispatched here.
+ */
+public class SyncLoopback {
+
+    /**
+     * The measures of some /sync rounds.
+     */
+    public static class Report {
+        private int mRoundsCount = 0;
+        private long mEventsCount = 0;
+        private long mRoundsNanos = 0;
+        private long mChunksNanos = 0;
+        private long mMaxChunkNanos = 0;
+        private long mAllocatedBytes = 0;
+
+        /**
+         * @return the /sync rounds count
+         */
+        public int getRoundsCount() {
+            return mRoundsCount;
+        }
+
+        /**
+         * @return the dispatched live events count
+         */
+        public long getEventsCount() {
+            return mEventsCount;
+        }
+
+        /**
+         * @return the dispatched live events per second, from the requests start to the chunks end
+         */
+        public long getEventsPerSecond() {
+            return (0 == mRoundsNanos) ? 0 : (mEventsCount * 1000000000L / mRoundsNanos);
+        }
+
+        /**
+         * @return the average time to decode and dispatch a chunk, in microseconds
+         */
+        public long getAverageChunkMicros() {
+            return (0 == mRoundsCount) ? 0 : (mChunksNanos / mRoundsCount / 1000);
+        }
+
+        /**
+         * @return the longest time to decode and dispatch a chunk, in microseconds
+         */
+        public long getMaxChunkMicros() {
+            return mMaxChunkNanos / 1000;
+        }
+
+        /**
+         * @return the bytes allocated to decode and dispatch the chunks, -1 if the VM does not count them
+         */
+        public long getAllocatedBytes() {
+            return mAllocatedBytes;
+        }
+
+        /**
+         * Describe the measures.
+         * @return the description
+         */
+        public String toReport() {
+            String report = "sync loopback : " + mRoundsCount + " rounds, " + mEventsCount + " live events, " + getEventsPerSecond() + " events/s\n";
+            report += "chunk processing : " + getAverageChunkMicros() + " us average, " + getMaxChunkMicros() + " us max\n";
+            report += "allocations : " + ((mAllocatedBytes < 0) ? "unknown" : ((mAllocatedBytes / 1024) + " KB")) + "\n";
+
+            return report;
+        }
+    }
+
+    private final String mSyncUrl;
+    private final IMXEventListener mListener;
+
+    private String mSince;
+
+    /**
+     * Constructor
+     * @param syncUrl the /sync url
+     * @param listener the events listener
+     * @param since the since token of the first request, null to start with an initial sync
+     */
+    public SyncLoopback(String syncUrl, IMXEventListener listener, String since) {
+        mSyncUrl = syncUrl;
+        mListener = listener;
+        mSince = since;
+    }
+
+    /**
+     * @return the since token of the next request
+     */
+    public String getSince() {
+        return mSince;
+    }
+
+    /**
+     * @return the bytes allocated by the current thread, -1 if the VM does not count them
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return -1;
+    }
+
+    /**
+     * Run some /sync rounds.
+     * @param roundsCount the rounds count
+     * @param report the report to fill
+     * @throws IOException if a request fails
+     */
+    public void run(int roundsCount, Report report) throws IOException {
+        for(int round = 0; round < roundsCount; round++) {
+            long roundStart = System.nanoTime();
+
+            String url = mSyncUrl + "?timeout=30000" + ((null != mSince) ? ("&since=" + URLEncoder.encode(mSince, "UTF-8")) : "");
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            SyncResponse syncResponse;
+            long chunkStart;
+            long allocatedBytes;
+
+            try {
+                if (HttpURLConnection.HTTP_OK != connection.getResponseCode()) {
+                    throw new IOException("/sync failed with " + connection.getResponseCode());
+                }
+
+                // the chunk processing starts when the response is received
+                chunkStart = System.nanoTime();
+                allocatedBytes = getAllocatedBytes();
+
+                Reader reader = new InputStreamReader(connection.getInputStream(), "UTF-8");
+
+                try {
+                    syncResponse = JsonUtils.getGson(false).fromJson(reader, SyncResponse.class);
+                } finally {
+                    reader.close();
+                }
+            } finally {
+                connection.disconnect();
+            }
+
+            report.mEventsCount += dispatch(syncResponse);
+
+            long chunkNanos = System.nanoTime() - chunkStart;
+
+            if (allocatedBytes >= 0) {
+                report.mAllocatedBytes += getAllocatedBytes() - allocatedBytes;
+            } else {
+                report.mAllocatedBytes = -1;
+            }
+
+            report.mRoundsCount++;
+            report.mRoundsNanos += System.nanoTime() - roundStart;
+            report.mChunksNanos += chunkNanos;
+            report.mMaxChunkNanos = Math.max(report.mMaxChunkNanos, chunkNanos);
+
+            mSince = syncResponse.nextBatch;
+        }
+    }
+
+    /**
+     * Dispatch a /sync response as a live events chunk.
+     * The initial sync is dispatched as the other ones : its events fill the rooms list as the initial summaries do.
+     * @param syncResponse the response
+     * @return the dispatched live events count
+     */
+    private int dispatch(SyncResponse syncResponse) {
+        int eventsCount = 0;
+
+        if ((null != syncResponse.rooms) && (null != syncResponse.rooms.join)) {
+            for(Map.Entry<String, RoomSync> entry : syncResponse.rooms.join.entrySet()) {
+                String roomId = entry.getKey();
+                RoomSync roomSync = entry.getValue();
+
+                if ((null != roomSync.timeline) && (null != roomSync.timeline.events)) {
+                    for(Event event : roomSync.timeline.events) {
+                        // the /sync events do not repeat their room id
+                        event.roomId = roomId;
+                        mListener.onLiveEvent(event, null);
+                        eventsCount++;
+                    }
+                }
+
+                if ((null != roomSync.ephemeral) && (null != roomSync.ephemeral.events)) {
+                    for(Event event : roomSync.ephemeral.events) {
+                        if (Event.EVENT_TYPE_RECEIPT.equals(event.type) && (null != event.content) && event.content.isJsonObject()) {
+                            mListener.onReceiptEvent(roomId, getReceiptSenders(event.content.getAsJsonObject()));
+                        }
+                    }
+                }
+            }
+        }
+
+        mListener.onLiveEventsChunkProcessed();
+
+        return eventsCount;
+    }
+
+    /**
+     * @param content the receipt event content : event id -> receipt type -> user id -> receipt
+     * @return the receipts senders
+     */
+    private static ArrayList<String> getReceiptSenders(JsonObject content) {
+        ArrayList<String> senders = new ArrayList<String>();
+
+        for(Map.Entry<String, JsonElement> eventEntry : content.entrySet()) {
+            if (eventEntry.getValue().isJsonObject()) {
+                for(Map.Entry<String, JsonElement> typeEntry : eventEntry.getValue().getAsJsonObject().entrySet()) {
+                    if (typeEntry.getValue().isJsonObject()) {
+                        for(Map.Entry<String, JsonElement> userEntry : typeEntry.getValue().getAsJsonObject().entrySet()) {
+                            if (!senders.contains(userEntry.getKey())) {
+                                senders.add(userEntry.getKey());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return senders;
+    }
+}
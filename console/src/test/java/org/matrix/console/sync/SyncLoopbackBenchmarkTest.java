@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.matrix.console.sync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.matrix.console.adapters.HomeListSection;
+import org.matrix.console.metrics.MetricsRegistry;
+import org.matrix.console.util.ChunkEventsDispatcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Events stream throughput from a loopback homeserver stand-in to the home list, for 10 to 10,000 joined rooms.
+ * It only runs with ./gradlew test -Pbenchmark, the reports are written in build/reports/sync-loopback.
+ */
+@RunWith(Parameterized.class)
+public class SyncLoopbackBenchmarkTest {
+
+    private static final int INITIAL_MESSAGES_PER_ROOM = 5;
+    private static final int ROUNDS_COUNT = 200;
+    private static final int MESSAGES_PER_ROUND = 20;
+
+    /**
+     * @return the joined rooms counts
+     */
+    @Parameterized.Parameters(name = "{0} rooms")
+    public static Collection<Object[]> roomsCounts() {
+        return Arrays.asList(new Object[][] {{10}, {100}, {1000}, {10000}});
+    }
+
+    private final int mRoomsCount;
+    private FakeHomeserver mHomeserver;
+
+    public SyncLoopbackBenchmarkTest(int roomsCount) {
+        mRoomsCount = roomsCount;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        mHomeserver = new FakeHomeserver();
+    }
+
+    @After
+    public void tearDown() {
+        if (null != mHomeserver) {
+            mHomeserver.stop();
+        }
+    }
+
+    @Test
+    public void run_benchmark() throws Exception {
+        SyncResponses syncResponses = new SyncResponses(mRoomsCount, mRoomsCount);
+        HomeListSection homeListSection = new HomeListSection();
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        ChunkEventsDispatcher dispatcher = new ChunkEventsDispatcher(metricsRegistry, homeListSection);
+
+        // the initial sync is measured apart : it is the largest chunk
+        mHomeserver.enqueue(SyncResponses.toJson(syncResponses.initialSync(INITIAL_MESSAGES_PER_ROOM)));
+
+        SyncLoopback syncLoopback = new SyncLoopback(mHomeserver.getSyncUrl(), dispatcher, null);
+        SyncLoopback.Report initialSyncReport = new SyncLoopback.Report();
+        syncLoopback.run(1, initialSyncReport);
+
+        // the responses are serialized before the measure
+        for(int round = 0; round < ROUNDS_COUNT; round++) {
+            mHomeserver.enqueue(SyncResponses.toJson(syncResponses.incrementalSync(MESSAGES_PER_ROUND)));
+        }
+
+        SyncLoopback.Report report = new SyncLoopback.Report();
+        syncLoopback.run(ROUNDS_COUNT, report);
+
+        assertEquals(mRoomsCount * INITIAL_MESSAGES_PER_ROOM, initialSyncReport.getEventsCount());
+        assertEquals(ROUNDS_COUNT * MESSAGES_PER_ROUND, report.getEventsCount());
+        assertEquals(ROUNDS_COUNT + 1, homeListSection.getChunksCount());
+        assertTrue(report.getEventsPerSecond() > 0);
+
+        File reportsDir = new File("build/reports/sync-loopback");
+        assertTrue(reportsDir.isDirectory() || reportsDir.mkdirs());
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(reportsDir, mRoomsCount + "-rooms.txt")), "UTF-8");
+
+        try {
+            writer.write(mRoomsCount + " joined rooms\n");
+            writer.write("initial " + initialSyncReport.toReport());
+            writer.write("incremental " + report.toReport());
+            writer.write(metricsRegistry.getRoomListMetrics().toReport());
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.matrix.console.sync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.matrix.androidsdk.data.RoomSummary;
+import org.matrix.androidsdk.rest.model.Sync.SyncResponse;
+import org.matrix.console.adapters.HomeListSection;
+import org.matrix.console.metrics.MetricsRegistry;
+import org.matrix.console.util.ChunkEventsDispatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The events stream from a loopback homeserver stand-in to the home list.
+ * The stubbed TextUtils rejects every event in RoomSummary.isSupportedEvent(), so the dispatched rooms are not checked.
+ */
+public class SyncLoopbackTest {
+
+    private FakeHomeserver mHomeserver;
+    private HomeListSection mHomeListSection;
+    private ChunkEventsDispatcher mDispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        mHomeserver = new FakeHomeserver();
+        mHomeListSection = new HomeListSection();
+        mDispatcher = new ChunkEventsDispatcher(new MetricsRegistry(), mHomeListSection);
+    }
+
+    @After
+    public void tearDown() {
+        mHomeserver.stop();
+    }
+
+    private static void assertHomeListOrder(List<RoomSummary> summaries) {
+        for(int index = 1; index < summaries.size(); index++) {
+            assertTrue(summaries.get(index - 1).getLatestEvent().getOriginServerTs() >= summaries.get(index).getLatestEvent().getOriginServerTs());
+        }
+    }
+
+    @Test
+    public void run_replaysARecordedSync() throws Exception {
+        mHomeserver.enqueueRecorded("incremental_sync.json");
+
+        SyncLoopback syncLoopback = new SyncLoopback(mHomeserver.getSyncUrl(), mDispatcher, "s72595_4482_1933");
+        SyncLoopback.Report report = new SyncLoopback.Report();
+        syncLoopback.run(1, report);
+
+        assertEquals(Arrays.asList("s72595_4482_1933"), mHomeserver.getRequestedTokens());
+        assertEquals("s72595_4483_1934", syncLoopback.getSince());
+
+        assertEquals(1, report.getRoundsCount());
+        assertEquals(4, report.getEventsCount());
+
+        assertEquals(1, mHomeListSection.getChunksCount());
+        assertEquals(1, mHomeListSection.getReceiptsChunksCount());
+        assertHomeListOrder(mHomeListSection.getSummaries());
+    }
+
+    @Test
+    public void run_followsTheSinceTokens() throws Exception {
+        SyncResponses syncResponses = new SyncResponses(100, 1);
+        ArrayList<String> nextBatches = new ArrayList<String>();
+        int eventsCount = 0;
+
+        SyncResponse initialSync = syncResponses.initialSync(2);
+        mHomeserver.enqueue(SyncResponses.toJson(initialSync));
+        nextBatches.add(initialSync.nextBatch);
+        eventsCount += SyncResponses.getTimelineEventsCount(initialSync);
+
+        for(int round = 0; round < 5; round++) {
+            SyncResponse incrementalSync = syncResponses.incrementalSync(10);
+            mHomeserver.enqueue(SyncResponses.toJson(incrementalSync));
+            nextBatches.add(incrementalSync.nextBatch);
+            eventsCount += SyncResponses.getTimelineEventsCount(incrementalSync);
+        }
+
+        SyncLoopback syncLoopback = new SyncLoopback(mHomeserver.getSyncUrl(), mDispatcher, null);
+        SyncLoopback.Report report = new SyncLoopback.Report();
+        syncLoopback.run(6, report);
+
+        // the initial sync has no since token, each next request continues from the previous response
+        ArrayList<String> expectedTokens = new ArrayList<String>();
+        expectedTokens.add(null);
+        expectedTokens.addAll(nextBatches.subList(0, 5));
+
+        assertEquals(expectedTokens, mHomeserver.getRequestedTokens());
+        assertEquals(nextBatches.get(5), syncLoopback.getSince());
+
+        assertEquals(6, report.getRoundsCount());
+        assertEquals(200 + 50, eventsCount);
+        assertEquals(eventsCount, report.getEventsCount());
+
+        assertEquals(6, mHomeListSection.getChunksCount());
+        assertEquals(5, mHomeListSection.getReceiptsChunksCount());
+        assertHomeListOrder(mHomeListSection.getSummaries());
+    }
+
+    @Test
+    public void run_waitsWhenNothingHappens() throws Exception {
+        SyncLoopback syncLoopback = new SyncLoopback(mHomeserver.getSyncUrl(), mDispatcher, "s1");
+        SyncLoopback.Report report = new SyncLoopback.Report();
+        syncLoopback.run(2, report);
+
+        assertEquals(Arrays.asList("s1", "s1"), mHomeserver.getRequestedTokens());
+        assertEquals(0, report.getEventsCount());
+        assertEquals(2, mHomeListSection.getChunksCount());
+    }
+}
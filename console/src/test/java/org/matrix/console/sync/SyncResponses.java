@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.matrix.console.sync;
+
+import com.google.gson.JsonObject;
+
+import org.matrix.androidsdk.rest.model.Event;
+import org.matrix.androidsdk.rest.model.Sync.InvitedRoomSync;
+import org.matrix.androidsdk.rest.model.Sync.RoomSync;
+import org.matrix.androidsdk.rest.model.Sync.RoomSyncEphemeral;
+import org.matrix.androidsdk.rest.model.Sync.RoomSyncState;
+import org.matrix.androidsdk.rest.model.Sync.RoomSyncTimeline;
+import org.matrix.androidsdk.rest.model.Sync.RoomsSyncResponse;
+import org.matrix.androidsdk.rest.model.Sync.SyncResponse;
+import org.matrix.androidsdk.util.JsonUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Generator of the /sync responses of a synthetic account.
+ * The account joined roomsCount rooms, in which the other members post text messages.
+ */
+public class SyncResponses {
+
+    public static final String MY_USER_ID = "@me:localhost";
+
+    private final int mRoomsCount;
+    private final Random mRandom;
+
+    private long mTimestamp = 1450000000000L;
+    private int mEventsCount = 0;
+    private int mBatchesCount = 0;
+
+    /**
+     * Constructor
+     * @param roomsCount the joined rooms count, from 10 to 10,000
+     * @param seed the generator seed
+     */
+    public SyncResponses(int roomsCount, long seed) {
+        mRoomsCount = roomsCount;
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * @param index the room index
+     * @return the room id
+     */
+    public static String roomId(int index) {
+        return "!room" + index + ":localhost";
+    }
+
+    /**
+     * @return the joined rooms count
+     */
+    public int getRoomsCount() {
+        return mRoomsCount;
+    }
+
+    private Event event(String type, String sender, JsonObject content) {
+        Event event = new Event();
+        event.type = type;
+        event.eventId = "$" + (mEventsCount++) + ":localhost";
+        event.sender = sender;
+        event.originServerTs = mTimestamp++;
+        event.content = content;
+        return event;
+    }
+
+    private Event message(String sender) {
+        JsonObject content = new JsonObject();
+        content.addProperty("msgtype", "m.text");
+        content.addProperty("body", "message " + mEventsCount);
+        return event(Event.EVENT_TYPE_MESSAGE, sender, content);
+    }
+
+    private Event member(String userId) {
+        JsonObject content = new JsonObject();
+        content.addProperty("membership", "join");
+
+        Event event = event(Event.EVENT_TYPE_STATE_ROOM_MEMBER, userId, content);
+        event.stateKey = userId;
+        return event;
+    }
+
+    private Event receipt(Event readEvent, String userId) {
+        JsonObject ts = new JsonObject();
+        ts.addProperty("ts", mTimestamp);
+
+        JsonObject users = new JsonObject();
+        users.add(userId, ts);
+
+        JsonObject receiptTypes = new JsonObject();
+        receiptTypes.add("m.read", users);
+
+        JsonObject content = new JsonObject();
+        content.add(readEvent.eventId, receiptTypes);
+
+        Event event = new Event();
+        event.type = Event.EVENT_TYPE_RECEIPT;
+        event.content = content;
+        return event;
+    }
+
+    private static String otherUserId(int roomIndex) {
+        return "@user" + roomIndex + ":localhost";
+    }
+
+    private SyncResponse syncResponse(HashMap<String, RoomSync> joinedRooms) {
+        RoomsSyncResponse rooms = new RoomsSyncResponse();
+        rooms.join = joinedRooms;
+        rooms.invite = new HashMap<String, InvitedRoomSync>();
+        rooms.leave = new HashMap<String, RoomSync>();
+
+        SyncResponse syncResponse = new SyncResponse();
+        syncResponse.nextBatch = "s" + (++mBatchesCount);
+        syncResponse.rooms = rooms;
+        return syncResponse;
+    }
+
+    private static RoomSync roomSync() {
+        RoomSync roomSync = new RoomSync();
+        roomSync.state = new RoomSyncState();
+        roomSync.state.events = new ArrayList<Event>();
+        roomSync.timeline = new RoomSyncTimeline();
+        roomSync.timeline.events = new ArrayList<Event>();
+        roomSync.ephemeral = new RoomSyncEphemeral();
+        roomSync.ephemeral.events = new ArrayList<Event>();
+        return roomSync;
+    }
+
+    /**
+     * The initial sync : the members of each room and its latest messages.
+     * @param messagesPerRoom the timeline messages count of each room
+     * @return the response
+     */
+    public SyncResponse initialSync(int messagesPerRoom) {
+        HashMap<String, RoomSync> joinedRooms = new HashMap<String, RoomSync>();
+
+        for(int index = 0; index < mRoomsCount; index++) {
+            RoomSync roomSync = roomSync();
+            roomSync.state.events.add(member(MY_USER_ID));
+            roomSync.state.events.add(member(otherUserId(index)));
+
+            for(int count = 0; count < messagesPerRoom; count++) {
+                roomSync.timeline.events.add(message(otherUserId(index)));
+            }
+
+            joinedRooms.put(roomId(index), roomSync);
+        }
+
+        return syncResponse(joinedRooms);
+    }
+
+    /**
+     * An incremental sync : some messages posted in random rooms, and the read receipts of the first one.
+     * @param messagesCount the messages count
+     * @return the response
+     */
+    public SyncResponse incrementalSync(int messagesCount) {
+        HashMap<String, RoomSync> joinedRooms = new HashMap<String, RoomSync>();
+
+        for(int count = 0; count < messagesCount; count++) {
+            int index = mRandom.nextInt(mRoomsCount);
+            RoomSync roomSync = joinedRooms.get(roomId(index));
+
+            if (null == roomSync) {
+                roomSync = roomSync();
+                joinedRooms.put(roomId(index), roomSync);
+            }
+
+            Event message = message(otherUserId(index));
+            roomSync.timeline.events.add(message);
+
+            if (0 == count) {
+                roomSync.ephemeral.events.add(receipt(message, MY_USER_ID));
+            }
+        }
+
+        return syncResponse(joinedRooms);
+    }
+
+    /**
+     * @param syncResponse the response
+     * @return its timeline events count
+     */
+    public static int getTimelineEventsCount(SyncResponse syncResponse) {
+        int count = 0;
+
+        if ((null != syncResponse.rooms) && (null != syncResponse.rooms.join)) {
+            for(RoomSync roomSync : syncResponse.rooms.join.values()) {
+                if ((null != roomSync.timeline) && (null != roomSync.timeline.events)) {
+                    count += roomSync.timeline.events.size();
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @param syncResponse the response
+     * @return its JSON body, serialized as the homeserver does
+     */
+    public static String toJson(SyncResponse syncResponse) {
+        return JsonUtils.getGson(false).toJson(syncResponse);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ListDifferTest {
+
+    private static class TestItem implements ListDiffer.Diffable<TestItem> {
+        private final long mId;
+        private final int mContent;
+
+        TestItem(long id, int content) {
+            mId = id;
+            mContent = content;
+        }
+
+        @Override
+        public long getStableId() {
+            return mId;
+        }
+
+        @Override
+        public boolean hasSameContent(TestItem other) {
+            return mContent == other.mContent;
+        }
+
+        @Override
+        public String toString() {
+            return mId + ":" + mContent;
+        }
+    }
+
+    private static ArrayList<TestItem> items(int count) {
+        ArrayList<TestItem> items = new ArrayList<TestItem>();
+
+        for(int index = 0; index < count; index++) {
+            items.add(new TestItem(index, 0));
+        }
+
+        return items;
+    }
+
+    /**
+     * Apply the updates as a RecyclerView adapter does.
+     * @return the updated list
+     */
+    private static List<TestItem> applyUpdates(List<TestItem> oldItems, List<TestItem> newItems, List<ListDiffer.Update> updates) {
+        ArrayList<TestItem> items = new ArrayList<TestItem>(oldItems);
+
+        for(ListDiffer.Update update : updates) {
+            switch (update.mType) {
+                case ListDiffer.Update.TYPE_REMOVE:
+                    items.remove(update.mFromPosition);
+                    break;
+                case ListDiffer.Update.TYPE_INSERT:
+                    items.add(update.mToPosition, newItems.get(update.mToPosition));
+                    break;
+                case ListDiffer.Update.TYPE_MOVE:
+                    items.add(update.mToPosition, items.remove(update.mFromPosition));
+                    break;
+                case ListDiffer.Update.TYPE_CHANGE:
+                    items.set(update.mToPosition, newItems.get(update.mToPosition));
+                    break;
+            }
+        }
+
+        return items;
+    }
+
+    /**
+     * The updated list must display the new items : the same ids in the same order with the same contents.
+     */
+    private static void assertUpdates(List<TestItem> oldItems, List<TestItem> newItems) {
+        List<ListDiffer.Update> updates = ListDiffer.computeUpdates(oldItems, newItems);
+
+        assertNotNull(updates);
+        assertEquals(newItems.toString(), applyUpdates(oldItems, newItems, updates).toString());
+    }
+
+    private static int countUpdates(List<ListDiffer.Update> updates, int type) {
+        int count = 0;
+
+        for(ListDiffer.Update update : updates) {
+            if (update.mType == type) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Test
+    public void computeUpdates_movesAnUpdatedItem() {
+        ArrayList<TestItem> oldItems = items(20);
+        ArrayList<TestItem> newItems = new ArrayList<TestItem>(oldItems);
+
+        // a room receives a message : it goes to the top
+        newItems.remove(12);
+        newItems.add(0, new TestItem(12, 1));
+
+        List<ListDiffer.Update> updates = ListDiffer.computeUpdates(oldItems, newItems);
+
+        assertEquals(2, updates.size());
+        assertEquals(1, countUpdates(updates, ListDiffer.Update.TYPE_MOVE));
+        assertEquals(1, countUpdates(updates, ListDiffer.Update.TYPE_CHANGE));
+        assertEquals(newItems.toString(), applyUpdates(oldItems, newItems, updates).toString());
+    }
+
+    @Test
+    public void computeUpdates_appliesTheRandomUpdates() {
+        Random random = new Random(1);
+        long nextId = 1000;
+
+        for(int test = 0; test < 200; test++) {
+            ArrayList<TestItem> oldItems = items(10 + random.nextInt(90));
+            ArrayList<TestItem> newItems = new ArrayList<TestItem>(oldItems);
+            int updatesCount = 1 + random.nextInt(oldItems.size() / 10 + 1);
+
+            for(int update = 0; update < updatesCount; update++) {
+                int position = random.nextInt(newItems.size());
+
+                switch (random.nextInt(4)) {
+                    case 0:
+                        newItems.remove(position);
+                        break;
+                    case 1:
+                        newItems.add(position, new TestItem(nextId++, 0));
+                        break;
+                    case 2:
+                        newItems.add(random.nextInt(newItems.size()), newItems.remove(position));
+                        break;
+                    default:
+                        newItems.set(position, new TestItem(newItems.get(position).mId, test + 1));
+                        break;
+                }
+            }
+
+            assertUpdates(oldItems, newItems);
+        }
+    }
+
+    @Test
+    public void computeUpdates_appliesTheRemovals() {
+        assertUpdates(items(10), new ArrayList<TestItem>());
+        assertUpdates(items(10), items(4));
+        assertUpdates(new ArrayList<TestItem>(), new ArrayList<TestItem>());
+    }
+
+    @Test
+    public void computeUpdates_refreshesTheReorderedList() {
+        ArrayList<TestItem> oldItems = items(100);
+        ArrayList<TestItem> newItems = new ArrayList<TestItem>(oldItems);
+        Collections.reverse(newItems);
+
+        assertNull(ListDiffer.computeUpdates(oldItems, newItems));
+
+        // the first display
+        assertNull(ListDiffer.computeUpdates(new ArrayList<TestItem>(), items(10)));
+    }
+
+    /**
+     * Time the diff of a 2000 rows list when a room receives a message,
+     * and when the list is reordered just below the full refresh threshold.
+     */
+    @Test
+    public void computeUpdates_benchmark() {
+        final int ITEMS_COUNT = 2000;
+        final int DIFFS_COUNT = 500;
+
+        Random random = new Random(2);
+        List<TestItem> items = items(ITEMS_COUNT);
+        long diffNanos = 0;
+
+        for(int diff = 0; diff < DIFFS_COUNT; diff++) {
+            ArrayList<TestItem> newItems = new ArrayList<TestItem>(items);
+            TestItem item = newItems.remove(random.nextInt(ITEMS_COUNT));
+            newItems.add(0, new TestItem(item.mId, diff + 1));
+
+            long start = System.nanoTime();
+            List<ListDiffer.Update> updates = ListDiffer.computeUpdates(items, newItems);
+            diffNanos += System.nanoTime() - start;
+
+            assertTrue(updates.size() <= 2);
+            assertEquals(newItems.toString(), applyUpdates(items, newItems, updates).toString());
+            items = newItems;
+        }
+
+        // many moves : each one is a reversed pair
+        ArrayList<TestItem> reorderedItems = new ArrayList<TestItem>(items);
+
+        for(int position = 0; position + 1 < ITEMS_COUNT; position += 5) {
+            Collections.swap(reorderedItems, position, position + 1);
+        }
+
+        long start = System.nanoTime();
+        List<ListDiffer.Update> updates = ListDiffer.computeUpdates(items, reorderedItems);
+        long reorderMicros = (System.nanoTime() - start) / 1000;
+
+        long diffMicros = diffNanos / DIFFS_COUNT / 1000;
+
+        // one move per reversed pair
+        assertNotNull(updates);
+        assertEquals(ITEMS_COUNT / 5, countUpdates(updates, ListDiffer.Update.TYPE_MOVE));
+        assertEquals(reorderedItems.toString(), applyUpdates(items, reorderedItems, updates).toString());
+
+        // the diff runs in background but it delays the display of the updates
+        assertTrue("a new message diff took " + diffMicros + " us", diffMicros < 5000);
+        assertTrue("the reordered list diff took " + reorderMicros + " us", reorderMicros < 50000);
+    }
+}
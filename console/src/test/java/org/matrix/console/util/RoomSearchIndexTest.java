@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 OpenMarket Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.matrix.console.util;
+
+import org.junit.Test;
+import org.matrix.androidsdk.rest.model.PublicRoom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RoomSearchIndexTest {
+
+    private static final String HOME_SERVER = "https://matrix.org";
+
+    /**
+     * The stubbed TextUtils considers no string as empty, so every field is set.
+     */
+    private static PublicRoom publicRoom(String roomId, String name, String topic) {
+        PublicRoom publicRoom = new PublicRoom();
+        publicRoom.roomId = roomId;
+        publicRoom.name = name;
+        publicRoom.alias = "#" + roomId.substring(1);
+        publicRoom.roomAliasName = roomId.substring(1);
+        publicRoom.aliases = new ArrayList<String>(Collections.singletonList(publicRoom.alias));
+        publicRoom.topic = topic;
+        return publicRoom;
+    }
+
+    private static RoomSearchIndex index(PublicRoom... publicRooms) {
+        RoomSearchIndex index = new RoomSearchIndex();
+        List<List<PublicRoom>> publicRoomsLists = new ArrayList<List<PublicRoom>>();
+        publicRoomsLists.add(Arrays.asList(publicRooms));
+        index.setPublicRooms(publicRoomsLists, Collections.singletonList(HOME_SERVER));
+        return index;
+    }
+
+    /**
+     * @param count the words count
+     * @param random the letters generator
+     * @return some words of 4 to 9 letters
+     */
+    private static String[] words(int count, Random random) {
+        String[] words = new String[count];
+
+        for(int index = 0; index < count; index++) {
+            StringBuilder builder = new StringBuilder();
+            int length = 4 + random.nextInt(6);
+
+            while (builder.length() < length) {
+                builder.append((char) ('a' + random.nextInt(26)));
+            }
+
+            words[index] = builder.toString();
+        }
+
+        return words;
+    }
+
+    private static List<String> roomIds(List<RoomSearchIndex.Entry> entries) {
+        ArrayList<String> roomIds = new ArrayList<String>();
+
+        for(RoomSearchIndex.Entry entry : entries) {
+            roomIds.add(entry.getRoomId());
+        }
+
+        return roomIds;
+    }
+
+    @Test
+    public void search_ranksTheMatches() {
+        RoomSearchIndex index = index(
+                publicRoom("!r1", "Team chat", "the team room"),
+                publicRoom("!r2", "Teamwork", "work"),
+                publicRoom("!r3", "The team", "misc"),
+                publicRoom("!r4", "Steam games", "games"),
+                publicRoom("!r5", "Lobby", "ask the team"));
+
+        // exact, term prefix, word prefix, then infix, the topic matches rank one step lower
+        assertEquals(Arrays.asList("!r1", "!r2", "!r3", "!r5", "!r4"), roomIds(index.search("Team")));
+        assertEquals(Collections.singletonList("!r1"), roomIds(index.search("team chat")));
+    }
+
+    @Test
+    public void search_matchesInsideTheWords() {
+        RoomSearchIndex index = index(
+                publicRoom("!r1", "Matrix HQ", "matrix"),
+                publicRoom("!r2", "Android", "apps"));
+
+        assertEquals(Collections.singletonList("!r1"), roomIds(index.search("atri")));
+        assertEquals(Collections.singletonList("!r2"), roomIds(index.search("DROID")));
+
+        // the two characters patterns only match the words by prefix
+        assertEquals(Collections.singletonList("!r2"), roomIds(index.search("an")));
+        assertTrue(index.search("ro").isEmpty());
+    }
+
+    @Test
+    public void search_ignoresTheEmptyPatterns() {
+        RoomSearchIndex index = index(publicRoom("!r1", "Matrix HQ", "matrix"));
+
+        assertTrue(index.search(null).isEmpty());
+        assertTrue(index.search("").isEmpty());
+        assertTrue(index.search("   ").isEmpty());
+    }
+
+    @Test
+    public void setPublicRooms_replacesTheFormerPublicRooms() {
+        RoomSearchIndex index = index(publicRoom("!r1", "Matrix HQ", "matrix"));
+
+        List<List<PublicRoom>> publicRoomsLists = new ArrayList<List<PublicRoom>>();
+        publicRoomsLists.add(Collections.singletonList(publicRoom("!r2", "Matrix dev", "dev")));
+        index.setPublicRooms(publicRoomsLists, Collections.singletonList(HOME_SERVER));
+
+        List<RoomSearchIndex.Entry> entries = index.search("matrix");
+
+        assertEquals(Collections.singletonList("!r2"), roomIds(entries));
+        assertTrue(entries.get(0).isPublicRoom());
+        assertEquals(HOME_SERVER, entries.get(0).getHomeServer());
+        assertTrue(index.search("hq").isEmpty());
+    }
+
+    /**
+     * The search runs on each typed character : it must take less than 1 ms.
+     */
+    @Test
+    public void search_benchmark() {
+        final int ROOMS_COUNT = 10000;
+        final int SEARCHES_COUNT = 2000;
+
+        Random random = new Random(1);
+        String[] words = words(1000, random);
+        PublicRoom[] publicRooms = new PublicRoom[ROOMS_COUNT];
+
+        for(int index = 0; index < ROOMS_COUNT; index++) {
+            String name = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)] + " " + index;
+            String topic = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)];
+            publicRooms[index] = publicRoom("!" + index, name, topic);
+        }
+
+        RoomSearchIndex index = index(publicRooms);
+
+        // the patterns typed character by character
+        ArrayList<String> patterns = new ArrayList<String>();
+
+        while (patterns.size() < SEARCHES_COUNT) {
+            String word = words[random.nextInt(words.length)];
+
+            for(int length = 1; length <= word.length(); length++) {
+                patterns.add(word.substring(0, length));
+            }
+        }
+
+        // warm up
+        for(String pattern : patterns) {
+            index.search(pattern);
+        }
+
+        long start = System.nanoTime();
+
+        for(String pattern : patterns) {
+            index.search(pattern);
+        }
+
+        long searchMicros = (System.nanoTime() - start) / patterns.size() / 1000;
+
+        // every room with a name word starting with the pattern is found
+        for(String pattern : patterns.subList(0, 100)) {
+            List<String> roomIds = roomIds(index.search(pattern));
+
+            for(PublicRoom publicRoom : publicRooms) {
+                for(String word : publicRoom.name.split(" ")) {
+                    if (word.startsWith(pattern)) {
+                        assertTrue(publicRoom.roomId + " is not found by " + pattern, roomIds.contains(publicRoom.roomId));
+                        break;
+                    }
+                }
+            }
+        }
+
+        assertTrue("search took " + searchMicros + " us", searchMicros < 1000);
+    }
+}